@@ -0,0 +1,746 @@
+package com.limetuna.speech;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Persistent per-attempt history (outcome, engine latency, error code, top
+ * confidence, expected and matched letter) with aggregate queries over it.
+ *
+ * Rows are appended on the main thread to a small columnar batch, with no
+ * I/O. A batch goes to the writer thread when it is full, when it is older
+ * than SHIP_INTERVAL_MS, and on flush()/close(); the writer appends it to the
+ * store as one block:
+ *
+ *   byte length (i32), row count (i32), base wall clock ms (i64),
+ *   string table (u8 count, UTF strings: engine labels and error codes),
+ *   then each column in turn: seconds after base (i32[]), app session
+ *   (i32[]), expected (u8[]), matched (u8[]), outcome (u8[]), flags (u8[]),
+ *   engine label (u8[]), error code (u8[]), latency ms (i32[]),
+ *   confidence x 10000 (i16[])
+ *
+ * behind a header (magic "LTAN", version), about 19 bytes a row. Past
+ * maxBytes the file is renamed to the ".1" file, so a device keeps at most
+ * two. A block cut short by a crash ends the read; earlier ones are kept.
+ *
+ * Queries run on the writer thread after everything recorded before them,
+ * scanning the columns they need. Plain Java, no Android types.
+ */
+final class AnalyticsStore {
+
+    static final String FILE_NAME = "attempts.ltan";
+    static final String ROTATED_FILE_NAME = "attempts.1.ltan";
+    static final long DEFAULT_MAX_BYTES = 1024L * 1024;
+
+    private static final int MAGIC = 0x4C54414E; // "LTAN"
+    private static final short VERSION = 1;
+    private static final int HEADER_BYTES = 6;
+
+    private static final int BATCH_ROWS = 64;
+    private static final long SHIP_INTERVAL_MS = 30000L;
+    private static final int MAX_STRINGS = 254;
+    private static final int NONE = 0xff;
+
+    // A miss followed by another attempt at the same letter within this gap
+    // makes that attempt a retry
+    static final long RETRY_GAP_MS = 60000L;
+
+    // Row flags
+    static final int FLAG_CORRECT = 1;
+    static final int FLAG_RETRY = 2;
+    static final int FLAG_SESSION = 4;
+
+    static final String KIND_LETTERS = "letters";
+    static final String KIND_LATENCY = "latency";
+    static final String KIND_RETRIES = "retries";
+    static final String KIND_SESSIONS = "sessions";
+
+    static final long DEFAULT_WINDOW_MS = 24L * 60 * 60 * 1000;
+    private static final int MAX_WINDOWS = 1000;
+
+    private final File file;
+    private final File rotated;
+    private final long maxBytes;
+
+    private final ExecutorService writer = Executors.newSingleThreadExecutor();
+    private final AtomicLong rowsWritten = new AtomicLong();
+    private final AtomicLong droppedBatches = new AtomicLong();
+
+    // Main thread only
+    private Batch batch = new Batch();
+    private int lastExpected = LetterResolver.NO_LETTER;
+    private boolean lastCorrect;
+    private long lastMs;
+
+    AnalyticsStore(File dir, long maxBytes) {
+        this.file = new File(dir, FILE_NAME);
+        this.rotated = new File(dir, ROTATED_FILE_NAME);
+        this.maxBytes = maxBytes > 0 ? maxBytes : DEFAULT_MAX_BYTES;
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    long rowsWritten() {
+        return rowsWritten.get();
+    }
+
+    long droppedBatches() {
+        return droppedBatches.get();
+    }
+
+    static boolean isKind(String kind) {
+        return KIND_LETTERS.equals(kind) || KIND_LATENCY.equals(kind)
+                || KIND_RETRIES.equals(kind) || KIND_SESSIONS.equals(kind);
+    }
+
+    // ---- Recording (main thread) ---------------------------------------------
+
+    /**
+     * One finished attempt. expected and matched are letter indexes or
+     * NO_LETTER, latencyMs is -1 when the engine never started, confidence
+     * is NaN when the recognizer gave none.
+     */
+    void record(long wallMs, int session, int expected, int matched, int outcome, boolean correct,
+                boolean fromSession, String engine, String code, int latencyMs, float confidence) {
+        int flags = 0;
+        if (correct) flags |= FLAG_CORRECT;
+        if (fromSession) flags |= FLAG_SESSION;
+        if (expected != LetterResolver.NO_LETTER && expected == lastExpected && !lastCorrect
+                && wallMs - lastMs <= RETRY_GAP_MS) {
+            flags |= FLAG_RETRY;
+        }
+        lastExpected = expected;
+        lastCorrect = correct;
+        lastMs = wallMs;
+
+        if (!batch.add(wallMs, session, expected, matched, outcome, flags, engine, code,
+                latencyMs, confidence)) {
+            // String table full: start a new block
+            ship();
+            batch.add(wallMs, session, expected, matched, outcome, flags, engine, code,
+                    latencyMs, confidence);
+        }
+        if (batch.rows >= BATCH_ROWS || wallMs - batch.baseMs >= SHIP_INTERVAL_MS) {
+            ship();
+        }
+    }
+
+    /** Hands buffered rows to the writer. */
+    void flush() {
+        ship();
+    }
+
+    /**
+     * Aggregates rows between sinceMs and untilMs (inclusive, wall clock) on
+     * the writer thread, after every row recorded so far, and hands the
+     * result or the failure to done there. letter (index or NO_LETTER) and
+     * engine (label prefix or null) narrow the rows; windowMs is the bucket
+     * width for "retries".
+     */
+    void query(final String kind, final long sinceMs, final long untilMs, final int letter,
+               final String engine, final long windowMs, final QueryCallback done) {
+        ship();
+        writer.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Aggregate agg = newAggregate(kind, sinceMs, windowMs);
+                    Filter filter = new Filter(sinceMs, untilMs, letter, engine);
+                    long rows = scan(rotated, filter, agg) + scan(file, filter, agg);
+                    JSONObject json = agg.toJson();
+                    json.put("kind", kind);
+                    json.put("rows", rows);
+                    done.onResult(json);
+                } catch (IOException e) {
+                    done.onError(e);
+                } catch (JSONException e) {
+                    done.onError(e);
+                }
+            }
+        });
+    }
+
+    /** Deletes both files, after anything still queued for them. */
+    void clear(final Runnable then) {
+        batch = new Batch();
+        lastExpected = LetterResolver.NO_LETTER;
+        lastCorrect = false;
+        lastMs = 0L;
+        writer.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (file.exists() && !file.delete()) droppedBatches.incrementAndGet();
+                if (rotated.exists() && !rotated.delete()) droppedBatches.incrementAndGet();
+                rowsWritten.set(0);
+                if (then != null) then.run();
+            }
+        });
+    }
+
+    void close() {
+        ship();
+        writer.shutdown();
+    }
+
+    interface QueryCallback {
+        void onResult(JSONObject result);
+
+        void onError(Exception e);
+    }
+
+    private void ship() {
+        if (batch.rows == 0) return;
+        final Batch full = batch;
+        batch = new Batch();
+        writer.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    append(full);
+                    rowsWritten.addAndGet(full.rows);
+                } catch (IOException e) {
+                    droppedBatches.incrementAndGet();
+                }
+            }
+        });
+    }
+
+    // ---- Columnar batch --------------------------------------------------------
+
+    private static final class Batch {
+        long baseMs;
+        int rows;
+        final int[] secs = new int[BATCH_ROWS];
+        final int[] session = new int[BATCH_ROWS];
+        final byte[] expected = new byte[BATCH_ROWS];
+        final byte[] matched = new byte[BATCH_ROWS];
+        final byte[] outcome = new byte[BATCH_ROWS];
+        final byte[] flags = new byte[BATCH_ROWS];
+        final byte[] engine = new byte[BATCH_ROWS];
+        final byte[] code = new byte[BATCH_ROWS];
+        final int[] latencyMs = new int[BATCH_ROWS];
+        final short[] confidence = new short[BATCH_ROWS];
+        final List<String> strings = new ArrayList<String>();
+
+        // False only when the string table has no room left
+        boolean add(long wallMs, int sessionId, int expectedLetter, int matchedLetter, int outcomeCode,
+                    int rowFlags, String engineLabel, String errorCode, int latency, float conf) {
+            int engineIndex = intern(engineLabel);
+            int codeIndex = errorCode != null ? intern(errorCode) : NONE;
+            if (engineIndex < 0 || codeIndex < 0) return false;
+
+            if (rows == 0) baseMs = wallMs;
+            int i = rows++;
+            secs[i] = (int) Math.max(0L, (wallMs - baseMs) / 1000L);
+            session[i] = sessionId;
+            expected[i] = (byte) (expectedLetter != LetterResolver.NO_LETTER ? expectedLetter : NONE);
+            matched[i] = (byte) (matchedLetter != LetterResolver.NO_LETTER ? matchedLetter : NONE);
+            outcome[i] = (byte) outcomeCode;
+            flags[i] = (byte) rowFlags;
+            engine[i] = (byte) engineIndex;
+            code[i] = (byte) codeIndex;
+            latencyMs[i] = latency;
+            confidence[i] = Float.isNaN(conf) ? (short) -1
+                    : (short) Math.round(Math.max(0f, Math.min(1f, conf)) * 10000f);
+            return true;
+        }
+
+        private int intern(String s) {
+            String value = s != null ? s : "";
+            int at = strings.indexOf(value);
+            if (at >= 0) return at;
+            if (strings.size() >= MAX_STRINGS) return -1;
+            strings.add(value);
+            return strings.size() - 1;
+        }
+    }
+
+    // ---- Writer thread ---------------------------------------------------------
+
+    private void append(Batch b) throws IOException {
+        if (file.isFile() && file.length() >= maxBytes) {
+            if (rotated.exists() && !rotated.delete()) {
+                throw new IOException("Cannot delete " + rotated);
+            }
+            if (!file.renameTo(rotated)) {
+                throw new IOException("Cannot rotate " + file);
+            }
+        }
+        File dir = file.getParentFile();
+        if (dir != null && !dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Cannot create " + dir);
+        }
+
+        int n = b.rows;
+        int tableBytes = 1;
+        byte[][] encoded = new byte[b.strings.size()][];
+        for (int i = 0; i < encoded.length; i++) {
+            encoded[i] = b.strings.get(i).getBytes("UTF-8");
+            tableBytes += 2 + encoded[i].length;
+        }
+        int payload = 4 + 8 + tableBytes + n * (4 + 4 + 1 + 1 + 1 + 1 + 1 + 1 + 4 + 2);
+        ByteBuffer out = ByteBuffer.allocate(HEADER_BYTES + 4 + payload);
+
+        FileOutputStream stream = new FileOutputStream(file, true);
+        try {
+            FileChannel channel = stream.getChannel();
+            if (channel.size() == 0) {
+                out.putInt(MAGIC);
+                out.putShort(VERSION);
+            }
+            out.putInt(payload);
+            out.putInt(n);
+            out.putLong(b.baseMs);
+            out.put((byte) encoded.length);
+            for (byte[] s : encoded) {
+                out.putShort((short) s.length);
+                out.put(s);
+            }
+            for (int i = 0; i < n; i++) out.putInt(b.secs[i]);
+            for (int i = 0; i < n; i++) out.putInt(b.session[i]);
+            out.put(b.expected, 0, n);
+            out.put(b.matched, 0, n);
+            out.put(b.outcome, 0, n);
+            out.put(b.flags, 0, n);
+            out.put(b.engine, 0, n);
+            out.put(b.code, 0, n);
+            for (int i = 0; i < n; i++) out.putInt(b.latencyMs[i]);
+            for (int i = 0; i < n; i++) out.putShort(b.confidence[i]);
+            out.flip();
+            while (out.hasRemaining()) {
+                channel.write(out);
+            }
+        } finally {
+            stream.close();
+        }
+    }
+
+    // Feeds every matching row of f to agg; returns the number of rows fed
+    private static long scan(File f, Filter filter, Aggregate agg) throws IOException {
+        if (!f.isFile() || f.length() < HEADER_BYTES) return 0;
+        byte[] bytes = new byte[(int) f.length()];
+        FileInputStream in = new FileInputStream(f);
+        try {
+            int off = 0;
+            while (off < bytes.length) {
+                int r = in.read(bytes, off, bytes.length - off);
+                if (r < 0) break;
+                off += r;
+            }
+        } finally {
+            in.close();
+        }
+
+        ByteBuffer buf = ByteBuffer.wrap(bytes);
+        if (buf.getInt() != MAGIC || buf.getShort() != VERSION) {
+            throw new IOException("Not an analytics store: " + f);
+        }
+        long fed = 0;
+        Columns c = new Columns();
+        while (buf.remaining() >= 4) {
+            int payload = buf.getInt();
+            if (payload < 13 || payload > buf.remaining()) break;
+            int end = buf.position() + payload;
+            try {
+                c.read(buf);
+            } catch (BufferUnderflowException e) {
+                break;
+            }
+            buf.position(end);
+            for (int i = 0; i < c.rows; i++) {
+                if (filter.accepts(c, i)) {
+                    agg.add(c, i);
+                    fed++;
+                }
+            }
+        }
+        return fed;
+    }
+
+    // One decoded block, arrays reused across blocks
+    static final class Columns {
+        int rows;
+        long baseMs;
+        String[] strings = new String[0];
+        int[] secs = new int[0];
+        int[] session = new int[0];
+        byte[] expected = new byte[0];
+        byte[] matched = new byte[0];
+        byte[] outcome = new byte[0];
+        byte[] flags = new byte[0];
+        byte[] engine = new byte[0];
+        byte[] code = new byte[0];
+        int[] latencyMs = new int[0];
+        short[] confidence = new short[0];
+
+        void read(ByteBuffer buf) throws IOException {
+            rows = buf.getInt();
+            baseMs = buf.getLong();
+            int count = buf.get() & 0xff;
+            strings = new String[count];
+            for (int i = 0; i < count; i++) {
+                byte[] s = new byte[buf.getShort() & 0xffff];
+                buf.get(s);
+                strings[i] = new String(s, "UTF-8");
+            }
+            if (rows < 0 || rows > buf.remaining()) throw new BufferUnderflowException();
+            if (secs.length < rows) grow(rows);
+            for (int i = 0; i < rows; i++) secs[i] = buf.getInt();
+            for (int i = 0; i < rows; i++) session[i] = buf.getInt();
+            buf.get(expected, 0, rows);
+            buf.get(matched, 0, rows);
+            buf.get(outcome, 0, rows);
+            buf.get(flags, 0, rows);
+            buf.get(engine, 0, rows);
+            buf.get(code, 0, rows);
+            for (int i = 0; i < rows; i++) latencyMs[i] = buf.getInt();
+            for (int i = 0; i < rows; i++) confidence[i] = buf.getShort();
+        }
+
+        private void grow(int n) {
+            secs = new int[n];
+            session = new int[n];
+            expected = new byte[n];
+            matched = new byte[n];
+            outcome = new byte[n];
+            flags = new byte[n];
+            engine = new byte[n];
+            code = new byte[n];
+            latencyMs = new int[n];
+            confidence = new short[n];
+        }
+
+        long wallMs(int i) {
+            return baseMs + secs[i] * 1000L;
+        }
+
+        int expected(int i) {
+            int v = expected[i] & 0xff;
+            return v == NONE ? LetterResolver.NO_LETTER : v;
+        }
+
+        int matched(int i) {
+            int v = matched[i] & 0xff;
+            return v == NONE ? LetterResolver.NO_LETTER : v;
+        }
+
+        boolean has(int i, int flag) {
+            return (flags[i] & flag) != 0;
+        }
+
+        boolean isError(int i) {
+            return outcome[i] == LatencyMetrics.OUTCOME_ERROR;
+        }
+
+        String engine(int i) {
+            int at = engine[i] & 0xff;
+            return at < strings.length ? strings[at] : "";
+        }
+
+        String code(int i) {
+            int at = code[i] & 0xff;
+            return at == NONE || at >= strings.length ? null : strings[at];
+        }
+    }
+
+    private static final class Filter {
+        final long sinceMs;
+        final long untilMs;
+        final int letter;
+        final String engine;
+
+        Filter(long sinceMs, long untilMs, int letter, String engine) {
+            this.sinceMs = sinceMs;
+            this.untilMs = untilMs;
+            this.letter = letter;
+            this.engine = engine;
+        }
+
+        boolean accepts(Columns c, int i) {
+            long t = c.wallMs(i);
+            if (t < sinceMs || t > untilMs) return false;
+            if (letter != LetterResolver.NO_LETTER && c.expected(i) != letter) return false;
+            return engine == null || c.engine(i).startsWith(engine);
+        }
+    }
+
+    // ---- Aggregates ------------------------------------------------------------
+
+    private static Aggregate newAggregate(String kind, long sinceMs, long windowMs) {
+        if (KIND_LATENCY.equals(kind)) return new LatencyAggregate();
+        if (KIND_RETRIES.equals(kind)) return new RetryAggregate(sinceMs, windowMs);
+        if (KIND_SESSIONS.equals(kind)) return new SessionAggregate();
+        return new LetterAggregate();
+    }
+
+    private abstract static class Aggregate {
+        abstract void add(Columns c, int i);
+
+        abstract JSONObject toJson() throws JSONException;
+    }
+
+    // Attempts, accuracy, errors, retries and confidence for a group of rows
+    private static final class Counts {
+        long attempts;
+        long correct;
+        long errors;
+        long retries;
+        long confidenceSum;
+        long confidenceCount;
+        final IntList latency = new IntList();
+        Map<String, Long> codes;
+
+        void add(Columns c, int i) {
+            attempts++;
+            if (c.has(i, FLAG_CORRECT)) correct++;
+            if (c.has(i, FLAG_RETRY)) retries++;
+            if (c.isError(i)) {
+                errors++;
+                String code = c.code(i);
+                if (code != null) {
+                    if (codes == null) codes = new TreeMap<String, Long>();
+                    Long n = codes.get(code);
+                    codes.put(code, n != null ? n + 1 : 1L);
+                }
+            }
+            if (c.confidence[i] >= 0) {
+                confidenceSum += c.confidence[i];
+                confidenceCount++;
+            }
+            if (c.latencyMs[i] >= 0) latency.add(c.latencyMs[i]);
+        }
+
+        JSONObject toJson(boolean withLatency) throws JSONException {
+            JSONObject json = new JSONObject();
+            json.put("attempts", attempts);
+            json.put("correct", correct);
+            json.put("accuracy", attempts > 0 ? correct / (double) attempts : JSONObject.NULL);
+            json.put("errors", errors);
+            json.put("retries", retries);
+            json.put("retryRate", attempts > 0 ? retries / (double) attempts : JSONObject.NULL);
+            json.put("meanConfidence", confidenceCount > 0
+                    ? confidenceSum / 10000.0 / confidenceCount : JSONObject.NULL);
+            if (withLatency) json.put("latency", latency.summary());
+            if (codes != null) json.put("errorCodes", new JSONObject(codes));
+            return json;
+        }
+    }
+
+    // Per expected letter, plus all rows
+    private static final class LetterAggregate extends Aggregate {
+        private final Counts[] letters = new Counts[LetterResolver.LETTER_COUNT];
+        private final Counts all = new Counts();
+
+        @Override
+        void add(Columns c, int i) {
+            all.add(c, i);
+            int letter = c.expected(i);
+            if (letter == LetterResolver.NO_LETTER) return;
+            if (letters[letter] == null) letters[letter] = new Counts();
+            letters[letter].add(c, i);
+        }
+
+        @Override
+        JSONObject toJson() throws JSONException {
+            JSONObject byLetter = new JSONObject();
+            for (int l = 0; l < letters.length; l++) {
+                if (letters[l] != null) {
+                    byLetter.put(String.valueOf(LetterResolver.letterChar(l)), letters[l].toJson(true));
+                }
+            }
+            JSONObject json = new JSONObject();
+            json.put("all", all.toJson(true));
+            json.put("letters", byLetter);
+            return json;
+        }
+    }
+
+    // Engine latency percentiles overall, per engine label and per outcome
+    private static final class LatencyAggregate extends Aggregate {
+        private final IntList all = new IntList();
+        private final Map<String, IntList> engines = new TreeMap<String, IntList>();
+        private final IntList[] outcomes = new IntList[LatencyMetrics.OUTCOME_COUNT];
+
+        @Override
+        void add(Columns c, int i) {
+            int ms = c.latencyMs[i];
+            if (ms < 0) return;
+            all.add(ms);
+            String engine = c.engine(i);
+            IntList list = engines.get(engine);
+            if (list == null) {
+                list = new IntList();
+                engines.put(engine, list);
+            }
+            list.add(ms);
+            int outcome = c.outcome[i];
+            if (outcome >= 0 && outcome < outcomes.length) {
+                if (outcomes[outcome] == null) outcomes[outcome] = new IntList();
+                outcomes[outcome].add(ms);
+            }
+        }
+
+        @Override
+        JSONObject toJson() throws JSONException {
+            JSONObject byEngine = new JSONObject();
+            for (Map.Entry<String, IntList> e : engines.entrySet()) {
+                byEngine.put(e.getKey(), e.getValue().summary());
+            }
+            JSONObject byOutcome = new JSONObject();
+            for (int o = 0; o < outcomes.length; o++) {
+                if (outcomes[o] != null) {
+                    byOutcome.put(LatencyMetrics.OUTCOME_NAMES[o], outcomes[o].summary());
+                }
+            }
+            JSONObject json = new JSONObject();
+            json.put("all", all.summary());
+            json.put("engines", byEngine);
+            json.put("outcomes", byOutcome);
+            return json;
+        }
+    }
+
+    // Fixed-width time windows starting at sinceMs; past MAX_WINDOWS the
+    // oldest ones go, since the recent ones are what a query is after
+    private static final class RetryAggregate extends Aggregate {
+        private final long originMs;
+        private final long windowMs;
+        private final TreeMap<Long, Counts> windows = new TreeMap<Long, Counts>();
+        private boolean truncated;
+
+        RetryAggregate(long sinceMs, long windowMs) {
+            this.originMs = Math.max(0L, sinceMs);
+            this.windowMs = windowMs > 0 ? windowMs : DEFAULT_WINDOW_MS;
+        }
+
+        @Override
+        void add(Columns c, int i) {
+            long start = originMs + (c.wallMs(i) - originMs) / windowMs * windowMs;
+            Counts counts = windows.get(start);
+            if (counts == null) {
+                if (windows.size() >= MAX_WINDOWS) {
+                    truncated = true;
+                    if (start < windows.firstKey()) return;
+                    windows.pollFirstEntry();
+                }
+                counts = new Counts();
+                windows.put(start, counts);
+            }
+            counts.add(c, i);
+        }
+
+        @Override
+        JSONObject toJson() throws JSONException {
+            JSONArray list = new JSONArray();
+            for (Map.Entry<Long, Counts> e : windows.entrySet()) {
+                JSONObject w = e.getValue().toJson(false);
+                w.put("startMs", e.getKey());
+                w.put("p50", e.getValue().latency.percentile(0.5));
+                list.put(w);
+            }
+            JSONObject json = new JSONObject();
+            json.put("windowMs", windowMs);
+            json.put("windows", list);
+            json.put("truncated", truncated);
+            return json;
+        }
+    }
+
+    // Per app session, in recording order
+    private static final class SessionAggregate extends Aggregate {
+        private final LinkedHashMap<Integer, Counts> sessions = new LinkedHashMap<Integer, Counts>();
+        private final Map<Integer, long[]> spans = new LinkedHashMap<Integer, long[]>();
+
+        @Override
+        void add(Columns c, int i) {
+            Integer id = c.session[i];
+            Counts counts = sessions.get(id);
+            if (counts == null) {
+                counts = new Counts();
+                sessions.put(id, counts);
+                spans.put(id, new long[]{c.wallMs(i), c.wallMs(i)});
+            }
+            counts.add(c, i);
+            spans.get(id)[1] = c.wallMs(i);
+        }
+
+        @Override
+        JSONObject toJson() throws JSONException {
+            JSONArray list = new JSONArray();
+            for (Map.Entry<Integer, Counts> e : sessions.entrySet()) {
+                JSONObject s = e.getValue().toJson(true);
+                long[] span = spans.get(e.getKey());
+                s.put("session", e.getKey());
+                s.put("firstMs", span[0]);
+                s.put("lastMs", span[1]);
+                list.put(s);
+            }
+            JSONObject json = new JSONObject();
+            json.put("sessions", list);
+            return json;
+        }
+    }
+
+    // Growable int array with exact percentiles
+    static final class IntList {
+        private int[] values = new int[16];
+        private int size;
+        private boolean sorted = true;
+
+        void add(int v) {
+            if (size == values.length) values = Arrays.copyOf(values, size * 2);
+            if (size > 0 && v < values[size - 1]) sorted = false;
+            values[size++] = v;
+        }
+
+        int size() {
+            return size;
+        }
+
+        /** Nearest-rank quantile, or -1 when empty. */
+        int percentile(double q) {
+            if (size == 0) return -1;
+            if (!sorted) {
+                Arrays.sort(values, 0, size);
+                sorted = true;
+            }
+            int rank = (int) Math.ceil(q * size);
+            return values[Math.max(0, Math.min(size - 1, rank - 1))];
+        }
+
+        JSONObject summary() throws JSONException {
+            JSONObject json = new JSONObject();
+            json.put("count", size);
+            if (size == 0) return json;
+            long sum = 0;
+            for (int i = 0; i < size; i++) sum += values[i];
+            json.put("p50", percentile(0.5));
+            json.put("p90", percentile(0.9));
+            json.put("p95", percentile(0.95));
+            json.put("p99", percentile(0.99));
+            json.put("max", percentile(1.0));
+            json.put("mean", sum / (double) size);
+            return json;
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package com.limetuna.speech;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Lifecycle of the one recognizer attempt, plus the starts waiting for it.
+ *
+ *   IDLE       -> ARMING      start accepted (feedback, pre-arm delay)
+ *   IDLE       -> LISTENING   session re-arm, no feedback step
+ *   ARMING     -> LISTENING   engine started
+ *   LISTENING  -> RESOLVING   results or an error came in
+ *   LISTENING  -> RECOVERING  recognizer recycled, retry scheduled
+ *   RECOVERING -> LISTENING   retry started
+ *   any        -> IDLE        reply sent, start failed, stopped
+ *
+ * Transitions are compare-and-set on one AtomicInteger, so the state can be
+ * read from any thread; the plugin only drives them from the main looper,
+ * which is its serial executor. A start that arrives while busy goes
+ * through the policy: queue (bounded FIFO), replace (the newest start
+ * displaces the newest waiting one once the queue is full) or reject.
+ *
+ * Plain Java, no Android types.
+ */
+final class AttemptStateMachine<T> {
+
+    static final int IDLE = 0;
+    static final int ARMING = 1;
+    static final int LISTENING = 2;
+    static final int RESOLVING = 3;
+    static final int RECOVERING = 4;
+
+    static final String[] STATE_NAMES = {"idle", "arming", "listening", "resolving", "recovering"};
+
+    static final int POLICY_QUEUE = 0;
+    static final int POLICY_REPLACE = 1;
+    static final int POLICY_REJECT = 2;
+
+    static final String[] POLICY_NAMES = {"queue", "replace", "reject"};
+
+    static final int DEFAULT_CAPACITY = 2;
+
+    // offer() results
+    static final int QUEUED = 0;
+    static final int REPLACED = 1;
+    static final int REJECTED = 2;
+
+    private final AtomicInteger state = new AtomicInteger(IDLE);
+    private final ArrayDeque<T> waiting = new ArrayDeque<T>();
+    private int policy = POLICY_QUEUE;
+    private int capacity = DEFAULT_CAPACITY;
+    private T evicted;
+
+    private long transitions;
+    private long illegal;
+    private long queued;
+    private long replaced;
+    private long rejected;
+
+    int state() {
+        return state.get();
+    }
+
+    boolean isIdle() {
+        return state.get() == IDLE;
+    }
+
+    /** Listening in the plugin's sense: the engine is running or being recreated. */
+    boolean isEngaged() {
+        int s = state.get();
+        return s == LISTENING || s == RECOVERING;
+    }
+
+    /**
+     * Moves from one state to another if the machine is in from and the
+     * edge exists. Returns false, and counts it, otherwise.
+     */
+    boolean transition(int from, int to) {
+        if (!allowed(from, to) || !state.compareAndSet(from, to)) {
+            illegal++;
+            return false;
+        }
+        transitions++;
+        return true;
+    }
+
+    /** Back to IDLE from wherever the attempt got to; returns the old state. */
+    int finish() {
+        int old = state.getAndSet(IDLE);
+        if (old != IDLE) transitions++;
+        return old;
+    }
+
+    private static boolean allowed(int from, int to) {
+        switch (to) {
+            case IDLE:
+                return true;
+            case ARMING:
+                return from == IDLE;
+            case LISTENING:
+                // IDLE -> LISTENING: a session re-arm skips the feedback step
+                return from == ARMING || from == RECOVERING || from == IDLE;
+            case RESOLVING:
+            case RECOVERING:
+                return from == LISTENING;
+            default:
+                return false;
+        }
+    }
+
+    // ---- Waiting starts ----------------------------------------------------
+
+    /**
+     * Returns the starts that no longer fit a smaller capacity, newest
+     * first, as offer() would have turned them away; the caller answers them.
+     */
+    List<T> setPolicy(int policy, int capacity) {
+        this.policy = policy;
+        this.capacity = Math.max(1, capacity);
+        List<T> trimmed = new ArrayList<T>();
+        while (waiting.size() > this.capacity) {
+            trimmed.add(waiting.pollLast());
+        }
+        return trimmed;
+    }
+
+    int getPolicy() {
+        return policy;
+    }
+
+    int getCapacity() {
+        return capacity;
+    }
+
+    static int parsePolicy(String name) {
+        for (int i = 0; i < POLICY_NAMES.length; i++) {
+            if (POLICY_NAMES[i].equals(name)) return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Parks a start until the machine is idle. On REPLACED the displaced
+     * start is available from takeEvicted(); on REJECTED nothing is kept.
+     */
+    int offer(T request) {
+        if (policy == POLICY_REJECT) {
+            rejected++;
+            return REJECTED;
+        }
+        if (waiting.size() < capacity) {
+            waiting.addLast(request);
+            queued++;
+            return QUEUED;
+        }
+        if (policy == POLICY_REPLACE) {
+            evicted = waiting.pollLast();
+            waiting.addLast(request);
+            replaced++;
+            return REPLACED;
+        }
+        rejected++;
+        return REJECTED;
+    }
+
+    T takeEvicted() {
+        T e = evicted;
+        evicted = null;
+        return e;
+    }
+
+    /** Next waiting start, or null. */
+    T poll() {
+        return waiting.pollFirst();
+    }
+
+    int waitingCount() {
+        return waiting.size();
+    }
+
+    /** Removes and returns every waiting start, oldest first. */
+    List<T> drain() {
+        List<T> all = new ArrayList<T>(waiting);
+        waiting.clear();
+        return all;
+    }
+
+    long transitions() {
+        return transitions;
+    }
+
+    long illegalTransitions() {
+        return illegal;
+    }
+
+    long queuedCount() {
+        return queued;
+    }
+
+    long replacedCount() {
+        return replaced;
+    }
+
+    long rejectedCount() {
+        return rejected;
+    }
+}
@@ -0,0 +1,92 @@
+package com.limetuna.speech;
+
+/**
+ * Dynamic time warping between two feature sequences.
+ *
+ * Uses a Sakoe-Chiba band and two reusable rows, and abandons early once
+ * every cell of a row is already worse than the best distance found so far.
+ * Distances are normalized by path length (n + m) so templates of
+ * different durations compare fairly.
+ *
+ * Not thread-safe.
+ */
+final class DtwMatcher {
+
+    private static final float BAND_FRACTION = 0.25f;
+
+    private final int dims;
+    private float[] prev = new float[64];
+    private float[] curr = new float[64];
+
+    DtwMatcher(int dims) {
+        this.dims = dims;
+    }
+
+    /**
+     * Returns the normalized DTW distance, or Float.POSITIVE_INFINITY when it
+     * is certain to exceed cutoff.
+     */
+    float distance(float[] a, int aFrames, float[] b, int bFrames, float cutoff) {
+        if (aFrames == 0 || bFrames == 0) return Float.POSITIVE_INFINITY;
+
+        if (prev.length < bFrames + 1) {
+            prev = new float[bFrames + 1];
+            curr = new float[bFrames + 1];
+        }
+
+        int band = Math.max(Math.abs(aFrames - bFrames),
+                (int) (BAND_FRACTION * Math.max(aFrames, bFrames))) + 1;
+        float rawCutoff = cutoff == Float.POSITIVE_INFINITY
+                ? Float.POSITIVE_INFINITY
+                : cutoff * (aFrames + bFrames);
+
+        for (int j = 0; j <= bFrames; j++) {
+            prev[j] = Float.POSITIVE_INFINITY;
+        }
+        prev[0] = 0f;
+
+        for (int i = 1; i <= aFrames; i++) {
+            curr[0] = Float.POSITIVE_INFINITY;
+            int center = (int) ((long) i * bFrames / aFrames);
+            int lo = Math.max(1, center - band);
+            int hi = Math.min(bFrames, center + band);
+            for (int j = 1; j < lo; j++) {
+                curr[j] = Float.POSITIVE_INFINITY;
+            }
+
+            float rowMin = Float.POSITIVE_INFINITY;
+            int aRow = (i - 1) * dims;
+            for (int j = lo; j <= hi; j++) {
+                int bRow = (j - 1) * dims;
+                float d = 0f;
+                for (int k = 0; k < dims; k++) {
+                    float diff = a[aRow + k] - b[bRow + k];
+                    d += diff * diff;
+                }
+                d = (float) Math.sqrt(d);
+
+                float best = prev[j - 1];
+                if (prev[j] < best) best = prev[j];
+                if (curr[j - 1] < best) best = curr[j - 1];
+
+                float cell = best + d;
+                curr[j] = cell;
+                if (cell < rowMin) rowMin = cell;
+            }
+            for (int j = hi + 1; j <= bFrames; j++) {
+                curr[j] = Float.POSITIVE_INFINITY;
+            }
+
+            if (rowMin > rawCutoff) {
+                return Float.POSITIVE_INFINITY;
+            }
+
+            float[] t = prev;
+            prev = curr;
+            curr = t;
+        }
+
+        float total = prev[bFrames];
+        return total == Float.POSITIVE_INFINITY ? total : total / (aFrames + bFrames);
+    }
+}
@@ -0,0 +1,330 @@
+package com.limetuna.speech;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Per-learner endpointing for the platform recognizer: how long a learner's
+ * utterances actually last (onBeginningOfSpeech to onEndOfSpeech), turned
+ * into the RecognizerIntent silence and minimum-length extras.
+ *
+ * Durations feed three P-square estimators (Jain and Chlamtac), so p10, p50
+ * and p90 are kept in constant space without storing samples. Until
+ * MIN_SAMPLES utterances have been heard the tuner returns 0 everywhere and
+ * the engine keeps its own defaults. After that:
+ *
+ *   complete silence  = SILENCE_BASE_MS + SILENCE_PER_SPEECH * p90
+ *   possibly complete = POSSIBLY_FRACTION * complete silence
+ *   minimum length    = p90
+ *
+ * all times the backoff and clamped. Letters are short, so this is far
+ * tighter than the dictation defaults. The backoff tracks an exponential
+ * average of NO_MATCH / SPEECH_TIMEOUT outcomes: above BACKOFF_RATE every
+ * miss widens the windows by BACKOFF_STEP, below RECOVER_RATE every heard
+ * utterance narrows them again.
+ *
+ * On disk the state is one small fixed record, rewritten whole by flush().
+ * Methods are synchronized: observations run on the main thread, flush() on
+ * a background thread.
+ */
+final class EndpointTuner {
+
+    private static final int MAGIC = 0x4c544550; // "LTEP"
+    private static final int VERSION = 1;
+
+    static final int MIN_SAMPLES = 8;
+
+    static final int SILENCE_BASE_MS = 300;
+    static final float SILENCE_PER_SPEECH = 0.35f;
+    static final float POSSIBLY_FRACTION = 0.7f;
+    static final int MIN_SILENCE_MS = 350;
+    static final int MAX_SILENCE_MS = 2000;
+    static final int MIN_POSSIBLY_MS = 250;
+    static final int MIN_LENGTH_FLOOR_MS = 200;
+    static final int MIN_LENGTH_CEIL_MS = 3000;
+
+    // Longer "utterances" are the recognizer hearing noise, not a letter
+    static final int MAX_SPEECH_MS = 10000;
+
+    static final float MISS_ALPHA = 0.1f;
+    static final float BACKOFF_RATE = 0.25f;
+    static final float RECOVER_RATE = 0.1f;
+    static final float BACKOFF_STEP = 1.25f;
+    static final float RECOVER_STEP = 0.98f;
+    static final float MAX_BACKOFF = 2.5f;
+
+    private final File file;
+
+    private final P2Quantile p10 = new P2Quantile(0.10);
+    private final P2Quantile p50 = new P2Quantile(0.50);
+    private final P2Quantile p90 = new P2Quantile(0.90);
+    private float missRate;
+    private float backoff = 1f;
+    private int misses;
+    private boolean dirty;
+
+    /** file may be null: the tuner then only lives in memory. */
+    EndpointTuner(File file) {
+        this.file = file;
+    }
+
+    /** A heard utterance that produced results. */
+    synchronized void observeSpeech(int speechMs) {
+        if (speechMs <= 0 || speechMs > MAX_SPEECH_MS) return;
+        p10.add(speechMs);
+        p50.add(speechMs);
+        p90.add(speechMs);
+        missRate += MISS_ALPHA * (0f - missRate);
+        if (isTuned() && missRate < RECOVER_RATE) {
+            backoff = Math.max(1f, backoff * RECOVER_STEP);
+        }
+        dirty = true;
+    }
+
+    /** NO_MATCH or SPEECH_TIMEOUT on an attempt that used the tuned values. */
+    synchronized void observeMiss() {
+        misses++;
+        missRate += MISS_ALPHA * (1f - missRate);
+        if (isTuned() && missRate > BACKOFF_RATE) {
+            backoff = Math.min(MAX_BACKOFF, backoff * BACKOFF_STEP);
+        }
+        dirty = true;
+    }
+
+    synchronized boolean isTuned() {
+        return p90.count() >= MIN_SAMPLES;
+    }
+
+    /** EXTRA_SPEECH_INPUT_COMPLETE_SILENCE_LENGTH_MILLIS, or 0 for the engine default. */
+    synchronized int completeSilenceMs() {
+        if (!isTuned()) return 0;
+        double ms = (SILENCE_BASE_MS + SILENCE_PER_SPEECH * p90.value()) * backoff;
+        return clamp(ms, MIN_SILENCE_MS, MAX_SILENCE_MS);
+    }
+
+    /** EXTRA_SPEECH_INPUT_POSSIBLY_COMPLETE_SILENCE_LENGTH_MILLIS, or 0. */
+    synchronized int possiblyCompleteSilenceMs() {
+        int complete = completeSilenceMs();
+        if (complete == 0) return 0;
+        return clamp(complete * POSSIBLY_FRACTION, MIN_POSSIBLY_MS, complete);
+    }
+
+    /** EXTRA_SPEECH_INPUT_MINIMUM_LENGTH_MILLIS, or 0. */
+    synchronized int minimumLengthMs() {
+        if (!isTuned()) return 0;
+        return clamp(p90.value() * backoff, MIN_LENGTH_FLOOR_MS, MIN_LENGTH_CEIL_MS);
+    }
+
+    synchronized int samples() {
+        return p90.count();
+    }
+
+    synchronized int misses() {
+        return misses;
+    }
+
+    synchronized float missRate() {
+        return missRate;
+    }
+
+    synchronized float backoff() {
+        return backoff;
+    }
+
+    /** Speech duration quantile in ms (q is 0.1, 0.5 or 0.9), NaN before any sample. */
+    synchronized double speechMs(double q) {
+        if (q <= 0.1) return p10.value();
+        if (q <= 0.5) return p50.value();
+        return p90.value();
+    }
+
+    synchronized void reset() {
+        p10.clear();
+        p50.clear();
+        p90.clear();
+        missRate = 0f;
+        backoff = 1f;
+        misses = 0;
+        dirty = true;
+    }
+
+    private static int clamp(double ms, int min, int max) {
+        return (int) Math.max(min, Math.min(max, Math.round(ms)));
+    }
+
+    // ---- Persistence ---------------------------------------------------------
+
+    synchronized void load() throws IOException {
+        dirty = false;
+        if (file == null || !file.isFile()) return;
+
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Not an endpoint file: " + file);
+            }
+            missRate = in.readFloat();
+            backoff = in.readFloat();
+            misses = in.readInt();
+            p10.read(in);
+            p50.read(in);
+            p90.read(in);
+        } catch (IOException e) {
+            reset();
+            dirty = false;
+            throw e;
+        } finally {
+            in.close();
+        }
+    }
+
+    /** Rewrites the file when anything changed since the last load or flush. */
+    void flush() throws IOException {
+        if (file == null) return;
+        File tmp = new File(file.getPath() + ".tmp");
+        synchronized (this) {
+            if (!dirty) return;
+            File dir = file.getParentFile();
+            if (dir != null && !dir.isDirectory() && !dir.mkdirs()) {
+                throw new IOException("Cannot create " + dir);
+            }
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+            try {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeFloat(missRate);
+                out.writeFloat(backoff);
+                out.writeInt(misses);
+                p10.write(out);
+                p50.write(out);
+                p90.write(out);
+            } finally {
+                out.close();
+            }
+            dirty = false;
+        }
+        if (!tmp.renameTo(file)) {
+            throw new IOException("Cannot replace " + file);
+        }
+    }
+
+    // ---- P-square quantile ---------------------------------------------------
+
+    /** One streaming quantile: five markers, updated in O(1) per sample. */
+    static final class P2Quantile {
+
+        private final double p;
+        private final double[] height = new double[5];
+        private final double[] position = new double[5];
+        private final double[] desired = new double[5];
+        private final double[] increment;
+        private int count;
+
+        P2Quantile(double p) {
+            this.p = p;
+            this.increment = new double[] {0, p / 2, p, (1 + p) / 2, 1};
+        }
+
+        int count() {
+            return count;
+        }
+
+        void clear() {
+            count = 0;
+        }
+
+        void add(double x) {
+            if (count < 5) {
+                height[count++] = x;
+                if (count == 5) {
+                    Arrays.sort(height);
+                    for (int i = 0; i < 5; i++) {
+                        position[i] = i + 1;
+                    }
+                    desired[0] = 1;
+                    desired[1] = 1 + 2 * p;
+                    desired[2] = 1 + 4 * p;
+                    desired[3] = 3 + 2 * p;
+                    desired[4] = 5;
+                }
+                return;
+            }
+            count++;
+
+            int k;
+            if (x < height[0]) {
+                height[0] = x;
+                k = 0;
+            } else if (x >= height[4]) {
+                height[4] = x;
+                k = 3;
+            } else {
+                k = 0;
+                while (x >= height[k + 1]) k++;
+            }
+            for (int i = k + 1; i < 5; i++) {
+                position[i]++;
+            }
+            for (int i = 0; i < 5; i++) {
+                desired[i] += increment[i];
+            }
+
+            for (int i = 1; i <= 3; i++) {
+                double d = desired[i] - position[i];
+                if ((d >= 1 && position[i + 1] - position[i] > 1)
+                        || (d <= -1 && position[i - 1] - position[i] < -1)) {
+                    int s = d >= 0 ? 1 : -1;
+                    double q = parabolic(i, s);
+                    if (height[i - 1] < q && q < height[i + 1]) {
+                        height[i] = q;
+                    } else {
+                        height[i] += s * (height[i + s] - height[i]) / (position[i + s] - position[i]);
+                    }
+                    position[i] += s;
+                }
+            }
+        }
+
+        private double parabolic(int i, int s) {
+            double below = position[i] - position[i - 1];
+            double above = position[i + 1] - position[i];
+            return height[i] + s / (position[i + 1] - position[i - 1])
+                    * ((below + s) * (height[i + 1] - height[i]) / above
+                    + (above - s) * (height[i] - height[i - 1]) / below);
+        }
+
+        /** Current estimate; exact over the first five samples, NaN before any. */
+        double value() {
+            if (count == 0) return Double.NaN;
+            if (count >= 5) return height[2];
+            double[] seen = Arrays.copyOf(height, count);
+            Arrays.sort(seen);
+            return seen[(int) Math.round((count - 1) * p)];
+        }
+
+        void write(DataOutputStream out) throws IOException {
+            out.writeInt(count);
+            for (int i = 0; i < 5; i++) {
+                out.writeDouble(height[i]);
+                out.writeDouble(position[i]);
+                out.writeDouble(desired[i]);
+            }
+        }
+
+        void read(DataInputStream in) throws IOException {
+            count = in.readInt();
+            for (int i = 0; i < 5; i++) {
+                height[i] = in.readDouble();
+                position[i] = in.readDouble();
+                desired[i] = in.readDouble();
+            }
+        }
+    }
+}
@@ -0,0 +1,232 @@
+package com.limetuna.speech;
+
+/**
+ * Voice activity detector tuned for single short utterances (one letter).
+ *
+ * Works on a per-frame level in the same units as SpeechRecognizer's
+ * onRmsChanged (about -2 quiet .. 10 loud, one unit ~ 3 dB), so it can be
+ * driven either by the platform recognizer's level callbacks or by raw PCM
+ * frames via offerPcm(). The noise floor is calibrated on the first frames
+ * and then tracks the background while no speech is active. When PCM is
+ * available the zero-crossing rate lets low-energy fricatives ("s", "f")
+ * count as speech.
+ *
+ * Pure Java and allocation-free per frame; not thread-safe.
+ */
+final class EnergyVad {
+
+    static final int EVENT_NONE = 0;
+    static final int EVENT_ONSET = 1;
+    static final int EVENT_ENDPOINT = 2;
+
+    static final int STATE_CALIBRATING = 0;
+    static final int STATE_WAITING = 1;
+    static final int STATE_SPEECH = 2;
+    static final int STATE_DONE = 3;
+
+    static final float DEFAULT_ONSET_MARGIN = 2.6f;
+    static final float DEFAULT_OFFSET_MARGIN = 1.3f;
+    static final float DEFAULT_MIN_ONSET_LEVEL = 2f;
+    static final int DEFAULT_CALIBRATION_MS = 100;
+    static final int DEFAULT_ONSET_MS = 30;
+    static final int DEFAULT_HANGOVER_MS = 250;
+    static final int DEFAULT_MIN_SPEECH_MS = 80;
+    static final int DEFAULT_MAX_SPEECH_MS = 2500;
+
+    // Frames above this crossing rate with at least offset energy are fricatives
+    private static final float FRICATIVE_ZCR = 0.3f;
+    // Floor tracking: fast down, slow up
+    private static final float FLOOR_FALL = 0.3f;
+    private static final float FLOOR_RISE = 0.02f;
+
+    private float onsetMargin = DEFAULT_ONSET_MARGIN;
+    private float offsetMargin = DEFAULT_OFFSET_MARGIN;
+    private float minOnsetLevel = DEFAULT_MIN_ONSET_LEVEL;
+    private int calibrationMs = DEFAULT_CALIBRATION_MS;
+    private int onsetMs = DEFAULT_ONSET_MS;
+    private int hangoverMs = DEFAULT_HANGOVER_MS;
+    private int minSpeechMs = DEFAULT_MIN_SPEECH_MS;
+    private int maxSpeechMs = DEFAULT_MAX_SPEECH_MS;
+
+    private int state;
+    private long startMs = -1;
+    private float floorSum;
+    private int floorFrames;
+    private float floor;
+    private float lastLevel;
+    private long runStartMs = -1;
+    private long silenceStartMs = -1;
+    private long onsetAtMs = -1;
+    private long speechEndMs = -1;
+    private long endpointAtMs = -1;
+
+    void configure(float onsetMargin, float offsetMargin, int hangoverMs,
+                   int minSpeechMs, int maxSpeechMs) {
+        this.onsetMargin = onsetMargin;
+        this.offsetMargin = Math.min(offsetMargin, onsetMargin);
+        this.hangoverMs = hangoverMs;
+        this.minSpeechMs = minSpeechMs;
+        this.maxSpeechMs = maxSpeechMs;
+    }
+
+    void setMinOnsetLevel(float minOnsetLevel) {
+        this.minOnsetLevel = minOnsetLevel;
+    }
+
+    void reset() {
+        state = STATE_CALIBRATING;
+        startMs = -1;
+        floorSum = 0f;
+        floorFrames = 0;
+        floor = 0f;
+        lastLevel = 0f;
+        runStartMs = -1;
+        silenceStartMs = -1;
+        onsetAtMs = -1;
+        speechEndMs = -1;
+        endpointAtMs = -1;
+    }
+
+    /** Feeds one PCM frame; timeMs is the frame's offset from the start of capture. */
+    int offerPcm(short[] pcm, int off, int len, long timeMs) {
+        return offer(levelOf(pcm, off, len), zeroCrossingRate(pcm, off, len), timeMs);
+    }
+
+    /**
+     * Feeds one level sample. zcr is the zero-crossing rate in [0, 1], or a
+     * negative value when unknown. Returns EVENT_ONSET, EVENT_ENDPOINT or
+     * EVENT_NONE.
+     */
+    int offer(float level, float zcr, long timeMs) {
+        lastLevel = level;
+        if (state == STATE_DONE) return EVENT_NONE;
+        if (startMs < 0) startMs = timeMs;
+
+        if (state == STATE_CALIBRATING) {
+            floorSum += level;
+            floorFrames++;
+            if (timeMs - startMs >= calibrationMs) {
+                floor = floorSum / floorFrames;
+                state = STATE_WAITING;
+            }
+            return EVENT_NONE;
+        }
+
+        boolean loud = level > floor + onsetMargin && level > minOnsetLevel;
+        boolean voiced = loud || level > floor + offsetMargin
+                || (zcr >= FRICATIVE_ZCR && level > floor + offsetMargin * 0.5f);
+
+        if (state == STATE_WAITING) {
+            if (loud) {
+                if (runStartMs < 0) runStartMs = timeMs;
+                if (timeMs - runStartMs >= onsetMs) {
+                    state = STATE_SPEECH;
+                    onsetAtMs = runStartMs;
+                    silenceStartMs = -1;
+                    return EVENT_ONSET;
+                }
+            } else {
+                runStartMs = -1;
+                floor += (level < floor ? FLOOR_FALL : FLOOR_RISE) * (level - floor);
+            }
+            return EVENT_NONE;
+        }
+
+        // STATE_SPEECH
+        if (voiced) {
+            silenceStartMs = -1;
+        } else if (silenceStartMs < 0) {
+            silenceStartMs = timeMs;
+        }
+
+        boolean trailing = silenceStartMs >= 0 && timeMs - silenceStartMs >= hangoverMs;
+        if (trailing) {
+            if (silenceStartMs - onsetAtMs < minSpeechMs) {
+                // A click or bump, not a letter: keep waiting
+                state = STATE_WAITING;
+                runStartMs = -1;
+                onsetAtMs = -1;
+                return EVENT_NONE;
+            }
+            return endpoint(silenceStartMs, timeMs);
+        }
+        if (timeMs - onsetAtMs >= maxSpeechMs) {
+            return endpoint(timeMs, timeMs);
+        }
+        return EVENT_NONE;
+    }
+
+    private int endpoint(long speechEnd, long now) {
+        state = STATE_DONE;
+        speechEndMs = speechEnd;
+        endpointAtMs = now;
+        return EVENT_ENDPOINT;
+    }
+
+    int getState() {
+        return state;
+    }
+
+    float getFloor() {
+        return floor;
+    }
+
+    float getLastLevel() {
+        return lastLevel;
+    }
+
+    /** Start of speech relative to the first frame, or -1. */
+    long getOnsetMs() {
+        return onsetAtMs >= 0 ? onsetAtMs - startMs : -1;
+    }
+
+    /** End of speech (start of the trailing silence), or -1. */
+    long getSpeechEndMs() {
+        return speechEndMs >= 0 ? speechEndMs - startMs : -1;
+    }
+
+    /** When the endpoint was declared, or -1. */
+    long getEndpointMs() {
+        return endpointAtMs >= 0 ? endpointAtMs - startMs : -1;
+    }
+
+    int getHangoverMs() {
+        return hangoverMs;
+    }
+
+    int getMinSpeechMs() {
+        return minSpeechMs;
+    }
+
+    int getMaxSpeechMs() {
+        return maxSpeechMs;
+    }
+
+    float getOnsetMargin() {
+        return onsetMargin;
+    }
+
+    float getOffsetMargin() {
+        return offsetMargin;
+    }
+
+    // ---- Frame features --------------------------------------------------------
+
+    /** Frame level on the recognizer's rmsdB scale. */
+    static float levelOf(short[] pcm, int off, int len) {
+        long acc = 0;
+        for (int i = off; i < off + len; i++) {
+            acc += (long) pcm[i] * pcm[i];
+        }
+        double rms = Math.sqrt((double) acc / len);
+        return (float) ((20.0 * Math.log10(rms + 1.0) - 40.0) / 3.0);
+    }
+
+    static float zeroCrossingRate(short[] pcm, int off, int len) {
+        int crossings = 0;
+        for (int i = off + 1; i < off + len; i++) {
+            if ((pcm[i] >= 0) != (pcm[i - 1] >= 0)) crossings++;
+        }
+        return len > 1 ? (float) crossings / (len - 1) : 0f;
+    }
+}
@@ -0,0 +1,257 @@
+package com.limetuna.speech;
+
+import android.content.res.AssetFileDescriptor;
+import android.content.res.AssetManager;
+import android.media.AudioAttributes;
+import android.media.AudioFocusRequest;
+import android.media.AudioManager;
+import android.media.SoundPool;
+import android.os.Build;
+import android.os.Handler;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Low-latency feedback clips (correct / wrong / win / lose).
+ *
+ * Clips are decoded once into a SoundPool, so play() only mixes PCM that is
+ * already in memory. Completion is reported from the clip duration read from
+ * the WAV header; SoundPool itself has no completion callback.
+ *
+ * Playback uses USAGE_GAME (the music stream), which the plugin's beep muting
+ * never touches, and holds transient audio focus while any clip is playing.
+ *
+ * Must be used from the main thread, except load(), which does file I/O and
+ * belongs on a background thread.
+ */
+final class FeedbackPlayer {
+
+    private static final String TAG = "LimeTunaSpeech";
+    private static final int MAX_STREAMS = 2;
+
+    interface Listener {
+        void onFeedbackDone(String id, boolean completed);
+    }
+
+    private static final class Clip {
+        int soundId;
+        long durationMs;
+        volatile boolean loaded;
+    }
+
+    private final AudioManager audioManager;
+    private final Handler mainHandler;
+    private final SoundPool soundPool;
+    private final Map<String, Clip> clips = new HashMap<String, Clip>();
+    private final Map<Integer, Clip> clipsBySound = new HashMap<Integer, Clip>();
+
+    private AudioFocusRequest focusRequest;
+    private boolean hasFocus;
+
+    // The clip currently playing, if any (one at a time keeps completion simple)
+    private int playingStream;
+    private String playingId;
+    private Listener playingListener;
+    private long playingEndsAt;
+
+    private final Runnable completion = new Runnable() {
+        @Override
+        public void run() {
+            finish(true);
+        }
+    };
+
+    private final AudioManager.OnAudioFocusChangeListener focusListener =
+            new AudioManager.OnAudioFocusChangeListener() {
+                @Override
+                public void onAudioFocusChange(int change) {
+                    if (change == AudioManager.AUDIOFOCUS_LOSS
+                            || change == AudioManager.AUDIOFOCUS_LOSS_TRANSIENT) {
+                        hasFocus = false;
+                        stop();
+                    }
+                }
+            };
+
+    FeedbackPlayer(AudioManager audioManager, Handler mainHandler) {
+        this.audioManager = audioManager;
+        this.mainHandler = mainHandler;
+
+        AudioAttributes attrs = new AudioAttributes.Builder()
+                .setUsage(AudioAttributes.USAGE_GAME)
+                .setContentType(AudioAttributes.CONTENT_TYPE_SONIFICATION)
+                .build();
+        soundPool = new SoundPool.Builder()
+                .setMaxStreams(MAX_STREAMS)
+                .setAudioAttributes(attrs)
+                .build();
+        soundPool.setOnLoadCompleteListener(new SoundPool.OnLoadCompleteListener() {
+            @Override
+            public void onLoadComplete(SoundPool pool, int sampleId, int status) {
+                synchronized (clips) {
+                    Clip clip = clipsBySound.get(sampleId);
+                    if (clip != null) {
+                        clip.loaded = status == 0;
+                    }
+                }
+            }
+        });
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            focusRequest = new AudioFocusRequest.Builder(AudioManager.AUDIOFOCUS_GAIN_TRANSIENT_MAY_DUCK)
+                    .setAudioAttributes(attrs)
+                    .setOnAudioFocusChangeListener(focusListener)
+                    .build();
+        }
+    }
+
+    /**
+     * Loads every "*.wav" in assetDir, keyed by file name without extension
+     * (www/audio/correct.wav -> "correct"). Returns the number of clips.
+     */
+    int load(AssetManager assets, String assetDir) throws IOException {
+        String[] names = assets.list(assetDir);
+        if (names == null) return 0;
+
+        int count = 0;
+        for (String name : names) {
+            if (!name.toLowerCase().endsWith(".wav")) continue;
+            String path = assetDir + "/" + name;
+            String id = name.substring(0, name.length() - 4);
+
+            Clip clip = new Clip();
+            InputStream in = assets.open(path);
+            try {
+                clip.durationMs = Math.round(WavIO.durationMs(in));
+            } finally {
+                in.close();
+            }
+
+            AssetFileDescriptor afd = assets.openFd(path);
+            try {
+                synchronized (clips) {
+                    clip.soundId = soundPool.load(afd, 1);
+                    clips.put(id, clip);
+                    clipsBySound.put(clip.soundId, clip);
+                }
+            } finally {
+                afd.close();
+            }
+            count++;
+        }
+        return count;
+    }
+
+    boolean isLoaded(String id) {
+        Clip clip = clip(id);
+        return clip != null && clip.loaded;
+    }
+
+    long durationMs(String id) {
+        Clip clip = clip(id);
+        return clip != null ? clip.durationMs : -1;
+    }
+
+    boolean isPlaying() {
+        return playingId != null;
+    }
+
+    /** Milliseconds until the current clip finishes, 0 when idle. */
+    long remainingMs() {
+        return playingId != null ? Math.max(0, playingEndsAt - SystemClock.uptimeMillis()) : 0;
+    }
+
+    /**
+     * Starts a clip, replacing any clip still playing. The listener is called
+     * on the main thread when it finishes or is cut short. Returns false when
+     * the clip is unknown or not decoded yet.
+     */
+    boolean play(String id, Listener listener) {
+        Clip clip = clip(id);
+        if (clip == null || !clip.loaded) return false;
+
+        finish(false);
+        requestFocus();
+
+        int stream = soundPool.play(clip.soundId, 1f, 1f, 1, 0, 1f);
+        if (stream == 0) {
+            abandonFocus();
+            return false;
+        }
+
+        playingStream = stream;
+        playingId = id;
+        playingListener = listener;
+        playingEndsAt = SystemClock.uptimeMillis() + clip.durationMs;
+        mainHandler.postDelayed(completion, clip.durationMs);
+        return true;
+    }
+
+    void stop() {
+        finish(false);
+    }
+
+    void release() {
+        finish(false);
+        soundPool.release();
+        synchronized (clips) {
+            clips.clear();
+            clipsBySound.clear();
+        }
+    }
+
+    private void finish(boolean completed) {
+        mainHandler.removeCallbacks(completion);
+        if (playingId == null) return;
+
+        if (!completed) {
+            soundPool.stop(playingStream);
+        }
+        String id = playingId;
+        Listener listener = playingListener;
+        playingId = null;
+        playingListener = null;
+        playingStream = 0;
+        abandonFocus();
+
+        if (listener != null) {
+            listener.onFeedbackDone(id, completed);
+        }
+    }
+
+    private Clip clip(String id) {
+        synchronized (clips) {
+            return clips.get(id);
+        }
+    }
+
+    private void requestFocus() {
+        if (hasFocus || audioManager == null) return;
+        int result;
+        if (focusRequest != null) {
+            result = audioManager.requestAudioFocus(focusRequest);
+        } else {
+            result = audioManager.requestAudioFocus(focusListener,
+                    AudioManager.STREAM_MUSIC, AudioManager.AUDIOFOCUS_GAIN_TRANSIENT_MAY_DUCK);
+        }
+        hasFocus = result == AudioManager.AUDIOFOCUS_REQUEST_GRANTED;
+        if (!hasFocus) {
+            Log.w(TAG, "Audio focus not granted for feedback");
+        }
+    }
+
+    private void abandonFocus() {
+        if (!hasFocus || audioManager == null) return;
+        if (focusRequest != null) {
+            audioManager.abandonAudioFocusRequest(focusRequest);
+        } else {
+            audioManager.abandonAudioFocus(focusListener);
+        }
+        hasFocus = false;
+    }
+}
@@ -0,0 +1,321 @@
+package com.limetuna.speech;
+
+import android.media.AudioFormat;
+import android.media.AudioRecord;
+import android.media.MediaRecorder;
+import android.os.Handler;
+import android.os.Process;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * AudioRecord capture loop for the on-device keyword engine.
+ *
+ * Records 16 kHz mono PCM on a dedicated audio-priority thread, endpoints
+ * the utterance with EnergyVad, runs KeywordSpotter on the same thread
+ * and posts the outcome to the main thread.
+ *
+ * Each worker owns its PCM buffer and EnergyVad, and waits for the previous
+ * worker to exit before it opens the microphone, so a stale worker still
+ * blocked in read() can never touch the new attempt's data. cancel() never
+ * blocks the main thread. A buffer is handed back when its worker exits and
+ * reused by the next one, so steady state does not allocate.
+ */
+final class KeywordCaptureEngine {
+
+    private static final String TAG = "LimeTunaSpeech";
+
+    // All callbacks run on the main thread
+    interface Listener {
+        void onCaptureReady();
+
+        void onCaptureBegin();
+
+        void onCaptureEnd();
+
+        void onCaptureLevel(float rmsdB);
+
+        void onCaptureResult(ArrayList<String> matches, float[] confidences);
+
+        void onCaptureEnrolled(short[] utterance);
+
+        void onCaptureError(String code);
+    }
+
+    private static final int SAMPLE_RATE = KeywordSpotter.SAMPLE_RATE;
+    private static final int FRAME = 160; // 10 ms
+    private static final int MAX_UTTERANCE_MS = 3000;
+    private static final int PREROLL_MS = 150;
+    private static final int NO_SPEECH_TIMEOUT_MS = 5000;
+
+    private static final int LEVEL_EVERY_FRAMES = 5;
+    // Keep a little of the trailing silence so the final consonant is intact
+    private static final int TAIL_FRAMES = 5;
+
+    // n-best handed to the letter resolver
+    private static final int MAX_CANDIDATES = 3;
+    private static final float MIN_CANDIDATE_CONFIDENCE = 0.85f;
+
+    private final KeywordSpotter spotter;
+    private final Handler mainHandler;
+    private final Listener listener;
+
+    private static final int PCM_SAMPLES = SAMPLE_RATE * (NO_SPEECH_TIMEOUT_MS + MAX_UTTERANCE_MS) / 1000;
+
+    // VAD settings for the next start (main thread)
+    private float onsetMargin = EnergyVad.DEFAULT_ONSET_MARGIN;
+    private float offsetMargin = EnergyVad.DEFAULT_OFFSET_MARGIN;
+    private int hangoverMs = EnergyVad.DEFAULT_HANGOVER_MS;
+    private int minSpeechMs = EnergyVad.DEFAULT_MIN_SPEECH_MS;
+    private int maxSpeechMs = Math.min(EnergyVad.DEFAULT_MAX_SPEECH_MS, MAX_UTTERANCE_MS);
+
+    // The current attempt's VAD
+    private EnergyVad vad = new EnergyVad();
+    // Buffer of the last worker that exited, for the next one
+    private final AtomicReference<short[]> spare = new AtomicReference<short[]>();
+
+    // Bumped on every start/cancel; a worker stops as soon as it is stale
+    private volatile int generation;
+    private Thread worker;
+
+    KeywordCaptureEngine(KeywordSpotter spotter, Handler mainHandler, Listener listener) {
+        this.spotter = spotter;
+        this.mainHandler = mainHandler;
+        this.listener = listener;
+    }
+
+    // Must be called ONLY on main thread, while not running
+    void configureVad(float onsetMargin, float offsetMargin, int hangoverMs,
+                      int minSpeechMs, int maxSpeechMs) {
+        this.onsetMargin = onsetMargin;
+        this.offsetMargin = offsetMargin;
+        this.hangoverMs = hangoverMs;
+        this.minSpeechMs = minSpeechMs;
+        this.maxSpeechMs = Math.min(maxSpeechMs, MAX_UTTERANCE_MS);
+    }
+
+    // Decisions of the last attempt; read only after its callback was delivered
+    EnergyVad getVad() {
+        return vad;
+    }
+
+    // Must be called ONLY on main thread
+    boolean isRunning() {
+        return worker != null && worker.isAlive();
+    }
+
+    // Must be called ONLY on main thread
+    void start(final boolean enroll) {
+        final Thread previous = worker;
+        cancel();
+        final int gen = ++generation;
+        final EnergyVad attemptVad = new EnergyVad();
+        attemptVad.configure(onsetMargin, offsetMargin, hangoverMs, minSpeechMs, maxSpeechMs);
+        vad = attemptVad;
+
+        worker = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_URGENT_AUDIO);
+                if (previous != null) {
+                    try {
+                        // The old loop re-checks its generation after every 10 ms read
+                        previous.join();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (gen != generation) return;
+                short[] pcm = spare.getAndSet(null);
+                if (pcm == null) {
+                    pcm = new short[PCM_SAMPLES];
+                }
+                try {
+                    capture(gen, enroll, attemptVad, pcm);
+                } finally {
+                    spare.set(pcm);
+                }
+            }
+        }, "LimeTunaKws");
+        worker.start();
+    }
+
+    // Must be called ONLY on main thread. Returns at once; the worker stops
+    // after its current read and drops its callbacks.
+    void cancel() {
+        generation++;
+        worker = null;
+    }
+
+    // ---- Worker thread -------------------------------------------------------
+
+    private void capture(int gen, boolean enroll, EnergyVad vad, short[] pcm) {
+        int minBuf = AudioRecord.getMinBufferSize(SAMPLE_RATE,
+                AudioFormat.CHANNEL_IN_MONO, AudioFormat.ENCODING_PCM_16BIT);
+        AudioRecord record;
+        try {
+            record = new AudioRecord(MediaRecorder.AudioSource.VOICE_RECOGNITION, SAMPLE_RATE,
+                    AudioFormat.CHANNEL_IN_MONO, AudioFormat.ENCODING_PCM_16BIT,
+                    Math.max(minBuf, FRAME * 2 * 8));
+        } catch (Exception e) {
+            Log.e(TAG, "AudioRecord create failed", e);
+            postError(gen, "AUDIO_ERROR");
+            return;
+        }
+
+        try {
+            if (record.getState() != AudioRecord.STATE_INITIALIZED) {
+                postError(gen, "AUDIO_ERROR");
+                return;
+            }
+            record.startRecording();
+            post(gen, new Runnable() {
+                @Override
+                public void run() {
+                    listener.onCaptureReady();
+                }
+            });
+            runEndpointLoop(record, gen, enroll, vad, pcm);
+        } catch (Exception e) {
+            Log.e(TAG, "Keyword capture failed", e);
+            postError(gen, "AUDIO_ERROR");
+        } finally {
+            try {
+                record.stop();
+            } catch (Exception ignored) {
+                // already stopped
+            }
+            record.release();
+        }
+    }
+
+    private void runEndpointLoop(AudioRecord record, final int gen, boolean enroll,
+                                 final EnergyVad vad, short[] pcm) {
+        int maxFrames = pcm.length / FRAME;
+        int noSpeechFrames = NO_SPEECH_TIMEOUT_MS / 10;
+        int prerollFrames = PREROLL_MS / 10;
+
+        vad.reset();
+        int endFrame = -1;
+
+        for (int f = 0; f < maxFrames && gen == generation; f++) {
+            int off = f * FRAME;
+            int read = 0;
+            while (read < FRAME && gen == generation) {
+                int n = record.read(pcm, off + read, FRAME - read);
+                if (n < 0) {
+                    postError(gen, "AUDIO_ERROR");
+                    return;
+                }
+                read += n;
+            }
+            if (gen != generation) return;
+
+            int event = vad.offerPcm(pcm, off, FRAME, f * 10L);
+
+            if (f % LEVEL_EVERY_FRAMES == 0) {
+                final float level = vad.getLastLevel();
+                post(gen, new Runnable() {
+                    @Override
+                    public void run() {
+                        listener.onCaptureLevel(level);
+                    }
+                });
+            }
+
+            if (event == EnergyVad.EVENT_ONSET) {
+                post(gen, new Runnable() {
+                    @Override
+                    public void run() {
+                        listener.onCaptureBegin();
+                    }
+                });
+            } else if (event == EnergyVad.EVENT_ENDPOINT) {
+                endFrame = (int) (vad.getSpeechEndMs() / 10);
+                break;
+            } else if (vad.getState() != EnergyVad.STATE_SPEECH && f >= noSpeechFrames) {
+                postError(gen, "SPEECH_TIMEOUT");
+                return;
+            }
+        }
+
+        if (gen != generation) return;
+        if (vad.getOnsetMs() < 0) {
+            postError(gen, "SPEECH_TIMEOUT");
+            return;
+        }
+        int onsetFrame = (int) (vad.getOnsetMs() / 10);
+        if (endFrame < 0) {
+            endFrame = maxFrames;
+        }
+
+        post(gen, new Runnable() {
+            @Override
+            public void run() {
+                listener.onCaptureEnd();
+            }
+        });
+
+        int start = Math.max(0, onsetFrame - prerollFrames) * FRAME;
+        int end = Math.min(maxFrames, endFrame + TAIL_FRAMES) * FRAME;
+
+        if (enroll) {
+            final short[] utterance = Arrays.copyOfRange(pcm, start, end);
+            post(gen, new Runnable() {
+                @Override
+                public void run() {
+                    listener.onCaptureEnrolled(utterance);
+                }
+            });
+            return;
+        }
+
+        final ArrayList<String> matches = new ArrayList<String>(MAX_CANDIDATES);
+        final float[] confidences;
+        synchronized (spotter) {
+            int best = spotter.decide(pcm, start, end);
+            if (best == LetterResolver.NO_LETTER) {
+                postError(gen, "NO_MATCH");
+                return;
+            }
+            int[] letters = new int[MAX_CANDIDATES];
+            float[] confs = new float[MAX_CANDIDATES];
+            int n = spotter.candidates(letters, confs, MAX_CANDIDATES, MIN_CANDIDATE_CONFIDENCE);
+            for (int i = 0; i < n; i++) {
+                matches.add(String.valueOf(Character.toLowerCase(LetterResolver.letterChar(letters[i]))));
+            }
+            confidences = Arrays.copyOf(confs, n);
+        }
+
+        post(gen, new Runnable() {
+            @Override
+            public void run() {
+                listener.onCaptureResult(matches, confidences);
+            }
+        });
+    }
+
+    private void postError(int gen, final String code) {
+        post(gen, new Runnable() {
+            @Override
+            public void run() {
+                listener.onCaptureError(code);
+            }
+        });
+    }
+
+    // Drops callbacks from attempts that were cancelled or superseded
+    private void post(final int gen, final Runnable r) {
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (gen == generation) {
+                    r.run();
+                }
+            }
+        });
+    }
+}
@@ -0,0 +1,144 @@
+package com.limetuna.speech;
+
+import android.os.Handler;
+
+import java.util.ArrayList;
+
+/**
+ * On-device keyword spotting (KeywordCaptureEngine) as a RecognizerBackend.
+ *
+ * Also records enrollment utterances for recordKeywordTemplate, which works
+ * whichever backend is selected for recognition.
+ */
+final class KeywordRecognizerBackend implements RecognizerBackend, KeywordCaptureEngine.Listener {
+
+    interface EnrollListener {
+        void onEnrolled(short[] utterance);
+
+        void onEnrollError(String code);
+    }
+
+    private final KeywordSpotter spotter;
+    private final Handler handler;
+    private final Listener listener;
+    private final EnrollListener enrollListener;
+
+    private KeywordCaptureEngine engine;
+    private boolean enrolling;
+
+    KeywordRecognizerBackend(KeywordSpotter spotter, Handler handler, Listener listener,
+                             EnrollListener enrollListener) {
+        this.spotter = spotter;
+        this.handler = handler;
+        this.listener = listener;
+        this.enrollListener = enrollListener;
+    }
+
+    private KeywordCaptureEngine engine() {
+        if (engine == null) {
+            engine = new KeywordCaptureEngine(spotter, handler, this);
+        }
+        return engine;
+    }
+
+    @Override
+    public String prepare() {
+        synchronized (spotter) {
+            if (spotter.templateCount() == 0) {
+                return "KWS_TEMPLATES_MISSING";
+            }
+        }
+        engine();
+        return null;
+    }
+
+    @Override
+    public void configureVad(float onsetMargin, float offsetMargin, int hangoverMs,
+                             int minSpeechMs, int maxSpeechMs) {
+        engine().configureVad(onsetMargin, offsetMargin, hangoverMs, minSpeechMs, maxSpeechMs);
+    }
+
+    @Override
+    public void start(char expected) {
+        enrolling = false;
+        engine().start(false);
+    }
+
+    /** Records one utterance and hands it to the EnrollListener. */
+    void enroll() {
+        enrolling = true;
+        engine().start(true);
+    }
+
+    @Override
+    public void stop() {
+        // No graceful stop: the engine endpoints by itself
+        cancel();
+    }
+
+    @Override
+    public void cancel() {
+        enrolling = false;
+        if (engine != null) {
+            engine.cancel();
+        }
+    }
+
+    @Override
+    public void destroy() {
+        cancel();
+    }
+
+    @Override
+    public boolean endpointsItself() {
+        return true;
+    }
+
+    @Override
+    public EnergyVad getVad() {
+        return engine != null ? engine.getVad() : null;
+    }
+
+    // KeywordCaptureEngine.Listener --------------------------------------------
+
+    @Override
+    public void onCaptureReady() {
+        if (!enrolling) listener.onReady();
+    }
+
+    @Override
+    public void onCaptureBegin() {
+        if (!enrolling) listener.onBegin();
+    }
+
+    @Override
+    public void onCaptureEnd() {
+        if (!enrolling) listener.onEnd();
+    }
+
+    @Override
+    public void onCaptureLevel(float rmsdB) {
+        listener.onLevel(rmsdB);
+    }
+
+    @Override
+    public void onCaptureResult(ArrayList<String> matches, float[] confidences) {
+        listener.onResults(matches, confidences);
+    }
+
+    @Override
+    public void onCaptureEnrolled(short[] utterance) {
+        enrolling = false;
+        enrollListener.onEnrolled(utterance);
+    }
+
+    @Override
+    public void onCaptureError(String code) {
+        if (enrolling) {
+            enrolling = false;
+            enrollListener.onEnrollError(code);
+            return;
+        }
+        listener.onErrorCode(code);
+    }
+}
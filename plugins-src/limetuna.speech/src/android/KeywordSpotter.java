@@ -0,0 +1,234 @@
+package com.limetuna.speech;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * On-device A-Z keyword spotter: MFCC features matched against per-letter
+ * templates with DTW.
+ *
+ * Templates are short recordings of each letter (for example recorded per
+ * classroom or per learner). Everything here is plain Java so the same code
+ * can be benchmarked against WAV fixtures on a desktop JVM
+ * (see KeywordSpotterBench).
+ *
+ * Not thread-safe: decide() reuses internal buffers.
+ */
+final class KeywordSpotter {
+
+    static final int SAMPLE_RATE = MfccExtractor.SAMPLE_RATE;
+
+    // Energy trim for templates and offline files
+    private static final int TRIM_FRAME = 160;
+    private static final float TRIM_FLOOR_PERCENTILE = 0.1f;
+    private static final float TRIM_RATIO = 4f;
+    private static final float TRIM_MIN_ENERGY = 100f * 100f;
+    private static final int TRIM_PAD_FRAMES = 2;
+
+    private final MfccExtractor mfcc = new MfccExtractor();
+    private final DtwMatcher dtw = new DtwMatcher(MfccExtractor.DIMS);
+
+    private final List<float[]> templateFeatures = new ArrayList<float[]>();
+    private final List<Integer> templateFrames = new ArrayList<Integer>();
+    private final List<Integer> templateLetters = new ArrayList<Integer>();
+
+    private float rejectDistance = Float.POSITIVE_INFINITY;
+
+    // Scratch state, reused across decisions
+    private float[] features = new float[100 * MfccExtractor.DIMS];
+    private final float[] distances = new float[LetterResolver.LETTER_COUNT];
+    private int bestLetter = LetterResolver.NO_LETTER;
+
+    void setRejectDistance(float rejectDistance) {
+        this.rejectDistance = rejectDistance > 0 ? rejectDistance : Float.POSITIVE_INFINITY;
+    }
+
+    int templateCount() {
+        return templateLetters.size();
+    }
+
+    void clearTemplates() {
+        templateFeatures.clear();
+        templateFrames.clear();
+        templateLetters.clear();
+    }
+
+    /** Adds one recording of a letter; the recording is energy-trimmed first. */
+    boolean addTemplate(int letter, short[] pcm, int sampleRate) {
+        if (letter < 0 || letter >= LetterResolver.LETTER_COUNT) return false;
+
+        short[] samples = WavIO.resample(new WavIO.Pcm(pcm, sampleRate), SAMPLE_RATE).samples;
+        int[] bounds = new int[2];
+        trimBounds(samples, 0, samples.length, bounds);
+
+        int frames = MfccExtractor.frameCount(bounds[1] - bounds[0]);
+        if (frames == 0) return false;
+
+        float[] feats = new float[frames * MfccExtractor.DIMS];
+        mfcc.extract(samples, bounds[0], bounds[1], feats);
+
+        templateFeatures.add(feats);
+        templateFrames.add(frames);
+        templateLetters.add(letter);
+        return true;
+    }
+
+    /**
+     * Loads every WAV in dir whose name starts with a letter followed by "."
+     * or "_", e.g. "B.wav", "B_2.wav". Returns the number of templates added.
+     */
+    int loadDirectory(File dir) throws IOException {
+        File[] files = dir.listFiles();
+        if (files == null) return 0;
+        Arrays.sort(files);
+
+        int added = 0;
+        for (File f : files) {
+            int letter = letterForFileName(f.getName());
+            if (letter == LetterResolver.NO_LETTER) continue;
+            WavIO.Pcm pcm = WavIO.read(f);
+            if (addTemplate(letter, pcm.samples, pcm.sampleRate)) {
+                added++;
+            }
+        }
+        return added;
+    }
+
+    static int letterForFileName(String name) {
+        String lower = name.toLowerCase();
+        if (!lower.endsWith(".wav") || name.length() < 5) return LetterResolver.NO_LETTER;
+        char sep = name.charAt(1);
+        if (sep != '.' && sep != '_') return LetterResolver.NO_LETTER;
+        return LetterResolver.letterIndex(name.charAt(0));
+    }
+
+    // ---- Decision -------------------------------------------------------------
+
+    /**
+     * Matches pcm[start, end) (16 kHz, already endpointed) against all
+     * templates. Returns the best letter or NO_LETTER when nothing is within
+     * the reject distance.
+     */
+    int decide(short[] pcm, int start, int end) {
+        Arrays.fill(distances, Float.POSITIVE_INFINITY);
+        bestLetter = LetterResolver.NO_LETTER;
+
+        int frames = MfccExtractor.frameCount(end - start);
+        if (frames == 0 || templateLetters.isEmpty()) return bestLetter;
+
+        if (features.length < frames * MfccExtractor.DIMS) {
+            features = new float[frames * MfccExtractor.DIMS * 2];
+        }
+        mfcc.extract(pcm, start, end, features);
+
+        float best = rejectDistance;
+        for (int t = 0; t < templateLetters.size(); t++) {
+            int letter = templateLetters.get(t);
+            // Abandon once this template cannot improve its own letter
+            float d = dtw.distance(features, frames,
+                    templateFeatures.get(t), templateFrames.get(t), distances[letter]);
+            if (d < distances[letter]) {
+                distances[letter] = d;
+            }
+            if (d < best) {
+                best = d;
+                bestLetter = letter;
+            }
+        }
+        return bestLetter;
+    }
+
+    float getDistance(int letter) {
+        return distances[letter];
+    }
+
+    /**
+     * Relative confidence of a letter after decide(): 1 for the best match,
+     * best/own distance for the others, 0 for letters without templates.
+     */
+    float getConfidence(int letter) {
+        if (bestLetter == LetterResolver.NO_LETTER) return 0f;
+        float d = distances[letter];
+        if (d == Float.POSITIVE_INFINITY || d <= 0f) return d <= 0f ? 1f : 0f;
+        return distances[bestLetter] / d;
+    }
+
+    /**
+     * Writes up to max letters, best first, whose confidence is at least
+     * minConfidence. Returns how many were written.
+     */
+    int candidates(int[] outLetters, float[] outConfidences, int max, float minConfidence) {
+        int n = 0;
+        if (bestLetter == LetterResolver.NO_LETTER) return 0;
+
+        // Insertion into a sorted top-`max` list
+        for (int l = 0; l < LetterResolver.LETTER_COUNT; l++) {
+            float c = getConfidence(l);
+            if (c <= 0f || c < minConfidence) continue;
+
+            int pos;
+            if (n < max) {
+                pos = n++;
+            } else if (c > outConfidences[max - 1]) {
+                pos = max - 1;
+            } else {
+                continue;
+            }
+            while (pos > 0 && outConfidences[pos - 1] < c) {
+                outLetters[pos] = outLetters[pos - 1];
+                outConfidences[pos] = outConfidences[pos - 1];
+                pos--;
+            }
+            outLetters[pos] = l;
+            outConfidences[pos] = c;
+        }
+        return n;
+    }
+
+    // ---- Energy trim ------------------------------------------------------------
+
+    /**
+     * Finds the voiced region of pcm[start, end) with a simple energy gate
+     * relative to the quietest frames. Writes [from, to) into out.
+     */
+    static void trimBounds(short[] pcm, int start, int end, int[] out) {
+        int frames = (end - start) / TRIM_FRAME;
+        out[0] = start;
+        out[1] = end;
+        if (frames < 3) return;
+
+        float[] energy = new float[frames];
+        for (int f = 0; f < frames; f++) {
+            long acc = 0;
+            int base = start + f * TRIM_FRAME;
+            for (int i = 0; i < TRIM_FRAME; i++) {
+                int s = pcm[base + i];
+                acc += (long) s * s;
+            }
+            energy[f] = (float) acc / TRIM_FRAME;
+        }
+
+        float[] sorted = energy.clone();
+        Arrays.sort(sorted);
+        float floor = sorted[(int) (TRIM_FLOOR_PERCENTILE * (frames - 1))];
+        float threshold = Math.max(floor * TRIM_RATIO, TRIM_MIN_ENERGY);
+
+        int first = -1;
+        int last = -1;
+        for (int f = 0; f < frames; f++) {
+            if (energy[f] >= threshold) {
+                if (first < 0) first = f;
+                last = f;
+            }
+        }
+        if (first < 0) return;
+
+        first = Math.max(0, first - TRIM_PAD_FRAMES);
+        last = Math.min(frames - 1, last + TRIM_PAD_FRAMES);
+        out[0] = start + first * TRIM_FRAME;
+        out[1] = start + (last + 1) * TRIM_FRAME;
+    }
+}
@@ -0,0 +1,274 @@
+package com.limetuna.speech;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Per-utterance latency timeline plus fixed-bucket histograms per phase.
+ *
+ * The main thread marks phases on the current timeline and commits it when
+ * the callback has been delivered. Commit folds every span into its
+ * histogram and copies the timeline into a bounded ring of recent ones.
+ * Storage is preallocated AtomicLongArrays, so recording never allocates and
+ * readers never lock; resetMetrics clears it from the exec thread.
+ */
+final class LatencyMetrics {
+
+    // Timeline marks
+    static final int MARK_EXEC = 0;
+    static final int MARK_UI_DISPATCH = 1;
+    static final int MARK_START_LISTENING = 2;
+    static final int MARK_READY = 3;
+    static final int MARK_BEGIN = 4;
+    static final int MARK_END = 5;
+    static final int MARK_RESULT = 6;
+    static final int MARK_DELIVERED = 7;
+    // Scheduled end of the feedback clip the recognizer was started under
+    static final int MARK_FEEDBACK_END = 8;
+    static final int MARK_COUNT = 9;
+
+    static final String[] MARK_NAMES = {
+            "exec", "uiDispatch", "startListening", "ready",
+            "begin", "end", "result", "delivered", "feedbackEnd"
+    };
+
+    // Spans between two marks
+    static final int SPAN_DISPATCH = 0;
+    static final int SPAN_START = 1;
+    static final int SPAN_SPIN_UP = 2;
+    static final int SPAN_WAIT_SPEECH = 3;
+    static final int SPAN_SPEECH = 4;
+    static final int SPAN_DECODE = 5;
+    static final int SPAN_DELIVER = 6;
+    static final int SPAN_ENGINE = 7;
+    static final int SPAN_TOTAL = 8;
+    // Part of spinUp that ran while feedback was still playing (ends at the
+    // earlier of ready and feedbackEnd)
+    static final int SPAN_SPIN_UP_HIDDEN = 9;
+    static final int SPAN_COUNT = 10;
+
+    static final String[] SPAN_NAMES = {
+            "dispatch", "start", "spinUp", "waitSpeech",
+            "speech", "decode", "deliver", "engine", "total", "spinUpHidden"
+    };
+
+    private static final int[] SPAN_FROM = {
+            MARK_EXEC, MARK_UI_DISPATCH, MARK_START_LISTENING, MARK_READY,
+            MARK_BEGIN, MARK_END, MARK_RESULT, MARK_START_LISTENING, MARK_EXEC,
+            MARK_START_LISTENING
+    };
+    private static final int[] SPAN_TO = {
+            MARK_UI_DISPATCH, MARK_START_LISTENING, MARK_READY, MARK_BEGIN,
+            MARK_END, MARK_RESULT, MARK_DELIVERED, MARK_RESULT, MARK_DELIVERED,
+            MARK_FEEDBACK_END
+    };
+
+    // Bucket i covers (BASE * 2^((i-1)/4), BASE * 2^(i/4)] microseconds,
+    // i.e. 100 us up to ~3 min in quarter-octave steps.
+    static final int BUCKET_COUNT = 84;
+    private static final double BUCKET_BASE_US = 100.0;
+    private static final long[] BUCKET_UPPER_US = new long[BUCKET_COUNT];
+
+    static {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            BUCKET_UPPER_US[i] = (long) (BUCKET_BASE_US * Math.pow(2.0, i / 4.0));
+        }
+        BUCKET_UPPER_US[BUCKET_COUNT - 1] = Long.MAX_VALUE;
+    }
+
+    // Outcome counters
+    static final int OUTCOME_RESULT = 0;
+    static final int OUTCOME_ERROR = 1;
+    static final int OUTCOME_EARLY_COMMIT = 2;
+    static final int OUTCOME_COUNT = 3;
+
+    static final String[] OUTCOME_NAMES = {"results", "errors", "earlyCommits"};
+
+    private final AtomicLongArray buckets = new AtomicLongArray(SPAN_COUNT * BUCKET_COUNT);
+    private final AtomicLongArray spanSumUs = new AtomicLongArray(SPAN_COUNT);
+    private final AtomicLongArray spanMaxUs = new AtomicLongArray(SPAN_COUNT);
+    private final AtomicLongArray outcomes = new AtomicLongArray(OUTCOME_COUNT);
+
+    private final int ringSize;
+    private final AtomicLongArray ring;
+    private final AtomicInteger ringWrites = new AtomicInteger();
+
+    // Current timeline, main thread only
+    private final long[] current = new long[MARK_COUNT];
+    private boolean active;
+
+    LatencyMetrics(int ringSize) {
+        this.ringSize = ringSize;
+        this.ring = new AtomicLongArray(ringSize * MARK_COUNT);
+    }
+
+    // ---- Recording (main thread) --------------------------------------------
+
+    /** Starts a new timeline; execNanos is when the exec call was received. */
+    void begin(long execNanos) {
+        for (int i = 0; i < MARK_COUNT; i++) {
+            current[i] = 0L;
+        }
+        current[MARK_EXEC] = execNanos;
+        active = true;
+    }
+
+    void mark(int mark) {
+        mark(mark, System.nanoTime());
+    }
+
+    void mark(int mark, long nanos) {
+        if (!active) return;
+        // First occurrence wins, e.g. a second onEndOfSpeech is ignored
+        if (current[mark] == 0L) {
+            current[mark] = nanos;
+        }
+    }
+
+    long markNanos(int mark) {
+        return active ? current[mark] : 0L;
+    }
+
+    boolean isActive() {
+        return active;
+    }
+
+    /** Closes the current timeline and folds it into the aggregates. */
+    void commit(int outcome) {
+        if (!active) return;
+        active = false;
+
+        if (current[MARK_DELIVERED] == 0L) {
+            current[MARK_DELIVERED] = System.nanoTime();
+        }
+
+        for (int span = 0; span < SPAN_COUNT; span++) {
+            long from = current[SPAN_FROM[span]];
+            long to = current[SPAN_TO[span]];
+            if (span == SPAN_SPIN_UP_HIDDEN && current[MARK_READY] != 0L) {
+                to = Math.min(to, current[MARK_READY]);
+            }
+            if (from == 0L || to == 0L || to < from) continue;
+            record(span, (to - from) / 1000L);
+        }
+        outcomes.incrementAndGet(outcome);
+
+        int slot = (ringWrites.getAndIncrement() % ringSize) * MARK_COUNT;
+        for (int i = 0; i < MARK_COUNT; i++) {
+            ring.set(slot + i, current[i]);
+        }
+    }
+
+    /** Drops the current timeline without recording it. */
+    void abandon() {
+        active = false;
+    }
+
+    private void record(int span, long us) {
+        buckets.incrementAndGet(span * BUCKET_COUNT + bucketOf(us));
+        spanSumUs.addAndGet(span, us);
+
+        long max;
+        do {
+            max = spanMaxUs.get(span);
+            if (us <= max) break;
+        } while (!spanMaxUs.compareAndSet(span, max, us));
+    }
+
+    private static int bucketOf(long us) {
+        // Binary search over the precomputed bounds; no log() on the hot path
+        int lo = 0;
+        int hi = BUCKET_COUNT - 1;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (us <= BUCKET_UPPER_US[mid]) {
+                hi = mid;
+            } else {
+                lo = mid + 1;
+            }
+        }
+        return lo;
+    }
+
+    // ---- Reading (any thread) -----------------------------------------------
+
+    long count(int span) {
+        long n = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            n += buckets.get(span * BUCKET_COUNT + i);
+        }
+        return n;
+    }
+
+    /**
+     * Quantile q (0..1) in milliseconds, interpolated linearly inside its
+     * bucket, or -1 when the span has no samples.
+     */
+    double percentileMs(int span, double q) {
+        long total = count(span);
+        if (total == 0) return -1;
+
+        long rank = (long) Math.ceil(q * total);
+        if (rank < 1) rank = 1;
+
+        long maxUs = spanMaxUs.get(span);
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            long inBucket = buckets.get(span * BUCKET_COUNT + i);
+            if (seen + inBucket >= rank) {
+                double lower = i == 0 ? 0 : BUCKET_UPPER_US[i - 1];
+                double upper = Math.min(BUCKET_UPPER_US[i], maxUs);
+                double fraction = (rank - seen) / (double) inBucket;
+                return Math.max(lower, lower + (upper - lower) * fraction) / 1000.0;
+            }
+            seen += inBucket;
+        }
+        return maxUs / 1000.0;
+    }
+
+    double meanMs(int span) {
+        long n = count(span);
+        return n == 0 ? -1 : spanSumUs.get(span) / 1000.0 / n;
+    }
+
+    double maxMs(int span) {
+        return spanMaxUs.get(span) / 1000.0;
+    }
+
+    long outcomeCount(int outcome) {
+        return outcomes.get(outcome);
+    }
+
+    int recentCount() {
+        return Math.min(ringWrites.get(), ringSize);
+    }
+
+    /**
+     * Copies the i-th most recent timeline (0 = newest) into out, as
+     * nanoTime values with 0 for phases that never happened.
+     */
+    void recent(int i, long[] out) {
+        int writes = ringWrites.get();
+        int slot = ((writes - 1 - i) % ringSize + ringSize) % ringSize * MARK_COUNT;
+        for (int m = 0; m < MARK_COUNT; m++) {
+            out[m] = ring.get(slot + m);
+        }
+    }
+
+    void reset() {
+        for (int i = 0; i < buckets.length(); i++) {
+            buckets.set(i, 0L);
+        }
+        for (int i = 0; i < SPAN_COUNT; i++) {
+            spanSumUs.set(i, 0L);
+            spanMaxUs.set(i, 0L);
+        }
+        for (int i = 0; i < OUTCOME_COUNT; i++) {
+            outcomes.set(i, 0L);
+        }
+        for (int i = 0; i < ring.length(); i++) {
+            ring.set(i, 0L);
+        }
+        ringWrites.set(0);
+    }
+}
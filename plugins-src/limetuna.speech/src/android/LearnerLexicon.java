@@ -0,0 +1,413 @@
+package com.limetuna.speech;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Per-learner pronunciation lexicon: which recognizer phrases co-occur with
+ * which intended letters, and which of them have been seen often enough to
+ * count as that learner's way of saying the letter.
+ *
+ * Phrases are keyed by an FNV-1a hash of the normalized text (see
+ * LetterResolver.phraseHash), so nothing but hashes and counts is stored.
+ * State lives in open-addressing primitive maps; promotedLetter() is a single
+ * probe and does not allocate.
+ *
+ * On disk the lexicon is an append-only log of (key, delta) records behind a
+ * small header. load() folds the log into counts; flush() appends pending
+ * records and rewrites the file compactly once the log has grown well past
+ * the number of live keys. Compaction also drops one-off observations when
+ * the lexicon is over MAX_KEYS, so the file stays bounded no matter how many
+ * sessions are played.
+ *
+ * Methods are synchronized: observe() and lookups run on the main thread,
+ * flush() on a background thread.
+ */
+final class LearnerLexicon {
+
+    private static final int MAGIC = 0x4c544c58; // "LTLX"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 8;
+
+    // A phrase is promoted after this many observations for one letter,
+    // provided that letter holds at least two thirds of its observations
+    static final int PROMOTE_MIN_COUNT = 3;
+    // Explicit confirmations count as a full promotion on their own
+    static final int CONFIRM_WEIGHT = PROMOTE_MIN_COUNT;
+
+    private static final int MAX_COUNT = 0xffff;
+    private static final int MAX_KEYS = 4096;
+    private static final int COMPACT_MIN_RECORDS = 1024;
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final File file;
+
+    // (phraseHash, letter) -> count
+    private final LongIntMap counts = new LongIntMap(256);
+    // phraseHash -> total count over all letters
+    private final LongIntMap totals = new LongIntMap(128);
+    // phraseHash -> promoted letter + 1 (0 = none)
+    private final LongIntMap promoted = new LongIntMap(64);
+
+    // Records observed since the last flush
+    private long[] pendingKeys = new long[64];
+    private int[] pendingDeltas = new int[64];
+    private int pendingCount;
+
+    private int promotedTotal;
+    private int logRecords;
+
+    LearnerLexicon(File file) {
+        this.file = file;
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    // ---- Hashing ---------------------------------------------------------------
+
+    // 59 bits, so (hash, letter) packs into one long key
+    static long hash(char[] buf, int len) {
+        return hash(buf, 0, len);
+    }
+
+    static long hash(char[] buf, int start, int end) {
+        long h = FNV_OFFSET;
+        for (int i = start; i < end; i++) {
+            h ^= buf[i];
+            h *= FNV_PRIME;
+        }
+        return h >>> 5;
+    }
+
+    private static long key(long phraseHash, int letter) {
+        return (phraseHash << 5) | letter;
+    }
+
+    // ---- Lookups ---------------------------------------------------------------
+
+    /** Returns the letter promoted for this phrase hash, or NO_LETTER. */
+    synchronized int promotedLetter(long phraseHash) {
+        return promoted.get(phraseHash) - 1;
+    }
+
+    synchronized int promotedCount() {
+        return promotedTotal;
+    }
+
+    synchronized int size() {
+        return counts.size();
+    }
+
+    // ---- Learning --------------------------------------------------------------
+
+    /**
+     * Records that the given phrase hashes were heard when the learner meant
+     * letter. Each distinct hash counts once. Returns how many phrases became
+     * newly promoted.
+     */
+    synchronized int observe(long[] phraseHashes, int n, int letter, int weight) {
+        if (letter < 0 || letter >= LetterResolver.LETTER_COUNT || weight <= 0) return 0;
+
+        int newlyPromoted = 0;
+        for (int i = 0; i < n; i++) {
+            long h = phraseHashes[i];
+            boolean duplicate = false;
+            for (int j = 0; j < i && !duplicate; j++) {
+                duplicate = phraseHashes[j] == h;
+            }
+            if (duplicate) continue;
+
+            if (apply(key(h, letter), weight)) {
+                newlyPromoted++;
+            }
+            addPending(key(h, letter), weight);
+        }
+        return newlyPromoted;
+    }
+
+    // Returns true when the phrase became promoted for this key's letter
+    private boolean apply(long key, int delta) {
+        long h = key >>> 5;
+        int letter = (int) (key & 0x1f);
+        if (letter >= LetterResolver.LETTER_COUNT) return false;
+
+        int c = Math.min(MAX_COUNT, counts.get(key) + delta);
+        counts.put(key, c);
+        int total = Math.min(MAX_COUNT * 2, totals.get(h) + delta);
+        totals.put(h, total);
+
+        int before = promoted.get(h) - 1;
+        if (c >= PROMOTE_MIN_COUNT && c * 3 >= total * 2) {
+            if (before == letter) return false;
+            if (before == LetterResolver.NO_LETTER) promotedTotal++;
+            promoted.put(h, letter + 1);
+            return true;
+        }
+        if (before != LetterResolver.NO_LETTER && before != letter) {
+            // The promoted letter may have lost its majority
+            long other = key(h, before);
+            if (counts.get(other) * 3 < total * 2) {
+                promoted.put(h, 0);
+                promotedTotal--;
+            }
+        } else if (before == letter) {
+            promoted.put(h, 0);
+            promotedTotal--;
+        }
+        return false;
+    }
+
+    private void addPending(long key, int delta) {
+        if (pendingCount == pendingKeys.length) {
+            long[] k = new long[pendingCount * 2];
+            int[] d = new int[pendingCount * 2];
+            System.arraycopy(pendingKeys, 0, k, 0, pendingCount);
+            System.arraycopy(pendingDeltas, 0, d, 0, pendingCount);
+            pendingKeys = k;
+            pendingDeltas = d;
+        }
+        pendingKeys[pendingCount] = key;
+        pendingDeltas[pendingCount] = delta;
+        pendingCount++;
+    }
+
+    // ---- Persistence -----------------------------------------------------------
+
+    /** Folds the on-disk log into memory. A missing file is an empty lexicon. */
+    synchronized void load() throws IOException {
+        counts.clear();
+        totals.clear();
+        promoted.clear();
+        promotedTotal = 0;
+        pendingCount = 0;
+        logRecords = 0;
+        if (!file.isFile()) return;
+
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Not a lexicon file: " + file);
+            }
+            while (true) {
+                long key;
+                int delta;
+                try {
+                    key = in.readLong();
+                    delta = in.readInt();
+                } catch (EOFException e) {
+                    // A torn final record from an interrupted append is ignored
+                    break;
+                }
+                apply(key, delta);
+                logRecords++;
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    /** Appends pending observations, compacting the log when it has grown. */
+    void flush() throws IOException {
+        long[] keys;
+        int[] deltas;
+        int n;
+        boolean compact;
+        synchronized (this) {
+            n = pendingCount;
+            if (n == 0) return;
+            keys = new long[n];
+            deltas = new int[n];
+            System.arraycopy(pendingKeys, 0, keys, 0, n);
+            System.arraycopy(pendingDeltas, 0, deltas, 0, n);
+            pendingCount = 0;
+            logRecords += n;
+            compact = (logRecords >= COMPACT_MIN_RECORDS && logRecords > 2 * counts.size())
+                    || counts.size() > MAX_KEYS;
+        }
+
+        if (compact) {
+            compact();
+            return;
+        }
+
+        File dir = file.getParentFile();
+        if (dir != null && !dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Cannot create " + dir);
+        }
+        boolean fresh = !file.isFile() || file.length() < HEADER_BYTES;
+        DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(file, !fresh)));
+        try {
+            if (fresh) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+            }
+            for (int i = 0; i < n; i++) {
+                out.writeLong(keys[i]);
+                out.writeInt(deltas[i]);
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    /** Rewrites the file with one record per live key (tmp file + rename). */
+    void compact() throws IOException {
+        long[] keys;
+        int[] values;
+        int n;
+        synchronized (this) {
+            if (counts.size() > MAX_KEYS) {
+                pruneSingletons();
+            }
+            n = counts.size();
+            keys = new long[n];
+            values = new int[n];
+            counts.copyTo(keys, values);
+            logRecords = n;
+        }
+
+        File dir = file.getParentFile();
+        if (dir != null && !dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Cannot create " + dir);
+        }
+        File tmp = new File(file.getPath() + ".tmp");
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            for (int i = 0; i < n; i++) {
+                out.writeLong(keys[i]);
+                out.writeInt(values[i]);
+            }
+        } finally {
+            out.close();
+        }
+        if (!tmp.renameTo(file)) {
+            throw new IOException("Cannot replace " + file);
+        }
+    }
+
+    long fileBytes() {
+        return file.isFile() ? file.length() : 0L;
+    }
+
+    // Forgets phrases heard only once; they are the long tail of noise
+    private void pruneSingletons() {
+        int n = counts.size();
+        long[] keys = new long[n];
+        int[] values = new int[n];
+        counts.copyTo(keys, values);
+
+        counts.clear();
+        totals.clear();
+        promoted.clear();
+        promotedTotal = 0;
+        for (int i = 0; i < n; i++) {
+            if (values[i] > 1) {
+                apply(keys[i], values[i]);
+            }
+        }
+    }
+
+    /** Open-addressing long -> int map with linear probing; 0 is the empty key. */
+    static final class LongIntMap {
+        private long[] keys;
+        private int[] values;
+        private boolean hasZero;
+        private int zeroValue;
+        private int size;
+
+        LongIntMap(int capacity) {
+            int cap = Integer.highestOneBit(Math.max(4, capacity) - 1) << 1;
+            keys = new long[cap];
+            values = new int[cap];
+        }
+
+        int size() {
+            return size;
+        }
+
+        int get(long key) {
+            if (key == 0L) return hasZero ? zeroValue : 0;
+            int mask = keys.length - 1;
+            for (int i = mix(key) & mask; ; i = (i + 1) & mask) {
+                long k = keys[i];
+                if (k == key) return values[i];
+                if (k == 0L) return 0;
+            }
+        }
+
+        void put(long key, int value) {
+            if (key == 0L) {
+                if (!hasZero) size++;
+                hasZero = true;
+                zeroValue = value;
+                return;
+            }
+            int mask = keys.length - 1;
+            int i = mix(key) & mask;
+            while (keys[i] != 0L && keys[i] != key) {
+                i = (i + 1) & mask;
+            }
+            if (keys[i] == 0L) {
+                keys[i] = key;
+                size++;
+            }
+            values[i] = value;
+            if (size * 4 > keys.length * 3) {
+                grow();
+            }
+        }
+
+        void clear() {
+            Arrays.fill(keys, 0L);
+            hasZero = false;
+            size = 0;
+        }
+
+        void copyTo(long[] outKeys, int[] outValues) {
+            int j = 0;
+            if (hasZero) {
+                outKeys[j] = 0L;
+                outValues[j++] = zeroValue;
+            }
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] != 0L) {
+                    outKeys[j] = keys[i];
+                    outValues[j++] = values[i];
+                }
+            }
+        }
+
+        private void grow() {
+            long[] oldKeys = keys;
+            int[] oldValues = values;
+            keys = new long[oldKeys.length * 2];
+            values = new int[oldKeys.length * 2];
+            size = hasZero ? 1 : 0;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != 0L) {
+                    put(oldKeys[i], oldValues[i]);
+                }
+            }
+        }
+
+        private static int mix(long key) {
+            long h = key * 0x9e3779b97f4a7c15L;
+            return (int) (h ^ (h >>> 32));
+        }
+    }
+}
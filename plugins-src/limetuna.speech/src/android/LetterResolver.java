@@ -0,0 +1,437 @@
+package com.limetuna.speech;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Resolves a recognizer n-best list to a single letter A-Z.
+ *
+ * Native port of chooseLetterFromResults / scorePhraseForLetter from
+ * LimeTunaSpeech.js. The phonetic forms are compiled once into a trie whose
+ * nodes carry 26-bit letter masks, so scoring a phrase is a single walk per
+ * word instead of a regex pass per letter. resolve() does not allocate unless
+ * a phrase is longer than anything seen before.
+ *
+ * The built-in forms are English; setForms() swaps in a locale's forms from
+ * a PhoneticPack. Accented Latin letters fold to their base letter on both
+ * sides, so French "b\u00e9" and "be" are the same phrase.
+ *
+ * Not thread-safe: one instance per plugin, used from the main thread.
+ */
+final class LetterResolver {
+
+    static final int LETTER_COUNT = 26;
+    static final int NO_LETTER = -1;
+
+    // Same scale as the JS scorer
+    private static final int SCORE_EXACT_PHRASE = 4;
+    private static final int SCORE_EXACT_WORD = 3;
+    private static final int SCORE_PREFIX = 2;
+    private static final int MIN_ACCEPT_SCORE = 2;
+    private static final int EXPECTED_BIAS = 1;
+    // A learner's promoted variant counts like an exact phonetic phrase
+    private static final int SCORE_LEARNED = SCORE_EXACT_PHRASE;
+
+    // Confidence only breaks ties between equal phonetic scores
+    private static final float CONFIDENCE_WEIGHT = 0.25f;
+
+    // Phonetic forms based on how kids tend to say letters
+    private static final String[][] DEFAULT_FORMS = {
+            {"a", "ay", "eh", "ei"},
+            {"b", "bee", "be"},
+            {"c", "see", "cee", "sea"},
+            {"d", "dee"},
+            {"e", "ee"},
+            {"f", "ef"},
+            {"g", "gee"},
+            {"h", "aitch"},
+            {"i", "eye", "aye"},
+            {"j", "jay"},
+            {"k", "kay"},
+            {"l", "el"},
+            {"m", "em"},
+            {"n", "en"},
+            {"o", "oh"},
+            {"p", "pee"},
+            {"q", "cue", "queue"},
+            {"r", "ar"},
+            {"s", "ess"},
+            {"t", "tee"},
+            {"u", "you", "yu", "yoo"},
+            {"v", "vee"},
+            {"w", "double you", "double-u"},
+            {"x", "ex"},
+            {"y", "why"},
+            {"z", "zee", "zed"}
+    };
+
+    // U+00C0..U+017F folded to a-z; '_' for symbols that are not letters
+    private static final String FOLD =
+            "aaaaaaaceeeeiiiidnooooo_ouuuuyts"
+            + "aaaaaaaceeeeiiiidnooooo_ouuuuyty"
+            + "aaaaaaccccccccddddeeeeeeeeeegggg"
+            + "gggghhhhiiiiiiiiiiiijjkkklllllll"
+            + "lllnnnnnnnnnoooooooorrrrrrssssss"
+            + "ssttttttuuuuuuuuuuuuwwyyyzzzzzzs";
+    private static final char FOLD_FIRST = '\u00c0';
+    private static final char FOLD_LAST = '\u017f';
+
+    // Trie alphabet: a-z, space, hyphen
+    private static final int SYMBOLS = 28;
+    private static final int SYM_SPACE = 26;
+    private static final int SYM_HYPHEN = 27;
+
+    private String[][] forms;
+    private int[] children;
+    private int[] terminalMask;
+    private int[] subtreeMask;
+    private int nodeCount;
+
+    // Scratch state, reused across calls
+    private char[] norm = new char[64];
+    private final int[] phonetic = new int[LETTER_COUNT];
+    private final float[] support = new float[LETTER_COUNT];
+    private final float[] scores = new float[LETTER_COUNT];
+    private int bestLetter = NO_LETTER;
+
+    // Per-learner variants, and the phrase hashes seen by the last resolve()
+    private volatile LearnerLexicon lexicon;
+    private long[] candidateHashes = new long[16];
+    // Per candidate: letters the whole phrase is an exact form of
+    private int[] candidateExact = new int[16];
+    private int candidateHashCount;
+
+    LetterResolver() {
+        this(DEFAULT_FORMS);
+    }
+
+    LetterResolver(String[][] forms) {
+        setForms(forms);
+    }
+
+    /** Replaces the phonetic forms (null: the built-in English ones). Main thread, between resolves. */
+    void setForms(String[][] forms) {
+        String[][] next = forms != null ? forms : DEFAULT_FORMS;
+        compile(next);
+        this.forms = next;
+    }
+
+    /** The active spoken forms of a letter (a copy), e.g. for recognizer biasing. */
+    String[] forms(int index) {
+        return index < forms.length ? forms[index].clone() : new String[0];
+    }
+
+    // ---- Index -------------------------------------------------------------
+
+    private void compile(String[][] forms) {
+        int chars = 1;
+        for (String[] letterForms : forms) {
+            for (String f : letterForms) {
+                chars += f.length();
+            }
+        }
+
+        int[] children = new int[chars * SYMBOLS];
+        Arrays.fill(children, -1);
+        int[] terminalMask = new int[chars];
+        int[] subtreeMask = new int[chars];
+        int nodeCount = 1;
+
+        for (int letter = 0; letter < forms.length && letter < LETTER_COUNT; letter++) {
+            int bit = 1 << letter;
+            for (String raw : forms[letter]) {
+                String f = foldForm(raw);
+                int node = 0;
+                subtreeMask[0] |= bit;
+                for (int i = 0; i < f.length(); i++) {
+                    int sym = symbolOf(f.charAt(i));
+                    if (sym < 0) {
+                        throw new IllegalArgumentException("Unsupported character in form: " + f);
+                    }
+                    int slot = node * SYMBOLS + sym;
+                    if (children[slot] < 0) {
+                        children[slot] = nodeCount++;
+                    }
+                    node = children[slot];
+                    subtreeMask[node] |= bit;
+                }
+                terminalMask[node] |= bit;
+            }
+        }
+
+        // Swap in only once the whole trie has compiled
+        this.children = children;
+        this.terminalMask = terminalMask;
+        this.subtreeMask = subtreeMask;
+        this.nodeCount = nodeCount;
+    }
+
+    // Lowercased and folded; characters outside the alphabet are dropped
+    private static String foldForm(String form) {
+        StringBuilder sb = new StringBuilder(form.length());
+        for (int i = 0; i < form.length(); i++) {
+            char c = fold(Character.toLowerCase(form.charAt(i)));
+            if (c != 0) sb.append(c);
+        }
+        return sb.toString();
+    }
+
+    /** a-z, space and hyphen as is, accented Latin letters folded, else 0. */
+    static char fold(char c) {
+        if ((c >= 'a' && c <= 'z') || c == ' ' || c == '-') return c;
+        if (c >= FOLD_FIRST && c <= FOLD_LAST) {
+            char f = FOLD.charAt(c - FOLD_FIRST);
+            return f != '_' ? f : 0;
+        }
+        return 0;
+    }
+
+    private static int symbolOf(char c) {
+        if (c >= 'a' && c <= 'z') return c - 'a';
+        if (c == ' ') return SYM_SPACE;
+        if (c == '-') return SYM_HYPHEN;
+        return -1;
+    }
+
+    private int walk(char[] buf, int start, int end) {
+        int node = 0;
+        for (int i = start; i < end && node >= 0; i++) {
+            node = children[node * SYMBOLS + symbolOf(buf[i])];
+        }
+        return node;
+    }
+
+    void setLexicon(LearnerLexicon lexicon) {
+        this.lexicon = lexicon;
+    }
+
+    LearnerLexicon getLexicon() {
+        return lexicon;
+    }
+
+    /** Hash of the normalized phrase as used by LearnerLexicon, or -1 if empty. */
+    long phraseHash(String phrase) {
+        int len = normalize(phrase);
+        return len == 0 ? -1L : LearnerLexicon.hash(norm, len);
+    }
+
+    // Valid until the next resolve(); one entry per non-empty candidate
+    long[] getCandidateHashes() {
+        return candidateHashes;
+    }
+
+    int getCandidateHashCount() {
+        return candidateHashCount;
+    }
+
+    /**
+     * Keeps only the last resolve()'s candidates a lexicon may credit to
+     * expected: a phrase that is exactly another letter's form ("pee" in a
+     * B attempt) is that letter, never a variant of this one. Compacts
+     * getCandidateHashes() in place and returns the new count.
+     */
+    int retainLearnable(int expected) {
+        int others = ~(1 << expected);
+        int n = 0;
+        for (int i = 0; i < candidateHashCount; i++) {
+            if ((candidateExact[i] & others) != 0) continue;
+            candidateHashes[n] = candidateHashes[i];
+            candidateExact[n] = candidateExact[i];
+            n++;
+        }
+        candidateHashCount = n;
+        return n;
+    }
+
+    // ---- Resolution --------------------------------------------------------
+
+    /**
+     * Scores every candidate against all letters and returns the winning
+     * letter index (0 = A) or NO_LETTER. Per-letter scores are available via
+     * getScore() until the next call.
+     */
+    int resolve(List<String> candidates, float[] confidences, char expected) {
+        Arrays.fill(phonetic, 0);
+        Arrays.fill(support, 0f);
+        candidateHashCount = 0;
+
+        if (candidates != null) {
+            boolean useConfs = confidences != null && confidences.length == candidates.size();
+            for (int i = 0; i < candidates.size(); i++) {
+                float conf = useConfs ? clampConfidence(confidences[i]) : 0f;
+                scorePhrase(candidates.get(i), conf);
+            }
+        }
+
+        int expectedIndex = letterIndex(expected);
+        int bestScore = 0;
+        float bestTotal = 0f;
+        bestLetter = NO_LETTER;
+
+        for (int l = 0; l < LETTER_COUNT; l++) {
+            if (phonetic[l] <= 0) {
+                scores[l] = 0f;
+                continue;
+            }
+            int s = phonetic[l] + (l == expectedIndex ? EXPECTED_BIAS : 0);
+            float total = s + CONFIDENCE_WEIGHT * support[l];
+            scores[l] = total;
+            if (total > bestTotal) {
+                bestTotal = total;
+                bestScore = s;
+                bestLetter = l;
+            }
+        }
+
+        if (bestScore < MIN_ACCEPT_SCORE) {
+            bestLetter = NO_LETTER;
+        }
+        return bestLetter;
+    }
+
+    int getBestLetter() {
+        return bestLetter;
+    }
+
+    float getScore(int letter) {
+        return scores[letter];
+    }
+
+    /**
+     * True when the last resolve() found nothing, or only prefix-level
+     * evidence for its winner, i.e. the recognizer heard an unknown variant.
+     */
+    boolean isWeakMatch() {
+        return bestLetter == NO_LETTER || phonetic[bestLetter] <= SCORE_PREFIX;
+    }
+
+    static int letterIndex(char c) {
+        if (c >= 'A' && c <= 'Z') return c - 'A';
+        if (c >= 'a' && c <= 'z') return c - 'a';
+        return NO_LETTER;
+    }
+
+    static char letterChar(int index) {
+        return (char) ('A' + index);
+    }
+
+    /** The built-in spoken forms of a letter (a copy), e.g. for recognizer biasing. */
+    static String[] defaultForms(int index) {
+        return DEFAULT_FORMS[index].clone();
+    }
+
+    private static float clampConfidence(float c) {
+        if (c != c || c < 0f) return 0f;
+        return c > 1f ? 1f : c;
+    }
+
+    private void scorePhrase(String phrase, float conf) {
+        int len = normalize(phrase);
+        if (len == 0) return;
+
+        long hash = LearnerLexicon.hash(norm, len);
+        if (candidateHashCount == candidateHashes.length) {
+            candidateHashes = Arrays.copyOf(candidateHashes, candidateHashCount * 2);
+            candidateExact = Arrays.copyOf(candidateExact, candidateHashCount * 2);
+        }
+        int slot = candidateHashCount++;
+        candidateHashes[slot] = hash;
+        candidateExact[slot] = 0;
+        if (lexicon != null) {
+            int learned = lexicon.promotedLetter(hash);
+            if (learned != NO_LETTER) {
+                raiseLetter(learned, SCORE_LEARNED, conf);
+            }
+        }
+
+        // Exact phonetic match of whole phrase
+        int node = walk(norm, 0, len);
+        if (node >= 0) {
+            raise(terminalMask[node], SCORE_EXACT_PHRASE, conf);
+            candidateExact[slot] = terminalMask[node];
+        }
+
+        // Any word matches a form, or one is a prefix of the other
+        int start = 0;
+        while (start < len) {
+            int end = start;
+            while (end < len && norm[end] != ' ') end++;
+
+            int n = 0;
+            int formIsPrefixOfWord = 0;
+            for (int i = start; i < end && n >= 0; i++) {
+                n = children[n * SYMBOLS + (norm[i] - 'a')];
+                if (n >= 0) formIsPrefixOfWord |= terminalMask[n];
+            }
+            raise(formIsPrefixOfWord, SCORE_PREFIX, conf);
+            if (n >= 0) {
+                raise(subtreeMask[n], SCORE_PREFIX, conf);
+                raise(terminalMask[n], SCORE_EXACT_WORD, conf);
+            }
+
+            start = end + 1;
+        }
+
+        int first = norm[0] - 'a';
+
+        // Single-character phrase case, e.g. "b"
+        if (len == 1) {
+            raiseLetter(first, SCORE_EXACT_PHRASE, conf);
+            candidateExact[slot] |= 1 << first;
+        }
+
+        // Very short phrase that starts with the letter
+        if (len <= 3) {
+            raiseLetter(first, SCORE_PREFIX, conf);
+        }
+    }
+
+    private void raise(int mask, int score, float conf) {
+        while (mask != 0) {
+            int l = Integer.numberOfTrailingZeros(mask);
+            mask &= mask - 1;
+            raiseLetter(l, score, conf);
+        }
+    }
+
+    private void raiseLetter(int l, int score, float conf) {
+        if (score > phonetic[l]) {
+            phonetic[l] = score;
+            support[l] = conf;
+        } else if (score == phonetic[l] && conf > support[l]) {
+            support[l] = conf;
+        }
+    }
+
+    /**
+     * Lowercases into the scratch buffer, folds accents, keeps only a-z,
+     * collapses runs of whitespace and trims. Mirrors normalizePhrase() in
+     * the JS layer.
+     */
+    private int normalize(String phrase) {
+        if (phrase == null) return 0;
+        int n = phrase.length();
+        if (norm.length < n) {
+            norm = new char[Math.max(n, norm.length * 2)];
+        }
+
+        int len = 0;
+        boolean pendingSpace = false;
+        for (int i = 0; i < n; i++) {
+            char c = Character.toLowerCase(phrase.charAt(i));
+            if (c >= FOLD_FIRST && c <= FOLD_LAST) {
+                c = FOLD.charAt(c - FOLD_FIRST);
+            }
+            if (c >= 'a' && c <= 'z') {
+                if (pendingSpace && len > 0) {
+                    norm[len++] = ' ';
+                }
+                pendingSpace = false;
+                norm[len++] = c;
+            } else if (Character.isWhitespace(c) || Character.isSpaceChar(c)) {
+                pendingSpace = true;
+            }
+        }
+        return len;
+    }
+}
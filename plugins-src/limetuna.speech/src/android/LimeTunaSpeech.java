@@ -2,16 +2,18 @@ package com.limetuna.speech;
 
 import android.Manifest;
 import android.app.Activity;
+import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
+import android.content.IntentFilter;
 import android.content.pm.PackageManager;
+import android.content.res.AssetFileDescriptor;
+import android.content.res.Configuration;
 import android.media.AudioManager;
-import android.os.Bundle;
+import android.os.Build;
 import android.os.Handler;
 import android.os.Looper;
-import android.speech.RecognitionListener;
-import android.speech.RecognizerIntent;
-import android.speech.SpeechRecognizer;
+import android.os.MessageQueue;
 import android.util.Log;
 import android.view.Window;
 import android.view.WindowManager;
@@ -21,29 +23,334 @@ import org.apache.cordova.CordovaInterface;
 import org.apache.cordova.CordovaPlugin;
 import org.apache.cordova.CordovaWebView;
 import org.apache.cordova.PermissionHelper;
+import org.apache.cordova.PluginResult;
 
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
-
+import org.json.JSONTokener;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
-public class LimeTunaSpeech extends CordovaPlugin implements RecognitionListener {
+public class LimeTunaSpeech extends CordovaPlugin implements RecognizerBackend.Listener {
 
     private static final String TAG = "LimeTunaSpeech";
     private static final int REQ_RECORD_AUDIO = 7001;
 
-    private SpeechRecognizer speechRecognizer;
     private CallbackContext currentCallback;
 
+    // Main thread (applyLanguage)
     private String language = "en-US";
 
+    private final LetterResolver letterResolver = new LetterResolver();
+    private char expectedLetter = 0;
+
+    // Target mode (startTarget): vocabularies from loadVocabulary by id. An
+    // attempt against a loaded vocabulary sets activeVocabulary; letters,
+    // the built-in vocabulary, keep it null and go through letterResolver.
+    private static final int DEFAULT_RUNNERS_UP = 3;
+    private final Map<String, VocabularyIndex> vocabularies = new HashMap<String, VocabularyIndex>();
+    private VocabularyIndex activeVocabulary;
+
+    // Phonetic pack of the init() language (main thread). Its vocabularies
+    // are compiled into vocabularies on first use and dropped on a swap.
+    private PhoneticPack phoneticPack;
+    private String[][] packLetterForms;
+    private final List<String> packVocabularies = new ArrayList<String>();
+    private String packSource = "builtin";
+    private long packLoadMs;
+    // Main thread: the language the last requested pack was chosen for
+    private String packLanguage;
+    private int packGeneration;
+    private int expectedEntry = VocabularyIndex.NO_ENTRY;
+    private boolean targetMode = false;
+    private int targetRunnersUp = DEFAULT_RUNNERS_UP;
+
+    // Early commit on partial results (defaults from init, per-call overrides)
+    private final PartialCommitGate partialCommitGate = new PartialCommitGate();
+    private boolean earlyCommitDefault = false;
+    private int earlyCommitPartialsDefault = PartialCommitGate.DEFAULT_REQUIRED_PARTIALS;
+    private float earlyCommitMinScoreDefault = PartialCommitGate.DEFAULT_MIN_SCORE;
+
     private Handler handler;
-    private boolean isListening = false;
+    // Attempt lifecycle and the starts waiting for it; main thread drives it
+    private final AttemptStateMachine<PendingRequest> attempts = new AttemptStateMachine<PendingRequest>();
+    // A cancelled platform recognizer may still report ERROR_CLIENT after the
+    // next start; that one error is not the new attempt's. Many builds send
+    // none, so the next attempt reaching onReady clears it as well.
+    private boolean cancelEchoPending;
 
     // Runtime permission during init()
     private CallbackContext pendingInitCallback;
 
+    // Continuous listening session (startSession / nextTarget / endSession)
+    private CallbackContext sessionCallback;
+    private String sessionTarget = "";
+    private int sessionAttempt = 0;
+    private int sessionMaxAttempts = 1;
+    private boolean sessionRetryOnWrong = false;
+    private boolean sessionEarlyCommit = false;
+    private int sessionEarlyCommitPartials = PartialCommitGate.DEFAULT_REQUIRED_PARTIALS;
+    private float sessionEarlyCommitMinScore = PartialCommitGate.DEFAULT_MIN_SCORE;
+    // True while the in-flight attempt reports to sessionCallback
+    private boolean attemptFromSession = false;
+
+    private final Runnable sessionRearm = new Runnable() {
+        @Override
+        public void run() {
+            armSessionAttempt(System.nanoTime());
+        }
+    };
+
+    // Per-utterance latency timelines (getMetrics / resetMetrics)
+    private static final int RECENT_TIMELINES = 32;
+    private final LatencyMetrics metrics = new LatencyMetrics(RECENT_TIMELINES);
+
+    // Event channel (subscribeEvents): lifecycle phases + batched RMS levels
+    private static final int RMS_RING_CAPACITY = 64;
+    private static final long DEFAULT_RMS_INTERVAL_MS = 50;
+    private CallbackContext eventsCallback;
+    private boolean eventsRms = true;
+    private long rmsIntervalMs = DEFAULT_RMS_INTERVAL_MS;
+    private final RmsBatcher rmsBatcher = new RmsBatcher(RMS_RING_CAPACITY);
+    private final float[] rmsScratch = new float[RMS_RING_CAPACITY];
+    private boolean rmsFlushScheduled = false;
+
+    private final Runnable rmsFlush = new Runnable() {
+        @Override
+        public void run() {
+            rmsFlushScheduled = false;
+            flushRms();
+        }
+    };
+
+    // Native feedback clips (playFeedback), decoded once at init
+    private static final String DEFAULT_FEEDBACK_DIR = "www/audio";
+    private FeedbackPlayer feedbackPlayer;
+
+    // Pre-arm: start the platform recognizer shortly before the clip ends so its
+    // spin-up overlaps playback. The lead follows the measured spinUp p50.
+    private static final int PREARM_DEFAULT_LEAD_MS = 250;
+    private static final int PREARM_MAX_LEAD_MS = 800;
+    private static final int PREARM_MIN_SAMPLES = 3;
+    // Speech onsets this close to the clip's end are treated as the clip itself
+    private static final int ECHO_GUARD_MS = 120;
+    private boolean prearmDefault = true;
+    private int prearmLeadMsOption = -1;
+    // Scheduled end of the clip the current attempt started under, 0 = none
+    private long feedbackEndNanos;
+    private boolean attemptVadEndpoint;
+    // Atomic like the other counters resetMetrics clears from the exec thread
+    private final AtomicInteger echoRestarts = new AtomicInteger();
+    // Watchdog and recognizer recycling (hangs, BUSY / CLIENT errors)
+    private final RecognizerSupervisor supervisor = new RecognizerSupervisor();
+    // True while we cancelled the recognizer ourselves and a restart is queued,
+    // so the errors that cancel produces are not taken as failures
+    private boolean restartPending;
+
+    private final Runnable watchdog = new Runnable() {
+        @Override
+        public void run() {
+            if (!isListening()) return;
+            recoverRecognizer(RecognizerSupervisor.REASON_HANG, "RECOGNIZER_HUNG");
+        }
+    };
+
+    private final Runnable recoveryRetry = new Runnable() {
+        @Override
+        public void run() {
+            restartPending = false;
+            if (!isListening()) return;
+            String engineError = prepareEngineOnMainThread();
+            if (engineError != null) {
+                supervisor.giveUp();
+                sendErrorToCallback(engineError, engineErrorMessage(engineError));
+                return;
+            }
+            try {
+                attempts.transition(AttemptStateMachine.RECOVERING, AttemptStateMachine.LISTENING);
+                startEngineListening(attemptVadEndpoint);
+            } catch (Exception e) {
+                Log.e(TAG, "startListening after recovery failed", e);
+                supervisor.giveUp();
+                sendErrorToCallback("START_FAILED", "Failed to start listening");
+            }
+        }
+    };
+
+    // A startLetter waiting for its start time, so stop() can drop it
+    private Runnable pendingStart;
+    private CallbackContext pendingStartCallback;
+
+    private final Runnable echoRestart = new Runnable() {
+        @Override
+        public void run() {
+            restartPending = false;
+            if (!isListening() || backend == null) return;
+            try {
+                startEngineListening(attemptVadEndpoint);
+            } catch (Exception e) {
+                Log.e(TAG, "startListening after echo failed", e);
+                sendErrorToCallback("START_FAILED", "Failed to start listening");
+            }
+        }
+    };
+
+    // Result payloads are encoded off the main thread, in delivery order;
+    // resultFormat is set by init on the main thread and captured per result
+    private int resultFormat = RecognitionResult.FORMAT_JSON;
+    private final ExecutorService resultExecutor = Executors.newSingleThreadExecutor();
+
+    // Per-learner pronunciation lexicon; file I/O runs on its own thread in order
+    private String learnerId;
+    private final ExecutorService lexiconExecutor = Executors.newSingleThreadExecutor();
+
+    // Endpointing extras for the system recognizer, tuned per learner from
+    // the durations of their utterances; swapped with the lexicon
+    private boolean endpointTuning = true;
+    private volatile EndpointTuner endpointTuner = new EndpointTuner(null);
+    // Per-call overrides: -1 takes the tuned value, 0 the engine default
+    private int attemptMinimumLengthMs = -1;
+    private int attemptCompleteSilenceMs = -1;
+    private int attemptPossiblySilenceMs = -1;
+    // The attempt listened with tuned values, so its misses count against them
+    private boolean attemptTuned;
+    private long speechBeginNanos;
+    private int attemptSpeechMs;
+
+    private final Runnable lexiconFlush = new Runnable() {
+        @Override
+        public void run() {
+            LearnerLexicon lexicon = letterResolver.getLexicon();
+            if (lexicon != null) {
+                try {
+                    lexicon.flush();
+                } catch (IOException e) {
+                    Log.w(TAG, "Failed to write lexicon", e);
+                }
+            }
+            try {
+                endpointTuner.flush();
+            } catch (IOException e) {
+                Log.w(TAG, "Failed to write endpoint tuning", e);
+            }
+        }
+    };
+
+    // Native endpointing: stop the platform recognizer once a short utterance
+    // is followed by trailing silence, instead of its sentence-length timeout
+    private final EnergyVad vad = new EnergyVad();
+    private boolean vadEndpointDefault = false;
+    private float vadOnsetMargin = EnergyVad.DEFAULT_ONSET_MARGIN;
+    private float vadOffsetMargin = EnergyVad.DEFAULT_OFFSET_MARGIN;
+    private int vadHangoverMs = EnergyVad.DEFAULT_HANGOVER_MS;
+    private int vadMinSpeechMs = EnergyVad.DEFAULT_MIN_SPEECH_MS;
+    private int vadMaxSpeechMs = EnergyVad.DEFAULT_MAX_SPEECH_MS;
+    private boolean sessionVadEndpoint = false;
+    // Per attempt: whether the VAD may stop the recognizer, and its time base
+    private boolean vadArmed = false;
+    private boolean vadEndpointed = false;
+    private long vadStartNanos;
+
+    // Recognition engine: the platform SpeechRecognizer, on-device keyword
+    // spotting, or the scripted simulator. backend follows engine.
+    private static final String ENGINE_SYSTEM = "system";
+    private static final String ENGINE_KEYWORD = "keyword";
+    private static final String ENGINE_SIMULATOR = "simulator";
+    private String engine = ENGINE_SYSTEM;
+    private RecognizerBackend backend;
+    private SystemRecognizerBackend systemBackend;
+    private KeywordRecognizerBackend keywordBackend;
+    private SimulatedRecognizerBackend simulatorBackend;
+    private RecognizerScript simulatorScript;
+    private final KeywordSpotter keywordSpotter = new KeywordSpotter();
+    private File keywordTemplatesDir;
+    private CallbackContext enrollCallback;
+    private int enrollLetter = LetterResolver.NO_LETTER;
+
+    // Recognizer capabilities, probed at init and again only after a package
+    // or locale change (coalesced), never per attempt. They pick the system
+    // engine's path; recognizerPath "auto" takes the fastest one available.
+    private static final long REPROBE_DELAY_MS = 500;
+    private RecognizerCapabilities capabilities;
+    private String recognizerPathPreference = RecognizerCapabilities.PREFER_AUTO;
+    private BroadcastReceiver packageReceiver;
+
+    private final Runnable reprobe = new Runnable() {
+        @Override
+        public void run() {
+            if (!attempts.isIdle()) {
+                handler.postDelayed(this, REPROBE_DELAY_MS);
+                return;
+            }
+            capabilities = null;
+            capabilities();
+            applyRecognizerPath(true);
+        }
+    };
+
+    // Re-applies the path once the installed languages are known
+    private final Runnable pathUpdate = new Runnable() {
+        @Override
+        public void run() {
+            if (!attempts.isIdle()) {
+                handler.postDelayed(this, REPROBE_DELAY_MS);
+                return;
+            }
+            applyRecognizerPath(true);
+        }
+    };
+
+    // Opt-in recording of recognizer traffic for offline replay (main thread)
+    private SessionRecorder recorder;
+
+    // Per-attempt history for aggregate queries (main thread); on by default
+    private static final long ANALYTICS_FLUSH_MS = 30000L;
+    private AnalyticsStore analytics;
+    // App session the rows belong to: plugin start, wall clock seconds
+    private int analyticsSession;
+
+    private final Runnable analyticsFlush = new Runnable() {
+        @Override
+        public void run() {
+            if (analytics != null) analytics.flush();
+        }
+    };
+
+    // Background: the recognizer, the mic and the muted streams are given
+    // back on pause/stop and taken again on resume
+    private boolean paused = false;
+    private boolean muteOnResume = false;
+    private boolean prewarmScheduled = false;
+    private int releaseCount;
+    private int prewarmCount;
+    private long lastPrewarmMs = -1L;
+
+    // Runs once the main looper has nothing else to do, so the recognizer is
+    // created between frames instead of inside the first start()
+    private final MessageQueue.IdleHandler prewarmIdle = new MessageQueue.IdleHandler() {
+        @Override
+        public boolean queueIdle() {
+            prewarmScheduled = false;
+            prewarmOnMainThread();
+            return false;
+        }
+    };
+
     // Beep muting: we ONLY touch system-ish streams, never MUSIC
     private AudioManager audioManager;
     private int originalSystemVolume = -1;
@@ -56,7 +363,87 @@ public class LimeTunaSpeech extends CordovaPlugin implements RecognitionListener
         super.initialize(cordova, webView);
         handler = new Handler(Looper.getMainLooper());
         audioManager = (AudioManager) cordova.getActivity().getSystemService(Context.AUDIO_SERVICE);
+        registerPackageReceiver();
+        analyticsSession = (int) (System.currentTimeMillis() / 1000L);
+        configureAnalytics(true, AnalyticsStore.DEFAULT_MAX_BYTES);
         Log.d(TAG, "LimeTunaSpeech initialize");
+        // onload plugin: this is page load, about when deviceready fires
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                schedulePrewarm();
+            }
+        });
+    }
+
+    // A recognizer service installed, updated or removed changes what we probed
+    private void registerPackageReceiver() {
+        IntentFilter filter = new IntentFilter();
+        filter.addAction(Intent.ACTION_PACKAGE_ADDED);
+        filter.addAction(Intent.ACTION_PACKAGE_REMOVED);
+        filter.addAction(Intent.ACTION_PACKAGE_REPLACED);
+        filter.addAction(Intent.ACTION_PACKAGE_CHANGED);
+        filter.addDataScheme("package");
+        packageReceiver = new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                scheduleReprobe();
+            }
+        };
+        try {
+            cordova.getActivity().getApplicationContext().registerReceiver(packageReceiver, filter);
+        } catch (Exception e) {
+            Log.w(TAG, "Package receiver not registered", e);
+            packageReceiver = null;
+        }
+    }
+
+    @Override
+    public void onConfigurationChanged(Configuration newConfig) {
+        super.onConfigurationChanged(newConfig);
+        // Locale changes can change the installed or default recognizer languages
+        scheduleReprobe();
+    }
+
+    private void scheduleReprobe() {
+        if (handler == null) return;
+        handler.removeCallbacks(reprobe);
+        handler.postDelayed(reprobe, REPROBE_DELAY_MS);
+    }
+
+    // Must be called ONLY on main thread
+    private RecognizerCapabilities capabilities() {
+        if (capabilities == null) {
+            Context context = cordova.getActivity().getApplicationContext();
+            capabilities = RecognizerCapabilities.probe(context);
+            capabilities.checkLanguages(context, language, pathUpdate);
+        }
+        return capabilities;
+    }
+
+    // Must be called ONLY on main thread, between attempts
+    private void applyRecognizerPath(boolean notify) {
+        RecognizerCapabilities caps = capabilities();
+        String path = caps.choosePath(recognizerPathPreference, language);
+        SystemRecognizerBackend system = getSystemBackend();
+        String previous = system.getPath();
+        system.setPath(path, caps.biasingSupported
+                && RecognizerCapabilities.PATH_ON_DEVICE.equals(path));
+        if (!path.equals(previous)) {
+            Log.d(TAG, "Recognizer path " + previous + " -> " + path);
+            if (notify) {
+                emitLifecycleEvent("recognizerPath", path);
+            }
+        }
+    }
+
+    private JSONObject recognizerJson() throws JSONException {
+        JSONObject json = new JSONObject();
+        json.put("engine", engine);
+        json.put("path", systemBackend != null ? systemBackend.getPath() : JSONObject.NULL);
+        json.put("biasing", systemBackend != null && systemBackend.isBiasing());
+        json.put("capabilities", capabilities != null ? capabilities.toJson() : JSONObject.NULL);
+        return json;
     }
 
     private boolean hasAudioPermission() {
@@ -72,20 +459,220 @@ public class LimeTunaSpeech extends CordovaPlugin implements RecognitionListener
     }
 
     // Must be called ONLY on main thread
-    private void createRecognizerIfNeededOnMainThread() {
-        if (speechRecognizer == null) {
-            Log.d(TAG, "Creating SpeechRecognizer");
-            if (!SpeechRecognizer.isRecognitionAvailable(
-                    cordova.getActivity().getApplicationContext())) {
-                Log.e(TAG, "Speech recognition NOT available on this device");
-                return;
+    private KeywordRecognizerBackend getKeywordBackend() {
+        if (keywordBackend == null) {
+            keywordBackend = new KeywordRecognizerBackend(keywordSpotter, handler, this, enrollListener);
+        }
+        return keywordBackend;
+    }
+
+    // Must be called ONLY on main thread
+    private RecognizerBackend selectBackend() {
+        if (ENGINE_KEYWORD.equals(engine)) {
+            return getKeywordBackend();
+        }
+        if (ENGINE_SIMULATOR.equals(engine)) {
+            if (simulatorBackend == null) {
+                simulatorBackend = new SimulatedRecognizerBackend(handler, this, simulatorScript);
+            }
+            return simulatorBackend;
+        }
+        return getSystemBackend();
+    }
+
+    // Must be called ONLY on main thread
+    private SystemRecognizerBackend getSystemBackend() {
+        if (systemBackend == null) {
+            systemBackend = new SystemRecognizerBackend(
+                    cordova.getActivity().getApplicationContext(), this, language);
+            systemBackend.setLetterForms(packLetterForms);
+        }
+        return systemBackend;
+    }
+
+    // Must be called ONLY on main thread. Returns an error code, or null when
+    // the selected engine is ready to listen.
+    private String prepareEngineOnMainThread() {
+        if (ENGINE_SYSTEM.equals(engine) && !capabilities().available) {
+            Log.e(TAG, "Speech recognition NOT available on this device");
+            return "ENGINE_UNAVAILABLE";
+        }
+        RecognizerBackend selected = selectBackend();
+        if (backend != null && backend != selected) {
+            backend.cancel();
+        }
+        backend = selected;
+        return backend.prepare();
+    }
+
+    private static String engineErrorMessage(String code) {
+        switch (code) {
+            case "ENGINE_UNAVAILABLE":
+                return "Speech recognition not available";
+            case "ENGINE_CREATE_FAILED":
+                return "Failed to create SpeechRecognizer";
+            case "KWS_TEMPLATES_MISSING":
+                return "No keyword templates loaded";
+            default:
+                return "Recognition engine not ready";
+        }
+    }
+
+    // Must be called ONLY on main thread
+    private void recordStart(boolean vadEndpoint) {
+        int flags = 0;
+        if (vadEndpoint) flags |= SessionLog.FLAG_VAD_ENDPOINT;
+        if (partialCommitGate.isEnabled()) flags |= SessionLog.FLAG_EARLY_COMMIT;
+        if (SystemRecognizerBackend.PARTIAL_RESULTS) flags |= SessionLog.FLAG_PARTIAL_RESULTS;
+        if (ENGINE_SYSTEM.equals(engine) && systemBackend != null) {
+            if (systemBackend.isPreferOffline()) flags |= SessionLog.FLAG_PREFER_OFFLINE;
+            if (RecognizerCapabilities.PATH_ON_DEVICE.equals(systemBackend.getPath())) {
+                flags |= SessionLog.FLAG_ON_DEVICE;
+            }
+            if (systemBackend.isBiasing()) flags |= SessionLog.FLAG_BIASED;
+        }
+        recorder.start(System.nanoTime(), expectedLetter, engine, language,
+                SystemRecognizerBackend.LANGUAGE_MODEL, SystemRecognizerBackend.MAX_RESULTS, flags,
+                partialCommitGate.getRequiredPartials(), partialCommitGate.getMinScore());
+    }
+
+    // Starts, replaces or stops the session recorder
+    private void configureRecorder(final boolean enabled, final boolean levels, final long maxBytes) {
+        final File dir = new File(cordova.getActivity().getFilesDir(), "sessions");
+        cordova.getActivity().runOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                if (recorder != null) {
+                    recorder.close();
+                    recorder = null;
+                }
+                if (enabled) {
+                    recorder = new SessionRecorder(dir, maxBytes, levels);
+                    Log.d(TAG, "Recording sessions to " + recorder.getFile());
+                }
+            }
+        });
+    }
+
+    // Opens, reopens with a new size cap, or closes the analytics store
+    private void configureAnalytics(final boolean enabled, final long maxBytes) {
+        final File dir = new File(cordova.getActivity().getFilesDir(), "limetuna/analytics");
+        cordova.getActivity().runOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                if (analytics != null) {
+                    analytics.close();
+                    analytics = null;
+                }
+                if (enabled) {
+                    analytics = new AnalyticsStore(dir, maxBytes);
+                }
+            }
+        });
+    }
+
+    // Replaces the simulator's script; an attempt in flight is dropped
+    private void setSimulatorScript(final RecognizerScript script) {
+        simulatorScript = script;
+        cordova.getActivity().runOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                if (simulatorBackend != null) {
+                    simulatorBackend.setScript(script);
+                }
+            }
+        });
+    }
+
+    // Must be called ONLY on main thread, after prepareEngineOnMainThread().
+    // vadEndpoint: stop the platform recognizer on the native endpoint (the
+    // keyword engine and the simulator always endpoint by themselves).
+    private void startEngineListening(boolean vadEndpoint) {
+        vadEndpointed = false;
+        attemptVadEndpoint = vadEndpoint;
+        feedbackEndNanos = 0L;
+        speechBeginNanos = 0L;
+        attemptSpeechMs = 0;
+        if (backend == systemBackend) {
+            applyEndpointing();
+        }
+        if (recorder != null) {
+            recordStart(vadEndpoint);
+        }
+        if (backend.endpointsItself()) {
+            vadArmed = false;
+            backend.cancel();
+            backend.configureVad(vadOnsetMargin, vadOffsetMargin, vadHangoverMs,
+                    vadMinSpeechMs, vadMaxSpeechMs);
+            backend.start(expectedLetter);
+        } else {
+            vad.configure(vadOnsetMargin, vadOffsetMargin, vadHangoverMs,
+                    vadMinSpeechMs, vadMaxSpeechMs);
+            vad.reset();
+            vadStartNanos = System.nanoTime();
+            vadArmed = vadEndpoint;
+            if (feedbackPlayer != null && feedbackPlayer.isPlaying()) {
+                feedbackEndNanos = vadStartNanos + feedbackPlayer.remainingMs() * 1000000L;
+                metrics.mark(LatencyMetrics.MARK_FEEDBACK_END, feedbackEndNanos);
+                if (recorder != null) {
+                    recorder.event(SessionLog.FEEDBACK_END, feedbackEndNanos);
+                }
             }
+            backend.start(expectedLetter);
+        }
+        handler.removeCallbacks(watchdog);
+        handler.postDelayed(watchdog, supervisor.timeoutMs(metrics));
+    }
+
+    // Must be called ONLY on main thread, before the system backend starts
+    private void applyEndpointing() {
+        EndpointTuner tuner = endpointTuner;
+        boolean tuned = endpointTuning && tuner.isTuned();
+        int minimum = attemptMinimumLengthMs >= 0
+                ? attemptMinimumLengthMs : tuned ? tuner.minimumLengthMs() : 0;
+        int complete = attemptCompleteSilenceMs >= 0
+                ? attemptCompleteSilenceMs : tuned ? tuner.completeSilenceMs() : 0;
+        int possibly = attemptPossiblySilenceMs >= 0
+                ? attemptPossiblySilenceMs : tuned ? tuner.possiblyCompleteSilenceMs() : 0;
+        systemBackend.setEndpointing(minimum, complete, possibly);
+        attemptTuned = tuned && attemptMinimumLengthMs < 0
+                && attemptCompleteSilenceMs < 0 && attemptPossiblySilenceMs < 0;
+    }
 
-            speechRecognizer = SpeechRecognizer.createSpeechRecognizer(
-                    cordova.getActivity().getApplicationContext()
-            );
-            speechRecognizer.setRecognitionListener(this);
+    // Must be called ONLY on main thread, from recordOutcome(). Only the
+    // platform recognizer takes the extras, so only its durations count.
+    private void observeEndpointing(int outcome, String code) {
+        if (backend != null && backend == systemBackend) {
+            if (outcome == LatencyMetrics.OUTCOME_RESULT) {
+                if (attemptSpeechMs > 0) endpointTuner.observeSpeech(attemptSpeechMs);
+            } else if (attemptTuned && ("NO_MATCH".equals(code) || "SPEECH_TIMEOUT".equals(code))) {
+                endpointTuner.observeMiss();
+            }
         }
+        attemptSpeechMs = 0;
+        attemptTuned = false;
+    }
+
+    private JSONObject endpointingJson() throws JSONException {
+        EndpointTuner tuner = endpointTuner;
+        JSONObject json = new JSONObject();
+        json.put("enabled", endpointTuning);
+        json.put("tuned", tuner.isTuned());
+        json.put("samples", tuner.samples());
+        json.put("misses", tuner.misses());
+        json.put("missRate", tuner.missRate());
+        json.put("backoff", tuner.backoff());
+        json.put("speechP10", msOrNull(tuner.speechMs(0.1)));
+        json.put("speechP50", msOrNull(tuner.speechMs(0.5)));
+        json.put("speechP90", msOrNull(tuner.speechMs(0.9)));
+        json.put("minimumLengthMs", tuner.minimumLengthMs());
+        json.put("completeSilenceMs", tuner.completeSilenceMs());
+        json.put("possiblyCompleteSilenceMs", tuner.possiblyCompleteSilenceMs());
+        return json;
+    }
+
+    private static Object msOrNull(double ms) {
+        return Double.isNaN(ms) ? JSONObject.NULL : (Object) Math.round(ms);
     }
 
     // ---- Global beep muting --------------------------------------------------
@@ -144,353 +731,2238 @@ public class LimeTunaSpeech extends CordovaPlugin implements RecognitionListener
                 return handleInit(args, callbackContext);
             case "startLetter":
                 return handleStartLetter(args, callbackContext);
+            case "startTarget":
+                return handleStartTarget(args, callbackContext);
+            case "loadVocabulary":
+                return handleLoadVocabulary(args, callbackContext);
             case "stop":
                 return handleStop(callbackContext);
             case "setBeepsMuted":
                 return handleSetBeepsMuted(args, callbackContext);
             case "setKeepScreenOn":
                 return handleSetKeepScreenOn(args, callbackContext);
+            case "startSession":
+                return handleStartSession(args, callbackContext);
+            case "nextTarget":
+                return handleNextTarget(args, callbackContext);
+            case "endSession":
+                return handleEndSession(callbackContext);
+            case "subscribeEvents":
+                return handleSubscribeEvents(args, callbackContext);
+            case "unsubscribeEvents":
+                return handleUnsubscribeEvents(callbackContext);
+            case "getMetrics":
+                return handleGetMetrics(args, callbackContext);
+            case "resetMetrics":
+                return handleResetMetrics(callbackContext);
+            case "confirmLetter":
+                return handleConfirmLetter(args, callbackContext);
+            case "recordKeywordTemplate":
+                return handleRecordKeywordTemplate(args, callbackContext);
+            case "playFeedback":
+                return handlePlayFeedback(args, callbackContext);
+            case "getRecording":
+                return handleGetRecording(callbackContext);
+            case "queryAnalytics":
+                return handleQueryAnalytics(args, callbackContext);
+            case "clearAnalytics":
+                return handleClearAnalytics(callbackContext);
+            case "batch":
+                return handleBatch(args, callbackContext);
             default:
                 return false;
         }
     }
 
-    private boolean handleInit(final JSONArray args, final CallbackContext callbackContext) {
-        try {
-            if (args != null && args.length() > 0 && !args.isNull(0)) {
-                JSONObject opts = args.getJSONObject(0);
-                if (opts.has("language")) {
-                    language = opts.getString("language");
+    // ---- Batched commands -----------------------------------------------------
+
+    /**
+     * args[0]: [{ action, args }, ...]. Runs every command in order inside one
+     * UI-thread runnable (Activity.runOnUiThread runs inline when already on
+     * the UI thread, so the handlers below do not post again) and replies
+     * once with { ok, results: [{ action, status, value }] } after every
+     * command has reported.
+     */
+    private boolean handleBatch(final JSONArray args, final CallbackContext callbackContext) {
+        final JSONArray commands = args != null ? args.optJSONArray(0) : null;
+        if (commands == null || commands.length() == 0) {
+            callbackContext.error(buildErrorJson("INVALID_ARGUMENTS", "Expected a list of commands"));
+            return true;
+        }
+
+        final BatchResult batch = new BatchResult(callbackContext, commands.length());
+
+        cordova.getActivity().runOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < commands.length(); i++) {
+                    JSONObject command = commands.optJSONObject(i);
+                    String action = command != null ? command.optString("action", "") : "";
+                    JSONArray commandArgs = command != null ? command.optJSONArray("args") : null;
+                    if (commandArgs == null) {
+                        commandArgs = new JSONArray();
+                    }
+
+                    CallbackContext entry = new BatchEntryContext(batch, i);
+                    batch.setAction(i, action);
+                    try {
+                        if (!executeBatched(action, commandArgs, entry)) {
+                            entry.error(buildErrorJson("NOT_BATCHABLE", "Cannot batch " + action));
+                        }
+                    } catch (JSONException e) {
+                        entry.error(buildErrorJson("INVALID_ARGUMENTS", e.getMessage()));
+                    }
                 }
             }
+        });
+        return true;
+    }
 
-            if (!hasAudioPermission()) {
-                Log.d(TAG, "No RECORD_AUDIO permission, requesting");
-                pendingInitCallback = callbackContext;
-                requestAudioPermission();
-                return true;
-            }
+    // Actions that report once and promptly. Streaming ones keep their own
+    // channel; startLetter, startTarget and playFeedback answer only when the
+    // utterance or the clip ends, which would hold back the whole reply.
+    private boolean executeBatched(String action, JSONArray args, CallbackContext callbackContext)
+            throws JSONException {
+        switch (action) {
+            case "init":
+                return handleInit(args, callbackContext);
+            case "loadVocabulary":
+                return handleLoadVocabulary(args, callbackContext);
+            case "stop":
+                return handleStop(callbackContext);
+            case "setBeepsMuted":
+                return handleSetBeepsMuted(args, callbackContext);
+            case "setKeepScreenOn":
+                return handleSetKeepScreenOn(args, callbackContext);
+            case "nextTarget":
+                return handleNextTarget(args, callbackContext);
+            case "endSession":
+                return handleEndSession(callbackContext);
+            case "unsubscribeEvents":
+                return handleUnsubscribeEvents(callbackContext);
+            case "getMetrics":
+                return handleGetMetrics(args, callbackContext);
+            case "resetMetrics":
+                return handleResetMetrics(callbackContext);
+            case "confirmLetter":
+                return handleConfirmLetter(args, callbackContext);
+            case "getRecording":
+                return handleGetRecording(callbackContext);
+            case "queryAnalytics":
+                return handleQueryAnalytics(args, callbackContext);
+            case "clearAnalytics":
+                return handleClearAnalytics(callbackContext);
+            default:
+                return false;
+        }
+    }
 
-            cordova.getActivity().runOnUiThread(new Runnable() {
-                @Override
-                public void run() {
-                    if (!SpeechRecognizer.isRecognitionAvailable(
-                            cordova.getActivity().getApplicationContext())) {
-                        Log.e(TAG, "Speech recognition NOT available on this device");
-                        callbackContext.error(buildErrorJson(
-                                "ENGINE_UNAVAILABLE",
-                                "Speech recognition not available"
-                        ));
-                        return;
-                    }
+    // Aggregated reply for one batch; entries may report from any thread
+    private static final class BatchResult {
+        private final CallbackContext callback;
+        private final String[] actions;
+        private final JSONObject[] entries;
+        private int pending;
+        private boolean allOk = true;
+
+        BatchResult(CallbackContext callback, int size) {
+            this.callback = callback;
+            this.actions = new String[size];
+            this.entries = new JSONObject[size];
+            this.pending = size;
+        }
 
-                    createRecognizerIfNeededOnMainThread();
-                    if (speechRecognizer == null) {
-                        callbackContext.error(buildErrorJson(
-                                "ENGINE_CREATE_FAILED",
-                                "Failed to create SpeechRecognizer"
-                        ));
-                        return;
+        synchronized void setAction(int index, String action) {
+            actions[index] = action;
+        }
+
+        void complete(int index, PluginResult result) {
+            JSONObject entry = new JSONObject();
+            boolean ok = result.getStatus() == PluginResult.Status.OK.ordinal();
+            putQuietly(entry, "status", ok ? "ok" : "error");
+            putQuietly(entry, "value", decodeMessage(result));
+
+            JSONObject reply = null;
+            synchronized (this) {
+                if (entries[index] != null) return;
+                putQuietly(entry, "action", actions[index]);
+                entries[index] = entry;
+                allOk &= ok;
+                if (--pending == 0) {
+                    reply = new JSONObject();
+                    putQuietly(reply, "ok", allOk);
+                    JSONArray results = new JSONArray();
+                    for (JSONObject e : entries) {
+                        results.put(e);
                     }
+                    putQuietly(reply, "results", results);
+                }
+            }
+            if (reply != null) {
+                callback.success(reply);
+            }
+        }
 
-                    callbackContext.success();
+        // Handlers reply with JSON text in strings; keep it structured
+        private static Object decodeMessage(PluginResult result) {
+            try {
+                if (result.getMessageType() == PluginResult.MESSAGE_TYPE_STRING) {
+                    String text = result.getStrMessage();
+                    if (text != null && (text.startsWith("{") || text.startsWith("["))) {
+                        return new JSONTokener(text).nextValue();
+                    }
+                    return text != null ? text : JSONObject.NULL;
                 }
-            });
+                if (result.getMessageType() == PluginResult.MESSAGE_TYPE_NULL) {
+                    return JSONObject.NULL;
+                }
+                return new JSONTokener(result.getMessage()).nextValue();
+            } catch (JSONException e) {
+                return result.getMessage();
+            }
+        }
+    }
 
-            return true;
+    private final class BatchEntryContext extends CallbackContext {
+        private final BatchResult batch;
+        private final int index;
 
-        } catch (JSONException e) {
-            Log.e(TAG, "Error parsing init options", e);
-            callbackContext.error("INIT_OPTIONS_ERROR");
-            return true;
+        BatchEntryContext(BatchResult batch, int index) {
+            super(batch.callback.getCallbackId() + "#" + index, webView);
+            this.batch = batch;
+            this.index = index;
+        }
+
+        @Override
+        public void sendPluginResult(PluginResult pluginResult) {
+            batch.complete(index, pluginResult);
         }
     }
 
-    private boolean handleStartLetter(final JSONArray args, final CallbackContext callbackContext) {
-        if (!hasAudioPermission()) {
-            callbackContext.error(buildErrorJson("PERMISSION_DENIED", "Microphone permission not granted"));
+    // Every option is checked on the calling thread before anything changes;
+    // the settings are main-thread state, applied in one runnable
+    private boolean handleInit(final JSONArray args, final CallbackContext callbackContext) {
+        final JSONObject opts;
+        final String newLanguage;
+        final String learner;
+        final int format;
+        final int policy;
+        final String pathPreference;
+        final String newEngine;
+        final RecognizerScript script;
+        final File templatesDir;
+        final float rejectDistance;
+        try {
+            opts = args != null && args.length() > 0 && !args.isNull(0)
+                    ? args.getJSONObject(0) : new JSONObject();
+            newLanguage = opts.has("language") ? opts.getString("language") : null;
+            learner = opts.has("learnerId") && !opts.isNull("learnerId") ? opts.getString("learnerId") : null;
+
+            format = opts.has("resultFormat") ? RecognitionResult.parseFormat(opts.getString("resultFormat")) : 0;
+            if (format < 0) {
+                callbackContext.error(buildErrorJson("INIT_OPTIONS_ERROR",
+                        "Unknown resultFormat: " + opts.getString("resultFormat")));
+                return true;
+            }
+            policy = AttemptStateMachine.parsePolicy(opts.optString("requestPolicy",
+                    AttemptStateMachine.POLICY_NAMES[AttemptStateMachine.POLICY_QUEUE]));
+            if (policy < 0) {
+                callbackContext.error(buildErrorJson("INIT_OPTIONS_ERROR",
+                        "Unknown requestPolicy: " + opts.optString("requestPolicy")));
+                return true;
+            }
+            pathPreference = opts.has("recognizerPath") ? opts.getString("recognizerPath") : null;
+            if (pathPreference != null && !RecognizerCapabilities.isPreference(pathPreference)) {
+                callbackContext.error(buildErrorJson("INIT_OPTIONS_ERROR",
+                        "Unknown recognizerPath: " + pathPreference));
+                return true;
+            }
+            newEngine = opts.has("engine") ? opts.getString("engine") : null;
+            if (newEngine != null && !ENGINE_SYSTEM.equals(newEngine) && !ENGINE_KEYWORD.equals(newEngine)
+                    && !ENGINE_SIMULATOR.equals(newEngine)) {
+                callbackContext.error(buildErrorJson("INIT_OPTIONS_ERROR", "Unknown engine: " + newEngine));
+                return true;
+            }
+            try {
+                script = ENGINE_SIMULATOR.equals(newEngine)
+                        ? RecognizerScript.parse(opts.optJSONObject("simulator")) : null;
+            } catch (JSONException e) {
+                callbackContext.error(buildErrorJson("INIT_OPTIONS_ERROR", e.getMessage()));
+                return true;
+            }
+            templatesDir = opts.has("keywordTemplatesDir") ? new File(opts.getString("keywordTemplatesDir")) : null;
+            rejectDistance = opts.has("keywordRejectDistance")
+                    ? (float) opts.getDouble("keywordRejectDistance") : Float.NaN;
+        } catch (JSONException e) {
+            Log.e(TAG, "Error parsing init options", e);
+            callbackContext.error("INIT_OPTIONS_ERROR");
             return true;
         }
 
         cordova.getActivity().runOnUiThread(new Runnable() {
             @Override
             public void run() {
-                Log.d(TAG, "handleStartLetter on UI thread");
-
-                if (!SpeechRecognizer.isRecognitionAvailable(
-                        cordova.getActivity().getApplicationContext())) {
-                    Log.e(TAG, "Speech recognition NOT available in startLetter");
-                    callbackContext.error(buildErrorJson(
-                            "ENGINE_UNAVAILABLE",
-                            "Speech recognition not available"
-                    ));
-                    return;
+                earlyCommitDefault = opts.optBoolean("earlyCommit", earlyCommitDefault);
+                endpointTuning = opts.optBoolean("endpointTuning", endpointTuning);
+                earlyCommitPartialsDefault = opts.optInt("earlyCommitPartials", earlyCommitPartialsDefault);
+                earlyCommitMinScoreDefault = (float) opts.optDouble("earlyCommitMinScore", earlyCommitMinScoreDefault);
+                if (opts.has("learnerId")) {
+                    switchLearner(learner);
+                }
+                if (opts.has("resultFormat")) {
+                    resultFormat = format;
+                }
+                if (opts.optBoolean("feedback", false) && feedbackPlayer == null) {
+                    loadFeedback(opts.optString("feedbackDir", DEFAULT_FEEDBACK_DIR));
+                }
+                prearmDefault = opts.optBoolean("prearm", prearmDefault);
+                if (opts.has("requestPolicy") || opts.has("requestQueueSize")) {
+                    int queueSize = opts.optInt("requestQueueSize", AttemptStateMachine.DEFAULT_CAPACITY);
+                    for (PendingRequest trimmed : attempts.setPolicy(policy, queueSize)) {
+                        trimmed.callback.error(buildErrorJson("SUPERSEDED", "Request queue was shortened"));
+                    }
+                }
+                if (pathPreference != null) {
+                    recognizerPathPreference = pathPreference;
+                }
+                if (opts.has("analytics") || opts.has("analyticsMaxBytes")) {
+                    configureAnalytics(opts.optBoolean("analytics", true),
+                            opts.optLong("analyticsMaxBytes", AnalyticsStore.DEFAULT_MAX_BYTES));
+                }
+                if (opts.has("record")) {
+                    configureRecorder(opts.optBoolean("record", false),
+                            opts.optBoolean("recordLevels", false),
+                            opts.optLong("recordMaxBytes", SessionRecorder.DEFAULT_MAX_BYTES));
+                }
+                prearmLeadMsOption = opts.optInt("prearmLeadMs", prearmLeadMsOption);
+
+                vadEndpointDefault = opts.optBoolean("vadEndpoint", vadEndpointDefault);
+                JSONObject vadOpts = opts.optJSONObject("vad");
+                if (vadOpts != null) {
+                    vadOnsetMargin = (float) vadOpts.optDouble("onsetMargin", vadOnsetMargin);
+                    vadOffsetMargin = (float) vadOpts.optDouble("offsetMargin", vadOffsetMargin);
+                    vadHangoverMs = vadOpts.optInt("hangoverMs", vadHangoverMs);
+                    vadMinSpeechMs = vadOpts.optInt("minSpeechMs", vadMinSpeechMs);
+                    vadMaxSpeechMs = vadOpts.optInt("maxSpeechMs", vadMaxSpeechMs);
+                }
+
+                if (script != null && (opts.has("simulator") || simulatorScript == null)) {
+                    setSimulatorScript(script);
+                }
+                if (newEngine != null) {
+                    engine = newEngine;
+                }
+                if (templatesDir != null) {
+                    keywordTemplatesDir = templatesDir;
+                }
+                if (!Float.isNaN(rejectDistance)) {
+                    synchronized (keywordSpotter) {
+                        keywordSpotter.setRejectDistance(rejectDistance);
+                    }
                 }
 
-                createRecognizerIfNeededOnMainThread();
-                if (speechRecognizer == null) {
-                    callbackContext.error(buildErrorJson(
-                            "ENGINE_CREATE_FAILED",
-                            "Failed to create SpeechRecognizer"
-                    ));
+                // Ahead of completeInit, so init answers with the new language applied
+                applyLanguage(newLanguage);
+
+                if (!hasAudioPermission()) {
+                    Log.d(TAG, "No RECORD_AUDIO permission, requesting");
+                    pendingInitCallback = callbackContext;
+                    requestAudioPermission();
                     return;
                 }
+                completeInit(callbackContext);
+            }
+        });
+        return true;
+    }
 
-                if (isListening) {
-                    Log.w(TAG, "Already listening");
-                    callbackContext.error(buildErrorJson("ALREADY_LISTENING", "Already listening"));
+    // Must be called ONLY on main thread. newLanguage null keeps the current one.
+    private void applyLanguage(String newLanguage) {
+        if (newLanguage != null && !newLanguage.equals(language)) {
+            language = newLanguage;
+            if (systemBackend != null) {
+                systemBackend.setLanguage(language);
+            }
+        }
+        // Only the active locale's pack is loaded; a new language swaps it
+        if (!language.equals(packLanguage)) {
+            packLanguage = language;
+            switchPhoneticPack(language);
+        }
+    }
+
+    // Must be called ONLY on main thread.
+    // Loads keyword templates off the main thread when needed, then checks the
+    // engine on the main thread and reports to callbackContext.
+    private void completeInit(final CallbackContext callbackContext) {
+        final Runnable finish = new Runnable() {
+            @Override
+            public void run() {
+                if (attempts.isIdle()) {
+                    applyRecognizerPath(false);
+                }
+                String engineError = prepareEngineOnMainThread();
+                if (engineError != null) {
+                    callbackContext.error(buildErrorJson(engineError, engineErrorMessage(engineError)));
                     return;
                 }
+                try {
+                    callbackContext.success(recognizerJson().toString());
+                } catch (JSONException e) {
+                    callbackContext.success();
+                }
+            }
+        };
 
-                currentCallback = callbackContext;
-                isListening = true;
-
-                Intent intent = new Intent(RecognizerIntent.ACTION_RECOGNIZE_SPEECH);
-                intent.putExtra(RecognizerIntent.EXTRA_LANGUAGE_MODEL,
-                        RecognizerIntent.LANGUAGE_MODEL_WEB_SEARCH);
-                intent.putExtra(RecognizerIntent.EXTRA_LANGUAGE, language);
-                intent.putExtra(RecognizerIntent.EXTRA_CALLING_PACKAGE,
-                        cordova.getActivity().getPackageName());
-                intent.putExtra(RecognizerIntent.EXTRA_MAX_RESULTS, 10);
-                intent.putExtra(RecognizerIntent.EXTRA_PARTIAL_RESULTS, true);
-                intent.putExtra(RecognizerIntent.EXTRA_PREFER_OFFLINE, false);
+        if (!ENGINE_KEYWORD.equals(engine)) {
+            cordova.getActivity().runOnUiThread(finish);
+            return;
+        }
 
+        final File dir = getKeywordTemplatesDir();
+        cordova.getThreadPool().execute(new Runnable() {
+            @Override
+            public void run() {
                 try {
-                    Log.d(TAG, "Calling startListening");
-                    speechRecognizer.startListening(intent);
-                } catch (Exception e) {
-                    Log.e(TAG, "startListening failed", e);
-                    sendErrorToCallback("START_FAILED", "Failed to start listening");
+                    int loaded;
+                    synchronized (keywordSpotter) {
+                        keywordSpotter.clearTemplates();
+                        loaded = dir.isDirectory() ? keywordSpotter.loadDirectory(dir) : 0;
+                    }
+                    Log.d(TAG, "Loaded " + loaded + " keyword templates from " + dir);
+                } catch (IOException e) {
+                    Log.e(TAG, "Failed to load keyword templates", e);
                 }
+                cordova.getActivity().runOnUiThread(finish);
             }
         });
-
-        return true;
     }
 
-    private boolean handleStop(final CallbackContext callbackContext) {
+    // ---- Feedback playback ---------------------------------------------------
+
+    // Decodes the clips in the background; playFeedback reports
+    // FEEDBACK_NOT_LOADED until they are ready
+    private void loadFeedback(final String assetDir) {
+        feedbackPlayer = new FeedbackPlayer(audioManager, handler);
+        final FeedbackPlayer player = feedbackPlayer;
+        cordova.getThreadPool().execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    int n = player.load(cordova.getActivity().getAssets(), assetDir);
+                    Log.d(TAG, "Loaded " + n + " feedback clips from " + assetDir);
+                } catch (IOException e) {
+                    Log.e(TAG, "Failed to load feedback clips", e);
+                }
+            }
+        });
+    }
+
+    // args: [id]; succeeds when the clip has finished (or was cut short)
+    private boolean handlePlayFeedback(final JSONArray args, final CallbackContext callbackContext) {
+        final String id = args != null ? args.optString(0, "") : "";
+
+        cordova.getActivity().runOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                if (feedbackPlayer == null || !feedbackPlayer.isLoaded(id)) {
+                    callbackContext.error(buildErrorJson("FEEDBACK_NOT_LOADED", "Feedback clip not loaded: " + id));
+                    return;
+                }
+                // Never play over an open microphone
+                if (isListening()) {
+                    callbackContext.error(buildErrorJson("ALREADY_LISTENING", "Recognizer is listening"));
+                    return;
+                }
+
+                final long durationMs = feedbackPlayer.durationMs(id);
+                boolean started = feedbackPlayer.play(id, new FeedbackPlayer.Listener() {
+                    @Override
+                    public void onFeedbackDone(String clipId, boolean completed) {
+                        JSONObject json = new JSONObject();
+                        putQuietly(json, "id", clipId);
+                        putQuietly(json, "completed", completed);
+                        putQuietly(json, "durationMs", durationMs);
+                        callbackContext.success(json);
+                    }
+                });
+                if (!started) {
+                    callbackContext.error(buildErrorJson("FEEDBACK_FAILED", "Could not play " + id));
+                }
+            }
+        });
+        return true;
+    }
+
+    // ---- Recognizer recovery -----------------------------------------------------
+
+    // Must be called ONLY on main thread.
+    // Recreates the recognizer and retries the attempt once after a backoff;
+    // a second failure in the same attempt is reported with code.
+    private void recoverRecognizer(int reason, String code) {
+        attempts.transition(AttemptStateMachine.LISTENING, AttemptStateMachine.RECOVERING);
+        supervisor.recordFailure(reason);
+        handler.removeCallbacks(watchdog);
+        emitLifecycleEvent("recover", code);
+        recycleRecognizer();
+
+        if (supervisor.canRetry()) {
+            long delayMs = supervisor.retry();
+            Log.w(TAG, "Recognizer failed (" + code + "), recreating and retrying in " + delayMs + " ms");
+            restartPending = true;
+            handler.postDelayed(recoveryRetry, delayMs);
+            return;
+        }
+
+        Log.e(TAG, "Recognizer failed again (" + code + "), giving up on this attempt");
+        supervisor.giveUp();
+        metrics.mark(LatencyMetrics.MARK_RESULT);
+        sendErrorToCallback(code, "Speech recognizer did not recover");
+    }
+
+    // Must be called ONLY on main thread.
+    // Not a supervisor retry: the path changes, so this cannot loop.
+    private void fallBackFromPath(String code) {
+        String path = systemBackend.getPath();
+        Log.w(TAG, "Recognizer path " + path + " lacks " + language + " (" + code + "), falling back");
+        attempts.transition(AttemptStateMachine.LISTENING, AttemptStateMachine.RECOVERING);
+        handler.removeCallbacks(watchdog);
+        emitLifecycleEvent("recover", code);
+        vadArmed = false;
+        capabilities().rejectLanguage(path, language);
+        applyRecognizerPath(true);
+        restartPending = true;
+        handler.post(recoveryRetry);
+    }
+
+    // Must be called ONLY on main thread
+    private void recycleRecognizer() {
+        vadArmed = false;
+        if (backend != null) {
+            backend.destroy();
+        }
+        supervisor.recordRecycle();
+    }
+
+    // ---- Pre-arm during feedback ------------------------------------------------
+
+    // Must be called ONLY on main thread.
+    // Starts the clip for startLetter({ feedback }); its end is reported on the
+    // event channel so the UI can reveal the next letter.
+    private boolean playAttemptFeedback(String id, CallbackContext callbackContext) {
+        if (feedbackPlayer == null || !feedbackPlayer.isLoaded(id)) {
+            callbackContext.error(buildErrorJson("FEEDBACK_NOT_LOADED", "Feedback clip not loaded: " + id));
+            return false;
+        }
+        boolean started = feedbackPlayer.play(id, new FeedbackPlayer.Listener() {
+            @Override
+            public void onFeedbackDone(String clipId, boolean completed) {
+                emitLifecycleEvent("feedbackEnd", completed ? null : "INTERRUPTED");
+            }
+        });
+        if (!started) {
+            callbackContext.error(buildErrorJson("FEEDBACK_FAILED", "Could not play " + id));
+        }
+        return started;
+    }
+
+    // Must be called ONLY on main thread.
+    // How long a start still has to wait: until the playing clip ends, less the
+    // expected spin-up when pre-arming.
+    private long startDelayMs(boolean prearm) {
+        if (feedbackPlayer == null || !feedbackPlayer.isPlaying()) return 0;
+        return Math.max(0, feedbackPlayer.remainingMs() - (prearm ? prearmLeadMs() : 0));
+    }
+
+    private long prearmLeadMs() {
+        // The keyword engine starts in a few ms and calibrates its VAD on the
+        // first frames, so it always waits for the clip to end; the simulator
+        // has no microphone to pre-arm
+        if (!ENGINE_SYSTEM.equals(engine)) return 0;
+        if (prearmLeadMsOption >= 0) return Math.min(prearmLeadMsOption, PREARM_MAX_LEAD_MS);
+        if (metrics.count(LatencyMetrics.SPAN_SPIN_UP) < PREARM_MIN_SAMPLES) {
+            return PREARM_DEFAULT_LEAD_MS;
+        }
+        // Aim ready at just past the clip's end for the median spin-up
+        long lead = Math.round(metrics.percentileMs(LatencyMetrics.SPAN_SPIN_UP, 0.50)) - ECHO_GUARD_MS;
+        return Math.max(0, Math.min(lead, PREARM_MAX_LEAD_MS));
+    }
+
+    // Must be called ONLY on main thread
+    private boolean inEchoGuard() {
+        return feedbackEndNanos != 0L
+                && System.nanoTime() < feedbackEndNanos + ECHO_GUARD_MS * 1000000L;
+    }
+
+    // Must be called ONLY on main thread
+    private void cancelPendingStart() {
+        if (pendingStart == null) return;
+        handler.removeCallbacks(pendingStart);
+        pendingStart = null;
+        finishAttempt();
+        if (pendingStartCallback != null) {
+            pendingStartCallback.error(buildErrorJson("STOPPED", "Stopped before listening started"));
+            pendingStartCallback = null;
+        }
+    }
+
+    // ---- Attempt state -------------------------------------------------------
+
+    // A start that arrived while another attempt was running
+    private static final class PendingRequest {
+        final Runnable start;
+        final CallbackContext callback;
+
+        PendingRequest(Runnable start, CallbackContext callback) {
+            this.start = start;
+            this.callback = callback;
+        }
+    }
+
+    private final Runnable runNextRequest = new Runnable() {
+        @Override
+        public void run() {
+            if (!attempts.isIdle()) return;
+            PendingRequest next = attempts.poll();
+            if (next != null) {
+                next.start.run();
+            }
+        }
+    };
+
+    // Scripted attempts (load tests) stay out of everything persisted per
+    // learner: lexicon, endpoint tuning and analytics
+    private boolean isSimulated() {
+        return backend != null && backend == simulatorBackend;
+    }
+
+    // Engine running for the current attempt, or being recreated
+    private boolean isListening() {
+        return attempts.isEngaged();
+    }
+
+    // Must be called ONLY on main thread
+    private void finishAttempt() {
+        attempts.finish();
+        if (attempts.waitingCount() > 0) {
+            handler.post(runNextRequest);
+        }
+    }
+
+    // Must be called ONLY on main thread
+    private void offerRequest(PendingRequest request) {
+        String state = AttemptStateMachine.STATE_NAMES[attempts.state()];
+        int result = attempts.offer(request);
+        if (result == AttemptStateMachine.REJECTED) {
+            request.callback.error(buildErrorJson("ALREADY_LISTENING",
+                    attempts.getPolicy() == AttemptStateMachine.POLICY_REJECT
+                            ? "Already listening" : "Request queue full"));
+            return;
+        }
+        if (result == AttemptStateMachine.REPLACED) {
+            attempts.takeEvicted().callback.error(
+                    buildErrorJson("SUPERSEDED", "Replaced by a newer request"));
+        }
+        Log.d(TAG, "Start queued while " + state + ", " + attempts.waitingCount() + " waiting");
+    }
+
+    // ---- Learner lexicon -----------------------------------------------------
+
+    // Loads the learner's lexicon and endpoint tuning in the background and
+    // installs them on the main thread; null detaches the current ones.
+    private void switchLearner(final String id) {
+        if (id == null ? learnerId == null : id.equals(learnerId)) return;
+        learnerId = id;
+
+        final File dir = new File(cordova.getActivity().getFilesDir(), "limetuna/lexicon");
+        lexiconExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                // Persist whatever the previous learner still has pending
+                lexiconFlush.run();
+
+                final LearnerLexicon lexicon;
+                final EndpointTuner tuner;
+                if (id == null) {
+                    lexicon = null;
+                    tuner = new EndpointTuner(null);
+                } else {
+                    tuner = new EndpointTuner(new File(dir, learnerFileName(id, ".ltep")));
+                    try {
+                        tuner.load();
+                    } catch (IOException e) {
+                        Log.w(TAG, "Failed to load endpoint tuning, starting over", e);
+                    }
+                    lexicon = new LearnerLexicon(new File(dir, learnerFileName(id, ".lex")));
+                    try {
+                        lexicon.load();
+                        Log.d(TAG, "Lexicon for " + id + ": " + lexicon.size() + " entries, "
+                                + lexicon.promotedCount() + " promoted");
+                    } catch (IOException e) {
+                        Log.w(TAG, "Failed to load lexicon, starting empty", e);
+                        try {
+                            lexicon.compact();
+                        } catch (IOException ignored) {
+                            // keep learning in memory
+                        }
+                    }
+                }
+
+                cordova.getActivity().runOnUiThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (id == null ? learnerId == null : id.equals(learnerId)) {
+                            letterResolver.setLexicon(lexicon);
+                            endpointTuner = tuner;
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    private static String learnerFileName(String id, String extension) {
+        StringBuilder sb = new StringBuilder(id.length() + 4);
+        for (int i = 0; i < id.length(); i++) {
+            char c = id.charAt(i);
+            boolean safe = (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')
+                    || (c >= '0' && c <= '9') || c == '-' || c == '_';
+            sb.append(safe ? c : '_');
+        }
+        // Keep distinct ids distinct after sanitizing
+        sb.append('-').append(Integer.toHexString(id.hashCode())).append(extension);
+        return sb.toString();
+    }
+
+    // Must be called ONLY on main thread, right after letterResolver.resolve()
+    // on the final results of an attempt.
+    private void learnFromAttempt(int letter) {
+        LearnerLexicon lexicon = letterResolver.getLexicon();
+        int expected = LetterResolver.letterIndex(expectedLetter);
+        if (lexicon == null || expected == LetterResolver.NO_LETTER || isSimulated()) return;
+
+        // A confident answer for another letter is a wrong answer, not a variant
+        if (letter != expected && !letterResolver.isWeakMatch()) return;
+
+        int n = letterResolver.retainLearnable(expected);
+        if (n == 0) return;
+        lexicon.observe(letterResolver.getCandidateHashes(), n, expected, 1);
+        lexiconExecutor.execute(lexiconFlush);
+    }
+
+    // args: [letter, allResults]; the app confirms what the learner meant
+    private boolean handleConfirmLetter(final JSONArray args, final CallbackContext callbackContext) {
+        final String letter = args != null ? args.optString(0, "") : "";
+        final int index = letter.length() == 1 ? LetterResolver.letterIndex(letter.charAt(0)) : LetterResolver.NO_LETTER;
+        final JSONArray results = args != null ? args.optJSONArray(1) : null;
+        if (index == LetterResolver.NO_LETTER || results == null) {
+            callbackContext.error(buildErrorJson("INVALID_ARGUMENTS", "Expected a letter and allResults"));
+            return true;
+        }
+
+        cordova.getActivity().runOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                LearnerLexicon lexicon = letterResolver.getLexicon();
+                if (lexicon == null) {
+                    callbackContext.error(buildErrorJson("NO_LEARNER", "init() without learnerId"));
+                    return;
+                }
+
+                long[] hashes = new long[results.length()];
+                int n = 0;
+                for (int i = 0; i < results.length(); i++) {
+                    long h = letterResolver.phraseHash(results.optString(i, ""));
+                    if (h >= 0) hashes[n++] = h;
+                }
+                int promoted = lexicon.observe(hashes, n, index, LearnerLexicon.CONFIRM_WEIGHT);
+                lexiconExecutor.execute(lexiconFlush);
+
+                JSONObject json = new JSONObject();
+                putQuietly(json, "letter", String.valueOf(LetterResolver.letterChar(index)));
+                putQuietly(json, "promoted", promoted);
+                putQuietly(json, "entries", lexicon.size());
+                putQuietly(json, "promotedTotal", lexicon.promotedCount());
+                callbackContext.success(json.toString());
+            }
+        });
+        return true;
+    }
+
+    // args: [id, entries]; compiled on the thread pool, registered on the main
+    // thread. Loading an id again replaces it for later attempts.
+    private boolean handleLoadVocabulary(final JSONArray args, final CallbackContext callbackContext) {
+        final String id = args != null ? args.optString(0, "") : "";
+        final JSONArray entries = args != null ? args.optJSONArray(1) : null;
+        if (id.length() == 0 || entries == null) {
+            callbackContext.error(buildErrorJson("INVALID_ARGUMENTS", "Expected a vocabulary id and entries"));
+            return true;
+        }
+        if (VocabularyIndex.LETTERS.equals(id)) {
+            callbackContext.error(buildErrorJson("VOCABULARY_INVALID", "letters is built in"));
+            return true;
+        }
+
+        cordova.getThreadPool().execute(new Runnable() {
+            @Override
+            public void run() {
+                long startNanos = System.nanoTime();
+                final VocabularyIndex index;
+                try {
+                    index = new VocabularyIndex(id, VocabularyIndex.parseEntries(entries));
+                } catch (IllegalArgumentException e) {
+                    callbackContext.error(buildErrorJson("VOCABULARY_INVALID", e.getMessage()));
+                    return;
+                }
+                final long buildMs = (System.nanoTime() - startNanos) / 1000000L;
+
+                cordova.getActivity().runOnUiThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        vocabularies.put(id, index);
+                        // The app's own vocabulary outlives pack swaps
+                        packVocabularies.remove(id);
+                        JSONObject json = new JSONObject();
+                        putQuietly(json, "id", id);
+                        putQuietly(json, "entries", index.size());
+                        putQuietly(json, "forms", index.formCount());
+                        putQuietly(json, "keys", index.keyCount());
+                        putQuietly(json, "buildMs", buildMs);
+                        callbackContext.success(json.toString());
+                    }
+                });
+            }
+        });
+        return true;
+    }
+
+    // ---- Phonetic packs --------------------------------------------------------
+
+    // Must be called ONLY on main thread. A loaded vocabulary, else one from
+    // the active pack (compiled now, it is small), else null.
+    private VocabularyIndex findVocabulary(String id) {
+        VocabularyIndex vocabulary = vocabularies.get(id);
+        if (vocabulary != null || phoneticPack == null || !phoneticPack.hasVocabulary(id)) {
+            return vocabulary;
+        }
+        try {
+            vocabulary = new VocabularyIndex(id, phoneticPack.vocabulary(id));
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Pack " + phoneticPack.locale + ": " + e.getMessage());
+        }
+        vocabularies.put(id, vocabulary);
+        packVocabularies.add(id);
+        return vocabulary;
+    }
+
+    // Must be called ONLY on main thread. Loads the pack for language off the
+    // main thread and swaps it in between attempts; the recognizer and the
+    // page stay as they are. Attempts started meanwhile use the previous forms
+    // from start to result.
+    private void switchPhoneticPack(final String language) {
+        final int generation = ++packGeneration;
+        cordova.getThreadPool().execute(new Runnable() {
+            @Override
+            public void run() {
+                long startNanos = System.nanoTime();
+                PhoneticPack pack = null;
+                String[][] forms = null;
+                String source = "builtin";
+                for (String name : PhoneticPack.candidates(language)) {
+                    String path = PhoneticPack.ASSET_DIR + "/" + name + PhoneticPack.EXTENSION;
+                    try {
+                        ByteBuffer data = mapAsset(path);
+                        if (data == null) {
+                            data = readAsset(path);
+                            source = "read";
+                        } else {
+                            source = "mapped";
+                        }
+                        pack = PhoneticPack.read(data);
+                        forms = pack.letterForms();
+                        break;
+                    } catch (FileNotFoundException e) {
+                        // no pack under this name, try the next one
+                    } catch (IOException e) {
+                        Log.w(TAG, "Unreadable phonetic pack " + path, e);
+                        pack = null;
+                        forms = null;
+                        source = "builtin";
+                    }
+                }
+                final PhoneticPack loaded = pack;
+                final String[][] loadedForms = forms;
+                final String loadedSource = source;
+                final long loadMs = (System.nanoTime() - startNanos) / 1000000L;
+
+                cordova.getActivity().runOnUiThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (generation != packGeneration) return;
+                        if (!attempts.isIdle()) {
+                            handler.postDelayed(this, REPROBE_DELAY_MS);
+                            return;
+                        }
+                        applyPhoneticPack(loaded, loadedForms, loadedSource, loadMs);
+                    }
+                });
+            }
+        });
+    }
+
+    // Must be called ONLY on main thread, between attempts
+    private void applyPhoneticPack(PhoneticPack pack, String[][] forms, String source, long loadMs) {
+        for (String id : packVocabularies) {
+            vocabularies.remove(id);
+        }
+        packVocabularies.clear();
+        phoneticPack = pack;
+        packLetterForms = forms;
+        packSource = source;
+        packLoadMs = loadMs;
+        letterResolver.setForms(forms);
+        if (systemBackend != null) {
+            systemBackend.setLetterForms(forms);
+        }
+        String locale = pack != null ? pack.locale : "builtin";
+        Log.d(TAG, "Phonetic pack " + locale + " (" + source + ") in " + loadMs + " ms");
+        emitLifecycleEvent("phonetics", locale);
+    }
+
+    // Uncompressed assets map straight from the APK; null when compressed
+    private ByteBuffer mapAsset(String path) throws IOException {
+        AssetFileDescriptor fd;
+        try {
+            fd = cordova.getActivity().getAssets().openFd(path);
+        } catch (FileNotFoundException e) {
+            return null;
+        }
+        try {
+            FileInputStream in = fd.createInputStream();
+            try {
+                return in.getChannel().map(FileChannel.MapMode.READ_ONLY, fd.getStartOffset(), fd.getLength());
+            } finally {
+                in.close();
+            }
+        } finally {
+            fd.close();
+        }
+    }
+
+    private ByteBuffer readAsset(String path) throws IOException {
+        InputStream in = cordova.getActivity().getAssets().open(path);
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(1024);
+            byte[] buf = new byte[4096];
+            int n;
+            while ((n = in.read(buf)) > 0) {
+                out.write(buf, 0, n);
+            }
+            return ByteBuffer.wrap(out.toByteArray());
+        } finally {
+            in.close();
+        }
+    }
+
+    private JSONObject phoneticsJson() throws JSONException {
+        JSONObject json = new JSONObject();
+        json.put("language", language);
+        json.put("locale", phoneticPack != null ? phoneticPack.locale : JSONObject.NULL);
+        json.put("source", packSource);
+        json.put("bytes", phoneticPack != null ? phoneticPack.byteSize() : 0);
+        json.put("loadMs", packLoadMs);
+        json.put("vocabularies", new JSONArray(phoneticPack != null
+                ? phoneticPack.vocabularyNames() : new ArrayList<String>()));
+        return json;
+    }
+
+    // Must be called ONLY on main thread
+    private File getKeywordTemplatesDir() {
+        if (keywordTemplatesDir == null) {
+            keywordTemplatesDir = new File(cordova.getActivity().getFilesDir(), "limetuna/keyword-templates");
+        }
+        return keywordTemplatesDir;
+    }
+
+    private boolean handleStartLetter(final JSONArray args, final CallbackContext callbackContext) {
+        String expected = args != null ? args.optString(0, "") : "";
+        JSONObject opts = args != null ? args.optJSONObject(1) : null;
+        return startAttempt(null, expected, opts, callbackContext);
+    }
+
+    // args: [vocabularyId, expectedId, options]; "letters" is always loaded
+    private boolean handleStartTarget(final JSONArray args, final CallbackContext callbackContext) {
+        String vocabularyId = args != null ? args.optString(0, "") : "";
+        String expected = args != null ? args.optString(1, "") : "";
+        JSONObject opts = args != null ? args.optJSONObject(2) : null;
+        if (vocabularyId.length() == 0) {
+            callbackContext.error(buildErrorJson("INVALID_ARGUMENTS", "Expected a vocabulary id"));
+            return true;
+        }
+        return startAttempt(vocabularyId, expected, opts, callbackContext);
+    }
+
+    // vocabularyId is null for startLetter; expected is a letter or entry id
+    private boolean startAttempt(final String vocabularyId, final String expected,
+                                 final JSONObject opts, final CallbackContext callbackContext) {
+        final long execNanos = System.nanoTime();
+
+        if (!hasAudioPermission()) {
+            callbackContext.error(buildErrorJson("PERMISSION_DENIED", "Microphone permission not granted"));
+            return true;
+        }
+
+        final boolean earlyCommit = opts != null
+                ? opts.optBoolean("earlyCommit", earlyCommitDefault)
+                : earlyCommitDefault;
+        final int earlyCommitPartials = opts != null
+                ? opts.optInt("earlyCommitPartials", earlyCommitPartialsDefault)
+                : earlyCommitPartialsDefault;
+        final float earlyCommitMinScore = opts != null
+                ? (float) opts.optDouble("earlyCommitMinScore", earlyCommitMinScoreDefault)
+                : earlyCommitMinScoreDefault;
+
+        final boolean vadEndpoint = opts != null
+                ? opts.optBoolean("vadEndpoint", vadEndpointDefault)
+                : vadEndpointDefault;
+        final String feedbackId = opts != null ? opts.optString("feedback", "") : "";
+        final boolean prearm = opts != null
+                ? opts.optBoolean("prearm", prearmDefault)
+                : prearmDefault;
+        final int runnersUp = opts != null
+                ? Math.max(0, opts.optInt("runnersUp", DEFAULT_RUNNERS_UP))
+                : DEFAULT_RUNNERS_UP;
+        final int minimumLengthMs = opts != null ? opts.optInt("minimumLengthMs", -1) : -1;
+        final int completeSilenceMs = opts != null ? opts.optInt("completeSilenceMs", -1) : -1;
+        final int possiblySilenceMs = opts != null ? opts.optInt("possiblyCompleteSilenceMs", -1) : -1;
+
+        cordova.getActivity().runOnUiThread(new Runnable() {
+            private long dispatchNanos;
+            private VocabularyIndex vocabulary;
+            private boolean armed;
+
+            @Override
+            public void run() {
+                if (dispatchNanos == 0L) {
+                    dispatchNanos = System.nanoTime();
+                    Log.d(TAG, "startAttempt on UI thread");
+                    if (vocabularyId != null && !VocabularyIndex.LETTERS.equals(vocabularyId)) {
+                        try {
+                            vocabulary = findVocabulary(vocabularyId);
+                        } catch (IllegalArgumentException e) {
+                            callbackContext.error(buildErrorJson("VOCABULARY_INVALID", e.getMessage()));
+                            return;
+                        }
+                        if (vocabulary == null) {
+                            callbackContext.error(buildErrorJson("UNKNOWN_VOCABULARY",
+                                    "No vocabulary loaded as " + vocabularyId));
+                            return;
+                        }
+                    }
+                }
+                if (!armed) {
+                    // Busy: wait for the current attempt (runs again when idle)
+                    if (!attempts.transition(AttemptStateMachine.IDLE, AttemptStateMachine.ARMING)) {
+                        offerRequest(new PendingRequest(this, callbackContext));
+                        return;
+                    }
+                    armed = true;
+                    if (feedbackId.length() > 0 && !playAttemptFeedback(feedbackId, callbackContext)) {
+                        finishAttempt();
+                        return;
+                    }
+                }
+                pendingStart = null;
+                pendingStartCallback = null;
+
+                String engineError = prepareEngineOnMainThread();
+                if (engineError != null) {
+                    finishAttempt();
+                    callbackContext.error(buildErrorJson(engineError, engineErrorMessage(engineError)));
+                    return;
+                }
+
+                // Never open the microphone over feedback; pre-arm ends the wait
+                // early by the recognizer's expected spin-up
+                long delayMs = startDelayMs(prearm);
+                if (delayMs > 0) {
+                    pendingStart = this;
+                    pendingStartCallback = callbackContext;
+                    handler.postDelayed(this, delayMs);
+                    return;
+                }
+
+                currentCallback = callbackContext;
+                targetMode = vocabularyId != null;
+                targetRunnersUp = runnersUp;
+                activeVocabulary = vocabulary;
+                if (vocabulary != null) {
+                    expectedLetter = 0;
+                    expectedEntry = vocabulary.indexOf(expected);
+                } else {
+                    expectedLetter = expected.length() > 0 ? expected.charAt(0) : 0;
+                    expectedEntry = VocabularyIndex.NO_ENTRY;
+                }
+                partialCommitGate.arm(earlyCommit, earlyCommitPartials, earlyCommitMinScore);
+                attemptFromSession = false;
+                attemptMinimumLengthMs = minimumLengthMs;
+                attemptCompleteSilenceMs = completeSilenceMs;
+                attemptPossiblySilenceMs = possiblySilenceMs;
+                attempts.transition(AttemptStateMachine.ARMING, AttemptStateMachine.LISTENING);
+                supervisor.beginAttempt();
+
+                metrics.begin(execNanos);
+                metrics.mark(LatencyMetrics.MARK_UI_DISPATCH, dispatchNanos);
+
+                try {
+                    Log.d(TAG, "Calling startListening");
+                    metrics.mark(LatencyMetrics.MARK_START_LISTENING);
+                    startEngineListening(vadEndpoint);
+                } catch (Exception e) {
+                    Log.e(TAG, "startListening failed", e);
+                    sendErrorToCallback("START_FAILED", "Failed to start listening");
+                }
+            }
+        });
+
+        return true;
+    }
+
+    private boolean handleStop(final CallbackContext callbackContext) {
+        cordova.getActivity().runOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                // A stopped session attempt is not re-armed until nextTarget
+                handler.removeCallbacks(sessionRearm);
+                cancelPendingStart();
+                for (PendingRequest waiting : attempts.drain()) {
+                    waiting.callback.error(buildErrorJson("STOPPED", "Stopped before listening started"));
+                }
+                boolean answer = currentCallback != null && !attemptFromSession && isListening();
+                stopListeningInternal(true);
+                attemptFromSession = false;
+                // Answer the stopped attempt now, so a retry right after
+                // stop() is not failed by the cancelled recognizer's error
+                if (answer) {
+                    sendErrorToCallback("STOPPED", "Stopped by the app");
+                }
+                callbackContext.success();
+            }
+        });
+        return true;
+    }
+
+    private boolean handleSetBeepsMuted(final JSONArray args, final CallbackContext callbackContext) {
+        final boolean mute = (args != null && args.length() > 0) && args.optBoolean(0, true);
+
+        cordova.getActivity().runOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                applyBeepsMuted(mute);
+                callbackContext.success();
+            }
+        });
+
+        return true;
+    }
+
+    private boolean handleSetKeepScreenOn(final JSONArray args, final CallbackContext callbackContext) {
+        final boolean keepOn = (args != null && args.length() > 0) && args.optBoolean(0, true);
+
+        cordova.getActivity().runOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                Activity activity = cordova.getActivity();
+                if (activity != null) {
+                    Window window = activity.getWindow();
+                    if (window != null) {
+                        if (keepOn) {
+                            window.addFlags(WindowManager.LayoutParams.FLAG_KEEP_SCREEN_ON);
+                            Log.d(TAG, "FLAG_KEEP_SCREEN_ON enabled");
+                        } else {
+                            window.clearFlags(WindowManager.LayoutParams.FLAG_KEEP_SCREEN_ON);
+                            Log.d(TAG, "FLAG_KEEP_SCREEN_ON cleared");
+                        }
+                    }
+                }
+                callbackContext.success();
+            }
+        });
+
+        return true;
+    }
+
+    // ---- Continuous listening session -----------------------------------------
+
+    private boolean handleStartSession(final JSONArray args, final CallbackContext callbackContext) {
+        if (!hasAudioPermission()) {
+            callbackContext.error(buildErrorJson("PERMISSION_DENIED", "Microphone permission not granted"));
+            return true;
+        }
+
+        final JSONObject opts = args != null ? args.optJSONObject(0) : null;
+
+        cordova.getActivity().runOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                String engineError = prepareEngineOnMainThread();
+                if (engineError != null) {
+                    callbackContext.error(buildErrorJson(engineError, engineErrorMessage(engineError)));
+                    return;
+                }
+
+                // Only one session at a time: close the previous channel
+                endSessionOnMainThread();
+
+                sessionCallback = callbackContext;
+                sessionTarget = "";
+                sessionAttempt = 0;
+                sessionMaxAttempts = 1;
+                sessionRetryOnWrong = false;
+                sessionEarlyCommit = earlyCommitDefault;
+                sessionEarlyCommitPartials = earlyCommitPartialsDefault;
+                sessionEarlyCommitMinScore = earlyCommitMinScoreDefault;
+                sessionVadEndpoint = vadEndpointDefault;
+
+                if (opts != null) {
+                    sessionMaxAttempts = Math.max(1, opts.optInt("maxAttempts", sessionMaxAttempts));
+                    sessionRetryOnWrong = opts.optBoolean("retryOnWrong", sessionRetryOnWrong);
+                    sessionEarlyCommit = opts.optBoolean("earlyCommit", sessionEarlyCommit);
+                    sessionEarlyCommitPartials = opts.optInt("earlyCommitPartials", sessionEarlyCommitPartials);
+                    sessionEarlyCommitMinScore =
+                            (float) opts.optDouble("earlyCommitMinScore", sessionEarlyCommitMinScore);
+                    sessionVadEndpoint = opts.optBoolean("vadEndpoint", sessionVadEndpoint);
+                    sessionTarget = opts.optString("target", "");
+                }
+
+                emitSessionEvent(sessionEvent("started"), true);
+
+                if (sessionTarget.length() > 0) {
+                    armSessionAttempt(System.nanoTime());
+                }
+            }
+        });
+
+        return true;
+    }
+
+    private boolean handleNextTarget(final JSONArray args, final CallbackContext callbackContext) {
+        final long execNanos = System.nanoTime();
+        final String target = args != null ? args.optString(0, "") : "";
+
+        cordova.getActivity().runOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                if (sessionCallback == null) {
+                    callbackContext.error(buildErrorJson("NO_SESSION", "No listening session"));
+                    return;
+                }
+
+                if (isListening() && !attemptFromSession) {
+                    callbackContext.error(buildErrorJson("ALREADY_LISTENING", "Already listening"));
+                    return;
+                }
+
+                // A new target replaces whatever the session was doing
+                handler.removeCallbacks(sessionRearm);
+                if (isListening()) {
+                    stopListeningInternal(true);
+                }
+                attemptFromSession = false;
+
+                sessionTarget = target;
+                sessionAttempt = 0;
+                armSessionAttempt(execNanos);
+                callbackContext.success();
+            }
+        });
+
+        return true;
+    }
+
+    private boolean handleEndSession(final CallbackContext callbackContext) {
+        cordova.getActivity().runOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                endSessionOnMainThread();
+                callbackContext.success();
+            }
+        });
+        return true;
+    }
+
+    // Must be called ONLY on main thread
+    private void endSessionOnMainThread() {
+        handler.removeCallbacks(sessionRearm);
+        if (attemptFromSession) {
+            stopListeningInternal(true);
+            attemptFromSession = false;
+        }
+        if (sessionCallback != null) {
+            emitSessionEvent(sessionEvent("ended"), false);
+            sessionCallback = null;
+        }
+        sessionTarget = "";
+        sessionAttempt = 0;
+    }
+
+    // Must be called ONLY on main thread
+    private void armSessionAttempt(long execNanos) {
+        if (sessionCallback == null || !attempts.isIdle() || sessionTarget.length() == 0) {
+            return;
+        }
+
+        String engineError = prepareEngineOnMainThread();
+        if (engineError != null) {
+            JSONObject ev = sessionEvent("error");
+            putQuietly(ev, "code", engineError);
+            putQuietly(ev, "final", true);
+            emitSessionEvent(ev, true);
+            return;
+        }
+
+        long delayMs = startDelayMs(prearmDefault);
+        if (delayMs > 0) {
+            handler.removeCallbacks(sessionRearm);
+            handler.postDelayed(sessionRearm, delayMs);
+            return;
+        }
+
+        sessionAttempt++;
+        expectedLetter = sessionTarget.charAt(0);
+        targetMode = false;
+        activeVocabulary = null;
+        expectedEntry = VocabularyIndex.NO_ENTRY;
+        partialCommitGate.arm(sessionEarlyCommit, sessionEarlyCommitPartials, sessionEarlyCommitMinScore);
+        attemptFromSession = true;
+        attemptMinimumLengthMs = -1;
+        attemptCompleteSilenceMs = -1;
+        attemptPossiblySilenceMs = -1;
+        attempts.transition(AttemptStateMachine.IDLE, AttemptStateMachine.LISTENING);
+        supervisor.beginAttempt();
+
+        metrics.begin(execNanos);
+        metrics.mark(LatencyMetrics.MARK_UI_DISPATCH);
+
+        try {
+            Log.d(TAG, "Session attempt " + sessionAttempt + " for " + sessionTarget);
+            metrics.mark(LatencyMetrics.MARK_START_LISTENING);
+            startEngineListening(sessionVadEndpoint);
+        } catch (Exception e) {
+            Log.e(TAG, "startListening failed", e);
+            sendErrorToCallback("START_FAILED", "Failed to start listening");
+        }
+    }
+
+    private void onSessionResult(final RecognitionResult result, int letter) {
+        boolean correct = letter != LetterResolver.NO_LETTER
+                && letter == LetterResolver.letterIndex(sessionTarget.charAt(0));
+        boolean retry = !correct && sessionRetryOnWrong && sessionAttempt < sessionMaxAttempts;
+
+        final CallbackContext callback = sessionCallback;
+        final String target = sessionTarget;
+        final int attempt = sessionAttempt;
+        final boolean isFinal = !retry;
+        if (callback != null) {
+            resultExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    JSONObject json;
+                    try {
+                        json = result.toJson();
+                    } catch (JSONException e) {
+                        Log.e(TAG, "Error building session result JSON", e);
+                        json = new JSONObject();
+                        putQuietly(json, "text", result.text);
+                    }
+                    putQuietly(json, "type", "result");
+                    putQuietly(json, "target", target);
+                    putQuietly(json, "attempt", attempt);
+                    putQuietly(json, "final", isFinal);
+                    sendSessionEvent(callback, json, true);
+                }
+            });
+        }
+
+        if (retry) {
+            handler.post(sessionRearm);
+        }
+    }
+
+    private void onSessionError(String code, String message) {
+        boolean soft = "NO_MATCH".equals(code) || "SPEECH_TIMEOUT".equals(code);
+        boolean retry = soft && sessionAttempt < sessionMaxAttempts;
+
+        JSONObject ev = sessionEvent("error");
+        putQuietly(ev, "code", code);
+        putQuietly(ev, "message", message);
+        putQuietly(ev, "final", !retry);
+        emitSessionEvent(ev, true);
+
+        if (retry) {
+            handler.post(sessionRearm);
+        }
+    }
+
+    private JSONObject sessionEvent(String type) {
+        JSONObject ev = new JSONObject();
+        putQuietly(ev, "type", type);
+        putQuietly(ev, "target", sessionTarget);
+        putQuietly(ev, "attempt", sessionAttempt);
+        return ev;
+    }
+
+    // Goes through resultExecutor so events stay ordered behind result payloads
+    private void emitSessionEvent(final JSONObject ev, final boolean keepCallback) {
+        final CallbackContext callback = sessionCallback;
+        if (callback == null) return;
+        resultExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                sendSessionEvent(callback, ev, keepCallback);
+            }
+        });
+    }
+
+    private static void sendSessionEvent(CallbackContext callback, JSONObject ev, boolean keepCallback) {
+        PluginResult result = new PluginResult(PluginResult.Status.OK, ev);
+        result.setKeepCallback(keepCallback);
+        callback.sendPluginResult(result);
+    }
+
+    private static void putQuietly(JSONObject json, String key, Object value) {
+        try {
+            json.put(key, value);
+        } catch (JSONException e) {
+            Log.w(TAG, "Failed to put " + key, e);
+        }
+    }
+
+    // ---- Latency metrics --------------------------------------------------------
+
+    // Built on the main thread: besides LatencyMetrics the report reads the
+    // attempt, lifecycle, VAD, prearm and recognizer state owned there
+    private boolean handleGetMetrics(final JSONArray args, final CallbackContext callbackContext) {
+        final JSONObject opts = args != null ? args.optJSONObject(0) : null;
+        final int recentLimit = opts != null ? opts.optInt("recent", RECENT_TIMELINES) : RECENT_TIMELINES;
+
+        cordova.getActivity().runOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    callbackContext.success(buildMetricsJson(recentLimit));
+                } catch (JSONException e) {
+                    Log.e(TAG, "Error building metrics JSON", e);
+                    callbackContext.error(buildErrorJson("METRICS_ERROR", "Failed to build metrics"));
+                }
+            }
+        });
+        return true;
+    }
+
+    private boolean handleResetMetrics(final CallbackContext callbackContext) {
+        metrics.reset();
+        echoRestarts.set(0);
+        supervisor.reset();
+        callbackContext.success();
+        return true;
+    }
+
+    // Flushes the recorder and reports where the log is
+    private boolean handleGetRecording(final CallbackContext callbackContext) {
+        cordova.getActivity().runOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                final SessionRecorder rec = recorder;
+                if (rec == null) {
+                    callbackContext.error(buildErrorJson("NOT_RECORDING", "Session recording is off"));
+                    return;
+                }
+                rec.flush(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            JSONObject json = new JSONObject();
+                            json.put("file", rec.getFile().getAbsolutePath());
+                            json.put("rotatedFile", new File(rec.getFile().getParentFile(),
+                                    SessionRecorder.ROTATED_FILE_NAME).getAbsolutePath());
+                            json.put("bytes", rec.bytesWritten());
+                            json.put("attempts", rec.attempts());
+                            json.put("droppedChunks", rec.droppedChunks());
+                            callbackContext.success(json);
+                        } catch (JSONException e) {
+                            callbackContext.error(buildErrorJson("RECORDING_ERROR", e.getMessage()));
+                        }
+                    }
+                });
+            }
+        });
+        return true;
+    }
+
+    // ---- Analytics ------------------------------------------------------------
+
+    /**
+     * args[0]: { kind: "letters" | "latency" | "retries" | "sessions",
+     * sinceMs, untilMs, letter, engine, windowMs }. Aggregated on the
+     * store's writer thread; replies with the aggregate plus the device.
+     */
+    private boolean handleQueryAnalytics(final JSONArray args, final CallbackContext callbackContext) {
+        JSONObject opts = args != null ? args.optJSONObject(0) : null;
+        if (opts == null) opts = new JSONObject();
+        final String kind = opts.optString("kind", AnalyticsStore.KIND_LETTERS);
+        if (!AnalyticsStore.isKind(kind)) {
+            callbackContext.error(buildErrorJson("INVALID_ARGUMENTS", "Unknown analytics kind: " + kind));
+            return true;
+        }
+        String letterOpt = opts.optString("letter", "");
+        final int letter = letterOpt.length() == 1
+                ? LetterResolver.letterIndex(letterOpt.charAt(0)) : LetterResolver.NO_LETTER;
+        final long sinceMs = opts.optLong("sinceMs", 0L);
+        final long untilMs = opts.optLong("untilMs", Long.MAX_VALUE);
+        final String engineFilter = opts.has("engine") ? opts.optString("engine") : null;
+        final long windowMs = opts.optLong("windowMs", AnalyticsStore.DEFAULT_WINDOW_MS);
+
+        cordova.getActivity().runOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                if (analytics == null) {
+                    callbackContext.error(buildErrorJson("ANALYTICS_OFF", "init() with analytics: false"));
+                    return;
+                }
+                analytics.query(kind, sinceMs, untilMs, letter, engineFilter, windowMs,
+                        new AnalyticsStore.QueryCallback() {
+                            @Override
+                            public void onResult(JSONObject result) {
+                                try {
+                                    JSONObject device = new JSONObject();
+                                    device.put("manufacturer", Build.MANUFACTURER);
+                                    device.put("model", Build.MODEL);
+                                    device.put("sdk", Build.VERSION.SDK_INT);
+                                    result.put("device", device);
+                                    result.put("session", analyticsSession);
+                                    callbackContext.success(result);
+                                } catch (JSONException e) {
+                                    onError(e);
+                                }
+                            }
+
+                            @Override
+                            public void onError(Exception e) {
+                                Log.w(TAG, "Analytics query failed", e);
+                                callbackContext.error(buildErrorJson("ANALYTICS_ERROR", e.getMessage()));
+                            }
+                        });
+            }
+        });
+        return true;
+    }
+
+    private boolean handleClearAnalytics(final CallbackContext callbackContext) {
         cordova.getActivity().runOnUiThread(new Runnable() {
             @Override
             public void run() {
-                stopListeningInternal(true);
-                callbackContext.success();
+                if (analytics == null) {
+                    callbackContext.error(buildErrorJson("ANALYTICS_OFF", "init() with analytics: false"));
+                    return;
+                }
+                analytics.clear(new Runnable() {
+                    @Override
+                    public void run() {
+                        callbackContext.success();
+                    }
+                });
             }
         });
         return true;
     }
 
-    private boolean handleSetBeepsMuted(final JSONArray args, final CallbackContext callbackContext) {
-        final boolean mute = (args != null && args.length() > 0) && args.optBoolean(0, true);
+    // Must be called ONLY on main thread
+    private JSONObject buildMetricsJson(int recentLimit) throws JSONException {
+        JSONObject json = new JSONObject();
+
+        JSONObject spans = new JSONObject();
+        for (int span = 0; span < LatencyMetrics.SPAN_COUNT; span++) {
+            JSONObject stats = new JSONObject();
+            long count = metrics.count(span);
+            stats.put("count", count);
+            if (count > 0) {
+                stats.put("p50", metrics.percentileMs(span, 0.50));
+                stats.put("p95", metrics.percentileMs(span, 0.95));
+                stats.put("p99", metrics.percentileMs(span, 0.99));
+                stats.put("mean", metrics.meanMs(span));
+                stats.put("max", metrics.maxMs(span));
+            }
+            spans.put(LatencyMetrics.SPAN_NAMES[span], stats);
+        }
+        json.put("spans", spans);
+
+        JSONObject outcomes = new JSONObject();
+        for (int i = 0; i < LatencyMetrics.OUTCOME_COUNT; i++) {
+            outcomes.put(LatencyMetrics.OUTCOME_NAMES[i], metrics.outcomeCount(i));
+        }
+        json.put("outcomes", outcomes);
+        json.put("recognizer", recognizerJson());
+        json.put("phonetics", phoneticsJson());
+
+        JSONObject requests = new JSONObject();
+        requests.put("state", AttemptStateMachine.STATE_NAMES[attempts.state()]);
+        requests.put("policy", AttemptStateMachine.POLICY_NAMES[attempts.getPolicy()]);
+        requests.put("queueSize", attempts.getCapacity());
+        requests.put("waiting", attempts.waitingCount());
+        requests.put("queued", attempts.queuedCount());
+        requests.put("replaced", attempts.replacedCount());
+        requests.put("rejected", attempts.rejectedCount());
+        requests.put("illegalTransitions", attempts.illegalTransitions());
+        json.put("requests", requests);
+
+        JSONObject lifecycle = new JSONObject();
+        lifecycle.put("paused", paused);
+        lifecycle.put("releases", releaseCount);
+        lifecycle.put("prewarms", prewarmCount);
+        lifecycle.put("lastPrewarmMs", lastPrewarmMs);
+        json.put("lifecycle", lifecycle);
+        json.put("endpointing", endpointingJson());
+
+        JSONObject vadParams = new JSONObject();
+        vadParams.put("enabled", vadEndpointDefault);
+        vadParams.put("onsetMargin", vadOnsetMargin);
+        vadParams.put("offsetMargin", vadOffsetMargin);
+        vadParams.put("hangoverMs", vadHangoverMs);
+        vadParams.put("minSpeechMs", vadMinSpeechMs);
+        vadParams.put("maxSpeechMs", vadMaxSpeechMs);
+        json.put("vad", vadParams);
+
+        JSONObject prearmParams = new JSONObject();
+        prearmParams.put("enabled", prearmDefault);
+        prearmParams.put("leadMs", prearmLeadMs());
+        prearmParams.put("echoRestarts", echoRestarts.get());
+        json.put("prearm", prearmParams);
+
+        JSONObject recovery = new JSONObject();
+        recovery.put("timeoutMs", supervisor.timeoutMs(metrics));
+        for (int i = 0; i < RecognizerSupervisor.COUNTER_COUNT; i++) {
+            recovery.put(RecognizerSupervisor.COUNTER_NAMES[i], supervisor.counter(i));
+        }
+        json.put("recovery", recovery);
+
+        // Recent timelines, newest first, in ms relative to exec receipt
+        JSONArray recent = new JSONArray();
+        long[] marks = new long[LatencyMetrics.MARK_COUNT];
+        int n = Math.min(Math.max(0, recentLimit), metrics.recentCount());
+        for (int i = 0; i < n; i++) {
+            metrics.recent(i, marks);
+            long origin = marks[LatencyMetrics.MARK_EXEC];
+            JSONObject timeline = new JSONObject();
+            for (int m = 0; m < LatencyMetrics.MARK_COUNT; m++) {
+                timeline.put(LatencyMetrics.MARK_NAMES[m], marks[m] == 0L
+                        ? JSONObject.NULL
+                        : (Object) ((marks[m] - origin) / 1e6));
+            }
+            long start = marks[LatencyMetrics.MARK_START_LISTENING];
+            long hiddenEnd = marks[LatencyMetrics.MARK_FEEDBACK_END];
+            if (marks[LatencyMetrics.MARK_READY] != 0L && hiddenEnd != 0L) {
+                hiddenEnd = Math.min(hiddenEnd, marks[LatencyMetrics.MARK_READY]);
+            }
+            timeline.put("spinUpHiddenMs", start != 0L && hiddenEnd > start ? (hiddenEnd - start) / 1e6 : 0);
+            recent.put(timeline);
+        }
+        json.put("recent", recent);
+
+        return json;
+    }
+
+    // ---- Event channel ----------------------------------------------------------
+
+    private boolean handleSubscribeEvents(final JSONArray args, final CallbackContext callbackContext) {
+        final JSONObject opts = args != null ? args.optJSONObject(0) : null;
 
         cordova.getActivity().runOnUiThread(new Runnable() {
             @Override
             public void run() {
-                applyBeepsMuted(mute);
-                callbackContext.success();
+                closeEventsChannel();
+
+                eventsRms = opts == null || opts.optBoolean("rms", true);
+                rmsIntervalMs = Math.max(16, opts != null
+                        ? opts.optLong("rmsIntervalMs", DEFAULT_RMS_INTERVAL_MS)
+                        : DEFAULT_RMS_INTERVAL_MS);
+                rmsBatcher.clear();
+                eventsCallback = callbackContext;
+
+                PluginResult result = new PluginResult(PluginResult.Status.NO_RESULT);
+                result.setKeepCallback(true);
+                callbackContext.sendPluginResult(result);
             }
         });
 
         return true;
     }
 
-    private boolean handleSetKeepScreenOn(final JSONArray args, final CallbackContext callbackContext) {
-        final boolean keepOn = (args != null && args.length() > 0) && args.optBoolean(0, true);
-
+    private boolean handleUnsubscribeEvents(final CallbackContext callbackContext) {
         cordova.getActivity().runOnUiThread(new Runnable() {
             @Override
             public void run() {
-                Activity activity = cordova.getActivity();
-                if (activity != null) {
-                    Window window = activity.getWindow();
-                    if (window != null) {
-                        if (keepOn) {
-                            window.addFlags(WindowManager.LayoutParams.FLAG_KEEP_SCREEN_ON);
-                            Log.d(TAG, "FLAG_KEEP_SCREEN_ON enabled");
-                        } else {
-                            window.clearFlags(WindowManager.LayoutParams.FLAG_KEEP_SCREEN_ON);
-                            Log.d(TAG, "FLAG_KEEP_SCREEN_ON cleared");
-                        }
-                    }
-                }
+                closeEventsChannel();
                 callbackContext.success();
             }
         });
-
         return true;
     }
 
-    private String buildErrorJson(String code, String message) {
+    // Must be called ONLY on main thread
+    private void closeEventsChannel() {
+        if (eventsCallback == null) return;
+        flushRms();
+        handler.removeCallbacks(rmsFlush);
+        rmsFlushScheduled = false;
+
+        JSONObject ev = new JSONObject();
+        putQuietly(ev, "type", "unsubscribed");
+        PluginResult result = new PluginResult(PluginResult.Status.OK, ev);
+        result.setKeepCallback(false);
+        eventsCallback.sendPluginResult(result);
+        eventsCallback = null;
+    }
+
+    private void emitLifecycleEvent(String type, String code) {
+        if (eventsCallback == null) return;
+
+        // Keep ordering: levels captured before this phase go out first
+        flushRms();
+
+        JSONObject ev = new JSONObject();
+        putQuietly(ev, "type", type);
+        putQuietly(ev, "t", System.nanoTime() / 1e6);
+        putQuietly(ev, "target", expectedLetter != 0 ? String.valueOf(expectedLetter) : "");
+        if (code != null) {
+            putQuietly(ev, "code", code);
+        }
+        sendEvent(ev);
+    }
+
+    private void flushRms() {
+        if (eventsCallback == null || rmsBatcher.size() == 0) return;
+
+        long first = rmsBatcher.firstNanos();
+        long last = rmsBatcher.lastNanos();
+        float peak = rmsBatcher.peak();
+        int n = rmsBatcher.drain(rmsScratch);
+
+        JSONArray levels = new JSONArray();
         try {
-            JSONObject err = new JSONObject();
-            err.put("code", code);
-            err.put("message", message);
-            return err.toString();
+            for (int i = 0; i < n; i++) {
+                levels.put(rmsScratch[i]);
+            }
         } catch (JSONException e) {
-            return code + ":" + message;
+            Log.w(TAG, "Failed to encode RMS levels", e);
+            return;
         }
+
+        JSONObject ev = new JSONObject();
+        putQuietly(ev, "type", "rms");
+        putQuietly(ev, "t", first / 1e6);
+        putQuietly(ev, "tEnd", last / 1e6);
+        putQuietly(ev, "peak", peak);
+        putQuietly(ev, "levels", levels);
+        sendEvent(ev);
+    }
+
+    private void sendEvent(JSONObject ev) {
+        PluginResult result = new PluginResult(PluginResult.Status.OK, ev);
+        result.setKeepCallback(true);
+        eventsCallback.sendPluginResult(result);
+    }
+
+    // --------------------------------------------------------------------------
+
+    private String buildErrorJson(String code, String message) {
+        return RecognizerErrors.json(code, message);
     }
 
     private void sendErrorToCallback(String code, String message) {
+        if (attemptFromSession) {
+            attemptFromSession = false;
+            finishAttempt();
+            partialCommitGate.disarm();
+            onSessionError(code, message);
+            recordOutcome(LatencyMetrics.OUTCOME_ERROR, LetterResolver.NO_LETTER, code, null);
+            finishAttemptMetrics(LatencyMetrics.OUTCOME_ERROR);
+            return;
+        }
+
         if (currentCallback != null) {
             currentCallback.error(buildErrorJson(code, message));
             currentCallback = null;
         }
-        isListening = false;
+        finishAttempt();
+        partialCommitGate.disarm();
+        recordOutcome(LatencyMetrics.OUTCOME_ERROR, LetterResolver.NO_LETTER, code, null);
+        finishAttemptMetrics(LatencyMetrics.OUTCOME_ERROR);
     }
 
-    private void sendSuccessToCallback(String text, Float confidence,
-                                       ArrayList<String> all, float[] confs) {
+    // Must be called ONLY on main thread, before finishAttemptMetrics()
+    private void recordOutcome(int outcome, int letter, String code, RecognitionResult result) {
+        if (recorder != null) {
+            recorder.outcome(System.nanoTime(), outcome,
+                    letter != LetterResolver.NO_LETTER ? LetterResolver.letterChar(letter) : 0, code);
+        }
+        if (analytics != null && !isSimulated()) {
+            recordAnalytics(outcome, letter, code, result);
+        }
+        observeEndpointing(outcome, code);
+    }
 
-        if (currentCallback != null) {
-            try {
-                JSONObject json = new JSONObject();
-                json.put("text", text != null ? text : "");
+    private void recordAnalytics(int outcome, int letter, String code, RecognitionResult result) {
+        // Ended by the app, not by the recognizer: says nothing about accuracy
+        if ("STOPPED".equals(code) || "SUPERSEDED".equals(code) || "PAUSED".equals(code)) return;
 
-                if (confidence != null) {
-                    json.put("confidence", confidence);
-                } else {
-                    json.put("confidence", JSONObject.NULL);
-                }
+        int expected = LetterResolver.letterIndex(expectedLetter);
+        boolean correct;
+        if (activeVocabulary != null) {
+            correct = result != null && result.target != null && expectedEntry != VocabularyIndex.NO_ENTRY
+                    && activeVocabulary.indexOf(result.target.id) == expectedEntry;
+        } else {
+            correct = result != null && expected != LetterResolver.NO_LETTER && letter == expected;
+        }
+        long started = metrics.markNanos(LatencyMetrics.MARK_START_LISTENING);
+        int latencyMs = started != 0L ? (int) ((System.nanoTime() - started) / 1000000L) : -1;
+        float confidence = result != null && result.confidence != null ? result.confidence : Float.NaN;
+        String label = ENGINE_SYSTEM.equals(engine) && systemBackend != null
+                ? engine + ":" + systemBackend.getPath() : engine;
+
+        analytics.record(System.currentTimeMillis(), analyticsSession, expected, letter, outcome, correct,
+                attemptFromSession, label, code, latencyMs, confidence);
+        handler.removeCallbacks(analyticsFlush);
+        handler.postDelayed(analyticsFlush, ANALYTICS_FLUSH_MS);
+    }
 
-                if (all != null) {
-                    json.put("allResults", new JSONArray(all));
-                }
-                if (confs != null) {
-                    JSONArray confArr = new JSONArray();
-                    for (float c : confs) {
-                        confArr.put(c);
-                    }
-                    json.put("allConfidences", confArr);
-                }
+    private void finishAttemptMetrics(int outcome) {
+        handler.removeCallbacks(watchdog);
+        supervisor.endAttempt();
+        metrics.mark(LatencyMetrics.MARK_DELIVERED);
+        metrics.commit(outcome);
+    }
 
-                currentCallback.success(json.toString());
-            } catch (JSONException e) {
-                Log.e(TAG, "Error building success JSON", e);
-                currentCallback.success(text != null ? text : "");
-            }
+    private void sendSuccessToCallback(String text, Float confidence,
+                                       ArrayList<String> all, float[] confs,
+                                       int letter, boolean committedEarly) {
+
+        RecognitionResult result = snapshotResult(text, confidence, all, confs, letter, committedEarly);
+        int outcome = committedEarly
+                ? LatencyMetrics.OUTCOME_EARLY_COMMIT
+                : LatencyMetrics.OUTCOME_RESULT;
+
+        if (attemptFromSession) {
+            attemptFromSession = false;
+            finishAttempt();
+            partialCommitGate.disarm();
+            onSessionResult(result, letter);
+            recordOutcome(outcome, letter, null, result);
+            finishAttemptMetrics(outcome);
+            return;
+        }
 
+        if (currentCallback != null) {
+            final CallbackContext callback = currentCallback;
+            final RecognitionResult payload = result;
+            final int format = resultFormat;
+            resultExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    deliverResult(callback, payload, format);
+                }
+            });
             currentCallback = null;
         }
 
-        isListening = false;
+        finishAttempt();
+        partialCommitGate.disarm();
+        recordOutcome(outcome, letter, null, result);
+        finishAttemptMetrics(outcome);
+    }
+
+    // Must be called ONLY on main thread: copies resolver, matcher and VAD state
+    private RecognitionResult snapshotResult(String text, Float confidence,
+                                             ArrayList<String> all, float[] confs,
+                                             int letter, boolean committedEarly) {
+        EnergyVad engineVad = backend != null ? backend.getVad() : null;
+        VocabularyIndex.Match target = null;
+        if (activeVocabulary != null) {
+            target = activeVocabulary.snapshot(targetRunnersUp);
+        } else if (targetMode) {
+            target = VocabularyIndex.letterMatch(letterResolver, letter, targetRunnersUp);
+        }
+        return RecognitionResult.snapshot(text, confidence, all, confs, letter,
+                activeVocabulary == null ? letterResolver : null, committedEarly,
+                vadEndpointed || engineVad != null, engineVad != null ? engineVad : vad, target);
+    }
+
+    // Runs on resultExecutor
+    private static void deliverResult(CallbackContext callback, RecognitionResult result, int format) {
+        if (format == RecognitionResult.FORMAT_BINARY) {
+            callback.success(result.toBinary());
+            return;
+        }
+        try {
+            JSONObject json = result.toJson();
+            if (format == RecognitionResult.FORMAT_OBJECT) {
+                callback.success(json);
+            } else {
+                callback.success(json.toString());
+            }
+        } catch (JSONException e) {
+            // A bare string would not have the shape resultFormat promises
+            Log.e(TAG, "Error building success JSON", e);
+            callback.error(RecognizerErrors.json("RESULT_ENCODING_FAILED", "Failed to encode the result"));
+        }
     }
 
     private void stopListeningInternal(boolean cancel) {
-        if (speechRecognizer != null && isListening) {
+        vadArmed = false;
+        handler.removeCallbacks(echoRestart);
+        handler.removeCallbacks(recoveryRetry);
+        handler.removeCallbacks(watchdog);
+        restartPending = false;
+        if (enrollCallback != null) {
+            // The template recording is the attempt; no recognizer is running
+            cancelRecording("STOPPED", "Template recording stopped");
+        } else if (backend != null && attempts.isEngaged()) {
             try {
                 if (cancel) {
-                    speechRecognizer.cancel();
+                    backend.cancel();
+                    cancelEchoPending = backend == systemBackend;
                 } else {
-                    speechRecognizer.stopListening();
+                    backend.stop();
                 }
             } catch (Exception e) {
                 Log.w(TAG, "Error stopping recognizer", e);
             }
         }
-        isListening = false;
+        finishAttempt();
     }
 
-    // RecognitionListener ------------------------------------------------------
+    // RecognizerBackend.Listener -----------------------------------------------
 
     @Override
-    public void onReadyForSpeech(Bundle params) {
+    public void onReady() {
         Log.d(TAG, "onReadyForSpeech");
+        if (recorder != null) recorder.event(SessionLog.READY, System.nanoTime());
+        // The new attempt is listening; a later ERROR_CLIENT is its own
+        cancelEchoPending = false;
+        metrics.mark(LatencyMetrics.MARK_READY);
+        emitLifecycleEvent("ready", null);
     }
 
     @Override
-    public void onBeginningOfSpeech() {
+    public void onBegin() {
         Log.d(TAG, "onBeginningOfSpeech");
+        if (recorder != null) recorder.event(SessionLog.BEGIN, System.nanoTime());
+        // Speech on the new attempt: any echo of the old cancel has passed
+        cancelEchoPending = false;
+        if (isListening() && ENGINE_SYSTEM.equals(engine) && inEchoGuard()) {
+            // Pre-armed recognizer heard the end of the clip: listen again once it is over
+            echoRestarts.incrementAndGet();
+            long waitMs = (feedbackEndNanos - System.nanoTime()) / 1000000L + ECHO_GUARD_MS;
+            Log.d(TAG, "Speech onset during feedback, restarting in " + waitMs + " ms");
+            try {
+                backend.cancel();
+            } catch (Exception e) {
+                Log.w(TAG, "Error cancelling recognizer", e);
+            }
+            handler.removeCallbacks(echoRestart);
+            restartPending = true;
+            handler.postDelayed(echoRestart, Math.max(0, waitMs));
+            return;
+        }
+        speechBeginNanos = System.nanoTime();
+        metrics.mark(LatencyMetrics.MARK_BEGIN);
+        emitLifecycleEvent("begin", null);
     }
 
     @Override
-    public void onRmsChanged(float rmsdB) {
-        Log.v(TAG, "onRmsChanged: " + rmsdB);
+    public void onLevel(float rmsdB) {
+        // Called on every audio frame: no logging, no allocation
+        if (recorder != null) recorder.level(System.nanoTime(), rmsdB);
+        if (vadArmed && isListening()) {
+            offerVadLevel(rmsdB);
+        }
+        if (eventsCallback == null || !eventsRms) return;
+
+        rmsBatcher.push(rmsdB, System.nanoTime());
+        if (!rmsFlushScheduled) {
+            rmsFlushScheduled = true;
+            handler.postDelayed(rmsFlush, rmsIntervalMs);
+        }
     }
 
-    @Override
-    public void onBufferReceived(byte[] buffer) {
-        // not used
+    // Must be called ONLY on main thread
+    private void offerVadLevel(float rmsdB) {
+        // Do not calibrate the floor on the feedback clip
+        if (inEchoGuard()) return;
+        long ms = (System.nanoTime() - vadStartNanos) / 1000000L;
+        int event = vad.offer(rmsdB, -1f, ms);
+        if (event == EnergyVad.EVENT_ONSET) {
+            emitLifecycleEvent("vadOnset", null);
+        } else if (event == EnergyVad.EVENT_ENDPOINT) {
+            Log.d(TAG, "VAD endpoint at " + vad.getEndpointMs() + " ms");
+            vadArmed = false;
+            vadEndpointed = true;
+            emitLifecycleEvent("vadEndpoint", null);
+            try {
+                // stop, not cancel: the recognizer still delivers onResults
+                backend.stop();
+            } catch (Exception e) {
+                Log.w(TAG, "stopListening on VAD endpoint failed", e);
+            }
+        }
     }
 
     @Override
-    public void onEndOfSpeech() {
+    public void onEnd() {
         Log.d(TAG, "onEndOfSpeech");
+        if (recorder != null) recorder.event(SessionLog.END, System.nanoTime());
+        if (speechBeginNanos != 0L) {
+            attemptSpeechMs = (int) ((System.nanoTime() - speechBeginNanos) / 1000000L);
+            speechBeginNanos = 0L;
+        }
+        metrics.mark(LatencyMetrics.MARK_END);
+        emitLifecycleEvent("end", null);
     }
 
     @Override
     public void onError(int error) {
         Log.d(TAG, "onError: " + error);
+        if (recorder != null) recorder.error(System.nanoTime(), error);
+
+        String code = RecognizerErrors.codeFor(error);
 
-        if (!isListening && currentCallback == null) {
+        // Our own cancel before a queued restart; the restart supersedes it
+        if (restartPending) return;
+
+        // The cancelled attempt's ERROR_CLIENT, arriving after the next start
+        if (cancelEchoPending && error == RecognizerErrors.ERROR_CLIENT) {
+            cancelEchoPending = false;
+            Log.d(TAG, "Ignoring ERROR_CLIENT from the cancelled attempt");
             return;
         }
 
-        String code;
-        switch (error) {
-            case SpeechRecognizer.ERROR_NO_MATCH:
-                code = "NO_MATCH";
-                break;
-            case SpeechRecognizer.ERROR_SPEECH_TIMEOUT:
-                code = "SPEECH_TIMEOUT";
-                break;
-            case SpeechRecognizer.ERROR_INSUFFICIENT_PERMISSIONS:
-                code = "INSUFFICIENT_PERMISSIONS";
-                break;
-            default:
-                code = "ERROR_" + error;
-                break;
+        // The on-device or offline recognizer lacks the language: move to the
+        // next path and retry there
+        if (isListening() && RecognizerErrors.isLanguageError(error) && backend == systemBackend
+                && !RecognizerCapabilities.PATH_PLATFORM.equals(systemBackend.getPath())) {
+            fallBackFromPath(code);
+            return;
+        }
+
+        // A busy or wedged recognizer does not come back by itself: recreate it
+        int reason = RecognizerErrors.recoveryReason(error, vadEndpointed);
+        if (isListening() && reason != RecognizerErrors.NOT_RECOVERABLE) {
+            recoverRecognizer(reason, code);
+            return;
+        }
+
+        handleRecognitionError(code);
+    }
+
+    @Override
+    public void onErrorCode(String code) {
+        Log.d(TAG, "Engine error: " + code);
+        if (recorder != null) recorder.errorCode(System.nanoTime(), code);
+        handleRecognitionError(code);
+    }
+
+    // Shared by all engines
+    private void handleRecognitionError(String code) {
+        if (!isListening() && currentCallback == null) {
+            return;
         }
+        attempts.transition(AttemptStateMachine.LISTENING, AttemptStateMachine.RESOLVING);
+
+        metrics.mark(LatencyMetrics.MARK_RESULT);
+        emitLifecycleEvent("error", code);
 
         sendErrorToCallback(code, "Speech recognition error");
     }
 
     @Override
-    public void onResults(Bundle results) {
+    public void onResults(ArrayList<String> matches, float[] confidences) {
         Log.d(TAG, "onResults");
-
-        if (!isListening && currentCallback == null) {
+        if (recorder != null) recorder.results(System.nanoTime(), matches, confidences);
+        if (!isListening() && currentCallback == null) {
             return;
         }
+        attempts.transition(AttemptStateMachine.LISTENING, AttemptStateMachine.RESOLVING);
 
-        ArrayList<String> matches =
-                results.getStringArrayList(SpeechRecognizer.RESULTS_RECOGNITION);
-        float[] confidences =
-                results.getFloatArray(SpeechRecognizer.CONFIDENCE_SCORES);
+        metrics.mark(LatencyMetrics.MARK_RESULT);
+        emitLifecycleEvent("results", null);
 
         Log.d(TAG, "matches=" + matches + " confidences=" + (confidences == null ? "null" : confidences.length));
 
-        if (matches == null || matches.isEmpty()) {
+        int best = ResultSelector.bestIndex(matches, confidences);
+        if (best == ResultSelector.NONE) {
             sendErrorToCallback("NO_MATCH", "No recognition result");
             return;
         }
 
-        String bestText = matches.get(0);
-        Float bestConf = null;
+        String bestText = matches.get(best);
+        Float bestConf = confidences != null && confidences.length == matches.size()
+                ? (Float) confidences[best]
+                : null;
 
-        if (confidences != null && confidences.length == matches.size()) {
-            int bestIndex = 0;
-            float bestScore = confidences[0];
-            for (int i = 1; i < confidences.length; i++) {
-                if (confidences[i] > bestScore) {
-                    bestScore = confidences[i];
-                    bestIndex = i;
-                }
-            }
-            bestText = matches.get(bestIndex);
-            bestConf = bestScore;
+        if (activeVocabulary != null) {
+            activeVocabulary.match(matches, confidences, expectedEntry);
+            sendSuccessToCallback(bestText, bestConf, matches, confidences, LetterResolver.NO_LETTER, false);
+            return;
         }
 
-        sendSuccessToCallback(bestText, bestConf, matches, confidences);
+        int letter = letterResolver.resolve(matches, confidences, expectedLetter);
+        learnFromAttempt(letter);
+
+        sendSuccessToCallback(bestText, bestConf, matches, confidences, letter, false);
     }
 
     @Override
-    public void onPartialResults(Bundle partialResults) {
-        // not used
+    public void onPartialResults(ArrayList<String> partials) {
+        if (recorder != null) recorder.partial(System.nanoTime(), partials);
+        if (!isListening() || (currentCallback == null && !attemptFromSession)
+                || !partialCommitGate.isEnabled() || inEchoGuard()) {
+            return;
+        }
+
+        if (partials == null || partials.isEmpty() || partials.get(0).isEmpty()) {
+            return;
+        }
+
+        int letter = LetterResolver.NO_LETTER;
+        if (activeVocabulary != null) {
+            int entry = activeVocabulary.match(partials, null, expectedEntry);
+            float score = entry != VocabularyIndex.NO_ENTRY ? activeVocabulary.getScore(entry) : 0f;
+            if (!partialCommitGate.offer(entry, score, expectedEntry)) {
+                return;
+            }
+        } else {
+            letter = letterResolver.resolve(partials, null, expectedLetter);
+            float score = letter != LetterResolver.NO_LETTER ? letterResolver.getScore(letter) : 0f;
+            if (!partialCommitGate.offer(letter, score, LetterResolver.letterIndex(expectedLetter))) {
+                return;
+            }
+        }
+
+        Log.d(TAG, "Early commit on partial: " + partials);
+        metrics.mark(LatencyMetrics.MARK_RESULT);
+
+        // Cancel rather than stop so the engine does not deliver onResults too
+        stopListeningInternal(true);
+        sendSuccessToCallback(partials.get(0), null, partials, null, letter, true);
     }
 
-    @Override
-    public void onEvent(int eventType, Bundle params) {
-        // not used
+    // Keyword engine ----------------------------------------------------------
+
+    // Must be called ONLY on main thread. Ends a template recording and answers it.
+    private void cancelRecording(String code, String message) {
+        if (keywordBackend != null) {
+            keywordBackend.cancel();
+        }
+        if (enrollCallback != null) {
+            enrollCallback.error(buildErrorJson(code, message));
+            enrollCallback = null;
+        }
+    }
+
+    private final KeywordRecognizerBackend.EnrollListener enrollListener =
+            new KeywordRecognizerBackend.EnrollListener() {
+                @Override
+                public void onEnrolled(short[] utterance) {
+                    saveKeywordTemplate(utterance);
+                    finishAttempt();
+                }
+
+                @Override
+                public void onEnrollError(String code) {
+                    Log.d(TAG, "Keyword enrollment error: " + code);
+                    if (enrollCallback != null) {
+                        enrollCallback.error(buildErrorJson(code, "Template recording failed"));
+                        enrollCallback = null;
+                    }
+                    finishAttempt();
+                }
+            };
+
+    // Records one utterance of args[0] and stores it as a keyword template
+    private boolean handleRecordKeywordTemplate(final JSONArray args, final CallbackContext callbackContext) {
+        if (!hasAudioPermission()) {
+            callbackContext.error(buildErrorJson("PERMISSION_DENIED", "Microphone permission not granted"));
+            return true;
+        }
+
+        final String letter = args != null ? args.optString(0, "") : "";
+        final int index = letter.length() == 1 ? LetterResolver.letterIndex(letter.charAt(0)) : LetterResolver.NO_LETTER;
+        if (index == LetterResolver.NO_LETTER) {
+            callbackContext.error(buildErrorJson("INVALID_LETTER", "Expected a single letter A-Z"));
+            return true;
+        }
+
+        // A recording is an attempt of its own: starts queue behind it and it
+        // queues behind them, so only one of them holds the microphone
+        cordova.getActivity().runOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                if (!attempts.transition(AttemptStateMachine.IDLE, AttemptStateMachine.ARMING)) {
+                    offerRequest(new PendingRequest(this, callbackContext));
+                    return;
+                }
+                attempts.transition(AttemptStateMachine.ARMING, AttemptStateMachine.LISTENING);
+                enrollCallback = callbackContext;
+                enrollLetter = index;
+                getKeywordBackend().enroll();
+            }
+        });
+        return true;
+    }
+
+    // Must be called ONLY on main thread
+    private void saveKeywordTemplate(final short[] utterance) {
+        final CallbackContext callback = enrollCallback;
+        final int letter = enrollLetter;
+        enrollCallback = null;
+        if (callback == null) return;
+
+        final File dir = getKeywordTemplatesDir();
+        cordova.getThreadPool().execute(new Runnable() {
+            @Override
+            public void run() {
+                char c = LetterResolver.letterChar(letter);
+                try {
+                    if (!dir.isDirectory() && !dir.mkdirs()) {
+                        throw new IOException("Cannot create " + dir);
+                    }
+                    // First free name of the form "B.wav", "B_2.wav", ...
+                    File file = new File(dir, c + ".wav");
+                    for (int n = 2; file.exists(); n++) {
+                        file = new File(dir, c + "_" + n + ".wav");
+                    }
+                    WavIO.write(file, utterance, 0, utterance.length, KeywordSpotter.SAMPLE_RATE);
+
+                    int count;
+                    synchronized (keywordSpotter) {
+                        keywordSpotter.addTemplate(letter, utterance, KeywordSpotter.SAMPLE_RATE);
+                        count = keywordSpotter.templateCount();
+                    }
+
+                    JSONObject json = new JSONObject();
+                    json.put("letter", String.valueOf(c));
+                    json.put("file", file.getAbsolutePath());
+                    json.put("durationMs", utterance.length * 1000 / KeywordSpotter.SAMPLE_RATE);
+                    json.put("templateCount", count);
+                    callback.success(json.toString());
+                } catch (IOException e) {
+                    Log.e(TAG, "Failed to save keyword template", e);
+                    callback.error(buildErrorJson("KWS_TEMPLATE_WRITE_FAILED", "Failed to save template"));
+                } catch (JSONException e) {
+                    callback.success();
+                }
+            }
+        });
     }
 
     // Permission result --------------------------------------------------------
@@ -517,28 +2989,7 @@ public class LimeTunaSpeech extends CordovaPlugin implements RecognitionListener
 
         if (pendingInitCallback != null) {
             if (granted) {
-                cordova.getActivity().runOnUiThread(new Runnable() {
-                    @Override
-                    public void run() {
-                        if (!SpeechRecognizer.isRecognitionAvailable(
-                                cordova.getActivity().getApplicationContext())) {
-                            pendingInitCallback.error(buildErrorJson(
-                                    "ENGINE_UNAVAILABLE",
-                                    "Speech recognition not available"
-                            ));
-                        } else {
-                            createRecognizerIfNeededOnMainThread();
-                            if (speechRecognizer == null) {
-                                pendingInitCallback.error(buildErrorJson(
-                                        "ENGINE_CREATE_FAILED",
-                                        "Failed to create SpeechRecognizer"
-                                ));
-                            } else {
-                                pendingInitCallback.success();
-                            }
-                        }
-                    }
-                });
+                completeInit(pendingInitCallback);
             } else {
                 pendingInitCallback.error(buildErrorJson("PERMISSION_DENIED", "Microphone permission denied"));
             }
@@ -546,6 +2997,124 @@ public class LimeTunaSpeech extends CordovaPlugin implements RecognitionListener
         }
     }
 
+    // Lifecycle ----------------------------------------------------------------
+
+    @Override
+    public void onPause(boolean multitasking) {
+        super.onPause(multitasking);
+        releaseForBackground();
+    }
+
+    @Override
+    public void onStop() {
+        super.onStop();
+        releaseForBackground();
+    }
+
+    @Override
+    public void onResume(boolean multitasking) {
+        super.onResume(multitasking);
+        paused = false;
+        if (muteOnResume) {
+            muteOnResume = false;
+            applyBeepsMuted(true);
+        }
+        schedulePrewarm();
+    }
+
+    // Must be called ONLY on main thread. Ends whatever is listening with
+    // PAUSED and frees the recognizer and mic; the session, the event
+    // channel and the loaded state stay, so the app carries on after resume.
+    private void releaseForBackground() {
+        if (paused) return;
+        paused = true;
+        releaseCount++;
+
+        if (prewarmScheduled) {
+            Looper.myQueue().removeIdleHandler(prewarmIdle);
+            prewarmScheduled = false;
+        }
+        handler.removeCallbacks(sessionRearm);
+        if (pendingStart != null) {
+            handler.removeCallbacks(pendingStart);
+            pendingStart = null;
+            finishAttempt();
+            if (pendingStartCallback != null) {
+                pendingStartCallback.error(buildErrorJson("PAUSED", "App went to the background"));
+                pendingStartCallback = null;
+            }
+        }
+        for (PendingRequest waiting : attempts.drain()) {
+            waiting.callback.error(buildErrorJson("PAUSED", "App went to the background"));
+        }
+        cancelRecording("PAUSED", "Template recording stopped");
+        boolean answer = (currentCallback != null || attemptFromSession) && isListening();
+        stopListeningInternal(true);
+        if (answer) {
+            sendErrorToCallback("PAUSED", "App went to the background");
+        }
+        attemptFromSession = false;
+
+        // The destroyed recognizer reports nothing more
+        cancelEchoPending = false;
+        if (systemBackend != null) {
+            systemBackend.destroy();
+        }
+        if (keywordBackend != null) {
+            keywordBackend.destroy();
+        }
+        if (simulatorBackend != null) {
+            simulatorBackend.destroy();
+        }
+        if (feedbackPlayer != null) {
+            feedbackPlayer.stop();
+        }
+
+        // Other apps get their ring and notification volumes back
+        if (volumesMuted) {
+            muteOnResume = true;
+            applyBeepsMuted(false);
+        }
+
+        flushRms();
+        lexiconExecutor.execute(lexiconFlush);
+        if (analytics != null) {
+            handler.removeCallbacks(analyticsFlush);
+            analytics.flush();
+        }
+        if (recorder != null) {
+            recorder.flush(null);
+        }
+        Log.d(TAG, "Released recognizer for background");
+    }
+
+    // Must be called ONLY on main thread
+    private void schedulePrewarm() {
+        if (prewarmScheduled || paused) return;
+        prewarmScheduled = true;
+        Looper.myQueue().addIdleHandler(prewarmIdle);
+    }
+
+    // Must be called ONLY on main thread. Creates the recognizer ahead of the
+    // first start; skipped while an attempt runs or the mic is not granted.
+    private void prewarmOnMainThread() {
+        if (paused || !attempts.isIdle() || !hasAudioPermission()) return;
+        if (ENGINE_SYSTEM.equals(engine) && systemBackend != null && systemBackend.isPrepared()) return;
+
+        long startNanos = System.nanoTime();
+        if (ENGINE_SYSTEM.equals(engine)) {
+            applyRecognizerPath(false);
+        }
+        String engineError = prepareEngineOnMainThread();
+        if (engineError != null) {
+            Log.w(TAG, "Prewarm failed: " + engineError);
+            return;
+        }
+        prewarmCount++;
+        lastPrewarmMs = (System.nanoTime() - startNanos) / 1000000L;
+        Log.d(TAG, "Prewarmed " + engine + " engine in " + lastPrewarmMs + " ms");
+    }
+
     // Cleanup ------------------------------------------------------------------
 
     @Override
@@ -558,19 +3127,71 @@ public class LimeTunaSpeech extends CordovaPlugin implements RecognitionListener
     public void onDestroy() {
         super.onDestroy();
         destroyRecognizer();
-    }
-
-    private void destroyRecognizer() {
-        if (speechRecognizer != null) {
+        handler.removeCallbacks(reprobe);
+        handler.removeCallbacks(pathUpdate);
+        if (packageReceiver != null) {
             try {
-                speechRecognizer.destroy();
+                cordova.getActivity().getApplicationContext().unregisterReceiver(packageReceiver);
             } catch (Exception e) {
-                Log.w(TAG, "Error destroying recognizer", e);
+                Log.w(TAG, "Package receiver already gone", e);
             }
-            speechRecognizer = null;
+            packageReceiver = null;
+        }
+        if (feedbackPlayer != null) {
+            feedbackPlayer.release();
+            feedbackPlayer = null;
+        }
+        if (recorder != null) {
+            recorder.close();
+            recorder = null;
+        }
+        handler.removeCallbacks(analyticsFlush);
+        if (analytics != null) {
+            analytics.close();
+            analytics = null;
         }
+        // Queued work, including the final lexicon flush, still runs
+        lexiconExecutor.shutdown();
+        resultExecutor.shutdown();
+    }
+
+    private void destroyRecognizer() {
+        if (systemBackend != null) {
+            systemBackend.destroy();
+        }
+        if (keywordBackend != null) {
+            keywordBackend.destroy();
+        }
+        if (simulatorBackend != null) {
+            simulatorBackend.destroy();
+        }
+        enrollCallback = null;
+        lexiconExecutor.execute(lexiconFlush);
         currentCallback = null;
-        isListening = false;
+        attempts.finish();
+        attempts.drain();
+        cancelEchoPending = false;
+        handler.removeCallbacks(sessionRearm);
+        handler.removeCallbacks(echoRestart);
+        handler.removeCallbacks(recoveryRetry);
+        handler.removeCallbacks(watchdog);
+        restartPending = false;
+        if (pendingStart != null) {
+            handler.removeCallbacks(pendingStart);
+            pendingStart = null;
+            pendingStartCallback = null;
+        }
+        feedbackEndNanos = 0L;
+        attemptFromSession = false;
+        sessionCallback = null;
+        handler.removeCallbacks(rmsFlush);
+        rmsFlushScheduled = false;
+        rmsBatcher.clear();
+        eventsCallback = null;
+
+        if (feedbackPlayer != null) {
+            feedbackPlayer.stop();
+        }
 
         // Safety: restore volumes if we die while muted
         applyBeepsMuted(false);
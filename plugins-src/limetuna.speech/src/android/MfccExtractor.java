@@ -0,0 +1,194 @@
+package com.limetuna.speech;
+
+/**
+ * MFCC front end for the keyword spotter, in plain Java.
+ *
+ * 25 ms Hamming frames every 10 ms, 512-point FFT, 26 mel filters, log,
+ * DCT-II. c0 is dropped and cepstral mean normalization is applied per
+ * utterance, so features are insensitive to loudness and microphone
+ * coloration. All working buffers are allocated once per instance.
+ *
+ * Not thread-safe.
+ */
+final class MfccExtractor {
+
+    static final int SAMPLE_RATE = 16000;
+    static final int FRAME_LENGTH = 400;
+    static final int FRAME_SHIFT = 160;
+    static final int DIMS = 12;
+
+    private static final int FFT_SIZE = 512;
+    private static final int MEL_FILTERS = 26;
+    private static final float PRE_EMPHASIS = 0.97f;
+    private static final double MEL_LOW_HZ = 20.0;
+    private static final double MEL_HIGH_HZ = 7600.0;
+
+    private final float[] window = new float[FRAME_LENGTH];
+    private final int[] bitReverse = new int[FFT_SIZE];
+    private final float[] cosTable = new float[FFT_SIZE / 2];
+    private final float[] sinTable = new float[FFT_SIZE / 2];
+    private final int[] melStart = new int[MEL_FILTERS];
+    private final float[][] melWeights = new float[MEL_FILTERS][];
+    private final float[][] dct = new float[DIMS][MEL_FILTERS];
+
+    private final float[] re = new float[FFT_SIZE];
+    private final float[] im = new float[FFT_SIZE];
+    private final float[] power = new float[FFT_SIZE / 2 + 1];
+    private final float[] melEnergies = new float[MEL_FILTERS];
+
+    MfccExtractor() {
+        for (int i = 0; i < FRAME_LENGTH; i++) {
+            window[i] = (float) (0.54 - 0.46 * Math.cos(2 * Math.PI * i / (FRAME_LENGTH - 1)));
+        }
+
+        int bits = Integer.numberOfTrailingZeros(FFT_SIZE);
+        for (int i = 0; i < FFT_SIZE; i++) {
+            bitReverse[i] = Integer.reverse(i) >>> (32 - bits);
+        }
+        for (int i = 0; i < FFT_SIZE / 2; i++) {
+            cosTable[i] = (float) Math.cos(-2 * Math.PI * i / FFT_SIZE);
+            sinTable[i] = (float) Math.sin(-2 * Math.PI * i / FFT_SIZE);
+        }
+
+        // Triangular filters evenly spaced on the mel scale
+        double melLow = hzToMel(MEL_LOW_HZ);
+        double melHigh = hzToMel(MEL_HIGH_HZ);
+        int[] bin = new int[MEL_FILTERS + 2];
+        for (int i = 0; i < bin.length; i++) {
+            double hz = melToHz(melLow + (melHigh - melLow) * i / (MEL_FILTERS + 1));
+            bin[i] = (int) Math.floor((FFT_SIZE + 1) * hz / SAMPLE_RATE);
+        }
+        for (int m = 0; m < MEL_FILTERS; m++) {
+            int left = bin[m];
+            int center = Math.max(bin[m + 1], left + 1);
+            int right = Math.max(bin[m + 2], center + 1);
+            melStart[m] = left;
+            float[] w = new float[right - left + 1];
+            for (int k = left; k <= right; k++) {
+                w[k - left] = k <= center
+                        ? (float) (k - left) / (center - left)
+                        : (float) (right - k) / (right - center);
+            }
+            melWeights[m] = w;
+        }
+
+        for (int c = 0; c < DIMS; c++) {
+            for (int m = 0; m < MEL_FILTERS; m++) {
+                dct[c][m] = (float) Math.cos(Math.PI * (c + 1) * (m + 0.5) / MEL_FILTERS);
+            }
+        }
+    }
+
+    static int frameCount(int samples) {
+        return samples < FRAME_LENGTH ? 0 : 1 + (samples - FRAME_LENGTH) / FRAME_SHIFT;
+    }
+
+    /**
+     * Computes features for pcm[start, end) into out (frames x DIMS, row-major)
+     * and returns the number of frames. out must hold frameCount(end - start)
+     * rows.
+     */
+    int extract(short[] pcm, int start, int end, float[] out) {
+        int frames = frameCount(end - start);
+
+        for (int f = 0; f < frames; f++) {
+            int base = start + f * FRAME_SHIFT;
+
+            float prev = base > 0 ? pcm[base - 1] : 0f;
+            for (int i = 0; i < FRAME_LENGTH; i++) {
+                float x = pcm[base + i];
+                re[i] = (x - PRE_EMPHASIS * prev) * window[i];
+                im[i] = 0f;
+                prev = x;
+            }
+            for (int i = FRAME_LENGTH; i < FFT_SIZE; i++) {
+                re[i] = 0f;
+                im[i] = 0f;
+            }
+
+            fft();
+
+            for (int k = 0; k <= FFT_SIZE / 2; k++) {
+                power[k] = re[k] * re[k] + im[k] * im[k];
+            }
+
+            for (int m = 0; m < MEL_FILTERS; m++) {
+                float[] w = melWeights[m];
+                int s = melStart[m];
+                float e = 0f;
+                for (int k = 0; k < w.length && s + k < power.length; k++) {
+                    e += w[k] * power[s + k];
+                }
+                melEnergies[m] = (float) Math.log(e + 1e-6f);
+            }
+
+            int row = f * DIMS;
+            for (int c = 0; c < DIMS; c++) {
+                float acc = 0f;
+                float[] basis = dct[c];
+                for (int m = 0; m < MEL_FILTERS; m++) {
+                    acc += basis[m] * melEnergies[m];
+                }
+                out[row + c] = acc;
+            }
+        }
+
+        // Cepstral mean normalization
+        if (frames > 0) {
+            for (int c = 0; c < DIMS; c++) {
+                float mean = 0f;
+                for (int f = 0; f < frames; f++) {
+                    mean += out[f * DIMS + c];
+                }
+                mean /= frames;
+                for (int f = 0; f < frames; f++) {
+                    out[f * DIMS + c] -= mean;
+                }
+            }
+        }
+
+        return frames;
+    }
+
+    // In-place iterative radix-2 FFT over re/im
+    private void fft() {
+        for (int i = 0; i < FFT_SIZE; i++) {
+            int j = bitReverse[i];
+            if (j > i) {
+                float t = re[i];
+                re[i] = re[j];
+                re[j] = t;
+                t = im[i];
+                im[i] = im[j];
+                im[j] = t;
+            }
+        }
+
+        for (int size = 2; size <= FFT_SIZE; size <<= 1) {
+            int half = size >> 1;
+            int step = FFT_SIZE / size;
+            for (int i = 0; i < FFT_SIZE; i += size) {
+                for (int k = 0; k < half; k++) {
+                    float wr = cosTable[k * step];
+                    float wi = sinTable[k * step];
+                    int a = i + k;
+                    int b = a + half;
+                    float tr = wr * re[b] - wi * im[b];
+                    float ti = wr * im[b] + wi * re[b];
+                    re[b] = re[a] - tr;
+                    im[b] = im[a] - ti;
+                    re[a] += tr;
+                    im[a] += ti;
+                }
+            }
+        }
+    }
+
+    private static double hzToMel(double hz) {
+        return 2595.0 * Math.log10(1.0 + hz / 700.0);
+    }
+
+    private static double melToHz(double mel) {
+        return 700.0 * (Math.pow(10.0, mel / 2595.0) - 1.0);
+    }
+}
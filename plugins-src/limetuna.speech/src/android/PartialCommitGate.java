@@ -0,0 +1,60 @@
+package com.limetuna.speech;
+
+/**
+ * Decides when partial results are stable enough to commit a letter early.
+ *
+ * A partial counts towards the streak when it resolves to the expected letter
+ * with at least minScore (LetterResolver scale, expected bias included). The
+ * gate opens once requiredPartials consecutive partials agree.
+ */
+final class PartialCommitGate {
+
+    static final int DEFAULT_REQUIRED_PARTIALS = 2;
+    static final float DEFAULT_MIN_SCORE = 4f;
+
+    private boolean enabled;
+    private int requiredPartials = DEFAULT_REQUIRED_PARTIALS;
+    private float minScore = DEFAULT_MIN_SCORE;
+
+    private int streak;
+
+    void arm(boolean enabled, int requiredPartials, float minScore) {
+        this.enabled = enabled;
+        this.requiredPartials = Math.max(1, requiredPartials);
+        this.minScore = minScore;
+        this.streak = 0;
+    }
+
+    void disarm() {
+        enabled = false;
+        streak = 0;
+    }
+
+    boolean isEnabled() {
+        return enabled;
+    }
+
+    int getRequiredPartials() {
+        return requiredPartials;
+    }
+
+    float getMinScore() {
+        return minScore;
+    }
+
+    /**
+     * Feeds one resolved partial. Returns true when the letter should be
+     * committed now.
+     */
+    boolean offer(int letter, float score, int expectedIndex) {
+        if (!enabled) return false;
+
+        if (letter == LetterResolver.NO_LETTER || letter != expectedIndex || score < minScore) {
+            streak = 0;
+            return false;
+        }
+
+        streak++;
+        return streak >= requiredPartials;
+    }
+}
@@ -0,0 +1,272 @@
+package com.limetuna.speech;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * A locale's spoken forms of the letters, plus small target vocabularies,
+ * in a compact binary asset (built by src/jvm/PhoneticPackTool):
+ *
+ *   magic "LTPH" (i32), version (u16), locale, section count (u8),
+ *   sections: type (u8), name, offset (i32), length (i32)
+ *
+ * followed by the section bodies. LETTERS holds 26 form lists, VOCABULARY
+ * an entry count (u16) and per entry id, text and a form list. Strings are
+ * a u16 byte count plus UTF-8, lists a u8 count plus strings; big-endian.
+ *
+ * read() only parses the header and section table over the given buffer
+ * (typically the mapped asset); a section is decoded when it is first
+ * asked for. Readers skip section types they do not know.
+ *
+ * Plain Java, no Android types. Thread-safe once read.
+ */
+final class PhoneticPack {
+
+    static final int MAGIC = 0x4C545048; // "LTPH"
+    static final short VERSION = 1;
+
+    static final int SECTION_LETTERS = 1;
+    static final int SECTION_VOCABULARY = 2;
+
+    // Under the app's assets; the plugin copies packs there
+    static final String ASSET_DIR = "www/limetuna/phonetics";
+    static final String EXTENSION = ".ltph";
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    final String locale;
+
+    private final ByteBuffer data;
+    private final int[] sectionType;
+    private final String[] sectionName;
+    private final int[] sectionOffset;
+    private final int[] sectionLength;
+
+    private String[][] letters;
+
+    private PhoneticPack(String locale, ByteBuffer data, int[] type, String[] name,
+                         int[] offset, int[] length) {
+        this.locale = locale;
+        this.data = data;
+        this.sectionType = type;
+        this.sectionName = name;
+        this.sectionOffset = offset;
+        this.sectionLength = length;
+    }
+
+    static PhoneticPack read(ByteBuffer data) throws IOException {
+        ByteBuffer buf = data.duplicate();
+        try {
+            if (buf.getInt() != MAGIC) throw new IOException("Not a phonetic pack");
+            short version = buf.getShort();
+            if (version != VERSION) throw new IOException("Unsupported pack version " + version);
+            String locale = getString(buf);
+            int count = buf.get() & 0xff;
+            int[] type = new int[count];
+            String[] name = new String[count];
+            int[] offset = new int[count];
+            int[] length = new int[count];
+            for (int i = 0; i < count; i++) {
+                type[i] = buf.get() & 0xff;
+                name[i] = getString(buf);
+                offset[i] = buf.getInt();
+                length[i] = buf.getInt();
+                if (offset[i] < 0 || length[i] < 0 || offset[i] > buf.limit() - length[i]) {
+                    throw new IOException("Section " + name[i] + " out of bounds");
+                }
+            }
+            return new PhoneticPack(locale, data, type, name, offset, length);
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Truncated phonetic pack");
+        }
+    }
+
+    /**
+     * Asset names to try for a BCP 47 language, most specific first:
+     * "fr-CA" gives "fr-ca" then "fr".
+     */
+    static List<String> candidates(String language) {
+        List<String> names = new ArrayList<String>();
+        String tag = language != null ? language.replace('_', '-').toLowerCase(Locale.ROOT) : "";
+        while (tag.length() > 0) {
+            names.add(tag);
+            int dash = tag.lastIndexOf('-');
+            tag = dash > 0 ? tag.substring(0, dash) : "";
+        }
+        return names;
+    }
+
+    /** The 26 letters' forms, or null when the pack has none. */
+    synchronized String[][] letterForms() throws IOException {
+        if (letters != null) return letters;
+        int s = find(SECTION_LETTERS, null);
+        if (s < 0) return null;
+        ByteBuffer buf = section(s);
+        try {
+            String[][] forms = new String[LetterResolver.LETTER_COUNT][];
+            for (int l = 0; l < forms.length; l++) {
+                forms[l] = getStrings(buf);
+            }
+            letters = forms;
+            return forms;
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Truncated letters section");
+        }
+    }
+
+    List<String> vocabularyNames() {
+        List<String> names = new ArrayList<String>();
+        for (int i = 0; i < sectionType.length; i++) {
+            if (sectionType[i] == SECTION_VOCABULARY) names.add(sectionName[i]);
+        }
+        return names;
+    }
+
+    boolean hasVocabulary(String name) {
+        return find(SECTION_VOCABULARY, name) >= 0;
+    }
+
+    /** Decodes a vocabulary section; null when the pack has no such name. */
+    List<VocabularyIndex.Entry> vocabulary(String name) throws IOException {
+        int s = find(SECTION_VOCABULARY, name);
+        if (s < 0) return null;
+        ByteBuffer buf = section(s);
+        try {
+            int n = buf.getShort() & 0xffff;
+            List<VocabularyIndex.Entry> entries = new ArrayList<VocabularyIndex.Entry>(n);
+            for (int i = 0; i < n; i++) {
+                String id = getString(buf);
+                String text = getString(buf);
+                List<String> forms = new ArrayList<String>();
+                for (String f : getStrings(buf)) {
+                    forms.add(f);
+                }
+                entries.add(new VocabularyIndex.Entry(id, text, forms));
+            }
+            return entries;
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Truncated vocabulary " + name);
+        }
+    }
+
+    int byteSize() {
+        return data.limit();
+    }
+
+    private int find(int type, String name) {
+        for (int i = 0; i < sectionType.length; i++) {
+            if (sectionType[i] == type && (name == null || name.equals(sectionName[i]))) return i;
+        }
+        return -1;
+    }
+
+    private ByteBuffer section(int s) {
+        ByteBuffer buf = data.duplicate();
+        buf.limit(sectionOffset[s] + sectionLength[s]);
+        buf.position(sectionOffset[s]);
+        return buf.slice();
+    }
+
+    private static String getString(ByteBuffer buf) {
+        byte[] bytes = new byte[buf.getShort() & 0xffff];
+        buf.get(bytes);
+        return new String(bytes, UTF_8);
+    }
+
+    private static String[] getStrings(ByteBuffer buf) {
+        String[] strings = new String[buf.get() & 0xff];
+        for (int i = 0; i < strings.length; i++) {
+            strings[i] = getString(buf);
+        }
+        return strings;
+    }
+
+    // ---- Encoding (PhoneticPackTool) -------------------------------------------
+
+    /**
+     * Builds a pack. letters may be null; vocabularies maps a name to its
+     * entries, in the order they should be stored.
+     */
+    static byte[] encode(String locale, String[][] letters,
+                         Map<String, List<VocabularyIndex.Entry>> vocabularies) throws IOException {
+        List<Integer> types = new ArrayList<Integer>();
+        List<String> names = new ArrayList<String>();
+        List<byte[]> bodies = new ArrayList<byte[]>();
+
+        if (letters != null) {
+            if (letters.length != LetterResolver.LETTER_COUNT) {
+                throw new IOException("Expected 26 letters, got " + letters.length);
+            }
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(body);
+            for (String[] forms : letters) {
+                putStrings(out, forms);
+            }
+            types.add(SECTION_LETTERS);
+            names.add("letters");
+            bodies.add(body.toByteArray());
+        }
+        for (Map.Entry<String, List<VocabularyIndex.Entry>> v : vocabularies.entrySet()) {
+            List<VocabularyIndex.Entry> entries = v.getValue();
+            if (entries.size() > 0xffff) throw new IOException("Too many entries in " + v.getKey());
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(body);
+            out.writeShort(entries.size());
+            for (VocabularyIndex.Entry e : entries) {
+                putString(out, e.id);
+                putString(out, e.text);
+                putStrings(out, e.forms.toArray(new String[0]));
+            }
+            types.add(SECTION_VOCABULARY);
+            names.add(v.getKey());
+            bodies.add(body.toByteArray());
+        }
+        if (types.size() > 0xff) throw new IOException("Too many sections");
+
+        ByteArrayOutputStream header = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(header);
+        out.writeInt(MAGIC);
+        out.writeShort(VERSION);
+        putString(out, locale);
+        out.writeByte(types.size());
+        int tableBytes = 0;
+        for (String name : names) {
+            tableBytes += 1 + 2 + name.getBytes(UTF_8).length + 4 + 4;
+        }
+        int offset = header.size() + tableBytes;
+        for (int i = 0; i < types.size(); i++) {
+            out.writeByte(types.get(i));
+            putString(out, names.get(i));
+            out.writeInt(offset);
+            out.writeInt(bodies.get(i).length);
+            offset += bodies.get(i).length;
+        }
+        for (byte[] body : bodies) {
+            out.write(body);
+        }
+        return header.toByteArray();
+    }
+
+    private static void putString(DataOutputStream out, String s) throws IOException {
+        byte[] bytes = s.getBytes(UTF_8);
+        if (bytes.length > 0xffff) throw new IOException("String too long");
+        out.writeShort(bytes.length);
+        out.write(bytes);
+    }
+
+    private static void putStrings(DataOutputStream out, String[] strings) throws IOException {
+        if (strings.length > 0xff) throw new IOException("Too many forms");
+        out.writeByte(strings.length);
+        for (String s : strings) {
+            putString(out, s);
+        }
+    }
+}
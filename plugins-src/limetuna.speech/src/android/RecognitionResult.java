@@ -0,0 +1,248 @@
+package com.limetuna.speech;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+import java.util.List;
+
+/**
+ * Immutable snapshot of one recognition outcome.
+ *
+ * Taken on the main thread (copying the resolver's per-letter scores and the
+ * VAD decisions), so the payload can be encoded on a background thread while
+ * the main looper moves on.
+ *
+ * Binary layout (little-endian), version 1:
+ *   u8 version, u8 flags (1 committedEarly, 2 has confidence, 4 vad endpointed,
+ *   8 has target),
+ *   i8 letter (-1 none), u8 n-best count,
+ *   f32 confidence, f32[26] letterScores,
+ *   i32 vad onsetMs, i32 vad speechEndMs, i32 vad endpointMs, f32 vad floor,
+ *   f32[count] confidences (NaN when the engine gave none),
+ *   then count + 1 strings (text first) as u16 byte length + UTF-8 bytes,
+ *   then with a target: strings vocabulary, id, text ("" when no match),
+ *   f32 score, u8 runner count and per runner strings id, text + f32 score.
+ */
+final class RecognitionResult {
+
+    static final int FORMAT_JSON = 0;
+    static final int FORMAT_OBJECT = 1;
+    static final int FORMAT_BINARY = 2;
+
+    static final int BINARY_VERSION = 1;
+
+    private static final int FLAG_COMMITTED_EARLY = 1;
+    private static final int FLAG_HAS_CONFIDENCE = 2;
+    private static final int FLAG_VAD_ENDPOINTED = 4;
+    private static final int FLAG_HAS_TARGET = 8;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final int MAX_STRING_BYTES = 0xffff;
+
+    final String text;
+    final Float confidence;
+    final List<String> all;
+    final float[] confidences;
+    final int letter;
+    final float[] letterScores;
+    final boolean committedEarly;
+
+    final boolean vadEndpointed;
+    final long vadOnsetMs;
+    final long vadSpeechEndMs;
+    final long vadEndpointMs;
+    final float vadFloor;
+
+    // startTarget only: best entry of the vocabulary and its runners-up
+    final VocabularyIndex.Match target;
+
+    RecognitionResult(String text, Float confidence, List<String> all, float[] confidences,
+                      int letter, float[] letterScores, boolean committedEarly,
+                      boolean vadEndpointed, EnergyVad vad, VocabularyIndex.Match target) {
+        this.text = text != null ? text : "";
+        this.confidence = confidence;
+        this.all = all;
+        this.confidences = confidences;
+        this.letter = letter;
+        this.letterScores = letterScores;
+        this.committedEarly = committedEarly;
+        this.vadEndpointed = vadEndpointed;
+        this.vadOnsetMs = vad.getOnsetMs();
+        this.vadSpeechEndMs = vad.getSpeechEndMs();
+        this.vadEndpointMs = vad.getEndpointMs();
+        this.vadFloor = vad.getFloor();
+        this.target = target;
+    }
+
+    /** Snapshot carrying the resolver's current per-letter scores. */
+    static RecognitionResult snapshot(String text, Float confidence, List<String> all, float[] confidences,
+                                      int letter, LetterResolver resolver, boolean committedEarly,
+                                      boolean vadEndpointed, EnergyVad vad) {
+        return snapshot(text, confidence, all, confidences, letter, resolver,
+                committedEarly, vadEndpointed, vad, null);
+    }
+
+    /** As above with a target match; resolver is null when letters were not resolved. */
+    static RecognitionResult snapshot(String text, Float confidence, List<String> all, float[] confidences,
+                                      int letter, LetterResolver resolver, boolean committedEarly,
+                                      boolean vadEndpointed, EnergyVad vad, VocabularyIndex.Match target) {
+        float[] scores = new float[LetterResolver.LETTER_COUNT];
+        if (resolver != null) {
+            for (int i = 0; i < LetterResolver.LETTER_COUNT; i++) {
+                scores[i] = resolver.getScore(i);
+            }
+        }
+        return new RecognitionResult(text, confidence, all, confidences, letter, scores,
+                committedEarly, vadEndpointed, vad, target);
+    }
+
+    static int parseFormat(String name) {
+        if ("object".equals(name)) return FORMAT_OBJECT;
+        if ("binary".equals(name)) return FORMAT_BINARY;
+        if ("json".equals(name)) return FORMAT_JSON;
+        return -1;
+    }
+
+    JSONObject toJson() throws JSONException {
+        JSONObject json = new JSONObject();
+        json.put("text", text);
+        json.put("confidence", confidence != null ? (Object) confidence : JSONObject.NULL);
+
+        if (all != null) {
+            json.put("allResults", new JSONArray(all));
+        }
+        if (confidences != null) {
+            JSONArray confArr = new JSONArray();
+            for (float c : confidences) {
+                confArr.put(c);
+            }
+            json.put("allConfidences", confArr);
+        }
+
+        json.put("normalizedLetter", letter != LetterResolver.NO_LETTER
+                ? String.valueOf(LetterResolver.letterChar(letter))
+                : JSONObject.NULL);
+        JSONArray scoreArr = new JSONArray();
+        for (float s : letterScores) {
+            scoreArr.put(s);
+        }
+        json.put("letterScores", scoreArr);
+        json.put("committedEarly", committedEarly);
+
+        JSONObject vadJson = new JSONObject();
+        vadJson.put("endpointed", vadEndpointed);
+        vadJson.put("onsetMs", vadOnsetMs);
+        vadJson.put("speechEndMs", vadSpeechEndMs);
+        vadJson.put("endpointMs", vadEndpointMs);
+        vadJson.put("floor", vadFloor);
+        json.put("vad", vadJson);
+
+        if (target != null) {
+            JSONObject targetJson = new JSONObject();
+            targetJson.put("vocabulary", target.vocabulary);
+            targetJson.put("id", target.id != null ? (Object) target.id : JSONObject.NULL);
+            targetJson.put("text", target.text != null ? (Object) target.text : JSONObject.NULL);
+            targetJson.put("score", target.score);
+            JSONArray runners = new JSONArray();
+            for (int i = 0; i < target.runnerIds.length; i++) {
+                JSONObject runner = new JSONObject();
+                runner.put("id", target.runnerIds[i]);
+                runner.put("text", target.runnerTexts[i]);
+                runner.put("score", target.runnerScores[i]);
+                runners.put(runner);
+            }
+            targetJson.put("runnersUp", runners);
+            json.put("target", targetJson);
+        }
+
+        return json;
+    }
+
+    byte[] toBinary() {
+        int count = all != null ? Math.min(all.size(), 255) : 0;
+        byte[][] strings = new byte[count + 1][];
+        strings[0] = utf8(text);
+        int size = 4 + 4 + 4 * LetterResolver.LETTER_COUNT + 16 + 4 * count + 2 + strings[0].length;
+        for (int i = 0; i < count; i++) {
+            strings[i + 1] = utf8(all.get(i));
+            size += 2 + strings[i + 1].length;
+        }
+
+        byte[][] targetStrings = null;
+        int runners = 0;
+        if (target != null) {
+            runners = Math.min(target.runnerIds.length, 255);
+            targetStrings = new byte[3 + 2 * runners][];
+            targetStrings[0] = utf8(target.vocabulary);
+            targetStrings[1] = utf8(target.id);
+            targetStrings[2] = utf8(target.text);
+            for (int i = 0; i < runners; i++) {
+                targetStrings[3 + 2 * i] = utf8(target.runnerIds[i]);
+                targetStrings[4 + 2 * i] = utf8(target.runnerTexts[i]);
+            }
+            size += 4 + 1 + 4 * runners;
+            for (byte[] s : targetStrings) {
+                size += 2 + s.length;
+            }
+        }
+
+        int flags = (committedEarly ? FLAG_COMMITTED_EARLY : 0)
+                | (confidence != null ? FLAG_HAS_CONFIDENCE : 0)
+                | (vadEndpointed ? FLAG_VAD_ENDPOINTED : 0)
+                | (target != null ? FLAG_HAS_TARGET : 0);
+
+        ByteBuffer buf = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+        buf.put((byte) BINARY_VERSION);
+        buf.put((byte) flags);
+        buf.put((byte) letter);
+        buf.put((byte) count);
+        buf.putFloat(confidence != null ? confidence : Float.NaN);
+        for (int i = 0; i < LetterResolver.LETTER_COUNT; i++) {
+            buf.putFloat(letterScores[i]);
+        }
+        buf.putInt((int) vadOnsetMs);
+        buf.putInt((int) vadSpeechEndMs);
+        buf.putInt((int) vadEndpointMs);
+        buf.putFloat(vadFloor);
+        boolean useConfs = confidences != null && confidences.length >= count;
+        for (int i = 0; i < count; i++) {
+            buf.putFloat(useConfs ? confidences[i] : Float.NaN);
+        }
+        for (byte[] s : strings) {
+            putString(buf, s);
+        }
+        if (targetStrings != null) {
+            for (int i = 0; i < 3; i++) {
+                putString(buf, targetStrings[i]);
+            }
+            buf.putFloat(target.score);
+            buf.put((byte) runners);
+            for (int i = 0; i < runners; i++) {
+                putString(buf, targetStrings[3 + 2 * i]);
+                putString(buf, targetStrings[4 + 2 * i]);
+                buf.putFloat(target.runnerScores[i]);
+            }
+        }
+        return buf.array();
+    }
+
+    private static void putString(ByteBuffer buf, byte[] s) {
+        buf.putShort((short) s.length);
+        buf.put(s);
+    }
+
+    private static byte[] utf8(String s) {
+        byte[] bytes = (s != null ? s : "").getBytes(UTF_8);
+        if (bytes.length <= MAX_STRING_BYTES) return bytes;
+        // Recognizer output is never this long; cut at a character boundary
+        int end = MAX_STRING_BYTES;
+        while (end > 0 && (bytes[end] & 0xc0) == 0x80) end--;
+        byte[] cut = new byte[end];
+        System.arraycopy(bytes, 0, cut, 0, end);
+        return cut;
+    }
+}
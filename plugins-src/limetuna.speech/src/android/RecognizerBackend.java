@@ -0,0 +1,61 @@
+package com.limetuna.speech;
+
+import java.util.ArrayList;
+
+/**
+ * A speech engine the plugin listens through: the platform SpeechRecognizer,
+ * on-device keyword spotting, or the scripted simulator.
+ *
+ * LimeTunaSpeech owns everything about an attempt (callbacks, sessions,
+ * letter resolution, VAD, metrics, recovery); a backend only captures and
+ * recognizes. All methods are called on the main thread, and Listener
+ * callbacks must be delivered there, with at most one terminal callback
+ * (results or error) per start().
+ */
+interface RecognizerBackend {
+
+    interface Listener {
+        void onReady();
+
+        void onBegin();
+
+        void onLevel(float rmsdB);
+
+        void onEnd();
+
+        void onPartialResults(ArrayList<String> partials);
+
+        void onResults(ArrayList<String> matches, float[] confidences);
+
+        // error is a SpeechRecognizer ERROR_* number (see RecognizerErrors)
+        void onError(int error);
+
+        // Backend-specific failure, reported to JS as code
+        void onErrorCode(String code);
+    }
+
+    /** Null when ready to listen, otherwise a JS error code. Creates resources lazily. */
+    String prepare();
+
+    /** Backends that endpoint by themselves apply these; the others ignore them. */
+    void configureVad(float onsetMargin, float offsetMargin, int hangoverMs,
+                      int minSpeechMs, int maxSpeechMs);
+
+    /** Starts one attempt; expected is the target letter, or 0. */
+    void start(char expected);
+
+    /** Ends capture; results for what was heard are still delivered. */
+    void stop();
+
+    /** Ends the attempt without further callbacks. */
+    void cancel();
+
+    /** Frees native resources; prepare() creates them again. */
+    void destroy();
+
+    /** True when the backend endpoints utterances itself (no plugin VAD or pre-arm lead). */
+    boolean endpointsItself();
+
+    /** VAD whose decisions describe the last attempt, or null when the plugin's applies. */
+    EnergyVad getVad();
+}
@@ -0,0 +1,225 @@
+package com.limetuna.speech;
+
+import android.content.Context;
+import android.content.Intent;
+import android.os.Build;
+import android.speech.RecognitionSupport;
+import android.speech.RecognitionSupportCallback;
+import android.speech.RecognizerIntent;
+import android.speech.SpeechRecognizer;
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.Locale;
+
+/**
+ * What the platform speech stack offers, probed once and cached.
+ *
+ * isRecognitionAvailable and friends are PackageManager queries over binder,
+ * so they run at init and again only when the plugin sees a package or
+ * locale change, never per attempt. On API 33+ the installed on-device
+ * languages arrive later through checkRecognitionSupport, asked of the
+ * on-device recognizer and of the default one separately. A path whose
+ * recognizer rejects the language at runtime is not chosen for it again
+ * until the next probe.
+ *
+ * Main thread only.
+ */
+final class RecognizerCapabilities {
+
+    private static final String TAG = "LimeTunaSpeech";
+
+    // Recognizer paths for the system engine, fastest first
+    static final String PATH_ON_DEVICE = "onDevice";
+    static final String PATH_OFFLINE = "offline";
+    static final String PATH_PLATFORM = "platform";
+
+    static final String PREFER_AUTO = "auto";
+
+    final boolean available;
+    final boolean onDeviceAvailable;
+    final boolean biasingSupported;
+    final long probeMs;
+
+    // API 33+, null until checkRecognitionSupport has answered: the
+    // on-device recognizer's packs, and the default recognizer's
+    private List<String> onDeviceLanguages;
+    private List<String> installedLanguages;
+    private List<String> onlineLanguages;
+
+    // "path:language" pairs that failed with LANGUAGE_NOT_SUPPORTED/UNAVAILABLE
+    private final Set<String> rejected = new HashSet<String>();
+
+    private RecognizerCapabilities(boolean available, boolean onDeviceAvailable,
+                                   boolean biasingSupported, long probeMs) {
+        this.available = available;
+        this.onDeviceAvailable = onDeviceAvailable;
+        this.biasingSupported = biasingSupported;
+        this.probeMs = probeMs;
+    }
+
+    static RecognizerCapabilities probe(Context context) {
+        long start = System.nanoTime();
+        boolean available = false;
+        boolean onDevice = false;
+        try {
+            available = SpeechRecognizer.isRecognitionAvailable(context);
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.S) {
+                onDevice = SpeechRecognizer.isOnDeviceRecognitionAvailable(context);
+            }
+        } catch (Exception e) {
+            Log.w(TAG, "Recognizer probe failed", e);
+        }
+        // EXTRA_BIASING_STRINGS is read by the on-device recognizer from API 33
+        boolean biasing = onDevice && Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU;
+        long probeMs = (System.nanoTime() - start) / 1000000L;
+        Log.d(TAG, "Recognizer probe: available=" + available + " onDevice=" + onDevice
+                + " biasing=" + biasing + " in " + probeMs + " ms");
+        return new RecognizerCapabilities(available, onDevice, biasing, probeMs);
+    }
+
+    /**
+     * Asks the on-device recognizer (when there is one) and the default one
+     * which languages they have installed (API 33+); onDone runs on the main
+     * thread after each answer, and not at all on older releases or errors.
+     */
+    void checkLanguages(Context context, String language, Runnable onDone) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.TIRAMISU || !available) return;
+        Intent intent = new Intent(RecognizerIntent.ACTION_RECOGNIZE_SPEECH);
+        intent.putExtra(RecognizerIntent.EXTRA_LANGUAGE, language);
+        if (onDeviceAvailable) {
+            checkLanguages(context, intent, true, onDone);
+        }
+        checkLanguages(context, intent, false, onDone);
+    }
+
+    private void checkLanguages(Context context, Intent intent, final boolean onDevice,
+                                final Runnable onDone) {
+        final SpeechRecognizer checker;
+        try {
+            checker = onDevice
+                    ? SpeechRecognizer.createOnDeviceSpeechRecognizer(context)
+                    : SpeechRecognizer.createSpeechRecognizer(context);
+        } catch (Exception e) {
+            Log.w(TAG, "checkRecognitionSupport unavailable", e);
+            return;
+        }
+        if (checker == null) return;
+
+        try {
+            checker.checkRecognitionSupport(intent, context.getMainExecutor(), new RecognitionSupportCallback() {
+                @Override
+                public void onSupportResult(RecognitionSupport support) {
+                    if (onDevice) {
+                        onDeviceLanguages = copy(support.getInstalledOnDeviceLanguages());
+                    } else {
+                        installedLanguages = copy(support.getInstalledOnDeviceLanguages());
+                        onlineLanguages = copy(support.getOnlineLanguages());
+                    }
+                    checker.destroy();
+                    onDone.run();
+                }
+
+                @Override
+                public void onError(int error) {
+                    Log.d(TAG, "checkRecognitionSupport error " + error + (onDevice ? " (on-device)" : ""));
+                    checker.destroy();
+                }
+            });
+        } catch (Exception e) {
+            Log.w(TAG, "checkRecognitionSupport failed", e);
+            checker.destroy();
+        }
+    }
+
+    /** True or false once the on-device recognizer's languages are known, else null. */
+    Boolean hasOnDeviceLanguage(String language) {
+        if (onDeviceLanguages == null) return null;
+        return matchesLanguage(onDeviceLanguages, language);
+    }
+
+    /** True or false once the installed languages are known, else null. */
+    Boolean hasOfflineLanguage(String language) {
+        if (installedLanguages == null) return null;
+        return matchesLanguage(installedLanguages, language);
+    }
+
+    /**
+     * The lowest-latency path for language: on-device when its recognizer is
+     * known to have the language installed, the platform recognizer told to
+     * prefer its installed offline pack, otherwise the platform recognizer as
+     * before. preference is "auto" or a path; an explicit "onDevice" is
+     * taken on trust. An unavailable or rejected path falls back.
+     */
+    String choosePath(String preference, String language) {
+        if (PATH_PLATFORM.equals(preference)) {
+            return PATH_PLATFORM;
+        }
+        if (onDeviceAvailable && !isRejected(PATH_ON_DEVICE, language)
+                && (PATH_ON_DEVICE.equals(preference)
+                || (PREFER_AUTO.equals(preference) && Boolean.TRUE.equals(hasOnDeviceLanguage(language))))) {
+            return PATH_ON_DEVICE;
+        }
+        if (Boolean.TRUE.equals(hasOfflineLanguage(language)) && !isRejected(PATH_OFFLINE, language)) {
+            return PATH_OFFLINE;
+        }
+        return PATH_PLATFORM;
+    }
+
+    /** The recognizer on path reported that it lacks language; choosePath avoids it from now on. */
+    void rejectLanguage(String path, String language) {
+        rejected.add(path + ":" + normalizeTag(language));
+    }
+
+    private boolean isRejected(String path, String language) {
+        return rejected.contains(path + ":" + normalizeTag(language));
+    }
+
+    static boolean isPreference(String value) {
+        return PREFER_AUTO.equals(value) || PATH_ON_DEVICE.equals(value)
+                || PATH_OFFLINE.equals(value) || PATH_PLATFORM.equals(value);
+    }
+
+    JSONObject toJson() throws JSONException {
+        JSONObject json = new JSONObject();
+        json.put("available", available);
+        json.put("onDevice", onDeviceAvailable);
+        json.put("biasing", biasingSupported);
+        json.put("sdk", Build.VERSION.SDK_INT);
+        json.put("probeMs", probeMs);
+        json.put("onDeviceLanguages", onDeviceLanguages != null
+                ? new JSONArray(onDeviceLanguages) : JSONObject.NULL);
+        json.put("installedLanguages", installedLanguages != null
+                ? new JSONArray(installedLanguages) : JSONObject.NULL);
+        json.put("onlineLanguages", onlineLanguages != null
+                ? new JSONArray(onlineLanguages) : JSONObject.NULL);
+        return json;
+    }
+
+    // "en-US" matches "en-US", "en_us" and a bare "en" pack
+    private static boolean matchesLanguage(List<String> languages, String language) {
+        String wanted = normalizeTag(language);
+        int dash = wanted.indexOf('-');
+        String base = dash > 0 ? wanted.substring(0, dash) : wanted;
+        for (String l : languages) {
+            String tag = normalizeTag(l);
+            if (tag.equals(wanted) || tag.equals(base)) return true;
+        }
+        return false;
+    }
+
+    private static String normalizeTag(String tag) {
+        return tag == null ? "" : tag.replace('_', '-').toLowerCase(Locale.ROOT);
+    }
+
+    private static List<String> copy(List<String> list) {
+        return list != null ? new ArrayList<String>(list) : new ArrayList<String>();
+    }
+}
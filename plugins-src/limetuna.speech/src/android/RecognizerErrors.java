@@ -0,0 +1,71 @@
+package com.limetuna.speech;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Error codes reported to JS, and how recognizer errors map onto them.
+ *
+ * The numeric values mirror android.speech.SpeechRecognizer's ERROR_*
+ * constants, so the mapping stays plain Java and runs off-device too.
+ */
+final class RecognizerErrors {
+
+    static final int ERROR_CLIENT = 5;
+    static final int ERROR_SPEECH_TIMEOUT = 6;
+    static final int ERROR_NO_MATCH = 7;
+    static final int ERROR_RECOGNIZER_BUSY = 8;
+    static final int ERROR_INSUFFICIENT_PERMISSIONS = 9;
+    static final int ERROR_LANGUAGE_NOT_SUPPORTED = 12;
+    static final int ERROR_LANGUAGE_UNAVAILABLE = 13;
+
+    static final int NOT_RECOVERABLE = -1;
+
+    private RecognizerErrors() {
+    }
+
+    /** JS-facing code for a SpeechRecognizer error. */
+    static String codeFor(int error) {
+        switch (error) {
+            case ERROR_NO_MATCH:
+                return "NO_MATCH";
+            case ERROR_SPEECH_TIMEOUT:
+                return "SPEECH_TIMEOUT";
+            case ERROR_INSUFFICIENT_PERMISSIONS:
+                return "INSUFFICIENT_PERMISSIONS";
+            default:
+                return "ERROR_" + error;
+        }
+    }
+
+    /**
+     * RecognizerSupervisor reason for errors that need a fresh recognizer, or
+     * NOT_RECOVERABLE. CLIENT right after our own stopListening (VAD
+     * endpoint) is the normal end of an attempt, not a failure.
+     */
+    static int recoveryReason(int error, boolean afterOwnStop) {
+        if (error == ERROR_RECOGNIZER_BUSY) return RecognizerSupervisor.REASON_BUSY;
+        if (error == ERROR_CLIENT && !afterOwnStop) return RecognizerSupervisor.REASON_CLIENT;
+        return NOT_RECOVERABLE;
+    }
+
+    /**
+     * The recognizer has no pack for the requested language. Not recovered by
+     * a fresh recognizer on the same path, only by another path.
+     */
+    static boolean isLanguageError(int error) {
+        return error == ERROR_LANGUAGE_NOT_SUPPORTED || error == ERROR_LANGUAGE_UNAVAILABLE;
+    }
+
+    /** The { code, message } string every error callback carries. */
+    static String json(String code, String message) {
+        try {
+            JSONObject err = new JSONObject();
+            err.put("code", code);
+            err.put("message", message);
+            return err.toString();
+        } catch (JSONException e) {
+            return code + ":" + message;
+        }
+    }
+}
@@ -0,0 +1,275 @@
+package com.limetuna.speech;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Script for the simulated recognizer: what each attempt "hears" and how
+ * long each phase takes.
+ *
+ * Parsed from init's simulator option:
+ *
+ *   { seed: 1, timeScale: 1, mode: "sequence" | "random", loop: true,
+ *     spinUpMs: 300, speechMs: { min: 400, max: 900 },
+ *     decodeMs: { median: 250, p95: 700 },
+ *     steps: [ { say: "expected" }, { say: "other", weight: 2 },
+ *              { results: ["bee", "be"], confidences: [0.8, 0.1] },
+ *              { error: 7 }, { hang: true } ] }
+ *
+ * A latency is a number (fixed), {min, max} (uniform) or {median, p95}
+ * (log-normal). Outcomes and latencies come from one seeded Random, so a
+ * script replays identically for the same sequence of attempts.
+ *
+ * Plain Java, no Android types.
+ */
+final class RecognizerScript {
+
+    static final int STEP_RESULTS = 0;
+    static final int STEP_ERROR = 1;
+    static final int STEP_HANG = 2;
+
+    private static final double Z_95 = 1.645;
+
+    static final class Latency {
+        final double a;
+        final double b;
+        final int kind; // 0 fixed, 1 uniform, 2 log-normal (a = median, b = sigma)
+
+        Latency(int kind, double a, double b) {
+            this.kind = kind;
+            this.a = a;
+            this.b = b;
+        }
+
+        static Latency fixed(double ms) {
+            return new Latency(0, ms, 0);
+        }
+
+        long sampleMs(Random random) {
+            double ms;
+            switch (kind) {
+                case 1:
+                    ms = a + (b - a) * random.nextDouble();
+                    break;
+                case 2:
+                    ms = a * Math.exp(b * random.nextGaussian());
+                    break;
+                default:
+                    ms = a;
+            }
+            return Math.max(0L, Math.round(ms));
+        }
+    }
+
+    static final class Step {
+        int kind = STEP_RESULTS;
+        // "expected", "other", a letter, or null when results are given literally
+        String say;
+        List<String> results;
+        float[] confidences;
+        List<List<String>> partials;
+        int error;
+        double weight = 1.0;
+    }
+
+    /** One attempt's outcome, with the phase latencies already sampled. */
+    static final class Outcome {
+        int kind;
+        ArrayList<String> results;
+        float[] confidences;
+        List<List<String>> partials;
+        int error;
+        long spinUpMs;
+        long speechMs;
+        long decodeMs;
+    }
+
+    private final List<Step> steps = new ArrayList<Step>();
+    private final Random random;
+    private final long seed;
+    private final boolean randomMode;
+    private final boolean loop;
+    private final double timeScale;
+    private final Latency spinUp;
+    private final Latency speech;
+    private final Latency decode;
+    private double totalWeight;
+    private int next;
+
+    private RecognizerScript(JSONObject opts) throws JSONException {
+        seed = opts.optLong("seed", 1L);
+        random = new Random(seed);
+        timeScale = Math.max(0.0, opts.optDouble("timeScale", 1.0));
+        loop = opts.optBoolean("loop", true);
+
+        String mode = opts.optString("mode", "sequence");
+        if (!"sequence".equals(mode) && !"random".equals(mode)) {
+            throw new JSONException("Unknown simulator mode: " + mode);
+        }
+        randomMode = "random".equals(mode);
+
+        spinUp = parseLatency(opts.opt("spinUpMs"), Latency.fixed(300));
+        speech = parseLatency(opts.opt("speechMs"), Latency.fixed(600));
+        decode = parseLatency(opts.opt("decodeMs"), Latency.fixed(250));
+
+        JSONArray list = opts.optJSONArray("steps");
+        if (list == null || list.length() == 0) {
+            Step step = new Step();
+            step.say = "expected";
+            steps.add(step);
+        } else {
+            for (int i = 0; i < list.length(); i++) {
+                steps.add(parseStep(list.getJSONObject(i)));
+            }
+        }
+        for (Step step : steps) {
+            totalWeight += step.weight;
+        }
+    }
+
+    static RecognizerScript parse(JSONObject opts) throws JSONException {
+        return new RecognizerScript(opts != null ? opts : new JSONObject());
+    }
+
+    /** Multiplier for every delay; 0 delivers each event as soon as the main thread is free. */
+    double timeScale() {
+        return timeScale;
+    }
+
+    /** Replays the script from its first step with the original seed. */
+    void rewind() {
+        random.setSeed(seed);
+        next = 0;
+    }
+
+    /** The outcome of the next attempt; expected is the target letter, or 0. */
+    Outcome next(char expected) {
+        Step step = pick();
+        Outcome out = new Outcome();
+        out.kind = step.kind;
+        out.error = step.error;
+        out.partials = step.partials;
+        out.spinUpMs = spinUp.sampleMs(random);
+        out.speechMs = speech.sampleMs(random);
+        out.decodeMs = decode.sampleMs(random);
+        if (step.kind == STEP_RESULTS) {
+            out.results = new ArrayList<String>();
+            if (step.say != null) {
+                out.results.add(spoken(step.say, expected));
+            } else {
+                out.results.addAll(step.results);
+            }
+            out.confidences = step.confidences != null
+                    ? step.confidences : defaultConfidences(out.results.size());
+        }
+        return out;
+    }
+
+    private Step pick() {
+        if (randomMode) {
+            double r = random.nextDouble() * totalWeight;
+            for (Step step : steps) {
+                r -= step.weight;
+                if (r < 0) return step;
+            }
+            return steps.get(steps.size() - 1);
+        }
+        Step step = steps.get(next);
+        if (next + 1 < steps.size()) {
+            next++;
+        } else if (loop) {
+            next = 0;
+        }
+        return step;
+    }
+
+    private static String spoken(String say, char expected) {
+        char target = expected != 0 ? Character.toUpperCase(expected) : 'A';
+        if ("expected".equals(say)) {
+            return String.valueOf(target);
+        }
+        if ("other".equals(say)) {
+            return String.valueOf(target == 'Z' ? 'A' : (char) (target + 1));
+        }
+        return say;
+    }
+
+    private static float[] defaultConfidences(int count) {
+        float[] confidences = new float[count];
+        for (int i = 0; i < count; i++) {
+            confidences[i] = i == 0 ? 0.9f : 0.1f;
+        }
+        return confidences;
+    }
+
+    private static Step parseStep(JSONObject o) throws JSONException {
+        Step step = new Step();
+        step.weight = o.optDouble("weight", 1.0);
+        if (o.optBoolean("hang", false)) {
+            step.kind = STEP_HANG;
+        } else if (o.has("error")) {
+            step.kind = STEP_ERROR;
+            step.error = o.getInt("error");
+        } else if (o.has("say")) {
+            step.say = o.getString("say");
+        } else if (o.has("results")) {
+            step.results = strings(o.getJSONArray("results"));
+            JSONArray conf = o.optJSONArray("confidences");
+            if (conf != null) {
+                step.confidences = new float[step.results.size()];
+                for (int i = 0; i < step.confidences.length && i < conf.length(); i++) {
+                    step.confidences[i] = (float) conf.getDouble(i);
+                }
+            }
+        } else {
+            throw new JSONException("Simulator step needs say, results, error or hang: " + o);
+        }
+
+        JSONArray partials = o.optJSONArray("partials");
+        if (partials != null) {
+            step.partials = new ArrayList<List<String>>();
+            for (int i = 0; i < partials.length(); i++) {
+                step.partials.add(strings(partials.getJSONArray(i)));
+            }
+        }
+        return step;
+    }
+
+    private static List<String> strings(JSONArray array) throws JSONException {
+        List<String> list = new ArrayList<String>(array.length());
+        for (int i = 0; i < array.length(); i++) {
+            list.add(array.getString(i));
+        }
+        return list;
+    }
+
+    private static Latency parseLatency(Object value, Latency fallback) throws JSONException {
+        if (value == null || value == JSONObject.NULL) return fallback;
+        if (value instanceof Number) {
+            return Latency.fixed(((Number) value).doubleValue());
+        }
+        if (!(value instanceof JSONObject)) {
+            throw new JSONException("Latency must be a number or an object: " + value);
+        }
+        JSONObject o = (JSONObject) value;
+        if (o.has("median")) {
+            double median = o.getDouble("median");
+            double p95 = o.optDouble("p95", median);
+            if (median <= 0 || p95 < median) {
+                throw new JSONException("Latency needs 0 < median <= p95: " + o);
+            }
+            return new Latency(2, median, Math.log(p95 / median) / Z_95);
+        }
+        double min = o.getDouble("min");
+        double max = o.optDouble("max", min);
+        if (max < min) {
+            throw new JSONException("Latency needs min <= max: " + o);
+        }
+        return new Latency(1, min, max);
+    }
+}
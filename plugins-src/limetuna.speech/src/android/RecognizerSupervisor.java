@@ -0,0 +1,120 @@
+package com.limetuna.speech;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Watchdog timing, retry backoff and recovery counters for the recognizer.
+ *
+ * LimeTunaSpeech arms a watchdog for every attempt with timeoutMs(), and on a
+ * hang or a BUSY / CLIENT error recreates the recognizer and retries the
+ * attempt once after backoffMs(). The timeout follows the engine span p95
+ * (startListening to result, including the wait for speech), so slow devices
+ * and networks are not cut off while a hung recognizer is still caught.
+ *
+ * Attempt state is main-thread only; counters are atomics, because
+ * resetMetrics clears them on the exec thread.
+ */
+final class RecognizerSupervisor {
+
+    static final int REASON_HANG = 0;
+    static final int REASON_BUSY = 1;
+    static final int REASON_CLIENT = 2;
+
+    static final int COUNTER_HANGS = 0;
+    static final int COUNTER_BUSY = 1;
+    static final int COUNTER_CLIENT = 2;
+    static final int COUNTER_RECYCLES = 3;
+    static final int COUNTER_RETRIES = 4;
+    static final int COUNTER_RECOVERED = 5;
+    static final int COUNTER_FAILED = 6;
+    static final int COUNTER_COUNT = 7;
+
+    static final String[] COUNTER_NAMES = {
+            "hangs", "busy", "client", "recycles", "retries", "recovered", "failed"
+    };
+
+    static final long DEFAULT_TIMEOUT_MS = 15000;
+    static final long MIN_TIMEOUT_MS = 6000;
+    static final long MAX_TIMEOUT_MS = 20000;
+    private static final int MIN_SAMPLES = 5;
+    private static final double P95_FACTOR = 1.5;
+    private static final long TIMEOUT_SLACK_MS = 2000;
+
+    private static final long BACKOFF_BASE_MS = 100;
+    private static final long BACKOFF_MAX_MS = 3200;
+
+    private final AtomicLongArray counters = new AtomicLongArray(COUNTER_COUNT);
+
+    // Failures since the last attempt that ended without giving up
+    private int consecutive;
+    private boolean retried;
+    private boolean gaveUp;
+
+    /** Watchdog timeout for the next attempt. */
+    long timeoutMs(LatencyMetrics metrics) {
+        if (metrics.count(LatencyMetrics.SPAN_ENGINE) < MIN_SAMPLES) {
+            return DEFAULT_TIMEOUT_MS;
+        }
+        double p95 = metrics.percentileMs(LatencyMetrics.SPAN_ENGINE, 0.95);
+        long timeout = Math.round(p95 * P95_FACTOR) + TIMEOUT_SLACK_MS;
+        return Math.max(MIN_TIMEOUT_MS, Math.min(timeout, MAX_TIMEOUT_MS));
+    }
+
+    // ---- Attempt lifecycle (main thread) ------------------------------------
+
+    void beginAttempt() {
+        retried = false;
+        gaveUp = false;
+    }
+
+    void recordFailure(int reason) {
+        counters.incrementAndGet(reason);
+    }
+
+    void recordRecycle() {
+        counters.incrementAndGet(COUNTER_RECYCLES);
+    }
+
+    /** Each attempt is retried at most once. */
+    boolean canRetry() {
+        return !retried;
+    }
+
+    /** Marks the attempt as retried and returns how long to back off first. */
+    long retry() {
+        retried = true;
+        counters.incrementAndGet(COUNTER_RETRIES);
+        consecutive++;
+        return Math.min(BACKOFF_BASE_MS << Math.min(consecutive - 1, 16), BACKOFF_MAX_MS);
+    }
+
+    void giveUp() {
+        if (gaveUp) return;
+        gaveUp = true;
+        consecutive++;
+        counters.incrementAndGet(COUNTER_FAILED);
+    }
+
+    void endAttempt() {
+        if (!gaveUp) {
+            if (retried) {
+                counters.incrementAndGet(COUNTER_RECOVERED);
+            }
+            consecutive = 0;
+        }
+        retried = false;
+        gaveUp = false;
+    }
+
+    // ---- Reading (any thread) -----------------------------------------------
+
+    long counter(int counter) {
+        return counters.get(counter);
+    }
+
+    void reset() {
+        for (int i = 0; i < COUNTER_COUNT; i++) {
+            counters.set(i, 0L);
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package com.limetuna.speech;
+
+import java.util.List;
+
+/**
+ * Picks which n-best candidate a result reports as its text.
+ *
+ * Plain Java, shared by both engines' onResults paths.
+ */
+final class ResultSelector {
+
+    static final int NONE = -1;
+
+    private ResultSelector() {
+    }
+
+    /**
+     * Index of the highest confidence when every match has one, otherwise 0
+     * (the engine's own order). NONE when there are no matches.
+     */
+    static int bestIndex(List<String> matches, float[] confidences) {
+        if (matches == null || matches.isEmpty()) return NONE;
+        if (confidences == null || confidences.length != matches.size()) return 0;
+
+        int best = 0;
+        for (int i = 1; i < confidences.length; i++) {
+            if (confidences[i] > confidences[best]) {
+                best = i;
+            }
+        }
+        return best;
+    }
+}
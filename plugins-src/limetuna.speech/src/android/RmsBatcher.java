@@ -0,0 +1,77 @@
+package com.limetuna.speech;
+
+/**
+ * Coalesces onRmsChanged levels into batches for the event channel.
+ *
+ * The recognizer reports a level on every audio frame; pushing each one over
+ * the bridge would flood it. Levels go into a primitive ring buffer and are
+ * drained at a fixed rate. When the ring is full the oldest levels are
+ * dropped, so a stalled flush never grows memory.
+ *
+ * Not thread-safe: push and drain both run on the main thread.
+ */
+final class RmsBatcher {
+
+    private final float[] ring;
+    private int head;
+    private int count;
+    private long firstNanos;
+    private long lastNanos;
+    private float peak = Float.NEGATIVE_INFINITY;
+
+    RmsBatcher(int capacity) {
+        ring = new float[capacity];
+    }
+
+    void push(float rmsdB, long nowNanos) {
+        if (count == 0) {
+            firstNanos = nowNanos;
+            peak = rmsdB;
+        } else if (rmsdB > peak) {
+            peak = rmsdB;
+        }
+        lastNanos = nowNanos;
+
+        ring[(head + count) % ring.length] = rmsdB;
+        if (count < ring.length) {
+            count++;
+        } else {
+            head = (head + 1) % ring.length;
+        }
+    }
+
+    int size() {
+        return count;
+    }
+
+    long firstNanos() {
+        return firstNanos;
+    }
+
+    long lastNanos() {
+        return lastNanos;
+    }
+
+    float peak() {
+        return peak;
+    }
+
+    /**
+     * Copies the buffered levels, oldest first, into out and empties the
+     * ring. Returns the number of levels copied.
+     */
+    int drain(float[] out) {
+        int n = Math.min(count, out.length);
+        for (int i = 0; i < n; i++) {
+            out[i] = ring[(head + i) % ring.length];
+        }
+        clear();
+        return n;
+    }
+
+    void clear() {
+        head = 0;
+        count = 0;
+        peak = Float.NEGATIVE_INFINITY;
+    }
+}
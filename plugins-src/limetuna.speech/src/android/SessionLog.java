@@ -0,0 +1,235 @@
+package com.limetuna.speech;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Binary format of recorded recognizer traffic (see SessionRecorder).
+ *
+ * A log is a header (magic "LTSR", version) followed by records:
+ *
+ *   type (u8), payload length (u16), System.nanoTime (i64), payload
+ *
+ * big-endian, strings as a u16 char count plus UTF-16 chars, string lists as
+ * a u8 count plus strings. Readers skip types they do not know, so records
+ * can be added without a version bump.
+ *
+ * An attempt runs from START to OUTCOME. A restart within it (echo guard,
+ * recognizer recovery) adds another START before the OUTCOME.
+ *
+ * Plain Java, no Android types, so the replay tool can read logs off-device.
+ */
+final class SessionLog {
+
+    static final int MAGIC = 0x4C545352; // "LTSR"
+    static final short VERSION = 1;
+    static final int HEADER_BYTES = 6;
+    static final int RECORD_HEADER_BYTES = 11;
+
+    // expected (char), engine, language, language model, max results (u8),
+    // flags (u8), early-commit partials (i32), min score (f32), wall clock ms (i64)
+    static final int START = 1;
+    static final int READY = 2;
+    static final int BEGIN = 3;
+    static final int END = 4;
+    // rmsdB (f32)
+    static final int LEVEL = 5;
+    // strings
+    static final int PARTIAL = 6;
+    // strings, confidence count (u8), confidences (f32)
+    static final int RESULTS = 7;
+    // SpeechRecognizer error number (i32)
+    static final int ERROR = 8;
+    // backend error code (string)
+    static final int ERROR_CODE = 9;
+    // no payload; the timestamp is when the feedback clip ends
+    static final int FEEDBACK_END = 10;
+    // LatencyMetrics outcome (u8), letter (char, 0 for none), error code (string)
+    static final int OUTCOME = 11;
+
+    static final int FLAG_VAD_ENDPOINT = 1;
+    static final int FLAG_EARLY_COMMIT = 1 << 1;
+    static final int FLAG_PARTIAL_RESULTS = 1 << 2;
+    static final int FLAG_PREFER_OFFLINE = 1 << 3;
+    static final int FLAG_ON_DEVICE = 1 << 4;
+    static final int FLAG_BIASED = 1 << 5;
+
+    private static final int MAX_STRINGS = 255;
+    private static final int MAX_CHARS = 256;
+
+    private SessionLog() {
+    }
+
+    static void putHeader(ByteBuffer buf) {
+        buf.putInt(MAGIC);
+        buf.putShort(VERSION);
+    }
+
+    // ---- Writing -------------------------------------------------------------
+
+    /**
+     * Starts a record and returns the position to pass to endRecord(). Throws
+     * BufferOverflowException when the buffer is full; callers retry on an
+     * empty buffer.
+     */
+    static int beginRecord(ByteBuffer buf, int type, long nanos) {
+        int start = buf.position();
+        buf.put((byte) type);
+        buf.putShort((short) 0);
+        buf.putLong(nanos);
+        return start;
+    }
+
+    static void endRecord(ByteBuffer buf, int start) {
+        int length = buf.position() - start - RECORD_HEADER_BYTES;
+        if (length > 0xFFFF) throw new BufferOverflowException();
+        buf.putShort(start + 1, (short) length);
+    }
+
+    static void putString(ByteBuffer buf, String s) {
+        int n = s == null ? 0 : Math.min(s.length(), MAX_CHARS);
+        buf.putShort((short) n);
+        for (int i = 0; i < n; i++) {
+            buf.putChar(s.charAt(i));
+        }
+    }
+
+    static void putStrings(ByteBuffer buf, List<String> list) {
+        int n = list == null ? 0 : Math.min(list.size(), MAX_STRINGS);
+        buf.put((byte) n);
+        for (int i = 0; i < n; i++) {
+            putString(buf, list.get(i));
+        }
+    }
+
+    static void putFloats(ByteBuffer buf, float[] values) {
+        int n = values == null ? 0 : Math.min(values.length, MAX_STRINGS);
+        buf.put((byte) n);
+        for (int i = 0; i < n; i++) {
+            buf.putFloat(values[i]);
+        }
+    }
+
+    // ---- Reading -------------------------------------------------------------
+
+    /** One decoded record; only the fields of its type are set. */
+    static final class Record {
+        int type;
+        long nanos;
+        char letter;
+        String engine;
+        String language;
+        String languageModel;
+        int maxResults;
+        int flags;
+        int earlyCommitPartials;
+        float earlyCommitMinScore;
+        long wallMillis;
+        float level;
+        List<String> strings;
+        float[] confidences;
+        int error;
+        String code;
+        int outcome;
+    }
+
+    /** Sequential reader over a whole log. */
+    static final class Reader {
+        private final ByteBuffer buf;
+
+        Reader(ByteBuffer buf) {
+            this.buf = buf;
+            if (buf.remaining() < HEADER_BYTES || buf.getInt() != MAGIC) {
+                throw new IllegalArgumentException("Not a session log");
+            }
+            short version = buf.getShort();
+            if (version != VERSION) {
+                throw new IllegalArgumentException("Unsupported session log version " + version);
+            }
+        }
+
+        /** The next record, or null at the end (a torn last record counts as the end). */
+        Record next() {
+            while (buf.remaining() >= RECORD_HEADER_BYTES) {
+                int type = buf.get() & 0xFF;
+                int length = buf.getShort() & 0xFFFF;
+                long nanos = buf.getLong();
+                if (buf.remaining() < length) return null;
+                int end = buf.position() + length;
+
+                Record r = new Record();
+                r.type = type;
+                r.nanos = nanos;
+                boolean known = true;
+                switch (type) {
+                    case START:
+                        r.letter = buf.getChar();
+                        r.engine = getString(buf);
+                        r.language = getString(buf);
+                        r.languageModel = getString(buf);
+                        r.maxResults = buf.get() & 0xFF;
+                        r.flags = buf.get() & 0xFF;
+                        r.earlyCommitPartials = buf.getInt();
+                        r.earlyCommitMinScore = buf.getFloat();
+                        r.wallMillis = buf.getLong();
+                        break;
+                    case LEVEL:
+                        r.level = buf.getFloat();
+                        break;
+                    case PARTIAL:
+                        r.strings = getStrings(buf);
+                        break;
+                    case RESULTS:
+                        r.strings = getStrings(buf);
+                        int n = buf.get() & 0xFF;
+                        r.confidences = n > 0 ? new float[n] : null;
+                        for (int i = 0; i < n; i++) {
+                            r.confidences[i] = buf.getFloat();
+                        }
+                        break;
+                    case ERROR:
+                        r.error = buf.getInt();
+                        break;
+                    case ERROR_CODE:
+                        r.code = getString(buf);
+                        break;
+                    case OUTCOME:
+                        r.outcome = buf.get() & 0xFF;
+                        r.letter = buf.getChar();
+                        r.code = getString(buf);
+                        break;
+                    case READY:
+                    case BEGIN:
+                    case END:
+                    case FEEDBACK_END:
+                        break;
+                    default:
+                        known = false;
+                }
+                buf.position(end);
+                if (known) return r;
+            }
+            return null;
+        }
+
+        private static String getString(ByteBuffer buf) {
+            int n = buf.getShort() & 0xFFFF;
+            char[] chars = new char[n];
+            for (int i = 0; i < n; i++) {
+                chars[i] = buf.getChar();
+            }
+            return new String(chars);
+        }
+
+        private static List<String> getStrings(ByteBuffer buf) {
+            int n = buf.get() & 0xFF;
+            List<String> list = new ArrayList<String>(n);
+            for (int i = 0; i < n; i++) {
+                list.add(getString(buf));
+            }
+            return list;
+        }
+    }
+}
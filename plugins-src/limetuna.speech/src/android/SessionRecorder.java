@@ -0,0 +1,328 @@
+package com.limetuna.speech;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Opt-in recorder of recognizer traffic, in the SessionLog format.
+ *
+ * Records are encoded on the main thread into a pooled heap buffer, with
+ * no allocation and no I/O. At the end of an attempt, once the buffer is
+ * a quarter full or a second has passed since the last write (and whenever
+ * it is full), the buffer goes to a writer thread that appends it to the log through a
+ * FileChannel. When the log passes maxBytes it is renamed to the ".1" file,
+ * replacing the previous one, so a device keeps at most two logs.
+ *
+ * Recording methods are main-thread only. If the writer falls behind, whole
+ * chunks are dropped and counted rather than queued without bound.
+ */
+final class SessionRecorder {
+
+    static final String FILE_NAME = "sessions.ltsr";
+    static final String ROTATED_FILE_NAME = "sessions.1.ltsr";
+    static final long DEFAULT_MAX_BYTES = 4L * 1024 * 1024;
+
+    private static final int CHUNK_BYTES = 32 * 1024;
+    private static final int SHIP_BYTES = CHUNK_BYTES / 4;
+    private static final long SHIP_INTERVAL_NANOS = 1000000000L;
+    private static final int MAX_IN_FLIGHT = 8;
+
+    private final File file;
+    private final File rotated;
+    private final long maxBytes;
+    private final boolean levels;
+
+    private final ExecutorService writer = Executors.newSingleThreadExecutor();
+    private final ConcurrentLinkedQueue<ByteBuffer> pool = new ConcurrentLinkedQueue<ByteBuffer>();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicLong bytesWritten = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong attempts = new AtomicLong();
+
+    // Writer thread only
+    private FileChannel channel;
+
+    // Main thread only
+    private ByteBuffer chunk;
+    private long shippedNanos;
+
+    SessionRecorder(File dir, long maxBytes, boolean levels) {
+        this.file = new File(dir, FILE_NAME);
+        this.rotated = new File(dir, ROTATED_FILE_NAME);
+        this.maxBytes = maxBytes > 0 ? maxBytes : DEFAULT_MAX_BYTES;
+        this.levels = levels;
+        this.chunk = ByteBuffer.allocate(CHUNK_BYTES);
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    long bytesWritten() {
+        return bytesWritten.get();
+    }
+
+    long droppedChunks() {
+        return dropped.get();
+    }
+
+    long attempts() {
+        return attempts.get();
+    }
+
+    // ---- Recording (main thread) ---------------------------------------------
+
+    void start(long nanos, char expected, String engine, String language, String languageModel,
+               int maxResults, int flags, int earlyCommitPartials, float earlyCommitMinScore) {
+        for (int pass = 0; pass < 2; pass++) {
+            int at = chunk.position();
+            try {
+                int rec = SessionLog.beginRecord(chunk, SessionLog.START, nanos);
+                chunk.putChar(expected);
+                SessionLog.putString(chunk, engine);
+                SessionLog.putString(chunk, language);
+                SessionLog.putString(chunk, languageModel);
+                chunk.put((byte) maxResults);
+                chunk.put((byte) flags);
+                chunk.putInt(earlyCommitPartials);
+                chunk.putFloat(earlyCommitMinScore);
+                chunk.putLong(System.currentTimeMillis());
+                SessionLog.endRecord(chunk, rec);
+                return;
+            } catch (BufferOverflowException e) {
+                overflow(at, pass);
+            }
+        }
+    }
+
+    /** READY, BEGIN, END or FEEDBACK_END. */
+    void event(int type, long nanos) {
+        for (int pass = 0; pass < 2; pass++) {
+            int at = chunk.position();
+            try {
+                SessionLog.endRecord(chunk, SessionLog.beginRecord(chunk, type, nanos));
+                return;
+            } catch (BufferOverflowException e) {
+                overflow(at, pass);
+            }
+        }
+    }
+
+    void level(long nanos, float rmsdB) {
+        if (!levels) return;
+        for (int pass = 0; pass < 2; pass++) {
+            int at = chunk.position();
+            try {
+                int rec = SessionLog.beginRecord(chunk, SessionLog.LEVEL, nanos);
+                chunk.putFloat(rmsdB);
+                SessionLog.endRecord(chunk, rec);
+                return;
+            } catch (BufferOverflowException e) {
+                overflow(at, pass);
+            }
+        }
+    }
+
+    void partial(long nanos, List<String> partials) {
+        for (int pass = 0; pass < 2; pass++) {
+            int at = chunk.position();
+            try {
+                int rec = SessionLog.beginRecord(chunk, SessionLog.PARTIAL, nanos);
+                SessionLog.putStrings(chunk, partials);
+                SessionLog.endRecord(chunk, rec);
+                return;
+            } catch (BufferOverflowException e) {
+                overflow(at, pass);
+            }
+        }
+    }
+
+    void results(long nanos, List<String> matches, float[] confidences) {
+        for (int pass = 0; pass < 2; pass++) {
+            int at = chunk.position();
+            try {
+                int rec = SessionLog.beginRecord(chunk, SessionLog.RESULTS, nanos);
+                SessionLog.putStrings(chunk, matches);
+                SessionLog.putFloats(chunk, confidences);
+                SessionLog.endRecord(chunk, rec);
+                return;
+            } catch (BufferOverflowException e) {
+                overflow(at, pass);
+            }
+        }
+    }
+
+    void error(long nanos, int error) {
+        for (int pass = 0; pass < 2; pass++) {
+            int at = chunk.position();
+            try {
+                int rec = SessionLog.beginRecord(chunk, SessionLog.ERROR, nanos);
+                chunk.putInt(error);
+                SessionLog.endRecord(chunk, rec);
+                return;
+            } catch (BufferOverflowException e) {
+                overflow(at, pass);
+            }
+        }
+    }
+
+    void errorCode(long nanos, String code) {
+        for (int pass = 0; pass < 2; pass++) {
+            int at = chunk.position();
+            try {
+                int rec = SessionLog.beginRecord(chunk, SessionLog.ERROR_CODE, nanos);
+                SessionLog.putString(chunk, code);
+                SessionLog.endRecord(chunk, rec);
+                return;
+            } catch (BufferOverflowException e) {
+                overflow(at, pass);
+            }
+        }
+    }
+
+    /** Ends the attempt; its records reach the writer within about a second. */
+    void outcome(long nanos, int outcome, char letter, String code) {
+        for (int pass = 0; pass < 2; pass++) {
+            int at = chunk.position();
+            try {
+                int rec = SessionLog.beginRecord(chunk, SessionLog.OUTCOME, nanos);
+                chunk.put((byte) outcome);
+                chunk.putChar(letter);
+                SessionLog.putString(chunk, code);
+                SessionLog.endRecord(chunk, rec);
+                break;
+            } catch (BufferOverflowException e) {
+                overflow(at, pass);
+            }
+        }
+        attempts.incrementAndGet();
+        if (chunk.position() >= SHIP_BYTES || nanos - shippedNanos >= SHIP_INTERVAL_NANOS) {
+            shippedNanos = nanos;
+            ship();
+        }
+    }
+
+    /** Hands buffered records to the writer; then runs on the writer thread once they are on disk. */
+    void flush(final Runnable then) {
+        ship();
+        writer.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    if (channel != null) channel.force(false);
+                } catch (IOException e) {
+                    // reported by the caller through bytesWritten()
+                }
+                if (then != null) then.run();
+            }
+        });
+    }
+
+    void close() {
+        ship();
+        writer.execute(new Runnable() {
+            @Override
+            public void run() {
+                closeChannel();
+            }
+        });
+        writer.shutdown();
+    }
+
+    // Drops the partial record and retries once on an empty buffer
+    private void overflow(int at, int pass) {
+        chunk.position(at);
+        if (pass == 0) {
+            ship();
+        } else {
+            dropped.incrementAndGet();
+        }
+    }
+
+    private void ship() {
+        if (chunk.position() == 0) return;
+        final ByteBuffer full = chunk;
+        ByteBuffer next = pool.poll();
+        chunk = next != null ? next : ByteBuffer.allocate(CHUNK_BYTES);
+
+        if (inFlight.incrementAndGet() > MAX_IN_FLIGHT) {
+            inFlight.decrementAndGet();
+            dropped.incrementAndGet();
+            full.clear();
+            pool.offer(full);
+            return;
+        }
+        full.flip();
+        writer.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    write(full);
+                } catch (IOException e) {
+                    dropped.incrementAndGet();
+                    closeChannel();
+                } finally {
+                    inFlight.decrementAndGet();
+                    full.clear();
+                    pool.offer(full);
+                }
+            }
+        });
+    }
+
+    // ---- Writer thread -------------------------------------------------------
+
+    private void write(ByteBuffer data) throws IOException {
+        if (channel == null) {
+            open();
+        }
+        while (data.hasRemaining()) {
+            bytesWritten.addAndGet(channel.write(data));
+        }
+        if (channel.size() >= maxBytes) {
+            closeChannel();
+            if (rotated.exists() && !rotated.delete()) {
+                throw new IOException("Cannot delete " + rotated);
+            }
+            if (!file.renameTo(rotated)) {
+                throw new IOException("Cannot rotate " + file);
+            }
+        }
+    }
+
+    private void open() throws IOException {
+        File dir = file.getParentFile();
+        if (dir != null && !dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Cannot create " + dir);
+        }
+        channel = new FileOutputStream(file, true).getChannel();
+        if (channel.size() == 0) {
+            ByteBuffer header = ByteBuffer.allocate(SessionLog.HEADER_BYTES);
+            SessionLog.putHeader(header);
+            header.flip();
+            while (header.hasRemaining()) {
+                channel.write(header);
+            }
+        }
+    }
+
+    private void closeChannel() {
+        if (channel == null) return;
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // nothing left to do with it
+        }
+        channel = null;
+    }
+}
@@ -0,0 +1,188 @@
+package com.limetuna.speech;
+
+import android.os.Handler;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A recognizer that plays a RecognizerScript instead of listening.
+ *
+ * Each attempt goes ready, begin, levels and partials while "speaking", end,
+ * then results or an error after the decode delay, through the same Listener
+ * paths as a real engine. No microphone or recognition service is touched,
+ * so the whole plugin and game loop can run on an emulator; with timeScale 0
+ * attempts complete as fast as the main thread can take them.
+ *
+ * Main thread only. Callbacks of a cancelled attempt are dropped by
+ * generation, not removed from the Handler.
+ */
+final class SimulatedRecognizerBackend implements RecognizerBackend {
+
+    private static final long LEVEL_INTERVAL_MS = 50;
+    private static final float LEVEL_SILENCE_DB = -2f;
+    private static final float LEVEL_SPEECH_DB = 8f;
+
+    private final Handler handler;
+    private final Listener listener;
+    private RecognizerScript script;
+
+    private int generation;
+    private RecognizerScript.Outcome outcome;
+    private boolean speaking;
+
+    SimulatedRecognizerBackend(Handler handler, Listener listener, RecognizerScript script) {
+        this.handler = handler;
+        this.listener = listener;
+        this.script = script;
+    }
+
+    void setScript(RecognizerScript script) {
+        cancel();
+        this.script = script;
+    }
+
+    @Override
+    public String prepare() {
+        return null;
+    }
+
+    @Override
+    public void configureVad(float onsetMargin, float offsetMargin, int hangoverMs,
+                             int minSpeechMs, int maxSpeechMs) {
+        // Endpoints come from the script
+    }
+
+    @Override
+    public void start(char expected) {
+        final int gen = ++generation;
+        outcome = script.next(expected);
+        speaking = false;
+
+        long t = outcome.spinUpMs;
+        post(gen, t, new Runnable() {
+            @Override
+            public void run() {
+                listener.onReady();
+                if (outcome.kind != RecognizerScript.STEP_ERROR) {
+                    speaking = true;
+                    listener.onBegin();
+                }
+            }
+        });
+
+        if (outcome.kind == RecognizerScript.STEP_ERROR) {
+            post(gen, t + outcome.speechMs, new Runnable() {
+                @Override
+                public void run() {
+                    finish();
+                }
+            });
+            return;
+        }
+
+        // Levels only when time runs; at timeScale 0 they are pure overhead
+        if (script.timeScale() > 0) {
+            for (long at = LEVEL_INTERVAL_MS; at < outcome.speechMs; at += LEVEL_INTERVAL_MS) {
+                post(gen, t + at, new Runnable() {
+                    @Override
+                    public void run() {
+                        if (speaking) listener.onLevel(LEVEL_SPEECH_DB);
+                    }
+                });
+            }
+        }
+
+        List<List<String>> partials = outcome.partials;
+        if (partials != null) {
+            for (int i = 0; i < partials.size(); i++) {
+                final ArrayList<String> partial = new ArrayList<String>(partials.get(i));
+                post(gen, t + outcome.speechMs * (i + 1) / (partials.size() + 1), new Runnable() {
+                    @Override
+                    public void run() {
+                        if (speaking) listener.onPartialResults(partial);
+                    }
+                });
+            }
+        }
+
+        if (outcome.kind == RecognizerScript.STEP_HANG) return;
+
+        post(gen, t + outcome.speechMs, new Runnable() {
+            @Override
+            public void run() {
+                endOfSpeech(gen);
+            }
+        });
+    }
+
+    private void endOfSpeech(int gen) {
+        if (!speaking) return;
+        speaking = false;
+        listener.onLevel(LEVEL_SILENCE_DB);
+        listener.onEnd();
+        post(gen, outcome.decodeMs, new Runnable() {
+            @Override
+            public void run() {
+                finish();
+            }
+        });
+    }
+
+    private void finish() {
+        RecognizerScript.Outcome done = outcome;
+        outcome = null;
+        generation++;
+        if (done.kind == RecognizerScript.STEP_ERROR) {
+            listener.onError(done.error);
+        } else {
+            listener.onResults(done.results, done.confidences);
+        }
+    }
+
+    @Override
+    public void stop() {
+        // Like the platform recognizer: stop ends speech and still decodes.
+        // A hung attempt stays hung.
+        if (outcome == null || outcome.kind != RecognizerScript.STEP_RESULTS) return;
+        speaking = true;
+        endOfSpeech(++generation);
+    }
+
+    @Override
+    public void cancel() {
+        generation++;
+        outcome = null;
+        speaking = false;
+    }
+
+    @Override
+    public void destroy() {
+        cancel();
+    }
+
+    @Override
+    public boolean endpointsItself() {
+        return true;
+    }
+
+    @Override
+    public EnergyVad getVad() {
+        return null;
+    }
+
+    private void post(final int gen, long delayMs, final Runnable event) {
+        Runnable guarded = new Runnable() {
+            @Override
+            public void run() {
+                if (gen == generation) event.run();
+            }
+        };
+        long scaled = Math.round(delayMs * script.timeScale());
+        if (scaled <= 0) {
+            handler.post(guarded);
+        } else {
+            handler.postDelayed(guarded, scaled);
+        }
+    }
+}
@@ -0,0 +1,293 @@
+package com.limetuna.speech;
+
+import android.content.Context;
+import android.content.Intent;
+import android.os.Bundle;
+import android.speech.RecognitionListener;
+import android.speech.RecognizerIntent;
+import android.speech.SpeechRecognizer;
+import android.util.Log;
+
+import java.util.ArrayList;
+
+/**
+ * The platform SpeechRecognizer as a RecognizerBackend.
+ *
+ * The recognizer and its Intent are created in prepare(), so a pre-armed
+ * start only pays for startListening(). RecognitionListener callbacks are
+ * forwarded unchanged.
+ *
+ * The path (see RecognizerCapabilities) picks the on-device recognizer or
+ * the default one, optionally told to prefer its offline pack. With biasing
+ * on, each attempt's Intent carries the expected letter's spoken forms as
+ * EXTRA_BIASING_STRINGS. Availability is the caller's job: prepare() makes
+ * no PackageManager queries.
+ *
+ * setEndpointing() sets the silence and minimum-length extras of the next
+ * start() (see EndpointTuner); 0 leaves an extra out, so the engine uses its
+ * default. Recognizers are free to ignore them.
+ */
+final class SystemRecognizerBackend implements RecognizerBackend, RecognitionListener {
+
+    private static final String TAG = "LimeTunaSpeech";
+
+    // Intent settings, also written to session recordings
+    static final String LANGUAGE_MODEL = RecognizerIntent.LANGUAGE_MODEL_WEB_SEARCH;
+    static final int MAX_RESULTS = 10;
+    static final boolean PARTIAL_RESULTS = true;
+
+    private final Context context;
+    private final Listener listener;
+    private String language;
+
+    private String path = RecognizerCapabilities.PATH_PLATFORM;
+    private boolean biasing;
+    // Spoken letter forms of the active phonetic pack; null: the built-in ones
+    private String[][] letterForms;
+
+    private SpeechRecognizer recognizer;
+    private Intent intent;
+    // Per expected letter, built on first use
+    private final Intent[] biasedIntents = new Intent[LetterResolver.LETTER_COUNT];
+
+    private int minimumLengthMs;
+    private int completeSilenceMs;
+    private int possiblyCompleteSilenceMs;
+
+    SystemRecognizerBackend(Context context, Listener listener, String language) {
+        this.context = context;
+        this.listener = listener;
+        this.language = language;
+    }
+
+    void setLanguage(String language) {
+        if (language.equals(this.language)) return;
+        this.language = language;
+        clearIntents();
+    }
+
+    /** New biasing strings for a phonetic pack swap; null restores the built-in forms. */
+    void setLetterForms(String[][] forms) {
+        letterForms = forms;
+        clearIntents();
+    }
+
+    /**
+     * Switches path and biasing. A new path destroys the recognizer, so call
+     * it between attempts; the next prepare() creates the right one.
+     */
+    void setPath(String path, boolean biasing) {
+        if (!path.equals(this.path)) {
+            destroy();
+            this.path = path;
+            clearIntents();
+        }
+        this.biasing = biasing;
+    }
+
+    String getPath() {
+        return path;
+    }
+
+    boolean isBiasing() {
+        return biasing;
+    }
+
+    boolean isPreferOffline() {
+        return RecognizerCapabilities.PATH_OFFLINE.equals(path);
+    }
+
+    @Override
+    public String prepare() {
+        if (recognizer == null) {
+            recognizer = create();
+            if (recognizer == null) {
+                return "ENGINE_CREATE_FAILED";
+            }
+            recognizer.setRecognitionListener(this);
+        }
+        intent();
+        return null;
+    }
+
+    private SpeechRecognizer create() {
+        if (RecognizerCapabilities.PATH_ON_DEVICE.equals(path)) {
+            Log.d(TAG, "Creating on-device SpeechRecognizer");
+            try {
+                SpeechRecognizer onDevice = SpeechRecognizer.createOnDeviceSpeechRecognizer(context);
+                if (onDevice != null) return onDevice;
+            } catch (Exception e) {
+                Log.w(TAG, "On-device recognizer failed, using the default one", e);
+            }
+            path = RecognizerCapabilities.PATH_PLATFORM;
+            biasing = false;
+            clearIntents();
+        }
+        Log.d(TAG, "Creating SpeechRecognizer");
+        return SpeechRecognizer.createSpeechRecognizer(context);
+    }
+
+    private void clearIntents() {
+        intent = null;
+        for (int i = 0; i < biasedIntents.length; i++) {
+            biasedIntents[i] = null;
+        }
+    }
+
+    private Intent intent() {
+        if (intent == null) {
+            Intent i = new Intent(RecognizerIntent.ACTION_RECOGNIZE_SPEECH);
+            i.putExtra(RecognizerIntent.EXTRA_LANGUAGE_MODEL, LANGUAGE_MODEL);
+            i.putExtra(RecognizerIntent.EXTRA_LANGUAGE, language);
+            i.putExtra(RecognizerIntent.EXTRA_CALLING_PACKAGE, context.getPackageName());
+            i.putExtra(RecognizerIntent.EXTRA_MAX_RESULTS, MAX_RESULTS);
+            i.putExtra(RecognizerIntent.EXTRA_PARTIAL_RESULTS, PARTIAL_RESULTS);
+            i.putExtra(RecognizerIntent.EXTRA_PREFER_OFFLINE, isPreferOffline());
+            intent = i;
+        }
+        return intent;
+    }
+
+    private Intent intentFor(char expected) {
+        int letter = LetterResolver.letterIndex(expected);
+        if (!biasing || letter == LetterResolver.NO_LETTER) {
+            return intent();
+        }
+        if (biasedIntents[letter] == null) {
+            ArrayList<String> forms = new ArrayList<String>();
+            forms.add(String.valueOf(LetterResolver.letterChar(letter)));
+            String[] spoken = letterForms != null
+                    ? letterForms[letter] : LetterResolver.defaultForms(letter);
+            for (String f : spoken) {
+                forms.add(f);
+            }
+            Intent i = new Intent(intent());
+            i.putStringArrayListExtra(RecognizerIntent.EXTRA_BIASING_STRINGS, forms);
+            biasedIntents[letter] = i;
+        }
+        return biasedIntents[letter];
+    }
+
+    /** Endpointing extras for the following attempts; 0 omits one. */
+    void setEndpointing(int minimumLengthMs, int completeSilenceMs, int possiblyCompleteSilenceMs) {
+        this.minimumLengthMs = minimumLengthMs;
+        this.completeSilenceMs = completeSilenceMs;
+        this.possiblyCompleteSilenceMs = possiblyCompleteSilenceMs;
+    }
+
+    // The cached Intents are only read by startListening, so they carry the
+    // current values instead of being copied per attempt
+    private static void putMillis(Intent i, String extra, int ms) {
+        if (ms > 0) {
+            i.putExtra(extra, (long) ms);
+        } else {
+            i.removeExtra(extra);
+        }
+    }
+
+    @Override
+    public void configureVad(float onsetMargin, float offsetMargin, int hangoverMs,
+                             int minSpeechMs, int maxSpeechMs) {
+        // Endpointed by the plugin's own VAD on onRmsChanged levels
+    }
+
+    @Override
+    public void start(char expected) {
+        Intent i = intentFor(expected);
+        putMillis(i, RecognizerIntent.EXTRA_SPEECH_INPUT_MINIMUM_LENGTH_MILLIS, minimumLengthMs);
+        putMillis(i, RecognizerIntent.EXTRA_SPEECH_INPUT_COMPLETE_SILENCE_LENGTH_MILLIS, completeSilenceMs);
+        putMillis(i, RecognizerIntent.EXTRA_SPEECH_INPUT_POSSIBLY_COMPLETE_SILENCE_LENGTH_MILLIS,
+                possiblyCompleteSilenceMs);
+        recognizer.startListening(i);
+    }
+
+    @Override
+    public void stop() {
+        if (recognizer != null) {
+            recognizer.stopListening();
+        }
+    }
+
+    @Override
+    public void cancel() {
+        if (recognizer != null) {
+            recognizer.cancel();
+        }
+    }
+
+    /** True once prepare() has created the recognizer (and until destroy()). */
+    boolean isPrepared() {
+        return recognizer != null;
+    }
+
+    @Override
+    public void destroy() {
+        if (recognizer == null) return;
+        try {
+            recognizer.cancel();
+            recognizer.destroy();
+        } catch (Exception e) {
+            Log.w(TAG, "Error destroying recognizer", e);
+        }
+        recognizer = null;
+    }
+
+    @Override
+    public boolean endpointsItself() {
+        return false;
+    }
+
+    @Override
+    public EnergyVad getVad() {
+        return null;
+    }
+
+    // RecognitionListener ------------------------------------------------------
+
+    @Override
+    public void onReadyForSpeech(Bundle params) {
+        listener.onReady();
+    }
+
+    @Override
+    public void onBeginningOfSpeech() {
+        listener.onBegin();
+    }
+
+    @Override
+    public void onRmsChanged(float rmsdB) {
+        listener.onLevel(rmsdB);
+    }
+
+    @Override
+    public void onBufferReceived(byte[] buffer) {
+        // not used
+    }
+
+    @Override
+    public void onEndOfSpeech() {
+        listener.onEnd();
+    }
+
+    @Override
+    public void onError(int error) {
+        listener.onError(error);
+    }
+
+    @Override
+    public void onResults(Bundle results) {
+        listener.onResults(results.getStringArrayList(SpeechRecognizer.RESULTS_RECOGNITION),
+                results.getFloatArray(SpeechRecognizer.CONFIDENCE_SCORES));
+    }
+
+    @Override
+    public void onPartialResults(Bundle partialResults) {
+        listener.onPartialResults(
+                partialResults.getStringArrayList(SpeechRecognizer.RESULTS_RECOGNITION));
+    }
+
+    @Override
+    public void onEvent(int eventType, Bundle params) {
+        // not used
+    }
+}
@@ -0,0 +1,666 @@
+package com.limetuna.speech;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Resolves a recognizer n-best list to one entry of a loaded vocabulary
+ * (numbers, sight words, short word lists).
+ *
+ * Compiled once per vocabulary. Every spoken form gets its normalized text
+ * hashed into one map and a phonetic key hashed into another. Each distinct
+ * key of 3+ chars is also indexed under every variant with one (two, for keys
+ * of 5+ chars) symbols deleted, so keys within edit distance are found by
+ * hashing the query's own deletions instead of scanning all entries. Whole
+ * phrases and their word n-grams are matched, using the same score scale as
+ * LetterResolver:
+ *
+ *   exact phrase 4, exact n-gram 3, same phonetic key 2.5,
+ *   phonetic key 1 edit away 2, 2 edits away 1.5 (both keys 5+ chars),
+ *
+ * plus 1 for the expected entry and confidence as a tie-break. Below 2 there
+ * is no match.
+ *
+ * Built on any thread; match() uses scratch state, so one thread at a time
+ * (the plugin calls it on the main thread only).
+ */
+final class VocabularyIndex {
+
+    static final int NO_ENTRY = -1;
+
+    /** Built-in vocabulary: A-Z through LetterResolver, with its lexicon. */
+    static final String LETTERS = "letters";
+
+    private static final float SCORE_EXACT_PHRASE = 4f;
+    private static final float SCORE_EXACT_WORDS = 3f;
+    private static final float SCORE_PHONETIC = 2.5f;
+    private static final float FUZZY_STEP = 0.5f;
+    private static final float MIN_ACCEPT_SCORE = 2f;
+    private static final float EXPECTED_BIAS = 1f;
+    private static final float CONFIDENCE_WEIGHT = 0.25f;
+    private static final int MIN_FUZZY_KEY = 3;
+    private static final int LONG_KEY = 5;
+    private static final int MAX_NGRAM_WORDS = 4;
+
+    final String id;
+    private final String[] entryIds;
+    private final String[] entryTexts;
+
+    // Forms; exact and phonetic maps point at the first form (+1) of a chain
+    private final int[] formEntry;
+    private final int[] nextExact;
+    private final LearnerLexicon.LongIntMap exact;
+    private final LearnerLexicon.LongIntMap keyed;
+    private final int[] nextKeyed;
+    private final int maxFormWords;
+
+    // Distinct phonetic keys: chars in keyChars[keyStart..keyStart+keyLen)
+    private final char[] keyChars;
+    private final int[] keyStart;
+    private final int[] keyLen;
+    private final int[] keyFirstForm;
+    private final int keyCount;
+
+    // Deletion variant hash -> first posting (+1); postings chain keys
+    private final LearnerLexicon.LongIntMap deletions;
+    private int[] postingKey;
+    private int[] postingNext;
+    private int postingCount;
+
+    // Scratch state, reused across calls
+    private char[] norm = new char[64];
+    private char[] key = new char[64];
+    private int[] wordStart = new int[16];
+    private int[] wordEnd = new int[16];
+    private int[] dpPrev = new int[65];
+    private int[] dpCur = new int[65];
+    private char[] variant = new char[64];
+    private final int[] keySeen;
+    private int seenStamp;
+    private final float[] phonetic;
+    private final float[] support;
+    private final float[] scores;
+    private final int[] touched;
+    private final boolean[] isTouched;
+    private int touchedCount;
+    private int best = NO_ENTRY;
+
+    /** One entry: stable id, display text, and spoken forms (text is always one). */
+    static final class Entry {
+        final String id;
+        final String text;
+        final List<String> forms;
+
+        Entry(String id, String text, List<String> forms) {
+            this.id = id;
+            this.text = text;
+            this.forms = forms;
+        }
+    }
+
+    VocabularyIndex(String id, List<Entry> entries) {
+        if (entries.isEmpty()) {
+            throw new IllegalArgumentException("Vocabulary " + id + " has no entries");
+        }
+        this.id = id;
+        int n = entries.size();
+        entryIds = new String[n];
+        entryTexts = new String[n];
+        phonetic = new float[n];
+        support = new float[n];
+        scores = new float[n];
+        touched = new int[n];
+        isTouched = new boolean[n];
+
+        // Normalize every form once; duplicates within an entry are dropped
+        List<String> forms = new ArrayList<String>();
+        List<Integer> owners = new ArrayList<Integer>();
+        for (int e = 0; e < n; e++) {
+            Entry entry = entries.get(e);
+            entryIds[e] = entry.id;
+            entryTexts[e] = entry.text;
+            List<String> seen = new ArrayList<String>();
+            List<String> raw = new ArrayList<String>(entry.forms);
+            raw.add(0, entry.text);
+            for (String f : raw) {
+                int len = normalize(f);
+                if (len == 0) continue;
+                String form = new String(norm, 0, len);
+                if (seen.contains(form)) continue;
+                seen.add(form);
+                forms.add(form);
+                owners.add(e);
+            }
+            if (seen.isEmpty()) {
+                throw new IllegalArgumentException("Entry " + entry.id + " has no usable forms");
+            }
+        }
+
+        int formCount = forms.size();
+        formEntry = new int[formCount];
+        nextExact = new int[formCount];
+        nextKeyed = new int[formCount];
+        exact = new LearnerLexicon.LongIntMap(formCount * 2);
+        keyed = new LearnerLexicon.LongIntMap(formCount * 2);
+
+        StringBuilder keys = new StringBuilder();
+        int[] starts = new int[formCount];
+        int[] lens = new int[formCount];
+        long[] hashes = new long[formCount];
+        int keys0 = 0;
+        int words = 1;
+        for (int f = 0; f < formCount; f++) {
+            String form = forms.get(f);
+            formEntry[f] = owners.get(f);
+            form.getChars(0, form.length(), norm, 0);
+            int len = form.length();
+            words = Math.max(words, countWords(norm, len));
+
+            long h = LearnerLexicon.hash(norm, len);
+            nextExact[f] = exact.get(h) - 1;
+            exact.put(h, f + 1);
+
+            int klen = phoneticKey(norm, 0, len);
+            long kh = LearnerLexicon.hash(key, klen);
+            int head = keyed.get(kh) - 1;
+            if (head < 0) {
+                // New distinct key
+                starts[keys0] = keys.length();
+                lens[keys0] = klen;
+                hashes[keys0] = kh;
+                keys.append(key, 0, klen);
+                keys0++;
+            }
+            nextKeyed[f] = head;
+            keyed.put(kh, f + 1);
+        }
+        maxFormWords = Math.min(words, MAX_NGRAM_WORDS);
+
+        keyCount = keys0;
+        keyChars = keys.toString().toCharArray();
+        keyStart = Arrays.copyOf(starts, keyCount);
+        keyLen = Arrays.copyOf(lens, keyCount);
+        keyFirstForm = new int[keyCount];
+        keySeen = new int[keyCount];
+        deletions = new LearnerLexicon.LongIntMap(keyCount * 8);
+        postingKey = new int[keyCount * 4];
+        postingNext = new int[keyCount * 4];
+        for (int k = 0; k < keyCount; k++) {
+            keyFirstForm[k] = keyed.get(hashes[k]) - 1;
+            indexDeletions(k);
+        }
+    }
+
+    /**
+     * Entries from loadVocabulary: each is a string (id and text) or
+     * { id, text (defaults to id), forms: [alternative spoken forms] }.
+     */
+    static List<Entry> parseEntries(JSONArray json) {
+        List<Entry> entries = new ArrayList<Entry>(json.length());
+        Set<String> ids = new HashSet<String>();
+        for (int i = 0; i < json.length(); i++) {
+            Object item = json.opt(i);
+            Entry entry;
+            if (item instanceof String) {
+                entry = new Entry((String) item, (String) item, new ArrayList<String>());
+            } else if (item instanceof JSONObject) {
+                JSONObject obj = (JSONObject) item;
+                String entryId = obj.optString("id", "");
+                List<String> forms = new ArrayList<String>();
+                JSONArray formsJson = obj.optJSONArray("forms");
+                if (formsJson != null) {
+                    for (int f = 0; f < formsJson.length(); f++) {
+                        forms.add(formsJson.optString(f, ""));
+                    }
+                }
+                entry = new Entry(entryId, obj.optString("text", entryId), forms);
+            } else {
+                throw new IllegalArgumentException("Entry " + i + " is not a string or object");
+            }
+            if (entry.id.length() == 0) {
+                throw new IllegalArgumentException("Entry " + i + " has no id");
+            }
+            if (!ids.add(entry.id)) {
+                throw new IllegalArgumentException("Duplicate entry id " + entry.id);
+            }
+            entries.add(entry);
+        }
+        return entries;
+    }
+
+    int size() {
+        return entryIds.length;
+    }
+
+    int formCount() {
+        return formEntry.length;
+    }
+
+    int keyCount() {
+        return keyCount;
+    }
+
+    String entryId(int entry) {
+        return entryIds[entry];
+    }
+
+    String entryText(int entry) {
+        return entryTexts[entry];
+    }
+
+    /** Entry index for an id, or NO_ENTRY. Linear; call once per attempt. */
+    int indexOf(String entryId) {
+        if (entryId == null) return NO_ENTRY;
+        for (int i = 0; i < entryIds.length; i++) {
+            if (entryIds[i].equals(entryId)) return i;
+        }
+        return NO_ENTRY;
+    }
+
+    // ---- Matching ----------------------------------------------------------
+
+    /**
+     * Scores every candidate and returns the winning entry or NO_ENTRY. Scores
+     * are available via getScore() and snapshot() until the next call.
+     */
+    int match(List<String> candidates, float[] confidences, int expected) {
+        for (int i = 0; i < touchedCount; i++) {
+            int e = touched[i];
+            isTouched[e] = false;
+            phonetic[e] = 0f;
+            support[e] = 0f;
+            scores[e] = 0f;
+        }
+        touchedCount = 0;
+
+        if (candidates != null) {
+            boolean useConfs = confidences != null && confidences.length == candidates.size();
+            for (int i = 0; i < candidates.size(); i++) {
+                float conf = useConfs ? clampConfidence(confidences[i]) : 0f;
+                scorePhrase(candidates.get(i), conf);
+            }
+        }
+
+        best = NO_ENTRY;
+        float bestTotal = 0f;
+        float bestScore = 0f;
+        for (int i = 0; i < touchedCount; i++) {
+            int e = touched[i];
+            float s = phonetic[e] + (e == expected ? EXPECTED_BIAS : 0f);
+            float total = s + CONFIDENCE_WEIGHT * support[e];
+            scores[e] = total;
+            if (total > bestTotal || (total == bestTotal && e < best)) {
+                bestTotal = total;
+                bestScore = s;
+                best = e;
+            }
+        }
+        if (bestScore < MIN_ACCEPT_SCORE) {
+            best = NO_ENTRY;
+        }
+        return best;
+    }
+
+    float getScore(int entry) {
+        return scores[entry];
+    }
+
+    private void scorePhrase(String phrase, float conf) {
+        int len = normalize(phrase);
+        if (len == 0) return;
+
+        // Whole phrase
+        int f = exact.get(LearnerLexicon.hash(norm, len)) - 1;
+        for (; f >= 0; f = nextExact[f]) {
+            raise(formEntry[f], SCORE_EXACT_PHRASE, conf);
+        }
+        scoreKey(0, len, conf);
+
+        // Word n-grams, up to the longest form
+        int words = splitWords(len);
+        if (words < 2) return;
+        for (int w = 0; w < words; w++) {
+            for (int k = 1; k <= maxFormWords && w + k <= words; k++) {
+                if (k == words) break; // the whole phrase, done above
+                int s = wordStart[w];
+                int e = wordEnd[w + k - 1];
+                for (f = exact.get(LearnerLexicon.hash(norm, s, e)) - 1; f >= 0; f = nextExact[f]) {
+                    raise(formEntry[f], SCORE_EXACT_WORDS, conf);
+                }
+                scoreKey(s, e, conf);
+            }
+        }
+    }
+
+    // Phonetic key of norm[start, end): same key, then nearby keys
+    private void scoreKey(int start, int end, float conf) {
+        int klen = phoneticKey(norm, start, end);
+        if (klen == 0) return;
+        int f = keyed.get(LearnerLexicon.hash(key, klen)) - 1;
+        for (; f >= 0; f = nextKeyed[f]) {
+            raise(formEntry[f], SCORE_PHONETIC, conf);
+        }
+
+        if (klen < MIN_FUZZY_KEY) return;
+
+        // Every key sharing a deletion variant with this one is a candidate
+        if (++seenStamp == 0) {
+            Arrays.fill(keySeen, 0);
+            seenStamp = 1;
+        }
+        int maxDistance = klen >= LONG_KEY ? 2 : 1;
+        if (variant.length < klen) {
+            variant = new char[klen];
+        }
+        probe(key, klen, klen, conf);
+        for (int i = 0; i < klen; i++) {
+            int vlen = deleteAt(key, klen, i, -1);
+            probe(variant, vlen, klen, conf);
+            if (maxDistance < 2) continue;
+            for (int j = i + 1; j < klen; j++) {
+                vlen = deleteAt(key, klen, i, j);
+                probe(variant, vlen, klen, conf);
+            }
+        }
+    }
+
+    private void probe(char[] buf, int len, int queryLen, float conf) {
+        int p = deletions.get(LearnerLexicon.hash(buf, len)) - 1;
+        for (; p >= 0; p = postingNext[p]) {
+            int k = postingKey[p];
+            if (keySeen[k] == seenStamp) continue;
+            keySeen[k] = seenStamp;
+            int d = levenshtein(keyChars, keyStart[k], keyLen[k], key, 0, queryLen);
+            int allowed = Math.min(queryLen, keyLen[k]) >= LONG_KEY ? 2 : 1;
+            if (d == 0 || d > allowed) continue;
+            float score = SCORE_PHONETIC - FUZZY_STEP * d;
+            for (int f = keyFirstForm[k]; f >= 0; f = nextKeyed[f]) {
+                raise(formEntry[f], score, conf);
+            }
+        }
+    }
+
+    private void raise(int entry, float score, float conf) {
+        if (!isTouched[entry]) {
+            isTouched[entry] = true;
+            touched[touchedCount++] = entry;
+        }
+        if (score > phonetic[entry]) {
+            phonetic[entry] = score;
+            support[entry] = conf;
+        } else if (score == phonetic[entry] && conf > support[entry]) {
+            support[entry] = conf;
+        }
+    }
+
+    // ---- Results -----------------------------------------------------------
+
+    /** Best entry, its score and up to runnersUp others, in score order. */
+    static final class Match {
+        final String vocabulary;
+        final String id;
+        final String text;
+        final float score;
+        final String[] runnerIds;
+        final String[] runnerTexts;
+        final float[] runnerScores;
+
+        Match(String vocabulary, String id, String text, float score,
+              String[] runnerIds, String[] runnerTexts, float[] runnerScores) {
+            this.vocabulary = vocabulary;
+            this.id = id;
+            this.text = text;
+            this.score = score;
+            this.runnerIds = runnerIds;
+            this.runnerTexts = runnerTexts;
+            this.runnerScores = runnerScores;
+        }
+    }
+
+    // Must follow match(): copies the scores it left behind
+    Match snapshot(int runnersUp) {
+        int[] order = topEntries(touched, touchedCount, scores, best, runnersUp);
+        String[] ids = new String[order.length];
+        String[] texts = new String[order.length];
+        float[] s = new float[order.length];
+        for (int i = 0; i < order.length; i++) {
+            ids[i] = entryIds[order[i]];
+            texts[i] = entryTexts[order[i]];
+            s[i] = scores[order[i]];
+        }
+        return new Match(id, best != NO_ENTRY ? entryIds[best] : null,
+                best != NO_ENTRY ? entryTexts[best] : null,
+                best != NO_ENTRY ? scores[best] : 0f, ids, texts, s);
+    }
+
+    /** The built-in letters vocabulary, from the resolver's last resolve(). */
+    static Match letterMatch(LetterResolver resolver, int letter, int runnersUp) {
+        int[] all = new int[LetterResolver.LETTER_COUNT];
+        float[] scores = new float[LetterResolver.LETTER_COUNT];
+        int n = 0;
+        for (int l = 0; l < LetterResolver.LETTER_COUNT; l++) {
+            scores[l] = resolver.getScore(l);
+            if (scores[l] > 0f) all[n++] = l;
+        }
+        int[] order = topEntries(all, n, scores, letter, runnersUp);
+        String[] ids = new String[order.length];
+        float[] s = new float[order.length];
+        for (int i = 0; i < order.length; i++) {
+            ids[i] = String.valueOf(LetterResolver.letterChar(order[i]));
+            s[i] = scores[order[i]];
+        }
+        String best = letter != LetterResolver.NO_LETTER
+                ? String.valueOf(LetterResolver.letterChar(letter)) : null;
+        return new Match(LETTERS, best, best, letter != LetterResolver.NO_LETTER ? scores[letter] : 0f,
+                ids, ids, s);
+    }
+
+    // Up to k candidates other than exclude, highest score first (k is small)
+    private static int[] topEntries(int[] candidates, int n, float[] scores, int exclude, int k) {
+        int[] top = new int[Math.max(0, Math.min(k, n))];
+        int size = 0;
+        for (int i = 0; i < n; i++) {
+            int e = candidates[i];
+            if (e == exclude || scores[e] <= 0f) continue;
+            int pos = size;
+            while (pos > 0 && scores[top[pos - 1]] < scores[e]) pos--;
+            if (pos >= top.length) continue;
+            int last = Math.min(size, top.length - 1);
+            System.arraycopy(top, pos, top, pos + 1, last - pos);
+            top[pos] = e;
+            if (size < top.length) size++;
+        }
+        return size == top.length ? top : Arrays.copyOf(top, size);
+    }
+
+    // ---- Text --------------------------------------------------------------
+
+    /**
+     * Lowercases into the scratch buffer, keeps letters and digits, collapses
+     * runs of whitespace and punctuation into one space and trims.
+     */
+    private int normalize(String phrase) {
+        if (phrase == null) return 0;
+        int n = phrase.length();
+        if (norm.length < n) {
+            norm = new char[Math.max(n, norm.length * 2)];
+        }
+
+        int len = 0;
+        boolean pendingSpace = false;
+        for (int i = 0; i < n; i++) {
+            char c = Character.toLowerCase(phrase.charAt(i));
+            if (Character.isLetterOrDigit(c)) {
+                if (pendingSpace && len > 0) {
+                    norm[len++] = ' ';
+                }
+                pendingSpace = false;
+                norm[len++] = c;
+            } else if (c != '\'') {
+                pendingSpace = true;
+            }
+        }
+        return len;
+    }
+
+    private int splitWords(int len) {
+        int words = 0;
+        int start = 0;
+        while (start < len) {
+            int end = start;
+            while (end < len && norm[end] != ' ') end++;
+            if (words == wordStart.length) {
+                wordStart = Arrays.copyOf(wordStart, words * 2);
+                wordEnd = Arrays.copyOf(wordEnd, words * 2);
+            }
+            wordStart[words] = start;
+            wordEnd[words] = end;
+            words++;
+            start = end + 1;
+        }
+        return words;
+    }
+
+    private static int countWords(char[] buf, int len) {
+        int words = len > 0 ? 1 : 0;
+        for (int i = 0; i < len; i++) {
+            if (buf[i] == ' ') words++;
+        }
+        return words;
+    }
+
+    /**
+     * Coarse English sound key of buf[start, end) into the key buffer: the
+     * first sound is kept, later vowels and h/w/y are dropped, consonants that
+     * are easily confused collapse to one class and repeats collapse.
+     * Other letters and digits are kept as they are.
+     */
+    private int phoneticKey(char[] buf, int start, int end) {
+        if (key.length < end - start) {
+            key = new char[Math.max(end - start, key.length * 2)];
+        }
+        int len = 0;
+        char last = 0;
+        for (int i = start; i < end; i++) {
+            char c = buf[i];
+            if (c == ' ') {
+                last = 0;
+                continue;
+            }
+            char k = soundClass(c);
+            if (k == 0) {
+                // Vowel-like: only the first sound of the phrase counts
+                if (len == 0) key[len++] = 'A';
+                last = 0;
+                continue;
+            }
+            if (k != last) {
+                key[len++] = k;
+            }
+            last = k;
+        }
+        return len;
+    }
+
+    private static char soundClass(char c) {
+        switch (c) {
+            case 'a': case 'e': case 'i': case 'o': case 'u':
+            case 'h': case 'w': case 'y':
+                return 0;
+            case 'b': case 'p':
+                return 'P';
+            case 'f': case 'v':
+                return 'F';
+            case 'c': case 'g': case 'j': case 'k': case 'q': case 'x':
+                return 'K';
+            case 's': case 'z':
+                return 'S';
+            case 'd': case 't':
+                return 'T';
+            case 'l':
+                return 'L';
+            case 'm': case 'n':
+                return 'N';
+            case 'r':
+                return 'R';
+            default:
+                return c;
+        }
+    }
+
+    // ---- Deletion index ----------------------------------------------------
+
+    // Posts key k under itself and its 1- (or 2-) deletion variants
+    private void indexDeletions(int k) {
+        int len = keyLen[k];
+        if (len < MIN_FUZZY_KEY) return;
+        char[] own = Arrays.copyOfRange(keyChars, keyStart[k], keyStart[k] + len);
+        if (variant.length < len) {
+            variant = new char[len];
+        }
+        post(own, len, k);
+        for (int i = 0; i < len; i++) {
+            post(variant, deleteAt(own, len, i, -1), k);
+            if (len < LONG_KEY) continue;
+            for (int j = i + 1; j < len; j++) {
+                post(variant, deleteAt(own, len, i, j), k);
+            }
+        }
+    }
+
+    private void post(char[] buf, int len, int k) {
+        long h = LearnerLexicon.hash(buf, len);
+        int head = deletions.get(h) - 1;
+        // Repeated symbols give the same variant twice; chains are newest first
+        if (head >= 0 && postingKey[head] == k) return;
+        if (postingCount == postingKey.length) {
+            postingKey = Arrays.copyOf(postingKey, postingCount * 2);
+            postingNext = Arrays.copyOf(postingNext, postingCount * 2);
+        }
+        postingKey[postingCount] = k;
+        postingNext[postingCount] = head;
+        deletions.put(h, ++postingCount);
+    }
+
+    // src[0, len) without positions i and j (j < 0 for one deletion) into variant
+    private int deleteAt(char[] src, int len, int i, int j) {
+        int n = 0;
+        for (int p = 0; p < len; p++) {
+            if (p != i && p != j) variant[n++] = src[p];
+        }
+        return n;
+    }
+
+    private int levenshtein(char[] a, int aStart, int aLen, char[] b, int bStart, int bLen) {
+        if (dpPrev.length <= bLen) {
+            dpPrev = new int[bLen + 1];
+            dpCur = new int[bLen + 1];
+        }
+        int[] prev = dpPrev;
+        int[] cur = dpCur;
+        for (int j = 0; j <= bLen; j++) prev[j] = j;
+        for (int i = 1; i <= aLen; i++) {
+            cur[0] = i;
+            char ca = a[aStart + i - 1];
+            for (int j = 1; j <= bLen; j++) {
+                int cost = ca == b[bStart + j - 1] ? 0 : 1;
+                cur[j] = Math.min(Math.min(cur[j - 1] + 1, prev[j] + 1), prev[j - 1] + cost);
+            }
+            int[] t = prev;
+            prev = cur;
+            cur = t;
+        }
+        return prev[bLen];
+    }
+
+    private static float clampConfidence(float c) {
+        if (c != c || c < 0f) return 0f;
+        return c > 1f ? 1f : c;
+    }
+}
@@ -0,0 +1,220 @@
+package com.limetuna.speech;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Minimal RIFF/WAVE reader and writer for 16-bit PCM.
+ *
+ * Used for keyword templates on the device and for WAV fixtures when the
+ * keyword spotter is benchmarked on a desktop JVM. Multi-channel input is
+ * down-mixed to mono; other sample rates are linearly resampled on request.
+ */
+final class WavIO {
+
+    static final class Pcm {
+        final short[] samples;
+        final int sampleRate;
+
+        Pcm(short[] samples, int sampleRate) {
+            this.samples = samples;
+            this.sampleRate = sampleRate;
+        }
+
+        double durationMs() {
+            return samples.length * 1000.0 / sampleRate;
+        }
+    }
+
+    private WavIO() {
+    }
+
+    static Pcm read(File file) throws IOException {
+        InputStream in = new BufferedInputStream(new FileInputStream(file));
+        try {
+            return read(in);
+        } finally {
+            in.close();
+        }
+    }
+
+    static Pcm read(InputStream stream) throws IOException {
+        DataInputStream in = new DataInputStream(stream);
+
+        if (readTag(in) != tag("RIFF")) throw new IOException("Not a RIFF file");
+        readIntLE(in);
+        if (readTag(in) != tag("WAVE")) throw new IOException("Not a WAVE file");
+
+        int channels = 0;
+        int sampleRate = 0;
+        int bitsPerSample = 0;
+        int format = 0;
+
+        while (true) {
+            int chunkId;
+            int chunkSize;
+            try {
+                chunkId = readTag(in);
+                chunkSize = readIntLE(in);
+            } catch (EOFException e) {
+                throw new IOException("No data chunk");
+            }
+
+            if (chunkId == tag("fmt ")) {
+                format = readShortLE(in);
+                channels = readShortLE(in);
+                sampleRate = readIntLE(in);
+                readIntLE(in); // byte rate
+                readShortLE(in); // block align
+                bitsPerSample = readShortLE(in);
+                skipFully(in, chunkSize - 16);
+            } else if (chunkId == tag("data")) {
+                if (format != 1 || bitsPerSample != 16 || channels < 1) {
+                    throw new IOException("Only 16-bit PCM is supported");
+                }
+                int frames = chunkSize / (2 * channels);
+                short[] samples = new short[frames];
+                byte[] frame = new byte[2 * channels];
+                for (int i = 0; i < frames; i++) {
+                    in.readFully(frame);
+                    int sum = 0;
+                    for (int c = 0; c < channels; c++) {
+                        sum += (short) ((frame[2 * c] & 0xff) | (frame[2 * c + 1] << 8));
+                    }
+                    samples[i] = (short) (sum / channels);
+                }
+                return new Pcm(samples, sampleRate);
+            } else {
+                skipFully(in, chunkSize + (chunkSize & 1));
+            }
+        }
+    }
+
+    /** Reads only the header; returns the duration of the data chunk. */
+    static double durationMs(InputStream stream) throws IOException {
+        DataInputStream in = new DataInputStream(stream);
+
+        if (readTag(in) != tag("RIFF")) throw new IOException("Not a RIFF file");
+        readIntLE(in);
+        if (readTag(in) != tag("WAVE")) throw new IOException("Not a WAVE file");
+
+        int byteRate = 0;
+        while (true) {
+            int chunkId = readTag(in);
+            int chunkSize = readIntLE(in);
+            if (chunkId == tag("fmt ")) {
+                readShortLE(in); // format
+                readShortLE(in); // channels
+                readIntLE(in); // sample rate
+                byteRate = readIntLE(in);
+                skipFully(in, chunkSize - 12);
+            } else if (chunkId == tag("data")) {
+                if (byteRate <= 0) throw new IOException("No fmt chunk");
+                return (chunkSize & 0xffffffffL) * 1000.0 / byteRate;
+            } else {
+                skipFully(in, chunkSize + (chunkSize & 1));
+            }
+        }
+    }
+
+    static void write(File file, short[] samples, int offset, int length, int sampleRate)
+            throws IOException {
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(file));
+        try {
+            int dataBytes = length * 2;
+            writeTag(out, "RIFF");
+            writeIntLE(out, 36 + dataBytes);
+            writeTag(out, "WAVE");
+            writeTag(out, "fmt ");
+            writeIntLE(out, 16);
+            writeShortLE(out, 1);
+            writeShortLE(out, 1);
+            writeIntLE(out, sampleRate);
+            writeIntLE(out, sampleRate * 2);
+            writeShortLE(out, 2);
+            writeShortLE(out, 16);
+            writeTag(out, "data");
+            writeIntLE(out, dataBytes);
+            for (int i = offset; i < offset + length; i++) {
+                writeShortLE(out, samples[i]);
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    /** Linear resampling; returns pcm unchanged when the rate already matches. */
+    static Pcm resample(Pcm pcm, int targetRate) {
+        if (pcm.sampleRate == targetRate) return pcm;
+
+        int outLength = (int) ((long) pcm.samples.length * targetRate / pcm.sampleRate);
+        short[] out = new short[outLength];
+        double step = (double) pcm.sampleRate / targetRate;
+        for (int i = 0; i < outLength; i++) {
+            double pos = i * step;
+            int i0 = (int) pos;
+            int i1 = Math.min(i0 + 1, pcm.samples.length - 1);
+            double frac = pos - i0;
+            out[i] = (short) Math.round(pcm.samples[i0] * (1 - frac) + pcm.samples[i1] * frac);
+        }
+        return new Pcm(out, targetRate);
+    }
+
+    // ---- Little-endian helpers ------------------------------------------------
+
+    private static int tag(String s) {
+        return (s.charAt(0) << 24) | (s.charAt(1) << 16) | (s.charAt(2) << 8) | s.charAt(3);
+    }
+
+    private static int readTag(DataInputStream in) throws IOException {
+        return in.readInt();
+    }
+
+    private static int readIntLE(DataInputStream in) throws IOException {
+        int b0 = in.readUnsignedByte();
+        int b1 = in.readUnsignedByte();
+        int b2 = in.readUnsignedByte();
+        int b3 = in.readUnsignedByte();
+        return b0 | (b1 << 8) | (b2 << 16) | (b3 << 24);
+    }
+
+    private static int readShortLE(DataInputStream in) throws IOException {
+        int b0 = in.readUnsignedByte();
+        int b1 = in.readUnsignedByte();
+        return b0 | (b1 << 8);
+    }
+
+    private static void skipFully(DataInputStream in, int n) throws IOException {
+        while (n > 0) {
+            int skipped = in.skipBytes(n);
+            if (skipped <= 0) throw new EOFException();
+            n -= skipped;
+        }
+    }
+
+    private static void writeTag(OutputStream out, String s) throws IOException {
+        for (int i = 0; i < 4; i++) {
+            out.write(s.charAt(i));
+        }
+    }
+
+    private static void writeIntLE(OutputStream out, int v) throws IOException {
+        out.write(v & 0xff);
+        out.write((v >>> 8) & 0xff);
+        out.write((v >>> 16) & 0xff);
+        out.write((v >>> 24) & 0xff);
+    }
+
+    private static void writeShortLE(OutputStream out, int v) throws IOException {
+        out.write(v & 0xff);
+        out.write((v >>> 8) & 0xff);
+    }
+}
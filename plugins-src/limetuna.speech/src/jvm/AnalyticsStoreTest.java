@@ -0,0 +1,156 @@
+package com.limetuna.speech;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Off-device checks for the attempt history: rows written and read back
+ * through the aggregates, retry detection, the retry window cap and clear().
+ *
+ * Desktop-only, not shipped in the app. Build it with an org.json jar
+ * (Android bundles org.json):
+ *
+ *   cd plugins-src/limetuna.speech/src
+ *   javac -cp json.jar -d /tmp/ast jvm/AnalyticsStoreTest.java \
+ *       android/AnalyticsStore.java android/LetterResolver.java \
+ *       android/LearnerLexicon.java android/LatencyMetrics.java
+ *   java -cp /tmp/ast:json.jar com.limetuna.speech.AnalyticsStoreTest
+ *
+ * Prints one line per check; the exit status is 1 when one fails.
+ */
+public final class AnalyticsStoreTest {
+
+    // On a minute boundary, so minute windows from 0 start at T0
+    private static final long T0 = 1699999980000L;
+    private static final int B = LetterResolver.letterIndex('B');
+    private static final int P = LetterResolver.letterIndex('P');
+
+    private static int failures;
+
+    private AnalyticsStoreTest() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        lettersAndRetries();
+        newestWindowsAreKept();
+        clearForgetsEverything();
+
+        if (failures > 0) {
+            System.out.println(failures + " check(s) failed");
+            System.exit(1);
+        }
+        System.out.println("all checks passed");
+    }
+
+    private static void lettersAndRetries() throws Exception {
+        AnalyticsStore store = new AnalyticsStore(tempDir(), AnalyticsStore.DEFAULT_MAX_BYTES);
+        miss(store, T0, B);
+        hit(store, T0 + 5000, B);
+        miss(store, T0 + 10000, B);
+        hit(store, T0 + 10000 + AnalyticsStore.RETRY_GAP_MS + 1000, B);
+        hit(store, T0 + 200000, P);
+
+        JSONObject letters = query(store, AnalyticsStore.KIND_LETTERS, 0L);
+        JSONObject all = letters.getJSONObject("all");
+        check(letters.getLong("rows") == 5 && all.getInt("attempts") == 5 && all.getInt("correct") == 3,
+                "rows come back with their outcomes");
+        JSONObject b = letters.getJSONObject("letters").getJSONObject("B");
+        check(b.getInt("attempts") == 4 && b.getInt("retries") == 1,
+                "only a miss followed within the gap makes a retry");
+        check(letters.getJSONObject("letters").getJSONObject("P").getInt("retries") == 0,
+                "another letter is no retry");
+        store.close();
+    }
+
+    // A fine window over a long range must lose the oldest windows, not the newest
+    private static void newestWindowsAreKept() throws Exception {
+        AnalyticsStore store = new AnalyticsStore(tempDir(), AnalyticsStore.DEFAULT_MAX_BYTES);
+        int minutes = 1500;
+        for (int i = 0; i < minutes; i++) {
+            hit(store, T0 + i * 60000L, B);
+        }
+        JSONObject retries = query(store, AnalyticsStore.KIND_RETRIES, 60000L);
+        JSONArray windows = retries.getJSONArray("windows");
+        check(retries.getBoolean("truncated"), "truncated is reported");
+        check(windows.length() == 1000, "at most 1000 windows");
+        check(windows.getJSONObject(windows.length() - 1).getLong("startMs") == T0 + (minutes - 1) * 60000L,
+                "the newest window is kept");
+        check(windows.getJSONObject(0).getLong("startMs") == T0 + (minutes - 1000) * 60000L,
+                "the oldest windows are dropped");
+
+        JSONObject daily = query(store, AnalyticsStore.KIND_RETRIES, 0L);
+        check(!daily.getBoolean("truncated"), "a coarse window is not truncated");
+        store.close();
+    }
+
+    private static void clearForgetsEverything() throws Exception {
+        AnalyticsStore store = new AnalyticsStore(tempDir(), AnalyticsStore.DEFAULT_MAX_BYTES);
+        miss(store, T0, B);
+        final CountDownLatch cleared = new CountDownLatch(1);
+        store.clear(new Runnable() {
+            @Override
+            public void run() {
+                cleared.countDown();
+            }
+        });
+        cleared.await(10, TimeUnit.SECONDS);
+        hit(store, T0 + 1000, B);
+
+        JSONObject letters = query(store, AnalyticsStore.KIND_LETTERS, 0L);
+        check(letters.getLong("rows") == 1, "clear() deletes the rows");
+        check(letters.getJSONObject("all").getInt("retries") == 0,
+                "the first attempt after clear() is no retry");
+        store.close();
+    }
+
+    private static void hit(AnalyticsStore store, long wallMs, int letter) {
+        store.record(wallMs, 1, letter, letter, LatencyMetrics.OUTCOME_RESULT, true, false,
+                "system", null, 800, 0.9f);
+    }
+
+    private static void miss(AnalyticsStore store, long wallMs, int letter) {
+        store.record(wallMs, 1, letter, LetterResolver.NO_LETTER, LatencyMetrics.OUTCOME_ERROR, false, false,
+                "system", "NO_MATCH", 1200, Float.NaN);
+    }
+
+    private static JSONObject query(AnalyticsStore store, String kind, long windowMs) throws Exception {
+        final JSONObject[] result = new JSONObject[1];
+        final Exception[] error = new Exception[1];
+        final CountDownLatch done = new CountDownLatch(1);
+        store.query(kind, 0L, Long.MAX_VALUE, LetterResolver.NO_LETTER, null, windowMs,
+                new AnalyticsStore.QueryCallback() {
+                    @Override
+                    public void onResult(JSONObject json) {
+                        result[0] = json;
+                        done.countDown();
+                    }
+
+                    @Override
+                    public void onError(Exception e) {
+                        error[0] = e;
+                        done.countDown();
+                    }
+                });
+        if (!done.await(10, TimeUnit.SECONDS)) throw new IOException("query timed out");
+        if (error[0] != null) throw error[0];
+        return result[0];
+    }
+
+    private static File tempDir() throws IOException {
+        File dir = File.createTempFile("analytics", "");
+        dir.delete();
+        dir.mkdirs();
+        dir.deleteOnExit();
+        return dir;
+    }
+
+    private static void check(boolean ok, String what) {
+        System.out.println((ok ? "ok    " : "FAIL  ") + what);
+        if (!ok) failures++;
+    }
+}
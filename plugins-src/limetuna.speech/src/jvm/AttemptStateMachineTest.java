@@ -0,0 +1,98 @@
+package com.limetuna.speech;
+
+import java.util.List;
+
+/**
+ * Off-device checks for the attempt lifecycle and the starts waiting on it:
+ * every start that does not run must come back to the caller.
+ *
+ * Desktop-only, not shipped in the app:
+ *
+ *   cd plugins-src/limetuna.speech/src
+ *   javac -d /tmp/asm jvm/AttemptStateMachineTest.java android/AttemptStateMachine.java
+ *   java -cp /tmp/asm com.limetuna.speech.AttemptStateMachineTest
+ *
+ * Prints one line per check; the exit status is 1 when one fails.
+ */
+public final class AttemptStateMachineTest {
+
+    private static int failures;
+
+    private AttemptStateMachineTest() {
+    }
+
+    public static void main(String[] args) {
+        transitions();
+        queueKeepsOrder();
+        replaceEvictsNewest();
+        shrinkingQueueReturnsTrimmed();
+
+        if (failures > 0) {
+            System.out.println(failures + " check(s) failed");
+            System.exit(1);
+        }
+        System.out.println("all checks passed");
+    }
+
+    private static void transitions() {
+        AttemptStateMachine<String> m = new AttemptStateMachine<String>();
+        check(m.transition(AttemptStateMachine.IDLE, AttemptStateMachine.ARMING), "idle -> arming");
+        check(!m.transition(AttemptStateMachine.IDLE, AttemptStateMachine.ARMING),
+                "a second start cannot arm");
+        check(m.transition(AttemptStateMachine.ARMING, AttemptStateMachine.LISTENING), "arming -> listening");
+        check(m.isEngaged(), "listening is engaged");
+        check(!m.transition(AttemptStateMachine.LISTENING, AttemptStateMachine.ARMING),
+                "listening -> arming is illegal");
+        check(m.transition(AttemptStateMachine.LISTENING, AttemptStateMachine.RECOVERING),
+                "listening -> recovering");
+        check(m.transition(AttemptStateMachine.RECOVERING, AttemptStateMachine.LISTENING),
+                "recovering -> listening");
+        check(m.finish() == AttemptStateMachine.LISTENING && m.isIdle(), "finish returns to idle");
+        check(m.illegalTransitions() == 2, "illegal transitions are counted");
+    }
+
+    private static void queueKeepsOrder() {
+        AttemptStateMachine<String> m = new AttemptStateMachine<String>();
+        m.setPolicy(AttemptStateMachine.POLICY_QUEUE, 2);
+        check(m.offer("a") == AttemptStateMachine.QUEUED, "first start queued");
+        check(m.offer("b") == AttemptStateMachine.QUEUED, "second start queued");
+        check(m.offer("c") == AttemptStateMachine.REJECTED, "full queue rejects");
+        check("a".equals(m.poll()) && "b".equals(m.poll()) && m.poll() == null, "queue is FIFO");
+    }
+
+    private static void replaceEvictsNewest() {
+        AttemptStateMachine<String> m = new AttemptStateMachine<String>();
+        m.setPolicy(AttemptStateMachine.POLICY_REPLACE, 2);
+        m.offer("a");
+        m.offer("b");
+        check(m.offer("c") == AttemptStateMachine.REPLACED, "full queue replaces");
+        check("b".equals(m.takeEvicted()), "the newest waiting start is evicted");
+        check(m.takeEvicted() == null, "an eviction is handed out once");
+        List<String> left = m.drain();
+        check(left.size() == 2 && "a".equals(left.get(0)) && "c".equals(left.get(1)),
+                "drain returns the rest oldest first");
+    }
+
+    private static void shrinkingQueueReturnsTrimmed() {
+        AttemptStateMachine<String> m = new AttemptStateMachine<String>();
+        m.setPolicy(AttemptStateMachine.POLICY_QUEUE, 4);
+        m.offer("a");
+        m.offer("b");
+        m.offer("c");
+        m.offer("d");
+
+        List<String> trimmed = m.setPolicy(AttemptStateMachine.POLICY_QUEUE, 1);
+        check(trimmed.size() == 3, "three starts trimmed");
+        check(trimmed.size() == 3 && "d".equals(trimmed.get(0)) && "c".equals(trimmed.get(1))
+                && "b".equals(trimmed.get(2)), "trimmed newest first");
+        check(m.waitingCount() == 1 && "a".equals(m.poll()), "the oldest start still runs");
+        check(m.setPolicy(AttemptStateMachine.POLICY_QUEUE, 3).isEmpty(), "growing trims nothing");
+        check(m.setPolicy(AttemptStateMachine.POLICY_QUEUE, 0).isEmpty() && m.getCapacity() == 1,
+                "capacity is at least one");
+    }
+
+    private static void check(boolean ok, String what) {
+        System.out.println((ok ? "ok    " : "FAIL  ") + what);
+        if (!ok) failures++;
+    }
+}
@@ -0,0 +1,124 @@
+package com.limetuna.speech;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Off-device checks for the per-learner endpoint tuner: the P-square
+ * quantiles against exact ones, the extras it derives, the miss backoff
+ * and the file round trip.
+ *
+ * Desktop-only, not shipped in the app:
+ *
+ *   cd plugins-src/limetuna.speech/src
+ *   javac -d /tmp/ept jvm/EndpointTunerTest.java android/EndpointTuner.java
+ *   java -cp /tmp/ept com.limetuna.speech.EndpointTunerTest
+ *
+ * Prints one line per check; the exit status is 1 when one fails.
+ */
+public final class EndpointTunerTest {
+
+    private static int failures;
+
+    private EndpointTunerTest() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        untunedLeavesDefaults();
+        quantilesTrackSamples();
+        missesBackOffAndRecover();
+        stateSurvivesReload();
+
+        if (failures > 0) {
+            System.out.println(failures + " check(s) failed");
+            System.exit(1);
+        }
+        System.out.println("all checks passed");
+    }
+
+    private static void untunedLeavesDefaults() {
+        EndpointTuner tuner = new EndpointTuner(null);
+        for (int i = 0; i < EndpointTuner.MIN_SAMPLES - 1; i++) {
+            tuner.observeSpeech(500);
+        }
+        tuner.observeSpeech(EndpointTuner.MAX_SPEECH_MS + 1);
+        tuner.observeSpeech(0);
+        check(!tuner.isTuned(), "not tuned below MIN_SAMPLES; noise and zero are ignored");
+        check(tuner.completeSilenceMs() == 0 && tuner.possiblyCompleteSilenceMs() == 0
+                && tuner.minimumLengthMs() == 0, "untuned extras are all 0");
+        tuner.observeSpeech(500);
+        check(tuner.isTuned() && tuner.completeSilenceMs() > 0, "tuned at MIN_SAMPLES");
+    }
+
+    private static void quantilesTrackSamples() {
+        EndpointTuner tuner = new EndpointTuner(null);
+        Random random = new Random(7L);
+        int[] samples = new int[2000];
+        for (int i = 0; i < samples.length; i++) {
+            // Log-normal around 450 ms, like letter utterances
+            samples[i] = (int) Math.round(450 * Math.exp(0.35 * random.nextGaussian()));
+            tuner.observeSpeech(samples[i]);
+        }
+        Arrays.sort(samples);
+        for (double q : new double[] {0.1, 0.5, 0.9}) {
+            double exact = samples[(int) Math.round((samples.length - 1) * q)];
+            double estimate = tuner.speechMs(q);
+            check(Math.abs(estimate - exact) <= 0.05 * exact,
+                    "p" + Math.round(q * 100) + " within 5% (" + Math.round(estimate) + " vs "
+                            + Math.round(exact) + ")");
+        }
+
+        double p90 = tuner.speechMs(0.9);
+        int complete = tuner.completeSilenceMs();
+        int expected = (int) Math.round(EndpointTuner.SILENCE_BASE_MS + EndpointTuner.SILENCE_PER_SPEECH * p90);
+        check(Math.abs(complete - expected) <= 1, "complete silence follows p90");
+        check(tuner.possiblyCompleteSilenceMs() <= complete
+                && tuner.possiblyCompleteSilenceMs() >= EndpointTuner.MIN_POSSIBLY_MS,
+                "possibly complete stays under complete");
+        check(Math.abs(tuner.minimumLengthMs() - p90) <= 1, "minimum length is p90");
+    }
+
+    private static void missesBackOffAndRecover() {
+        EndpointTuner tuner = new EndpointTuner(null);
+        for (int i = 0; i < 50; i++) {
+            tuner.observeSpeech(400);
+        }
+        int tight = tuner.completeSilenceMs();
+        for (int i = 0; i < 40; i++) {
+            tuner.observeMiss();
+        }
+        check(tuner.backoff() > 1f && tuner.completeSilenceMs() > tight, "misses widen the windows");
+        check(tuner.backoff() <= EndpointTuner.MAX_BACKOFF
+                && tuner.completeSilenceMs() <= EndpointTuner.MAX_SILENCE_MS, "backoff is capped");
+        for (int i = 0; i < 500; i++) {
+            tuner.observeSpeech(400);
+        }
+        check(tuner.backoff() == 1f && tuner.completeSilenceMs() == tight, "heard utterances narrow them again");
+    }
+
+    private static void stateSurvivesReload() throws IOException {
+        File file = File.createTempFile("tuner", ".ltep");
+        file.delete();
+        file.deleteOnExit();
+        EndpointTuner tuner = new EndpointTuner(file);
+        for (int i = 0; i < 30; i++) {
+            tuner.observeSpeech(300 + 10 * i);
+        }
+        tuner.observeMiss();
+        tuner.flush();
+
+        EndpointTuner reloaded = new EndpointTuner(file);
+        reloaded.load();
+        check(reloaded.samples() == tuner.samples() && reloaded.misses() == 1,
+                "counts survive reload");
+        check(reloaded.completeSilenceMs() == tuner.completeSilenceMs()
+                && reloaded.minimumLengthMs() == tuner.minimumLengthMs(), "extras survive reload");
+    }
+
+    private static void check(boolean ok, String what) {
+        System.out.println((ok ? "ok    " : "FAIL  ") + what);
+        if (!ok) failures++;
+    }
+}
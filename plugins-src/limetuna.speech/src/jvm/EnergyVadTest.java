@@ -0,0 +1,234 @@
+package com.limetuna.speech;
+
+import java.util.Random;
+
+/**
+ * Off-device checks for the voice activity detector, driven both by level
+ * frames (as onRmsChanged delivers them) and by synthesized 16 kHz PCM:
+ * onset and endpoint times, hangover, blip rejection, the maximum length,
+ * floor calibration and the zero-crossing fricative path.
+ *
+ * Desktop-only, not shipped in the app:
+ *
+ *   cd plugins-src/limetuna.speech/src
+ *   javac -d /tmp/vad jvm/EnergyVadTest.java android/EnergyVad.java
+ *   java -cp /tmp/vad com.limetuna.speech.EnergyVadTest
+ *
+ * Prints one line per check; the exit status is 1 when one fails.
+ */
+public final class EnergyVadTest {
+
+    private static final int LEVEL_STEP_MS = 10;
+    private static final int SAMPLE_RATE = 16000;
+    private static final int FRAME_MS = 20;
+    private static final int FRAME_SAMPLES = SAMPLE_RATE * FRAME_MS / 1000;
+
+    private static int failures;
+
+    private EnergyVadTest() {
+    }
+
+    public static void main(String[] args) {
+        onsetAndEndpoint();
+        blipIsRejected();
+        longSpeechIsCut();
+        floorFollowsBackground();
+        quietOnsetNeedsMinimumLevel();
+        pcmOnsetAndEndpoint();
+        fricativeTailKeepsSpeech();
+
+        if (failures > 0) {
+            System.out.println(failures + " check(s) failed");
+            System.exit(1);
+        }
+        System.out.println("all checks passed");
+    }
+
+    // Quiet until 300 ms, a letter until 700 ms, then quiet
+    private static void onsetAndEndpoint() {
+        EnergyVad vad = new EnergyVad();
+        long onsetEvent = -1;
+        long endpointEvent = -1;
+        for (long t = 0; t <= 2000; t += LEVEL_STEP_MS) {
+            float level = t >= 300 && t < 700 ? 6f : 0f;
+            int event = vad.offer(level, -1f, t);
+            if (event == EnergyVad.EVENT_ONSET) onsetEvent = t;
+            if (event == EnergyVad.EVENT_ENDPOINT) endpointEvent = t;
+        }
+        check(onsetEvent == 300 + EnergyVad.DEFAULT_ONSET_MS && vad.getOnsetMs() == 300,
+                "onset after DEFAULT_ONSET_MS of loud frames, dated at their start");
+        check(vad.getSpeechEndMs() == 700, "speech ends where the silence starts");
+        check(endpointEvent == 700 + EnergyVad.DEFAULT_HANGOVER_MS && vad.getEndpointMs() == endpointEvent,
+                "endpoint after the hangover");
+        check(vad.getState() == EnergyVad.STATE_DONE
+                && vad.offer(6f, -1f, 2010) == EnergyVad.EVENT_NONE, "nothing after the endpoint");
+    }
+
+    // A 50 ms bump (a tap on the device) is shorter than minSpeechMs
+    private static void blipIsRejected() {
+        EnergyVad vad = new EnergyVad();
+        int onsets = 0;
+        long endpointEvent = -1;
+        for (long t = 0; t <= 2500; t += LEVEL_STEP_MS) {
+            boolean loud = (t >= 300 && t < 350) || (t >= 1000 && t < 1400);
+            int event = vad.offer(loud ? 6f : 0f, -1f, t);
+            if (event == EnergyVad.EVENT_ONSET) onsets++;
+            if (event == EnergyVad.EVENT_ENDPOINT) endpointEvent = t;
+        }
+        check(onsets == 2, "the blip and the letter both start speech");
+        check(vad.getOnsetMs() == 1000 && endpointEvent == 1400 + EnergyVad.DEFAULT_HANGOVER_MS,
+                "the blip is dropped and the letter endpoints");
+    }
+
+    private static void longSpeechIsCut() {
+        EnergyVad vad = new EnergyVad();
+        long endpointEvent = -1;
+        for (long t = 0; t <= 5000 && endpointEvent < 0; t += LEVEL_STEP_MS) {
+            if (vad.offer(t >= 200 ? 6f : 0f, -1f, t) == EnergyVad.EVENT_ENDPOINT) endpointEvent = t;
+        }
+        check(endpointEvent == 200 + EnergyVad.DEFAULT_MAX_SPEECH_MS, "speech is cut at maxSpeechMs");
+
+        vad.reset();
+        vad.configure(EnergyVad.DEFAULT_ONSET_MARGIN, EnergyVad.DEFAULT_OFFSET_MARGIN, 100, 40, 600);
+        endpointEvent = -1;
+        for (long t = 0; t <= 5000 && endpointEvent < 0; t += LEVEL_STEP_MS) {
+            if (vad.offer(t >= 200 ? 6f : 0f, -1f, t) == EnergyVad.EVENT_ENDPOINT) endpointEvent = t;
+        }
+        check(endpointEvent == 800 && vad.getOnsetMs() == 200, "configure() sets the limits, reset() the state");
+    }
+
+    // A noisy room: the same letter level no longer stands out
+    private static void floorFollowsBackground() {
+        EnergyVad vad = new EnergyVad();
+        boolean onset = false;
+        for (long t = 0; t <= 1000; t += LEVEL_STEP_MS) {
+            float level = t >= 300 && t < 700 ? 5f : 3f;
+            onset |= vad.offer(level, -1f, t) == EnergyVad.EVENT_ONSET;
+        }
+        check(Math.abs(vad.getFloor() - 3f) < 0.01f, "the floor is calibrated on the first frames");
+        check(!onset, "a level within onsetMargin of the floor is no onset");
+
+        vad.reset();
+        onset = false;
+        for (long t = 0; t <= 1000; t += LEVEL_STEP_MS) {
+            float level = t >= 300 && t < 700 ? 6f : 3f;
+            onset |= vad.offer(level, -1f, t) == EnergyVad.EVENT_ONSET;
+        }
+        check(onset, "a level above floor + onsetMargin is an onset");
+
+        // The floor falls fast with the background, so later speech is found
+        vad.reset();
+        for (long t = 0; t <= 2000; t += LEVEL_STEP_MS) {
+            vad.offer(t < 150 ? 4f : -1f, -1f, t);
+        }
+        check(vad.getFloor() < 0f, "the floor falls when the room gets quiet");
+    }
+
+    private static void quietOnsetNeedsMinimumLevel() {
+        EnergyVad vad = new EnergyVad();
+        boolean onset = false;
+        for (long t = 0; t <= 1000; t += LEVEL_STEP_MS) {
+            float level = t >= 300 && t < 700 ? 1.5f : -2f;
+            onset |= vad.offer(level, -1f, t) == EnergyVad.EVENT_ONSET;
+        }
+        check(!onset, "a faint level in a silent room stays under the minimum onset level");
+    }
+
+    // ---- PCM -----------------------------------------------------------------
+
+    private static void pcmOnsetAndEndpoint() {
+        short[] pcm = new short[FRAME_SAMPLES];
+        check(EnergyVad.levelOf(pcm, 0, pcm.length) < -13f, "digital silence is far below the scale");
+        tone(pcm, 8000, 440, 0);
+        check(EnergyVad.zeroCrossingRate(pcm, 0, pcm.length) < 0.1f, "a voiced tone crosses zero rarely");
+        noise(pcm, 8000, new Random(1L));
+        check(EnergyVad.zeroCrossingRate(pcm, 0, pcm.length) > 0.4f, "noise crosses zero often");
+
+        EnergyVad vad = new EnergyVad();
+        Random random = new Random(2L);
+        long onsetEvent = -1;
+        long endpointEvent = -1;
+        for (int f = 0; f < 100; f++) {
+            long t = f * FRAME_MS;
+            if (t >= 400 && t < 800) {
+                tone(pcm, 6000, 220, f);
+            } else {
+                noise(pcm, 40, random);
+            }
+            int event = vad.offerPcm(pcm, 0, pcm.length, t);
+            if (event == EnergyVad.EVENT_ONSET) onsetEvent = t;
+            if (event == EnergyVad.EVENT_ENDPOINT) endpointEvent = t;
+        }
+        check(vad.getOnsetMs() == 400 && onsetEvent == 400 + 40, "PCM onset at the start of the vowel");
+        check(vad.getSpeechEndMs() == 800 && endpointEvent == 800 + EnergyVad.DEFAULT_HANGOVER_MS + 10,
+                "PCM endpoint a hangover after the vowel");
+    }
+
+    // "ess": a vowel, then a fricative too faint to count by energy alone
+    private static void fricativeTailKeepsSpeech() {
+        long withFricative = speechEnd(true);
+        long withHum = speechEnd(false);
+        check(withFricative == 900, "a high zero-crossing tail is still speech");
+        check(withHum == 600, "the same energy without crossings is silence");
+    }
+
+    private static long speechEnd(boolean fricative) {
+        EnergyVad vad = new EnergyVad();
+        Random random = new Random(3L);
+        short[] pcm = new short[FRAME_SAMPLES];
+
+        // Calibrate on the background to place the tail between the margins
+        for (int f = 0; f < 10; f++) {
+            noise(pcm, 40, random);
+            vad.offerPcm(pcm, 0, pcm.length, f * FRAME_MS);
+        }
+        float target = vad.getFloor() + EnergyVad.DEFAULT_OFFSET_MARGIN * 0.75f;
+
+        for (int f = 10; f < 100; f++) {
+            long t = f * FRAME_MS;
+            if (t >= 300 && t < 600) {
+                tone(pcm, 6000, 220, f);
+            } else if (t >= 600 && t < 900) {
+                if (fricative) {
+                    noise(pcm, 1, random);
+                } else {
+                    tone(pcm, 1, 50, f);
+                }
+                scaleTo(pcm, target);
+            } else {
+                noise(pcm, 40, random);
+            }
+            if (vad.offerPcm(pcm, 0, pcm.length, t) == EnergyVad.EVENT_ENDPOINT) break;
+        }
+        return vad.getSpeechEndMs();
+    }
+
+    private static void tone(short[] pcm, int amplitude, double hz, int frame) {
+        for (int i = 0; i < pcm.length; i++) {
+            double s = (frame * pcm.length + i) / (double) SAMPLE_RATE;
+            pcm[i] = (short) Math.round(amplitude * Math.sin(2 * Math.PI * hz * s));
+        }
+    }
+
+    private static void noise(short[] pcm, int amplitude, Random random) {
+        for (int i = 0; i < pcm.length; i++) {
+            pcm[i] = (short) Math.round(amplitude * random.nextGaussian());
+        }
+    }
+
+    // Rescales the frame so levelOf() reports level
+    private static void scaleTo(short[] pcm, float level) {
+        double targetRms = Math.pow(10, (level * 3.0 + 40.0) / 20.0) - 1.0;
+        long acc = 0;
+        for (short s : pcm) acc += (long) s * s;
+        double rms = Math.sqrt((double) acc / pcm.length);
+        for (int i = 0; i < pcm.length; i++) {
+            pcm[i] = (short) Math.round(pcm[i] * targetRms / rms);
+        }
+    }
+
+    private static void check(boolean ok, String what) {
+        System.out.println((ok ? "ok    " : "FAIL  ") + what);
+        if (!ok) failures++;
+    }
+}
@@ -0,0 +1,121 @@
+package com.limetuna.speech;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Off-device accuracy and latency check for KeywordSpotter.
+ *
+ * Desktop-only tool, not shipped in the app. Build it together with the
+ * plain-Java sources it uses:
+ *
+ *   cd plugins-src/limetuna.speech/src
+ *   javac -d /tmp/kws jvm/KeywordSpotterBench.java android/KeywordSpotter.java \
+ *       android/MfccExtractor.java android/DtwMatcher.java android/WavIO.java \
+ *       android/LetterResolver.java android/LearnerLexicon.java
+ *   java -cp /tmp/kws com.limetuna.speech.KeywordSpotterBench templatesDir testDir
+ *   java -cp /tmp/kws com.limetuna.speech.KeywordSpotterBench fixturesDir
+ *
+ * File names carry the ground truth ("B_07.wav" is a B). With a single
+ * directory every file is scored leave-one-out against all the others.
+ */
+public final class KeywordSpotterBench {
+
+    private KeywordSpotterBench() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1 || args.length > 2) {
+            System.err.println("usage: KeywordSpotterBench <templatesDir> [testDir]");
+            System.exit(2);
+        }
+
+        File templatesDir = new File(args[0]);
+        File testDir = new File(args.length == 2 ? args[1] : args[0]);
+        boolean leaveOneOut = args.length == 1;
+
+        List<File> tests = new ArrayList<File>();
+        List<WavIO.Pcm> testPcm = new ArrayList<WavIO.Pcm>();
+        File[] files = testDir.listFiles();
+        if (files == null) {
+            System.err.println("Not a directory: " + testDir);
+            System.exit(2);
+        }
+        Arrays.sort(files);
+        for (File f : files) {
+            if (KeywordSpotter.letterForFileName(f.getName()) == LetterResolver.NO_LETTER) continue;
+            tests.add(f);
+            testPcm.add(WavIO.resample(WavIO.read(f), KeywordSpotter.SAMPLE_RATE));
+        }
+
+        KeywordSpotter shared = null;
+        if (!leaveOneOut) {
+            shared = new KeywordSpotter();
+            int n = shared.loadDirectory(templatesDir);
+            System.out.println("templates: " + n);
+        }
+
+        int correct = 0;
+        long[] decideNanos = new long[tests.size()];
+        int[][] confusion = new int[LetterResolver.LETTER_COUNT][LetterResolver.LETTER_COUNT + 1];
+        int[] bounds = new int[2];
+
+        for (int i = 0; i < tests.size(); i++) {
+            KeywordSpotter spotter = shared;
+            if (leaveOneOut) {
+                spotter = new KeywordSpotter();
+                for (int j = 0; j < tests.size(); j++) {
+                    if (j == i) continue;
+                    WavIO.Pcm p = testPcm.get(j);
+                    spotter.addTemplate(KeywordSpotter.letterForFileName(tests.get(j).getName()),
+                            p.samples, p.sampleRate);
+                }
+            }
+
+            int truth = KeywordSpotter.letterForFileName(tests.get(i).getName());
+            short[] pcm = testPcm.get(i).samples;
+            KeywordSpotter.trimBounds(pcm, 0, pcm.length, bounds);
+
+            long t0 = System.nanoTime();
+            int got = spotter.decide(pcm, bounds[0], bounds[1]);
+            decideNanos[i] = System.nanoTime() - t0;
+
+            confusion[truth][got == LetterResolver.NO_LETTER ? LetterResolver.LETTER_COUNT : got]++;
+            if (got == truth) correct++;
+        }
+
+        int n = tests.size();
+        System.out.printf("files: %d, accuracy: %.1f%%%n", n, n == 0 ? 0.0 : 100.0 * correct / n);
+
+        if (n > 0) {
+            long[] sorted = decideNanos.clone();
+            Arrays.sort(sorted);
+            long sum = 0;
+            for (long v : sorted) sum += v;
+            System.out.printf("decide: mean %.2f ms, p50 %.2f ms, p95 %.2f ms, max %.2f ms%n",
+                    sum / 1e6 / n,
+                    sorted[n / 2] / 1e6,
+                    sorted[Math.min(n - 1, (int) Math.ceil(0.95 * n) - 1)] / 1e6,
+                    sorted[n - 1] / 1e6);
+        }
+
+        for (int l = 0; l < LetterResolver.LETTER_COUNT; l++) {
+            int total = 0;
+            StringBuilder sb = new StringBuilder();
+            for (int g = 0; g <= LetterResolver.LETTER_COUNT; g++) {
+                int c = confusion[l][g];
+                total += c;
+                if (c > 0 && g != l) {
+                    sb.append(' ').append(g == LetterResolver.LETTER_COUNT ? "-" : String.valueOf(LetterResolver.letterChar(g)))
+                            .append('=').append(c);
+                }
+            }
+            if (total > 0) {
+                System.out.printf("%c: %d/%d%s%n", LetterResolver.letterChar(l), confusion[l][l], total, sb);
+            }
+        }
+    }
+}
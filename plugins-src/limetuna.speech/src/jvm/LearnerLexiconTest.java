@@ -0,0 +1,125 @@
+package com.limetuna.speech;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Off-device checks for the per-learner lexicon as the plugin feeds it:
+ * resolve an attempt, then learn from it the way learnFromAttempt does.
+ *
+ * Desktop-only, not shipped in the app:
+ *
+ *   cd plugins-src/limetuna.speech/src
+ *   javac -d /tmp/llt jvm/LearnerLexiconTest.java android/LearnerLexicon.java \
+ *       android/LetterResolver.java
+ *   java -cp /tmp/llt com.limetuna.speech.LearnerLexiconTest
+ *
+ * Prints one line per check; the exit status is 1 when one fails.
+ */
+public final class LearnerLexiconTest {
+
+    private static int failures;
+
+    private LearnerLexiconTest() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        wrongLetterFormIsNeverPromoted();
+        unknownVariantIsPromoted();
+        promotionSurvivesReload();
+
+        if (failures > 0) {
+            System.out.println(failures + " check(s) failed");
+            System.exit(1);
+        }
+        System.out.println("all checks passed");
+    }
+
+    // "pee" while B is expected must stay P, however often it comes back
+    private static void wrongLetterFormIsNeverPromoted() throws IOException {
+        LetterResolver resolver = new LetterResolver();
+        LearnerLexicon lexicon = new LearnerLexicon(tempFile());
+        resolver.setLexicon(lexicon);
+        int b = LetterResolver.letterIndex('B');
+        int p = LetterResolver.letterIndex('P');
+
+        for (int i = 0; i < LearnerLexicon.PROMOTE_MIN_COUNT * 4; i++) {
+            attempt(resolver, lexicon, 'B', "bee", "pee");
+            attempt(resolver, lexicon, 'B', "pee");
+        }
+
+        long pee = resolver.phraseHash("pee");
+        check(lexicon.promotedLetter(pee) == LetterResolver.NO_LETTER,
+                "\"pee\" is not promoted for B");
+        check(resolver.resolve(list("pee"), null, 'B') == p,
+                "\"pee\" still resolves to P while B is expected");
+        check(resolver.resolve(list("bee"), null, 'B') == b,
+                "\"bee\" still resolves to B");
+    }
+
+    // A form no letter has is what the lexicon is for
+    private static void unknownVariantIsPromoted() throws IOException {
+        LetterResolver resolver = new LetterResolver();
+        LearnerLexicon lexicon = new LearnerLexicon(tempFile());
+        resolver.setLexicon(lexicon);
+        int h = LetterResolver.letterIndex('H');
+
+        check(resolver.resolve(list("haych"), null, 'H') != h || resolver.isWeakMatch(),
+                "\"haych\" starts out as at most a weak match");
+        for (int i = 0; i < LearnerLexicon.PROMOTE_MIN_COUNT; i++) {
+            attempt(resolver, lexicon, 'H', "haych");
+        }
+        check(lexicon.promotedLetter(resolver.phraseHash("haych")) == h,
+                "\"haych\" is promoted for H");
+        check(resolver.resolve(list("haych"), null, 'A') == h,
+                "promoted \"haych\" resolves to H");
+    }
+
+    private static void promotionSurvivesReload() throws IOException {
+        File file = tempFile();
+        LetterResolver resolver = new LetterResolver();
+        LearnerLexicon lexicon = new LearnerLexicon(file);
+        resolver.setLexicon(lexicon);
+        for (int i = 0; i < LearnerLexicon.PROMOTE_MIN_COUNT; i++) {
+            attempt(resolver, lexicon, 'W', "dubya");
+            attempt(resolver, lexicon, 'W', "dubya", "pee");
+        }
+        lexicon.flush();
+
+        LearnerLexicon reloaded = new LearnerLexicon(file);
+        reloaded.load();
+        check(reloaded.promotedLetter(resolver.phraseHash("dubya")) == LetterResolver.letterIndex('W'),
+                "\"dubya\" is still promoted after reload");
+        check(reloaded.promotedLetter(resolver.phraseHash("pee")) == LetterResolver.NO_LETTER,
+                "\"pee\" was never learned for W");
+    }
+
+    // Same rule as LimeTunaSpeech.learnFromAttempt
+    private static void attempt(LetterResolver resolver, LearnerLexicon lexicon, char expected,
+                                String... nbest) {
+        int letter = resolver.resolve(list(nbest), null, expected);
+        int index = LetterResolver.letterIndex(expected);
+        if (letter != index && !resolver.isWeakMatch()) return;
+        int n = resolver.retainLearnable(index);
+        if (n == 0) return;
+        lexicon.observe(resolver.getCandidateHashes(), n, index, 1);
+    }
+
+    private static List<String> list(String... phrases) {
+        return Arrays.asList(phrases);
+    }
+
+    private static File tempFile() throws IOException {
+        File file = File.createTempFile("lexicon", ".lex");
+        file.delete();
+        file.deleteOnExit();
+        return file;
+    }
+
+    private static void check(boolean ok, String what) {
+        System.out.println((ok ? "ok    " : "FAIL  ") + what);
+        if (!ok) failures++;
+    }
+}
@@ -0,0 +1,288 @@
+package com.limetuna.speech;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+/**
+ * Off-device checks that LetterResolver decides exactly like the JS
+ * fallback, chooseLetterFromResults in www/LimeTunaSpeech.js, which is
+ * transcribed below line for line. Random n-best lists come from the letter
+ * forms, fillers, accents, odd whitespace and noise, half of them with
+ * confidences (which only break ties between equal phonetic scores, on both
+ * sides); every one must resolve to the same letter both ways.
+ *
+ * Desktop-only, not shipped in the app:
+ *
+ *   cd plugins-src/limetuna.speech/src
+ *   javac -d /tmp/lrt jvm/LetterResolverTest.java android/LetterResolver.java \
+ *       android/LearnerLexicon.java
+ *   java -cp /tmp/lrt com.limetuna.speech.LetterResolverTest [lists] [seed]
+ *
+ * Prints one line per check; the exit status is 1 when one fails.
+ */
+public final class LetterResolverTest {
+
+    private static final String[] FILLERS = {
+            "the letter", "letter", "it's", "is it", "i think", "um", "say", "hello", "what",
+            "okay", "and", "are", "yes", "tea", "double", "doubleu", "you know"
+    };
+
+    // Ways the same phrase can come back: case, accents, punctuation
+    private static final String[] DECORATED = {
+            "B", "Bee", "B\u00e9", "b\u00e9", "Z\u00e8d", "\u00e9", "\u00c0", "see!", "dee.",
+            "Double-U", "double-u", "DOUBLE YOU", "k9", "42", "\u00e7a", "a\u0301", "eh?"
+    };
+
+    private static final String[] SPACES = {" ", " ", " ", "  ", "\t", "\u00a0", " - "};
+
+    private static int failures;
+
+    private LetterResolverTest() {
+    }
+
+    public static void main(String[] args) {
+        int lists = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        long seed = args.length > 1 ? Long.parseLong(args[1]) : 42L;
+
+        knownPhrases();
+        matchesJsScorer(lists, seed);
+
+        if (failures > 0) {
+            System.out.println(failures + " check(s) failed");
+            System.exit(1);
+        }
+        System.out.println("all checks passed");
+    }
+
+    private static void knownPhrases() {
+        LetterResolver resolver = new LetterResolver();
+        check(resolver.resolve(list("bee"), null, 'A') == letter('B'), "\"bee\" is B");
+        check(resolver.resolve(list("the letter b"), null, ' ') == letter('B'), "\"the letter b\" is B");
+        check(resolver.resolve(list("pee"), null, 'B') == letter('P'), "\"pee\" stays P when B is expected");
+        check(resolver.resolve(list("see", "sea"), null, 'C') == letter('C'), "\"see\" is C");
+        check(resolver.resolve(list("hello"), null, 'H') == letter('H') && resolver.isWeakMatch(),
+                "\"hello\" is only a weak H");
+        check(resolver.resolve(list("42", "?!"), null, 'A') == LetterResolver.NO_LETTER,
+                "digits and punctuation are no letter");
+        check(resolver.resolve(new ArrayList<String>(), null, 'A') == LetterResolver.NO_LETTER,
+                "an empty list is no letter");
+        check(resolver.resolve(list("Z\u00e8d"), null, 'A') == letter('Z'), "accents fold");
+        check(resolver.resolve(list("see", "dee"), null, ' ') == letter('C'),
+                "without confidences a tie goes to the first letter");
+        check(resolver.resolve(list("see", "dee"), new float[] {0.3f, 0.8f}, ' ') == letter('D'),
+                "with confidences a tie goes to the more confident phrase");
+        check(resolver.resolve(list("see", "dee"), new float[] {0.3f, 0.8f}, 'C') == letter('C'),
+                "confidence never outweighs the expected-letter bias");
+    }
+
+    private static void matchesJsScorer(int lists, long seed) {
+        LetterResolver resolver = new LetterResolver();
+        Random random = new Random(seed);
+        int mismatches = 0;
+        for (int i = 0; i < lists; i++) {
+            List<String> nbest = randomList(random);
+            char expected = random.nextInt(8) == 0 ? ' ' : (char) ('A' + random.nextInt(26));
+            float[] confidences = random.nextBoolean() ? randomConfidences(random, nbest.size()) : null;
+
+            int nativeLetter = resolver.resolve(nbest, confidences, expected);
+            String js = chooseLetterFromResults(nbest, expected, confidences);
+            int jsLetter = js == null ? LetterResolver.NO_LETTER : letter(js.charAt(0));
+            if (nativeLetter != jsLetter) {
+                if (mismatches < 10) {
+                    System.out.println("      " + nbest + " expected " + expected + ": native "
+                            + name(nativeLetter) + ", js " + name(jsLetter));
+                }
+                mismatches++;
+            }
+        }
+        check(mismatches == 0, lists + " random n-best lists resolve as in JS (seed " + seed
+                + ", " + mismatches + " mismatches)");
+    }
+
+    private static List<String> randomList(Random random) {
+        int size = random.nextInt(6);
+        List<String> nbest = new ArrayList<String>();
+        for (int i = 0; i < size; i++) {
+            StringBuilder phrase = new StringBuilder();
+            if (random.nextInt(6) == 0) phrase.append(SPACES[random.nextInt(SPACES.length)]);
+            int words = 1 + random.nextInt(3);
+            for (int w = 0; w < words; w++) {
+                if (w > 0) phrase.append(SPACES[random.nextInt(SPACES.length)]);
+                phrase.append(randomWord(random));
+            }
+            if (random.nextInt(6) == 0) phrase.append(SPACES[random.nextInt(SPACES.length)]);
+            nbest.add(phrase.toString());
+        }
+        return nbest;
+    }
+
+    // Hundredths, as recognizers report them; now and then out of range or NaN
+    private static float[] randomConfidences(Random random, int size) {
+        float[] confidences = new float[size];
+        for (int i = 0; i < size; i++) {
+            int pick = random.nextInt(20);
+            confidences[i] = pick == 0 ? Float.NaN : pick == 1 ? -1f : random.nextInt(101) / 100f;
+        }
+        return confidences;
+    }
+
+    private static String randomWord(Random random) {
+        switch (random.nextInt(5)) {
+            case 0:
+            case 1: {
+                String[] forms = PHONETIC_MAP[random.nextInt(26)];
+                return forms[random.nextInt(forms.length)];
+            }
+            case 2:
+                return FILLERS[random.nextInt(FILLERS.length)];
+            case 3:
+                return DECORATED[random.nextInt(DECORATED.length)];
+            default: {
+                // Noise, and the truncated forms recognizers produce
+                StringBuilder word = new StringBuilder();
+                int len = 1 + random.nextInt(5);
+                for (int i = 0; i < len; i++) {
+                    word.append((char) ('a' + random.nextInt(26)));
+                }
+                return word.toString();
+            }
+        }
+    }
+
+    // ---- chooseLetterFromResults, as in www/LimeTunaSpeech.js ---------------
+
+    private static final String[][] PHONETIC_MAP = {
+            {"a", "ay", "eh", "ei"},
+            {"b", "bee", "be"},
+            {"c", "see", "cee", "sea"},
+            {"d", "dee"},
+            {"e", "ee"},
+            {"f", "ef"},
+            {"g", "gee"},
+            {"h", "aitch"},
+            {"i", "eye", "aye"},
+            {"j", "jay"},
+            {"k", "kay"},
+            {"l", "el"},
+            {"m", "em"},
+            {"n", "en"},
+            {"o", "oh"},
+            {"p", "pee"},
+            {"q", "cue", "queue"},
+            {"r", "ar"},
+            {"s", "ess"},
+            {"t", "tee"},
+            {"u", "you", "yu", "yoo"},
+            {"v", "vee"},
+            {"w", "double you", "double-u"},
+            {"x", "ex"},
+            {"y", "why"},
+            {"z", "zee", "zed"}
+    };
+
+    // JS \s, which unlike Java's also covers no-break and other Unicode spaces
+    private static final String JS_SPACE =
+            "\\t\\n\\u000b\\f\\r \\u00a0\\u1680\\u2000-\\u200a\\u2028\\u2029\\u202f\\u205f\\u3000\\ufeff";
+    private static final Pattern MARKS = Pattern.compile("[\\u0300-\\u036f]");
+    private static final Pattern NOT_LETTER = Pattern.compile("[^a-z" + JS_SPACE + "]");
+    private static final Pattern SPACE_RUN = Pattern.compile("[" + JS_SPACE + "]+");
+
+    private static String normalizePhrase(String str) {
+        String s = Normalizer.normalize(str == null ? "" : str.toLowerCase(Locale.ROOT), Normalizer.Form.NFD);
+        s = MARKS.matcher(s).replaceAll("");
+        s = NOT_LETTER.matcher(s).replaceAll("");
+        s = SPACE_RUN.matcher(s).replaceAll(" ");
+        return s.trim();
+    }
+
+    private static int scorePhraseForLetter(String phrase, char letter) {
+        if (phrase == null || phrase.isEmpty()) return 0;
+        String norm = normalizePhrase(phrase);
+        if (norm.isEmpty()) return 0;
+        String[] forms = PHONETIC_MAP[letter - 'A'];
+        String[] words = norm.split(" ", -1);
+        char lower = Character.toLowerCase(letter);
+
+        int best = 0;
+        for (String f : forms) {
+            if (norm.equals(f)) best = Math.max(best, 4);
+        }
+        for (String w : words) {
+            for (String f : forms) {
+                if (w.equals(f)) {
+                    best = Math.max(best, 3);
+                } else if (f.startsWith(w) || w.startsWith(f)) {
+                    best = Math.max(best, 2);
+                }
+            }
+        }
+        if (norm.length() == 1 && norm.charAt(0) == lower) best = Math.max(best, 4);
+        if (norm.length() <= 3 && norm.charAt(0) == lower) best = Math.max(best, 2);
+        return best;
+    }
+
+    private static final double CONFIDENCE_WEIGHT = 0.25;
+
+    private static double clampConfidence(double c) {
+        if (!(c > 0)) return 0;
+        return c > 1 ? 1 : c;
+    }
+
+    private static String chooseLetterFromResults(List<String> allResults, char expectedLetter,
+                                                  float[] allConfidences) {
+        List<String> candidates = allResults != null && !allResults.isEmpty()
+                ? allResults : Arrays.asList("");
+        float[] confidences = allConfidences != null && allConfidences.length == candidates.size()
+                ? allConfidences : null;
+        String bestLetter = null;
+        double bestScore = 0;
+        double bestTotal = 0;
+        for (char l = 'A'; l <= 'Z'; l++) {
+            double letterScore = 0;
+            double support = 0;
+            for (int i = 0; i < candidates.size(); i++) {
+                int score = scorePhraseForLetter(candidates.get(i), l);
+                double conf = confidences != null ? clampConfidence(confidences[i]) : 0;
+                if (score > letterScore) {
+                    letterScore = score;
+                    support = conf;
+                } else if (score == letterScore && conf > support) {
+                    support = conf;
+                }
+            }
+            if (letterScore <= 0) continue;
+            if (l == Character.toUpperCase(expectedLetter)) letterScore += 1.0;
+            double total = letterScore + CONFIDENCE_WEIGHT * support;
+            if (total > bestTotal) {
+                bestTotal = total;
+                bestScore = letterScore;
+                bestLetter = String.valueOf(l);
+            }
+        }
+        return bestScore >= 2 ? bestLetter : null;
+    }
+
+    // ---------------------------------------------------------------------------
+
+    private static int letter(char c) {
+        return LetterResolver.letterIndex(c);
+    }
+
+    private static String name(int letter) {
+        return letter == LetterResolver.NO_LETTER ? "none" : String.valueOf(LetterResolver.letterChar(letter));
+    }
+
+    private static List<String> list(String... phrases) {
+        return Arrays.asList(phrases);
+    }
+
+    private static void check(boolean ok, String what) {
+        System.out.println((ok ? "ok    " : "FAIL  ") + what);
+        if (!ok) failures++;
+    }
+}
@@ -0,0 +1,191 @@
+package com.limetuna.speech;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compiles phonetic pack sources (phonetics/*.txt) into the binary assets
+ * the plugin loads (PhoneticPack), and dumps packs for review.
+ *
+ * Desktop-only tool, not shipped in the app:
+ *
+ *   cd plugins-src/limetuna.speech/src
+ *   javac -d /tmp/ppt jvm/PhoneticPackTool.java android/PhoneticPack.java \
+ *       android/LetterResolver.java android/LearnerLexicon.java \
+ *       android/VocabularyIndex.java -cp json.jar
+ *   java -cp /tmp/ppt:json.jar com.limetuna.speech.PhoneticPackTool ../phonetics/*.txt
+ *
+ * writes fr.ltph next to fr.txt, and so on; --dump FILE.ltph prints one.
+ *
+ * A source is UTF-8 text, one statement per line, # starts a comment:
+ *
+ *   locale fr
+ *   letter B: be | bay          spoken forms, most common first
+ *   vocabulary digits           starts a startTarget vocabulary
+ *   7: sept | set               id: text | other forms
+ *
+ * Every letter A-Z needs at least one form. Forms are checked by compiling
+ * them the way the plugin does, so a pack that builds here loads there.
+ */
+public final class PhoneticPackTool {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private PhoneticPackTool() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("usage: PhoneticPackTool source.txt... | --dump pack.ltph");
+            System.exit(2);
+        }
+        if ("--dump".equals(args[0])) {
+            for (int i = 1; i < args.length; i++) {
+                dump(new File(args[i]));
+            }
+            return;
+        }
+        for (String arg : args) {
+            File source = new File(arg);
+            String name = source.getName();
+            int dot = name.lastIndexOf('.');
+            File target = new File(source.getParentFile(),
+                    (dot > 0 ? name.substring(0, dot) : name) + PhoneticPack.EXTENSION);
+            byte[] pack = compile(source);
+            FileOutputStream out = new FileOutputStream(target);
+            try {
+                out.write(pack);
+            } finally {
+                out.close();
+            }
+            System.out.println(target + ": " + pack.length + " bytes");
+        }
+    }
+
+    static byte[] compile(File source) throws IOException {
+        String locale = null;
+        String[][] letters = new String[LetterResolver.LETTER_COUNT][];
+        Map<String, List<VocabularyIndex.Entry>> vocabularies =
+                new LinkedHashMap<String, List<VocabularyIndex.Entry>>();
+        List<VocabularyIndex.Entry> vocabulary = null;
+
+        BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(source), UTF_8));
+        try {
+            String line;
+            int lineNo = 0;
+            while ((line = in.readLine()) != null) {
+                lineNo++;
+                int hash = line.indexOf('#');
+                if (hash >= 0) line = line.substring(0, hash);
+                line = line.trim();
+                if (line.length() == 0) continue;
+
+                String where = source.getName() + ":" + lineNo + ": ";
+                if (line.startsWith("locale ")) {
+                    locale = line.substring(7).trim();
+                } else if (line.startsWith("letter ")) {
+                    int colon = line.indexOf(':');
+                    String letter = colon > 0 ? line.substring(7, colon).trim() : "";
+                    int index = letter.length() == 1
+                            ? LetterResolver.letterIndex(letter.charAt(0)) : LetterResolver.NO_LETTER;
+                    if (index == LetterResolver.NO_LETTER) {
+                        throw new IOException(where + "expected \"letter X: forms\"");
+                    }
+                    if (letters[index] != null) throw new IOException(where + "letter " + letter + " again");
+                    letters[index] = splitForms(line.substring(colon + 1), where);
+                    vocabulary = null;
+                } else if (line.startsWith("vocabulary ")) {
+                    String name = line.substring(11).trim();
+                    if (name.length() == 0 || VocabularyIndex.LETTERS.equals(name)
+                            || vocabularies.containsKey(name)) {
+                        throw new IOException(where + "bad or repeated vocabulary name");
+                    }
+                    vocabulary = new ArrayList<VocabularyIndex.Entry>();
+                    vocabularies.put(name, vocabulary);
+                } else if (vocabulary != null && line.indexOf(':') > 0) {
+                    int colon = line.indexOf(':');
+                    String id = line.substring(0, colon).trim();
+                    String[] forms = splitForms(line.substring(colon + 1), where);
+                    List<String> rest = new ArrayList<String>();
+                    for (int i = 1; i < forms.length; i++) {
+                        rest.add(forms[i]);
+                    }
+                    vocabulary.add(new VocabularyIndex.Entry(id, forms[0], rest));
+                } else {
+                    throw new IOException(where + "cannot parse \"" + line + "\"");
+                }
+            }
+        } finally {
+            in.close();
+        }
+
+        if (locale == null) throw new IOException(source + ": no locale line");
+        for (int l = 0; l < letters.length; l++) {
+            if (letters[l] == null) {
+                throw new IOException(source + ": no forms for " + LetterResolver.letterChar(l));
+            }
+        }
+        // Same checks as loading on device
+        new LetterResolver(letters);
+        for (Map.Entry<String, List<VocabularyIndex.Entry>> v : vocabularies.entrySet()) {
+            new VocabularyIndex(v.getKey(), v.getValue());
+        }
+        return PhoneticPack.encode(locale, letters, vocabularies);
+    }
+
+    private static String[] splitForms(String text, String where) throws IOException {
+        List<String> forms = new ArrayList<String>();
+        for (String f : text.split("\\|")) {
+            String form = f.trim();
+            if (form.length() > 0 && !forms.contains(form)) forms.add(form);
+        }
+        if (forms.isEmpty()) throw new IOException(where + "no forms");
+        return forms.toArray(new String[0]);
+    }
+
+    private static void dump(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            ByteBuffer data = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+            PhoneticPack pack = PhoneticPack.read(data);
+            System.out.println(file + ": locale " + pack.locale + ", " + pack.byteSize() + " bytes");
+            String[][] letters = pack.letterForms();
+            if (letters != null) {
+                for (int l = 0; l < letters.length; l++) {
+                    System.out.println("letter " + LetterResolver.letterChar(l) + ": " + join(letters[l]));
+                }
+            }
+            for (String name : pack.vocabularyNames()) {
+                System.out.println("vocabulary " + name);
+                for (VocabularyIndex.Entry e : pack.vocabulary(name)) {
+                    List<String> forms = new ArrayList<String>(e.forms);
+                    forms.add(0, e.text);
+                    System.out.println(e.id + ": " + join(forms.toArray(new String[0])));
+                }
+            }
+        } finally {
+            raf.close();
+        }
+    }
+
+    private static String join(String[] forms) {
+        StringBuilder sb = new StringBuilder();
+        for (String f : forms) {
+            if (sb.length() > 0) sb.append(" | ");
+            sb.append(f);
+        }
+        return sb.toString();
+    }
+}
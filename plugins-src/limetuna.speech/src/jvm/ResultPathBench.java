@@ -0,0 +1,374 @@
+package com.limetuna.speech;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+
+import org.json.JSONException;
+
+/**
+ * Off-device ns/op and allocation benchmark for the result path: n-best list
+ * -> best candidate -> letter resolution -> result payload, plus "vocab":
+ * the same n-best lists matched against a large startTarget vocabulary.
+ *
+ * Desktop-only tool, not shipped in the app. Build it together with the
+ * plain-Java core and an org.json jar (Android bundles org.json):
+ *
+ *   cd plugins-src/limetuna.speech/src
+ *   javac -cp json.jar -d /tmp/rpb jvm/ResultPathBench.java \
+ *       android/ResultSelector.java android/LetterResolver.java \
+ *       android/LearnerLexicon.java android/RecognitionResult.java \
+ *       android/EnergyVad.java android/VocabularyIndex.java
+ *   java -cp /tmp/rpb:json.jar com.limetuna.speech.ResultPathBench [options] [corpus.tsv]
+ *
+ * A corpus has one recorded attempt per line: the expected letter, then the
+ * n-best phrases, tab separated, each optionally followed by "|confidence".
+ * Without one a synthetic corpus is generated from the letter names plus
+ * confusable and filler phrases; --write-corpus saves it for reuse.
+ *
+ * Each benchmark runs warm-up passes and then measured passes over the whole
+ * corpus, and reports ns/op and bytes allocated per op (HotSpot's per-thread
+ * allocation counter). --max NAME=NS and --max-bytes NAME=BYTES turn the
+ * numbers into a gate: the exit status is 1 when a limit is exceeded.
+ * run-checks.sh runs it that way after the desktop checks.
+ *
+ * Options: --attempts N (synthetic size, default 20000), --seed S,
+ * --warmup N (default 5), --iterations N (default 10), --only NAME,
+ * --write-corpus FILE, --vocab-size N (default 5000: the letters plus
+ * generated words).
+ */
+public final class ResultPathBench {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final String[] BENCHMARKS = {"select", "resolve", "vocab", "snapshot", "json", "binary"};
+
+    // Spoken forms per letter, as recognizers tend to return them
+    private static final String[][] FORMS = {
+            {"a", "ay", "hey"}, {"b", "bee", "be"}, {"c", "see", "sea"}, {"d", "dee"},
+            {"e", "ee"}, {"f", "ef"}, {"g", "gee"}, {"h", "aitch"}, {"i", "eye"},
+            {"j", "jay"}, {"k", "kay", "okay"}, {"l", "el", "elle"}, {"m", "em"},
+            {"n", "en", "and"}, {"o", "oh"}, {"p", "pee"}, {"q", "cue", "queue"},
+            {"r", "ar", "are"}, {"s", "ess", "yes"}, {"t", "tee", "tea"},
+            {"u", "you", "yoo"}, {"v", "vee"}, {"w", "double you"}, {"x", "ex"},
+            {"y", "why"}, {"z", "zee", "zed"}
+    };
+
+    private static final String[] FILLERS = {
+            "the letter", "letter", "it's", "is it", "i think", "um", "uh", "say"
+    };
+
+    private static final String[] NOISE = {
+            "hello", "mommy", "what", "no", "bird", "the", "ok google", "i don't know"
+    };
+
+    private static final String[] SYLLABLES = {
+            "ba", "ker", "lo", "min", "sta", "ple", "ton", "ri", "gus", "der",
+            "fa", "mo", "chi", "ven", "ul", "tro", "ski", "pa", "nel", "zo"
+    };
+
+    private static volatile long sink;
+
+    private ResultPathBench() {
+    }
+
+    private static final class Attempt {
+        char expected;
+        List<String> matches;
+        float[] confidences;
+    }
+
+    public static void main(String[] args) throws IOException, JSONException {
+        int attempts = 20000;
+        long seed = 42L;
+        int warmup = 5;
+        int iterations = 10;
+        int vocabSize = 5000;
+        String only = null;
+        File corpusFile = null;
+        File writeCorpus = null;
+        Map<String, Double> maxNs = new HashMap<String, Double>();
+        Map<String, Double> maxBytes = new HashMap<String, Double>();
+
+        for (int i = 0; i < args.length; i++) {
+            String a = args[i];
+            if ("--attempts".equals(a)) {
+                attempts = Integer.parseInt(args[++i]);
+            } else if ("--seed".equals(a)) {
+                seed = Long.parseLong(args[++i]);
+            } else if ("--warmup".equals(a)) {
+                warmup = Integer.parseInt(args[++i]);
+            } else if ("--iterations".equals(a)) {
+                iterations = Integer.parseInt(args[++i]);
+            } else if ("--vocab-size".equals(a)) {
+                vocabSize = Integer.parseInt(args[++i]);
+            } else if ("--only".equals(a)) {
+                only = args[++i];
+            } else if ("--write-corpus".equals(a)) {
+                writeCorpus = new File(args[++i]);
+            } else if ("--max".equals(a)) {
+                parseLimit(args[++i], maxNs);
+            } else if ("--max-bytes".equals(a)) {
+                parseLimit(args[++i], maxBytes);
+            } else if (a.startsWith("--")) {
+                System.err.println("unknown option " + a);
+                System.exit(2);
+            } else {
+                corpusFile = new File(a);
+            }
+        }
+
+        List<Attempt> corpus = corpusFile != null
+                ? readCorpus(corpusFile)
+                : generateCorpus(attempts, new Random(seed));
+        if (corpus.isEmpty()) {
+            System.err.println("empty corpus");
+            System.exit(2);
+        }
+        if (writeCorpus != null) {
+            writeCorpus(corpus, writeCorpus);
+        }
+
+        System.out.println(String.format(Locale.ROOT, "corpus: %d attempts%s", corpus.size(),
+                corpusFile != null ? " from " + corpusFile : " (synthetic, seed " + seed + ")"));
+        VocabularyIndex vocabulary = buildVocabulary(vocabSize, new Random(seed));
+        System.out.println(String.format(Locale.ROOT, "%-10s %12s %12s %12s",
+                "benchmark", "ns/op", "best ns/op", "B/op"));
+
+        boolean failed = false;
+        LetterResolver resolver = new LetterResolver();
+        EnergyVad vad = new EnergyVad();
+        for (String name : BENCHMARKS) {
+            if (only != null && !only.equals(name)) continue;
+
+            for (int i = 0; i < warmup; i++) {
+                pass(name, corpus, resolver, vocabulary, vad);
+            }
+
+            double sumNs = 0;
+            double bestNs = Double.MAX_VALUE;
+            long bytes = 0;
+            for (int i = 0; i < iterations; i++) {
+                long bytesBefore = allocatedBytes();
+                long t0 = System.nanoTime();
+                pass(name, corpus, resolver, vocabulary, vad);
+                double ns = (System.nanoTime() - t0) / (double) corpus.size();
+                bytes += allocatedBytes() - bytesBefore;
+                sumNs += ns;
+                bestNs = Math.min(bestNs, ns);
+            }
+            double meanNs = sumNs / iterations;
+            double bytesPerOp = bytes < 0 ? -1 : bytes / ((double) iterations * corpus.size());
+
+            System.out.println(String.format(Locale.ROOT, "%-10s %12.1f %12.1f %12.1f",
+                    name, meanNs, bestNs, bytesPerOp));
+
+            Double limitNs = maxNs.get(name);
+            if (limitNs != null && meanNs > limitNs) {
+                System.out.println(String.format(Locale.ROOT, "  FAIL %s: %.1f ns/op > %.1f", name, meanNs, limitNs));
+                failed = true;
+            }
+            Double limitBytes = maxBytes.get(name);
+            if (limitBytes != null && bytesPerOp > limitBytes) {
+                System.out.println(String.format(Locale.ROOT, "  FAIL %s: %.1f B/op > %.1f", name, bytesPerOp, limitBytes));
+                failed = true;
+            }
+        }
+        System.exit(failed ? 1 : 0);
+    }
+
+    // One pass over the corpus; results are folded into sink so nothing is dead code
+    private static void pass(String name, List<Attempt> corpus, LetterResolver resolver,
+                             VocabularyIndex vocabulary, EnergyVad vad) throws JSONException {
+        long acc = 0;
+        for (int i = 0, n = corpus.size(); i < n; i++) {
+            Attempt a = corpus.get(i);
+            if ("select".equals(name)) {
+                acc += ResultSelector.bestIndex(a.matches, a.confidences);
+                continue;
+            }
+            if ("resolve".equals(name)) {
+                acc += resolver.resolve(a.matches, a.confidences, a.expected);
+                continue;
+            }
+            if ("vocab".equals(name)) {
+                acc += vocabulary.match(a.matches, a.confidences, a.expected - 'A');
+                continue;
+            }
+
+            RecognitionResult result = onResults(a, resolver, vad);
+            if ("snapshot".equals(name)) {
+                acc += result.letter;
+            } else if ("json".equals(name)) {
+                acc += result.toJson().toString().length();
+            } else {
+                acc += result.toBinary().length;
+            }
+        }
+        sink += acc;
+    }
+
+    // Mirrors LimeTunaSpeech.handleRecognitionResults up to the payload
+    private static RecognitionResult onResults(Attempt a, LetterResolver resolver, EnergyVad vad) {
+        int best = ResultSelector.bestIndex(a.matches, a.confidences);
+        Float conf = a.confidences != null ? (Float) a.confidences[best] : null;
+        int letter = resolver.resolve(a.matches, a.confidences, a.expected);
+        return RecognitionResult.snapshot(a.matches.get(best), conf, a.matches, a.confidences,
+                letter, resolver, false, false, vad);
+    }
+
+    private static long allocatedBytes() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean)
+                    .getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return 0L;
+    }
+
+    private static void parseLimit(String spec, Map<String, Double> out) {
+        int eq = spec.indexOf('=');
+        if (eq <= 0) {
+            System.err.println("expected NAME=VALUE, got " + spec);
+            System.exit(2);
+        }
+        out.put(spec.substring(0, eq), Double.parseDouble(spec.substring(eq + 1)));
+    }
+
+    // ---- Corpus --------------------------------------------------------------
+
+    // Letters (entry index = letter index, forms as above) plus generated words
+    private static VocabularyIndex buildVocabulary(int size, Random rnd) {
+        List<VocabularyIndex.Entry> entries = new ArrayList<VocabularyIndex.Entry>(size);
+        for (int l = 0; l < FORMS.length; l++) {
+            entries.add(new VocabularyIndex.Entry(String.valueOf((char) ('A' + l)),
+                    FORMS[l][0], Arrays.asList(FORMS[l])));
+        }
+        for (int i = entries.size(); i < size; i++) {
+            StringBuilder word = new StringBuilder();
+            int syllables = 1 + rnd.nextInt(3);
+            for (int j = 0; j < syllables; j++) {
+                word.append(SYLLABLES[rnd.nextInt(SYLLABLES.length)]);
+            }
+            entries.add(new VocabularyIndex.Entry("w" + i, word.toString(),
+                    new ArrayList<String>()));
+        }
+        long t0 = System.nanoTime();
+        VocabularyIndex index = new VocabularyIndex("bench", entries);
+        System.out.println(String.format(Locale.ROOT, "vocab: %d entries, %d keys, built in %.1f ms",
+                index.size(), index.keyCount(), (System.nanoTime() - t0) / 1e6));
+        return index;
+    }
+
+    private static List<Attempt> generateCorpus(int n, Random rnd) {
+        List<Attempt> corpus = new ArrayList<Attempt>(n);
+        for (int i = 0; i < n; i++) {
+            int target = rnd.nextInt(26);
+            int size = 1 + rnd.nextInt(5);
+            List<String> matches = new ArrayList<String>(size);
+            for (int j = 0; j < size; j++) {
+                matches.add(phrase(rnd, j == 0 && rnd.nextInt(4) != 0 ? target : rnd.nextInt(26)));
+            }
+
+            Attempt a = new Attempt();
+            a.expected = (char) ('A' + target);
+            a.matches = matches;
+            // Most engines report confidences for the top result set; some never do
+            if (rnd.nextInt(5) != 0) {
+                a.confidences = new float[size];
+                float c = 0.5f + rnd.nextFloat() * 0.5f;
+                for (int j = 0; j < size; j++) {
+                    a.confidences[j] = c;
+                    c *= 0.3f + rnd.nextFloat() * 0.6f;
+                }
+            }
+            corpus.add(a);
+        }
+        return corpus;
+    }
+
+    private static String phrase(Random rnd, int letter) {
+        int kind = rnd.nextInt(10);
+        if (kind < 1) {
+            return NOISE[rnd.nextInt(NOISE.length)];
+        }
+        String[] forms = FORMS[letter];
+        String form = forms[rnd.nextInt(forms.length)];
+        if (kind < 3) {
+            return FILLERS[rnd.nextInt(FILLERS.length)] + " " + form;
+        }
+        if (kind < 4) {
+            return form.toUpperCase(Locale.ROOT) + ".";
+        }
+        return form;
+    }
+
+    private static List<Attempt> readCorpus(File file) throws IOException {
+        List<Attempt> corpus = new ArrayList<Attempt>();
+        BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(file), UTF_8));
+        try {
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (line.isEmpty() || line.startsWith("#")) continue;
+                String[] cols = line.split("\t");
+                if (cols.length < 2) continue;
+
+                Attempt a = new Attempt();
+                a.expected = cols[0].isEmpty() ? 0 : Character.toUpperCase(cols[0].charAt(0));
+                a.matches = new ArrayList<String>(cols.length - 1);
+                float[] confs = new float[cols.length - 1];
+                boolean allConfs = true;
+                for (int i = 1; i < cols.length; i++) {
+                    String col = cols[i];
+                    int bar = col.lastIndexOf('|');
+                    if (bar >= 0) {
+                        a.matches.add(col.substring(0, bar));
+                        confs[i - 1] = Float.parseFloat(col.substring(bar + 1));
+                    } else {
+                        a.matches.add(col);
+                        allConfs = false;
+                    }
+                }
+                a.confidences = allConfs ? confs : null;
+                corpus.add(a);
+            }
+        } finally {
+            in.close();
+        }
+        return corpus;
+    }
+
+    private static void writeCorpus(List<Attempt> corpus, File file) throws IOException {
+        BufferedWriter out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), UTF_8));
+        try {
+            for (Attempt a : corpus) {
+                StringBuilder sb = new StringBuilder();
+                sb.append(a.expected);
+                for (int i = 0; i < a.matches.size(); i++) {
+                    sb.append('\t').append(a.matches.get(i));
+                    if (a.confidences != null) {
+                        sb.append('|').append(a.confidences[i]);
+                    }
+                }
+                out.write(sb.toString());
+                out.newLine();
+            }
+        } finally {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,368 @@
+package com.limetuna.speech;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Replays recorded recognizer traffic (SessionRecorder logs) through the
+ * result path (ResultSelector, LetterResolver, PartialCommitGate) and
+ * compares what the current code decides with what was decided on device.
+ *
+ * Desktop-only tool, not shipped in the app. Pull the logs with
+ * getRecording() for the path, e.g.
+ *
+ *   adb exec-out run-as <package> cat files/sessions/sessions.ltsr > s.ltsr
+ *
+ * and build it with the plain-Java core and an org.json jar:
+ *
+ *   cd plugins-src/limetuna.speech/src
+ *   javac -cp json.jar -d /tmp/replay jvm/SessionReplay.java \
+ *       android/SessionLog.java android/ResultSelector.java \
+ *       android/LetterResolver.java android/LearnerLexicon.java \
+ *       android/PartialCommitGate.java android/RecognizerErrors.java \
+ *       android/RecognizerSupervisor.java android/LatencyMetrics.java
+ *   java -cp /tmp/replay:json.jar com.limetuna.speech.SessionReplay [options] log...
+ *
+ * Accuracy counts attempts whose letter matches the expected one; latency
+ * is from the first startListening of an attempt to its decision (the
+ * committing partial or the final results). Restarts within an attempt
+ * (echo guard, recovery) are counted but replayed as one attempt.
+ *
+ * Options: --early-commit on|off, --partials N, --min-score S override the
+ * recorded early-commit settings; --lexicon FILE resolves with a learner
+ * lexicon (read-only); --verbose prints every attempt; --export-tsv FILE
+ * writes the final results as a ResultPathBench corpus.
+ */
+public final class SessionReplay {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private SessionReplay() {
+    }
+
+    private static final class Partial {
+        long nanos;
+        List<String> strings;
+    }
+
+    private static final class Attempt {
+        SessionLog.Record start;
+        int starts;
+        long readyNanos = -1;
+        List<Partial> partials = new ArrayList<Partial>();
+        List<String> results;
+        float[] confidences;
+        long resultsNanos = -1;
+        String errorCode;
+        long errorNanos = -1;
+        SessionLog.Record outcome;
+    }
+
+    // What one side (recorded or replayed) decided for an attempt
+    private static final class Decision {
+        char letter;
+        String code;
+        boolean early;
+        long nanos = -1;
+    }
+
+    private static final class Tally {
+        int attempts;
+        int correct;
+        int wrong;
+        int failed;
+        int early;
+        final List<Double> latencyMs = new ArrayList<Double>();
+        final Map<String, Integer> codes = new TreeMap<String, Integer>();
+
+        void add(Attempt a, Decision d) {
+            attempts++;
+            if (d.code != null) {
+                failed++;
+                Integer n = codes.get(d.code);
+                codes.put(d.code, n == null ? 1 : n + 1);
+            } else if (d.letter == Character.toUpperCase(a.start.letter)) {
+                correct++;
+            } else {
+                wrong++;
+            }
+            if (d.early) early++;
+            if (d.nanos >= 0) {
+                latencyMs.add((d.nanos - a.start.nanos) / 1e6);
+            }
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        Boolean earlyCommit = null;
+        int partials = -1;
+        float minScore = Float.NaN;
+        File lexiconFile = null;
+        File exportTsv = null;
+        boolean verbose = false;
+        List<File> logs = new ArrayList<File>();
+
+        for (int i = 0; i < args.length; i++) {
+            String a = args[i];
+            if ("--early-commit".equals(a)) {
+                earlyCommit = "on".equals(args[++i]);
+            } else if ("--partials".equals(a)) {
+                partials = Integer.parseInt(args[++i]);
+            } else if ("--min-score".equals(a)) {
+                minScore = Float.parseFloat(args[++i]);
+            } else if ("--lexicon".equals(a)) {
+                lexiconFile = new File(args[++i]);
+            } else if ("--export-tsv".equals(a)) {
+                exportTsv = new File(args[++i]);
+            } else if ("--verbose".equals(a)) {
+                verbose = true;
+            } else if (a.startsWith("--")) {
+                System.err.println("unknown option " + a);
+                System.exit(2);
+            } else {
+                logs.add(new File(a));
+            }
+        }
+        if (logs.isEmpty()) {
+            System.err.println("usage: SessionReplay [options] log...");
+            System.exit(2);
+        }
+
+        List<Attempt> attempts = new ArrayList<Attempt>();
+        for (File log : logs) {
+            readLog(log, attempts);
+        }
+
+        LetterResolver resolver = new LetterResolver();
+        if (lexiconFile != null) {
+            LearnerLexicon lexicon = new LearnerLexicon(lexiconFile);
+            lexicon.load();
+            resolver.setLexicon(lexicon);
+        }
+        PartialCommitGate gate = new PartialCommitGate();
+
+        Tally recorded = new Tally();
+        Tally replayed = new Tally();
+        int changed = 0;
+        int restarts = 0;
+        for (Attempt a : attempts) {
+            Decision was = recordedDecision(a);
+            boolean early = earlyCommit != null
+                    ? earlyCommit
+                    : (a.start.flags & SessionLog.FLAG_EARLY_COMMIT) != 0;
+            gate.arm(early,
+                    partials > 0 ? partials : a.start.earlyCommitPartials,
+                    Float.isNaN(minScore) ? a.start.earlyCommitMinScore : minScore);
+            Decision now = replay(a, resolver, gate);
+
+            recorded.add(a, was);
+            replayed.add(a, now);
+            restarts += a.starts - 1;
+            boolean differs = was.letter != now.letter || !same(was.code, now.code);
+            if (differs) changed++;
+            if (verbose) {
+                System.out.println(String.format(Locale.ROOT, "%c  %-28s  was %s  now %s%s",
+                        Character.toUpperCase(a.start.letter), heard(a),
+                        describe(a, was), describe(a, now), differs ? "  *" : ""));
+            }
+        }
+
+        System.out.println(String.format(Locale.ROOT, "%d attempts from %d log(s), %d restarts",
+                attempts.size(), logs.size(), restarts));
+        System.out.println(String.format(Locale.ROOT, "%-9s %9s %9s %9s %9s %9s %9s",
+                "", "correct", "wrong", "failed", "early", "p50 ms", "p95 ms"));
+        printTally("recorded", recorded);
+        printTally("replayed", replayed);
+        System.out.println(String.format(Locale.ROOT, "changed decisions: %d", changed));
+        if (!recorded.codes.isEmpty()) {
+            System.out.println("recorded errors: " + recorded.codes);
+        }
+
+        if (exportTsv != null) {
+            int n = exportTsv(attempts, exportTsv);
+            System.out.println(String.format(Locale.ROOT, "wrote %d attempts to %s", n, exportTsv));
+        }
+    }
+
+    // ---- Reading -------------------------------------------------------------
+
+    private static void readLog(File file, List<Attempt> out) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            SessionLog.Reader reader = new SessionLog.Reader(buf);
+
+            Attempt current = null;
+            SessionLog.Record r;
+            while ((r = reader.next()) != null) {
+                if (r.type == SessionLog.START) {
+                    if (current == null) {
+                        current = new Attempt();
+                        current.start = r;
+                    }
+                    current.starts++;
+                    continue;
+                }
+                if (current == null) continue;
+                switch (r.type) {
+                    case SessionLog.READY:
+                        if (current.readyNanos < 0) current.readyNanos = r.nanos;
+                        break;
+                    case SessionLog.PARTIAL:
+                        Partial p = new Partial();
+                        p.nanos = r.nanos;
+                        p.strings = r.strings;
+                        current.partials.add(p);
+                        break;
+                    case SessionLog.RESULTS:
+                        current.results = r.strings;
+                        current.confidences = r.confidences;
+                        current.resultsNanos = r.nanos;
+                        break;
+                    case SessionLog.ERROR:
+                        current.errorCode = RecognizerErrors.codeFor(r.error);
+                        current.errorNanos = r.nanos;
+                        break;
+                    case SessionLog.ERROR_CODE:
+                        current.errorCode = r.code;
+                        current.errorNanos = r.nanos;
+                        break;
+                    case SessionLog.OUTCOME:
+                        current.outcome = r;
+                        out.add(current);
+                        current = null;
+                        break;
+                    default:
+                        break;
+                }
+            }
+        } finally {
+            raf.close();
+        }
+    }
+
+    // ---- Deciding ------------------------------------------------------------
+
+    private static Decision recordedDecision(Attempt a) {
+        Decision d = new Decision();
+        SessionLog.Record o = a.outcome;
+        d.letter = o.letter;
+        d.code = o.code.isEmpty() ? null : o.code;
+        d.early = o.outcome == LatencyMetrics.OUTCOME_EARLY_COMMIT;
+        d.nanos = o.nanos;
+        return d;
+    }
+
+    // Mirrors LimeTunaSpeech.onPartialResults and onResults
+    private static Decision replay(Attempt a, LetterResolver resolver, PartialCommitGate gate) {
+        Decision d = new Decision();
+        char expected = a.start.letter;
+
+        for (Partial p : a.partials) {
+            if (a.resultsNanos >= 0 && p.nanos > a.resultsNanos) break;
+            if (p.strings.isEmpty() || p.strings.get(0).isEmpty()) continue;
+            int letter = resolver.resolve(p.strings, null, expected);
+            float score = letter != LetterResolver.NO_LETTER ? resolver.getScore(letter) : 0f;
+            if (gate.offer(letter, score, LetterResolver.letterIndex(expected))) {
+                d.letter = LetterResolver.letterChar(letter);
+                d.early = true;
+                d.nanos = p.nanos;
+                return d;
+            }
+        }
+
+        if (a.resultsNanos >= 0) {
+            d.nanos = a.resultsNanos;
+            if (ResultSelector.bestIndex(a.results, a.confidences) == ResultSelector.NONE) {
+                d.code = "NO_MATCH";
+                return d;
+            }
+            int letter = resolver.resolve(a.results, a.confidences, expected);
+            d.letter = letter != LetterResolver.NO_LETTER ? LetterResolver.letterChar(letter) : 0;
+            return d;
+        }
+
+        // Nothing to re-decide: keep the recorded failure
+        d.code = a.errorCode != null ? a.errorCode
+                : (a.outcome.code.isEmpty() ? "NO_RESULT" : a.outcome.code);
+        d.nanos = a.errorNanos >= 0 ? a.errorNanos : a.outcome.nanos;
+        return d;
+    }
+
+    // ---- Output --------------------------------------------------------------
+
+    private static void printTally(String name, Tally t) {
+        double[] ms = new double[t.latencyMs.size()];
+        for (int i = 0; i < ms.length; i++) {
+            ms[i] = t.latencyMs.get(i);
+        }
+        Arrays.sort(ms);
+        System.out.println(String.format(Locale.ROOT, "%-9s %9d %9d %9d %9d %9.0f %9.0f",
+                name, t.correct, t.wrong, t.failed, t.early, percentile(ms, 0.50), percentile(ms, 0.95)));
+    }
+
+    private static double percentile(double[] sorted, double q) {
+        if (sorted.length == 0) return Double.NaN;
+        int i = (int) Math.ceil(q * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(i, sorted.length - 1))];
+    }
+
+    private static String heard(Attempt a) {
+        String s = a.results != null && !a.results.isEmpty() ? a.results.get(0)
+                : !a.partials.isEmpty() && !a.partials.get(0).strings.isEmpty()
+                ? a.partials.get(a.partials.size() - 1).strings.get(0) + "..."
+                : "-";
+        return "\"" + s + "\"";
+    }
+
+    private static String describe(Attempt a, Decision d) {
+        String what = d.code != null ? d.code : d.letter != 0 ? String.valueOf(d.letter) : "?";
+        if (d.early) what += " (early)";
+        return d.nanos >= 0
+                ? String.format(Locale.ROOT, "%-12s %5.0f ms", what, (d.nanos - a.start.nanos) / 1e6)
+                : what;
+    }
+
+    private static boolean same(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    private static int exportTsv(List<Attempt> attempts, File file) throws IOException {
+        int n = 0;
+        BufferedWriter out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), UTF_8));
+        try {
+            for (Attempt a : attempts) {
+                if (a.results == null || a.results.isEmpty()) continue;
+                boolean confs = a.confidences != null && a.confidences.length == a.results.size();
+                StringBuilder sb = new StringBuilder();
+                sb.append(Character.toUpperCase(a.start.letter));
+                for (int i = 0; i < a.results.size(); i++) {
+                    sb.append('\t').append(a.results.get(i).replace('\t', ' '));
+                    if (confs) {
+                        sb.append('|').append(a.confidences[i]);
+                    }
+                }
+                out.write(sb.toString());
+                out.newLine();
+                n++;
+            }
+        } finally {
+            out.close();
+        }
+        return n;
+    }
+}
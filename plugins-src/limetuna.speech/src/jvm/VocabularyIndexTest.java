@@ -0,0 +1,98 @@
+package com.limetuna.speech;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Off-device checks for startTarget vocabularies: each level of the score
+ * scale (exact phrase, n-gram, phonetic key, key edits), the expected-entry
+ * bias and the entry list validation.
+ *
+ * Desktop-only, not shipped in the app. Build it with an org.json jar
+ * (Android bundles org.json):
+ *
+ *   cd plugins-src/limetuna.speech/src
+ *   javac -cp json.jar -d /tmp/vit jvm/VocabularyIndexTest.java \
+ *       android/VocabularyIndex.java android/LetterResolver.java \
+ *       android/LearnerLexicon.java
+ *   java -cp /tmp/vit:json.jar com.limetuna.speech.VocabularyIndexTest
+ *
+ * Prints one line per check; the exit status is 1 when one fails.
+ */
+public final class VocabularyIndexTest {
+
+    private static int failures;
+
+    private VocabularyIndexTest() {
+    }
+
+    public static void main(String[] args) throws JSONException {
+        VocabularyIndex words = new VocabularyIndex("words", VocabularyIndex.parseEntries(new JSONArray(
+                "[\"seven\", \"elephant\", \"cat\", \"hat\","
+                        + " {\"id\": \"7\", \"text\": \"7\", \"forms\": [\"sept\"]}]")));
+
+        scoreLevels(words);
+        expectedBreaksTies(words);
+        entryListIsChecked();
+
+        if (failures > 0) {
+            System.out.println(failures + " check(s) failed");
+            System.exit(1);
+        }
+        System.out.println("all checks passed");
+    }
+
+    private static void scoreLevels(VocabularyIndex v) {
+        int seven = v.indexOf("seven");
+        int elephant = v.indexOf("elephant");
+        check(v.match(list("Seven!"), null, VocabularyIndex.NO_ENTRY) == seven
+                && v.getScore(seven) == 4f, "exact phrase scores 4");
+        check(v.match(list("the number seven please"), null, VocabularyIndex.NO_ENTRY) == seven
+                && v.getScore(seven) == 3f, "a word inside the phrase scores 3");
+        check(v.match(list("sevn"), null, VocabularyIndex.NO_ENTRY) == seven
+                && v.getScore(seven) == 2.5f, "same phonetic key scores 2.5");
+        check(v.match(list("elefant"), null, VocabularyIndex.NO_ENTRY) == elephant
+                && v.getScore(elephant) == 2f, "one key edit scores 2");
+        check(v.match(list("sept"), null, VocabularyIndex.NO_ENTRY) == v.indexOf("7"),
+                "alternative forms match their entry");
+        check(v.match(list("xyzzy", "banana"), null, VocabularyIndex.NO_ENTRY) == VocabularyIndex.NO_ENTRY,
+                "unrelated words match nothing");
+        check(v.match(null, null, VocabularyIndex.NO_ENTRY) == VocabularyIndex.NO_ENTRY,
+                "no candidates match nothing");
+    }
+
+    private static void expectedBreaksTies(VocabularyIndex v) {
+        int cat = v.indexOf("cat");
+        int hat = v.indexOf("hat");
+        check(v.match(list("cat", "hat"), null, hat) == hat, "the expected entry wins a tie");
+        check(v.match(list("cat", "hat"), new float[] {0.9f, 0.2f}, VocabularyIndex.NO_ENTRY) == cat,
+                "confidence breaks a tie otherwise");
+    }
+
+    private static void entryListIsChecked() throws JSONException {
+        check(throwsIllegalArgument("[\"a\", \"a\"]"), "duplicate ids are refused");
+        check(throwsIllegalArgument("[{\"text\": \"no id\"}]"), "entries need an id");
+        check(throwsIllegalArgument("[]"), "an empty vocabulary is refused");
+    }
+
+    private static boolean throwsIllegalArgument(String json) throws JSONException {
+        try {
+            new VocabularyIndex("bad", VocabularyIndex.parseEntries(new JSONArray(json)));
+            return false;
+        } catch (IllegalArgumentException e) {
+            return true;
+        }
+    }
+
+    private static List<String> list(String... phrases) {
+        return Arrays.asList(phrases);
+    }
+
+    private static void check(boolean ok, String what) {
+        System.out.println((ok ? "ok    " : "FAIL  ") + what);
+        if (!ok) failures++;
+    }
+}
@@ -0,0 +1,46 @@
+#!/bin/sh
+# Builds the plain-Java core with the desktop checks and runs them all, then
+# ResultPathBench as an allocation gate: the per-attempt result path
+# (select, resolve, vocab) must not allocate. Exits non-zero on the first
+# failure.
+#
+#   plugins-src/limetuna.speech/src/jvm/run-checks.sh path/to/json.jar [bench options]
+#
+# Extra arguments go to the bench, e.g. --max resolve=2000 for a time gate
+# on a known machine.
+set -e
+
+if [ $# -lt 1 ]; then
+    echo "usage: run-checks.sh json.jar [bench options]" >&2
+    exit 2
+fi
+JSON_JAR=$1
+shift
+
+SRC=$(cd "$(dirname "$0")/.." && pwd)
+OUT=${TMPDIR:-/tmp}/limetuna-checks
+rm -rf "$OUT"
+mkdir -p "$OUT"
+
+cd "$SRC"
+javac -encoding UTF-8 -cp "$JSON_JAR" -d "$OUT" \
+    jvm/LetterResolverTest.java jvm/LearnerLexiconTest.java \
+    jvm/AttemptStateMachineTest.java jvm/EndpointTunerTest.java \
+    jvm/AnalyticsStoreTest.java jvm/VocabularyIndexTest.java \
+    jvm/EnergyVadTest.java jvm/ResultPathBench.java \
+    android/LetterResolver.java android/LearnerLexicon.java \
+    android/AttemptStateMachine.java android/EndpointTuner.java \
+    android/AnalyticsStore.java android/LatencyMetrics.java \
+    android/VocabularyIndex.java android/ResultSelector.java \
+    android/RecognitionResult.java android/EnergyVad.java
+
+CP="$OUT:$JSON_JAR"
+for test in LetterResolverTest LearnerLexiconTest AttemptStateMachineTest \
+        EndpointTunerTest AnalyticsStoreTest VocabularyIndexTest EnergyVadTest; do
+    echo "== $test"
+    java -cp "$CP" com.limetuna.speech.$test
+done
+
+echo "== ResultPathBench"
+java -cp "$CP" com.limetuna.speech.ResultPathBench --attempts 5000 --iterations 5 \
+    --max-bytes select=1 --max-bytes resolve=1 --max-bytes vocab=1 "$@"
@@ -1,6 +1,8 @@
 var exec = require('cordova/exec');
 
-// Phonetic map based on how kids tend to say letters
+// Phonetic map based on how kids tend to say letters. English fallback for
+// payloads without normalizedLetter; the native side resolves letters with
+// the phonetic pack of the init() language.
 const PHONETIC_MAP = {
   A: ["a", "ay", "eh", "ei"],
   B: ["b", "bee", "be"],
@@ -30,9 +32,19 @@ const PHONETIC_MAP = {
   Z: ["z", "zee", "zed"]
 };
 
+// Same weight as LetterResolver: confidence never outweighs a phonetic step
+const CONFIDENCE_WEIGHT = 0.25;
+
+function clampConfidence(c) {
+  if (typeof c !== "number" || !(c > 0)) return 0;
+  return c > 1 ? 1 : c;
+}
+
 function normalizePhrase(str) {
   return (str || "")
     .toLowerCase()
+    .normalize("NFD")
+    .replace(/[\u0300-\u036f]/g, "")
     .replace(/[^a-z\s]/g, "")
     .replace(/\s+/g, " ")
     .trim();
@@ -89,24 +101,41 @@ function scorePhraseForLetter(phrase, letter) {
 
 /**
  * Given all results + expected letter, pick the best letter A–Z or null.
+ * Fallback only: the native side resolves the letter (LetterResolver.java)
+ * and sends it back as normalizedLetter. Confidences (optional, one per
+ * result) only break ties between equal phonetic scores, as natively.
  */
-function chooseLetterFromResults(allResults, expectedLetter) {
+function chooseLetterFromResults(allResults, expectedLetter, allConfidences) {
   const candidates = Array.isArray(allResults) && allResults.length > 0
     ? allResults
     : [""];
+  const confidences = Array.isArray(allConfidences)
+    && allConfidences.length === candidates.length
+    ? allConfidences
+    : null;
 
   const letters = "ABCDEFGHIJKLMNOPQRSTUVWXYZ".split("");
   const expectedUpper = (expectedLetter || "").toUpperCase();
 
   let bestLetter = null;
   let bestScore = 0;
+  let bestTotal = 0;
 
   for (const L of letters) {
     let letterScore = 0;
-
-    for (const phrase of candidates) {
-      letterScore = Math.max(letterScore, scorePhraseForLetter(phrase, L));
-    }
+    // Highest confidence among the phrases with the best score
+    let support = 0;
+
+    candidates.forEach(function (phrase, i) {
+      const score = scorePhraseForLetter(phrase, L);
+      const conf = confidences ? clampConfidence(confidences[i]) : 0;
+      if (score > letterScore) {
+        letterScore = score;
+        support = conf;
+      } else if (score === letterScore && conf > support) {
+        support = conf;
+      }
+    });
 
     if (letterScore <= 0) continue;
 
@@ -115,7 +144,9 @@ function chooseLetterFromResults(allResults, expectedLetter) {
       letterScore += 1.0;
     }
 
-    if (letterScore > bestScore) {
+    const total = letterScore + CONFIDENCE_WEIGHT * support;
+    if (total > bestTotal) {
+      bestTotal = total;
       bestScore = letterScore;
       bestLetter = L;
     }
@@ -128,20 +159,183 @@ function chooseLetterFromResults(allResults, expectedLetter) {
   return null;
 }
 
+// Decodes resultFormat "binary" payloads (see RecognitionResult.java)
+function decodeBinaryResult(buffer) {
+  var view = new DataView(buffer);
+  var offset = 0;
+
+  function u8() {
+    return view.getUint8(offset++);
+  }
+  function f32() {
+    var v = view.getFloat32(offset, true);
+    offset += 4;
+    return v;
+  }
+  function i32() {
+    var v = view.getInt32(offset, true);
+    offset += 4;
+    return v;
+  }
+  function str() {
+    var len = view.getUint16(offset, true);
+    offset += 2;
+    var bytes = new Uint8Array(buffer, offset, len);
+    offset += len;
+    if (typeof TextDecoder !== "undefined") {
+      return new TextDecoder("utf-8").decode(bytes);
+    }
+    var binary = "";
+    for (var i = 0; i < bytes.length; i++) {
+      binary += String.fromCharCode(bytes[i]);
+    }
+    return decodeURIComponent(escape(binary));
+  }
+
+  var version = u8();
+  if (version !== 1) {
+    throw new Error("Unsupported binary result version " + version);
+  }
+  var flags = u8();
+  var letter = view.getInt8(offset++);
+  var count = u8();
+  var confidence = f32();
+
+  var letterScores = [];
+  for (var l = 0; l < 26; l++) {
+    letterScores.push(f32());
+  }
+  var vad = {
+    endpointed: (flags & 4) !== 0,
+    onsetMs: i32(),
+    speechEndMs: i32(),
+    endpointMs: i32(),
+    floor: f32()
+  };
+
+  var confidences = [];
+  var hasConfidences = false;
+  for (var c = 0; c < count; c++) {
+    var conf = f32();
+    if (!isNaN(conf)) hasConfidences = true;
+    confidences.push(conf);
+  }
+
+  var text = str();
+  var allResults = [];
+  for (var r = 0; r < count; r++) {
+    allResults.push(str());
+  }
+
+  var target = null;
+  if ((flags & 8) !== 0) {
+    target = { vocabulary: str(), id: str() || null, text: str() || null };
+    target.score = f32();
+    target.runnersUp = [];
+    var runners = u8();
+    for (var n = 0; n < runners; n++) {
+      target.runnersUp.push({ id: str(), text: str(), score: f32() });
+    }
+  }
+
+  return {
+    text: text,
+    confidence: (flags & 2) !== 0 ? confidence : null,
+    allResults: allResults,
+    allConfidences: hasConfidences ? confidences : null,
+    normalizedLetter: letter >= 0 ? String.fromCharCode(65 + letter) : null,
+    letterScores: letterScores,
+    committedEarly: (flags & 1) !== 0,
+    vad: vad,
+    target: target
+  };
+}
+
+// Turns a startLetter / startTarget payload (any resultFormat) into a result
+function parseResultPayload(nativePayload, expectedLetter) {
+  var obj = {};
+  if (typeof nativePayload === "string") {
+    obj = JSON.parse(nativePayload);
+  } else if (nativePayload instanceof ArrayBuffer) {
+    obj = decodeBinaryResult(nativePayload);
+  } else if (nativePayload && typeof nativePayload === "object") {
+    obj = nativePayload;
+  }
+
+  var rawText = obj.text || "";
+  var allResults = Array.isArray(obj.allResults) ? obj.allResults.slice() : [];
+  if (allResults.length === 0 && rawText) {
+    allResults = [rawText];
+  }
+
+  var normalizedLetter = "normalizedLetter" in obj
+    ? obj.normalizedLetter || null
+    : chooseLetterFromResults(allResults, expectedLetter, obj.allConfidences);
+
+  var result = {
+    text: rawText,
+    normalizedLetter: normalizedLetter,
+    confidence:
+      typeof obj.confidence === "number" ? obj.confidence : null,
+    allResults: allResults,
+    allConfidences: Array.isArray(obj.allConfidences)
+      ? obj.allConfidences
+      : null,
+    letterScores: Array.isArray(obj.letterScores)
+      ? obj.letterScores
+      : null,
+    committedEarly: obj.committedEarly === true,
+    vad: obj.vad || null
+  };
+  if (obj.target) {
+    result.target = obj.target;
+  }
+  return result;
+}
+
 var LimeTunaSpeech = (function () {
   var _opts = {
     language: "en-US"
   };
   var _initialized = false;
 
+  /**
+   * options (optional, see README.md for the details of each feature):
+   *   language: "en-US" (default); also picks the phonetic pack
+   *   learnerId: per-learner lexicon and endpoint tuning, null detaches
+   *   engine: "system" (default) | "keyword" | "simulator"
+   *   recognizerPath: "auto" (default) | "onDevice" | "offline" | "platform"
+   *   simulator: script for the "simulator" engine
+   *   keywordTemplatesDir, keywordRejectDistance: "keyword" engine templates
+   *   resultFormat: "json" (default) | "object" | "binary" wire format
+   *   earlyCommit (false), earlyCommitPartials (2), earlyCommitMinScore (4):
+   *     answer from stable partial results
+   *   vadEndpoint (false), vad: { onsetMargin, offsetMargin, hangoverMs,
+   *     minSpeechMs, maxSpeechMs }: stop on the native endpoint
+   *   endpointTuning (true): silence extras follow the learner's speech
+   *   prearm (true), prearmLeadMs: start listening before a clip ends
+   *   feedback (false), feedbackDir ("www/audio"): clips for playFeedback
+   *   requestPolicy: "queue" (default) | "replace" | "reject",
+   *     requestQueueSize (2): starts made while an attempt runs
+   *   record (false), recordLevels, recordMaxBytes (4 MB): replay log
+   *   analytics (true), analyticsMaxBytes (1 MB): attempt history
+   * An unknown value fails with INIT_OPTIONS_ERROR and changes nothing.
+   * onSuccess receives { engine, path, biasing, capabilities: { available,
+   *   onDevice, biasing, sdk, probeMs, onDeviceLanguages, installedLanguages,
+   *   onlineLanguages } } (languages are null until known, API 33+ only).
+   */
   function init(options, onSuccess, onError) {
     _opts = Object.assign({}, _opts, options || {});
 
     exec(
-      function () {
+      function (payload) {
         _initialized = true;
-        console.log("[LimeTunaSpeech] init success");
-        if (typeof onSuccess === "function") onSuccess();
+        var info = null;
+        try {
+          info = payload ? JSON.parse(payload) : null;
+        } catch (e) {}
+        console.log("[LimeTunaSpeech] init success", info);
+        if (typeof onSuccess === "function") onSuccess(info);
       },
       function (err) {
         console.error("[LimeTunaSpeech] init error:", err);
@@ -155,8 +349,17 @@ var LimeTunaSpeech = (function () {
 
   /**
    * expectedLetter: single letter A–Z (upper or lower)
+   * options (optional): { earlyCommit, earlyCommitPartials, earlyCommitMinScore,
+   *   vadEndpoint, prearm } overrides the init() defaults for this attempt only.
+   * options.minimumLengthMs, completeSilenceMs, possiblyCompleteSilenceMs
+   *   set the recognizer's endpointing extras for this attempt instead of
+   *   the tuned ones; 0 leaves an extra to the engine default.
+   * options.feedback: clip id to play first (e.g. "correct"); the recognizer
+   *   warms up while it plays and a "feedbackEnd" event marks its end. Fails
+   *   with FEEDBACK_NOT_LOADED, without listening, when the clip is missing.
+   * Results carry vad: { endpointed, onsetMs, speechEndMs, endpointMs, floor }.
    */
-  function startLetter(expectedLetter, onResult, onError) {
+  function startLetter(expectedLetter, onResult, onError, options) {
     if (!_initialized) {
       console.warn("[LimeTunaSpeech] startLetter called before init()");
     }
@@ -164,31 +367,7 @@ var LimeTunaSpeech = (function () {
     exec(
       function (nativePayload) {
         try {
-          var obj = {};
-          if (typeof nativePayload === "string") {
-            obj = JSON.parse(nativePayload);
-          } else if (nativePayload && typeof nativePayload === "object") {
-            obj = nativePayload;
-          }
-
-          var rawText = obj.text || "";
-          var allResults = Array.isArray(obj.allResults) ? obj.allResults.slice() : [];
-          if (allResults.length === 0 && rawText) {
-            allResults = [rawText];
-          }
-
-          var normalizedLetter = chooseLetterFromResults(allResults, expectedLetter);
-
-          var result = {
-            text: rawText,
-            normalizedLetter: normalizedLetter,
-            confidence:
-              typeof obj.confidence === "number" ? obj.confidence : null,
-            allResults: allResults,
-            allConfidences: Array.isArray(obj.allConfidences)
-              ? obj.allConfidences
-              : null
-          };
+          var result = parseResultPayload(nativePayload, expectedLetter);
 
           console.log("[LimeTunaSpeech] result:", result);
 
@@ -218,10 +397,464 @@ var LimeTunaSpeech = (function () {
       },
       "LimeTunaSpeech",
       "startLetter",
+      [expectedLetter || "", options || null]
+    );
+  }
+
+  /**
+   * Registers a vocabulary for startTarget. entries: strings, or
+   * { id, text, forms: ["alternative", "spoken", "forms"] } (text defaults
+   * to id). It is compiled natively once; loading the same id again
+   * replaces it. "letters" (A-Z) is built in, and the phonetic pack of the
+   * init() language may bring more (e.g. "digits", ids "0"-"9").
+   * Result: { id, entries, forms, keys, buildMs }; fails with
+   * VOCABULARY_INVALID for empty or duplicate entries.
+   */
+  function loadVocabulary(id, entries, onSuccess, onError) {
+    exec(
+      function (payload) {
+        var data = payload;
+        try {
+          data = JSON.parse(payload);
+        } catch (e) {}
+        if (typeof onSuccess === "function") onSuccess(data);
+      },
+      function (err) {
+        if (typeof onError === "function") onError(parseNativeError(err));
+      },
+      "LimeTunaSpeech",
+      "loadVocabulary",
+      [id, entries || []]
+    );
+  }
+
+  /**
+   * Like startLetter, against a vocabulary from loadVocabulary or the
+   * built-in "letters". expectedId is the entry id the learner should say
+   * (biases the match, like the expected letter).
+   * options: the startLetter options plus runnersUp (default 3).
+   * Results add target: { vocabulary, id, text, score,
+   *   runnersUp: [{ id, text, score }] } where id is null without a match.
+   * Fails with UNKNOWN_VOCABULARY when the id was never loaded and the
+   * active phonetic pack does not have it.
+   */
+  function startTarget(vocabularyId, expectedId, onResult, onError, options) {
+    if (!_initialized) {
+      console.warn("[LimeTunaSpeech] startTarget called before init()");
+    }
+
+    var letters = vocabularyId === "letters";
+    exec(
+      function (nativePayload) {
+        var result;
+        try {
+          result = parseResultPayload(nativePayload, letters ? expectedId : null);
+        } catch (e) {
+          console.error("[LimeTunaSpeech] result parse error:", e);
+          if (typeof onError === "function") onError(e);
+          return;
+        }
+        if (typeof onResult === "function") onResult(result);
+      },
+      function (err) {
+        console.error("[LimeTunaSpeech] startTarget error:", err);
+        if (typeof onError === "function") onError(parseNativeError(err));
+      },
+      "LimeTunaSpeech",
+      "startTarget",
+      [vocabularyId, expectedId || "", options || null]
+    );
+  }
+
+  function parseNativeError(err) {
+    try {
+      if (typeof err === "string" && err.startsWith("{")) {
+        return JSON.parse(err);
+      }
+    } catch (e) {
+      // fall through with the raw value
+    }
+    return err;
+  }
+
+  /**
+   * Opens a continuous listening session. The native side keeps one
+   * callback open and re-arms the recognizer itself after soft errors
+   * (and after wrong answers when retryOnWrong is set).
+   *
+   * options (optional): { target, maxAttempts, retryOnWrong,
+   *   earlyCommit, earlyCommitPartials, earlyCommitMinScore, vadEndpoint }
+   * onEvent receives { type: "started" | "result" | "error" | "ended",
+   *   target, attempt, final, ... } where result events carry the same
+   *   fields as startLetter results.
+   */
+  function startSession(options, onEvent, onError) {
+    if (!_initialized) {
+      console.warn("[LimeTunaSpeech] startSession called before init()");
+    }
+
+    exec(
+      function (event) {
+        if (event && event.type === "result") {
+          event.committedEarly = event.committedEarly === true;
+          if (!("normalizedLetter" in event)) {
+            event.normalizedLetter = chooseLetterFromResults(
+              event.allResults,
+              event.target,
+              event.allConfidences
+            );
+          }
+        }
+        if (typeof onEvent === "function") onEvent(event);
+      },
+      function (err) {
+        console.error("[LimeTunaSpeech] startSession error:", err);
+        if (typeof onError === "function") onError(parseNativeError(err));
+      },
+      "LimeTunaSpeech",
+      "startSession",
+      [options || null]
+    );
+  }
+
+  /**
+   * Points the open session at a new expected letter and starts listening.
+   */
+  function nextTarget(expectedLetter, onSuccess, onError) {
+    exec(
+      function () {
+        if (typeof onSuccess === "function") onSuccess();
+      },
+      function (err) {
+        if (typeof onError === "function") onError(parseNativeError(err));
+      },
+      "LimeTunaSpeech",
+      "nextTarget",
       [expectedLetter || ""]
     );
   }
 
+  function endSession(onSuccess, onError) {
+    exec(
+      function () {
+        if (typeof onSuccess === "function") onSuccess();
+      },
+      function (err) {
+        if (typeof onError === "function") onError(parseNativeError(err));
+      },
+      "LimeTunaSpeech",
+      "endSession",
+      []
+    );
+  }
+
+  /**
+   * Subscribes to recognizer lifecycle events and batched audio levels.
+   *
+   * options (optional): { rms: true, rmsIntervalMs: 50 }
+   * onEvent receives { type: "ready" | "begin" | "end" | "vadOnset" | "vadEndpoint"
+   *   | "results" | "error" | "feedbackEnd" | "recover" | "recognizerPath"
+   *   | "phonetics",
+   *   t, target, code? }
+   *   "recover" means the recognizer hung (code RECOGNIZER_HUNG) or reported
+   *   busy / client errors and is being recreated; the attempt is retried once.
+   *   It also reports a missing language pack (code ERROR_12 / ERROR_13) on
+   *   the on-device or offline path; the attempt moves to the next path.
+   *   "recognizerPath" reports a new path (code) after a recognizer package
+   *   or locale change, once the installed languages are known, or after a
+   *   missing language pack.
+   *   "phonetics" reports the phonetic pack now in use (code: its locale,
+   *   or "builtin") after init() with a new language.
+   *   and { type: "rms", t, tEnd, peak, levels: [dB, ...] } batches.
+   * Timestamps are milliseconds on the native monotonic clock.
+   */
+  function subscribeEvents(options, onEvent, onError) {
+    exec(
+      function (event) {
+        if (typeof onEvent === "function") onEvent(event);
+      },
+      function (err) {
+        if (typeof onError === "function") onError(parseNativeError(err));
+      },
+      "LimeTunaSpeech",
+      "subscribeEvents",
+      [options || null]
+    );
+  }
+
+  function unsubscribeEvents(onSuccess, onError) {
+    exec(
+      function () {
+        if (typeof onSuccess === "function") onSuccess();
+      },
+      function (err) {
+        if (typeof onError === "function") onError(parseNativeError(err));
+      },
+      "LimeTunaSpeech",
+      "unsubscribeEvents",
+      []
+    );
+  }
+
+  /**
+   * Latency breakdown recorded natively for every attempt.
+   *
+   * options (optional): { recent: 32 } caps the number of recent timelines.
+   * onSuccess receives { spans: { dispatch, start, spinUp, waitSpeech, speech,
+   *   decode, deliver, engine, total, spinUpHidden: { count, p50, p95, p99, mean, max } },
+   *   outcomes: { results, errors, earlyCommits },
+   *   vad: { enabled, onsetMargin, offsetMargin, hangoverMs, minSpeechMs, maxSpeechMs },
+   *   prearm: { enabled, leadMs, echoRestarts },
+   *   recovery: { timeoutMs, hangs, busy, client, recycles, retries, recovered,
+   *   failed }, recognizer: { engine, path, biasing, capabilities },
+   *   requests: { state, policy, queueSize, waiting, queued, replaced,
+   *   rejected, illegalTransitions }, phonetics: { language, locale,
+   *   source: "mapped" | "read" | "builtin", bytes, loadMs, vocabularies },
+   *   lifecycle: { paused, releases, prewarms, lastPrewarmMs },
+   *   endpointing: { enabled, tuned, samples, misses, missRate, backoff,
+   *   speechP10, speechP50, speechP90, minimumLengthMs, completeSilenceMs,
+   *   possiblyCompleteSilenceMs },
+   *   recent: [{ exec, uiDispatch, startListening, ready, begin, end,
+   *   result, delivered, feedbackEnd, spinUpHiddenMs }] } with all times in ms.
+   * spinUpHidden is the part of spinUp that overlapped feedback playback.
+   */
+  function getMetrics(options, onSuccess, onError) {
+    exec(
+      function (metrics) {
+        if (typeof onSuccess === "function") onSuccess(metrics);
+      },
+      function (err) {
+        if (typeof onError === "function") onError(parseNativeError(err));
+      },
+      "LimeTunaSpeech",
+      "getMetrics",
+      [options || null]
+    );
+  }
+
+  function resetMetrics(onSuccess, onError) {
+    exec(
+      function () {
+        if (typeof onSuccess === "function") onSuccess();
+      },
+      function (err) {
+        if (typeof onError === "function") onError(parseNativeError(err));
+      },
+      "LimeTunaSpeech",
+      "resetMetrics",
+      []
+    );
+  }
+
+  /**
+   * Aggregates the stored attempt history natively.
+   *
+   * options: { kind: "letters" (default) | "latency" | "retries" | "sessions",
+   *   sinceMs, untilMs (wall clock, default everything), letter ("B": only
+   *   attempts at that letter), engine ("system", "system:onDevice",
+   *   "keyword", ...: label prefix), windowMs (retries, default one day) }
+   * Group stats are { attempts, correct, accuracy, errors, retries,
+   *   retryRate, meanConfidence, errorCodes, latency: { count, p50, p90,
+   *   p95, p99, max, mean } } with latency in ms from startListening to the
+   *   answer. onSuccess receives { kind, rows, device: { manufacturer, model,
+   *   sdk }, session } plus
+   *   letters: { all, letters: { A: stats, ... } }
+   *   latency: { all, engines: { label: latency }, outcomes: { results,
+   *     errors, earlyCommits } }
+   *   retries: { windowMs, windows: [stats without latency + { startMs, p50 }],
+   *     truncated } (at most 1000 windows, the newest; truncated is true
+   *     when older ones were left out)
+   *   sessions: { sessions: [stats + { session, firstMs, lastMs }] }
+   * A retry is an attempt at the letter the previous attempt missed, within
+   * a minute. Attempts ended by stop() are not recorded. Fails with
+   * ANALYTICS_OFF when init() disabled analytics.
+   */
+  function queryAnalytics(options, onSuccess, onError) {
+    exec(
+      function (result) {
+        if (typeof onSuccess === "function") onSuccess(result);
+      },
+      function (err) {
+        if (typeof onError === "function") onError(parseNativeError(err));
+      },
+      "LimeTunaSpeech",
+      "queryAnalytics",
+      [options || null]
+    );
+  }
+
+  /** Deletes the stored attempt history. */
+  function clearAnalytics(onSuccess, onError) {
+    exec(
+      function () {
+        if (typeof onSuccess === "function") onSuccess();
+      },
+      function (err) {
+        if (typeof onError === "function") onError(parseNativeError(err));
+      },
+      "LimeTunaSpeech",
+      "clearAnalytics",
+      []
+    );
+  }
+
+  /**
+   * Flushes the session recording (init({ record: true })) and reports
+   * { file, rotatedFile, bytes, attempts, droppedChunks }. The files are
+   * in the app's private storage; src/jvm/SessionReplay reads them.
+   * Fails with NOT_RECORDING when recording is off.
+   */
+  function getRecording(onSuccess, onError) {
+    exec(
+      function (info) {
+        if (typeof onSuccess === "function") onSuccess(info);
+      },
+      function (err) {
+        if (typeof onError === "function") onError(parseNativeError(err));
+      },
+      "LimeTunaSpeech",
+      "getRecording",
+      []
+    );
+  }
+
+  /**
+   * Tells the learner lexicon that `allResults` (from a startLetter result)
+   * were meant as `letter`. Frequent variants then resolve to that letter.
+   * Result: { letter, promoted, entries, promotedTotal }.
+   */
+  function confirmLetter(letter, allResults, onSuccess, onError) {
+    exec(
+      function (payload) {
+        var data = payload;
+        try {
+          data = JSON.parse(payload);
+        } catch (e) {}
+        if (typeof onSuccess === "function") onSuccess(data);
+      },
+      function (err) {
+        if (typeof onError === "function") onError(parseNativeError(err));
+      },
+      "LimeTunaSpeech",
+      "confirmLetter",
+      [String(letter || "").toUpperCase(), allResults || []]
+    );
+  }
+
+  /**
+   * Records one utterance of `letter` as a keyword template for the
+   * "keyword" engine. Result: { letter, file, durationMs, templateCount }.
+   * A recording takes the microphone like an attempt: it waits behind the
+   * running one under the requestPolicy, starts wait behind it, and stop()
+   * fails it with STOPPED.
+   */
+  function recordKeywordTemplate(letter, onSuccess, onError) {
+    exec(
+      function (payload) {
+        var data = payload;
+        try {
+          data = JSON.parse(payload);
+        } catch (e) {}
+        if (typeof onSuccess === "function") onSuccess(data);
+      },
+      function (err) {
+        if (typeof onError === "function") onError(parseNativeError(err));
+      },
+      "LimeTunaSpeech",
+      "recordKeywordTemplate",
+      [String(letter || "").toUpperCase()]
+    );
+  }
+
+  /**
+   * Plays a preloaded feedback clip ("correct" for www/audio/correct.wav).
+   * onSuccess fires when the clip ends: { id, completed, durationMs }, with
+   * completed false when it was cut short. A startLetter issued while the
+   * clip plays waits for it to finish natively.
+   */
+  function playFeedback(id, onSuccess, onError) {
+    exec(
+      function (payload) {
+        if (typeof onSuccess === "function") onSuccess(payload);
+      },
+      function (err) {
+        if (typeof onError === "function") onError(parseNativeError(err));
+      },
+      "LimeTunaSpeech",
+      "playFeedback",
+      [id || ""]
+    );
+  }
+
+  /**
+   * Chains commands into a single bridge call; the native side runs them in
+   * order inside one UI-thread runnable:
+   *
+   *   LimeTunaSpeech.batch()
+   *     .setKeepScreenOn(true)
+   *     .setBeepsMuted(true)
+   *     .init({ language: "en-US" })
+   *     .run(function (res) { ... }, onError);
+   *
+   * res: { ok, results: [{ action, status: "ok" | "error", value }] } in
+   * command order. onError only fires when the batch itself is malformed.
+   * Streaming actions (startSession, subscribeEvents) and the ones that
+   * answer only when an utterance or clip ends (startLetter, startTarget,
+   * playFeedback) fail with NOT_BATCHABLE; call them on their own.
+   */
+  function batch() {
+    var commands = [];
+    var hooks = [];
+
+    var chain = {
+      add: function (action, args, hook) {
+        commands.push({ action: action, args: args || [] });
+        hooks.push(hook || null);
+        return chain;
+      },
+      init: function (options) {
+        _opts = Object.assign({}, _opts, options || {});
+        return chain.add("init", [_opts], function (entry) {
+          if (entry.status === "ok") _initialized = true;
+        });
+      },
+      setBeepsMuted: function (muted) {
+        return chain.add("setBeepsMuted", [!!muted]);
+      },
+      setKeepScreenOn: function (keepOn) {
+        return chain.add("setKeepScreenOn", [!!keepOn]);
+      },
+      stop: function () {
+        return chain.add("stop", []);
+      },
+      resetMetrics: function () {
+        return chain.add("resetMetrics", []);
+      },
+      run: function (onSuccess, onError) {
+        exec(
+          function (payload) {
+            var res = typeof payload === "string" ? JSON.parse(payload) : payload;
+            (res.results || []).forEach(function (entry, i) {
+              if (entry.status === "error") {
+                entry.value = parseNativeError(entry.value);
+              }
+              if (hooks[i]) hooks[i](entry);
+            });
+            if (typeof onSuccess === "function") onSuccess(res);
+          },
+          function (err) {
+            if (typeof onError === "function") onError(parseNativeError(err));
+          },
+          "LimeTunaSpeech",
+          "batch",
+          [commands]
+        );
+      }
+    };
+
+    return chain;
+  }
+
   function stop(onSuccess, onError) {
     exec(
       function () {
@@ -267,6 +900,22 @@ var LimeTunaSpeech = (function () {
   return {
     init: init,
     startLetter: startLetter,
+    loadVocabulary: loadVocabulary,
+    startTarget: startTarget,
+    startSession: startSession,
+    nextTarget: nextTarget,
+    endSession: endSession,
+    subscribeEvents: subscribeEvents,
+    unsubscribeEvents: unsubscribeEvents,
+    getMetrics: getMetrics,
+    resetMetrics: resetMetrics,
+    getRecording: getRecording,
+    queryAnalytics: queryAnalytics,
+    clearAnalytics: clearAnalytics,
+    confirmLetter: confirmLetter,
+    batch: batch,
+    recordKeywordTemplate: recordKeywordTemplate,
+    playFeedback: playFeedback,
     stop: stop,
     setBeepsMuted: setBeepsMuted,
     setKeepScreenOn: setKeepScreenOn
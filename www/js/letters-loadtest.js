@@ -0,0 +1,38 @@
+// letters-loadtest.js – plays the Letters game unattended against the
+// plugin's scripted recognizer. Not part of the app: letters.html does not
+// load it. For a load-test build, add it before js/letters.js:
+//
+//   <script>window.LIMETUNA_SIMULATOR = { ... };</script>
+//   <script src="js/letters-loadtest.js"></script>
+//   <script src="js/letters.js" defer></script>
+//
+// LIMETUNA_SIMULATOR is a simulator script (see LimeTunaSpeech.init). Extra
+// keys: silent skips feedback clips, loopGames starts a new game as soon as
+// one ends. Rounds run without a learner, so nothing is learned or stored.
+
+(function () {
+  const script = window.LIMETUNA_SIMULATOR;
+  if (!script) {
+    console.warn("[Letters load test] window.LIMETUNA_SIMULATOR is not set");
+    return;
+  }
+
+  let games = 0;
+
+  window.LETTERS_GAME_OPTIONS = {
+    initOptions: {
+      engine: "simulator",
+      simulator: script,
+      learnerId: null
+    },
+    silent: !!script.silent,
+    onGameEnd: function (startNewGame) {
+      if (!script.loopGames) return;
+      games++;
+      if (games % 100 === 0) {
+        console.log("[Letters load test] simulated games", games);
+      }
+      setTimeout(startNewGame, 0);
+    }
+  };
+})();
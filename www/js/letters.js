@@ -2,13 +2,15 @@
 
 const ALL_LETTERS = "ABCDEFGHIJKLMNOPQRSTUVWXYZ".split("");
 const MAX_ATTEMPTS_PER_LETTER = 2;
-const CORRECT_SOUND_DURATION_MS = 2000; // correct.wav ~2s
+const CORRECT_SOUND_DURATION_MS = 2000; // correct.wav ~2s (HTML audio fallback only)
 
 let LETTER_SEQUENCE = [];
 let currentIndex = 0;
 let correctCount = 0;
 let attemptCount = 0;
 let recognizing = false;
+// The plugin ended the attempt because the app went to the background
+let listenOnResume = false;
 
 let sttEnabled = false;
 let sttFatalError = false;
@@ -18,6 +20,7 @@ let progressEl;
 let statusEl;
 let feedbackEl;
 let finalScoreEl;
+let micLevelFillEl;
 let backToHomeBtn;
 let restartGameBtn;
 
@@ -29,6 +32,24 @@ let soundLoseEl;
 // debug timing (to see where the delay is)
 let lastListenStartTs = 0;
 
+// Mic level indicator, driven by the native event channel
+const MIC_LEVEL_MIN_DB = -2;
+const MIC_LEVEL_MAX_DB = 10;
+let speechEventsSubscribed = false;
+
+// Set only by a harness loaded before this script (js/letters-loadtest.js,
+// never by letters.html): initOptions are merged into the init options,
+// silent skips feedback clips, onGameEnd(startNewGame) runs after each game.
+const GAME_OPTIONS = window.LETTERS_GAME_OPTIONS || {};
+
+function silentFeedback() {
+  return !!GAME_OPTIONS.silent;
+}
+
+// Set while the next letter is already being listened for under a feedback
+// clip; it is shown once the clip ends
+let revealPending = false;
+
 function shuffleArray(arr) {
   const copy = arr.slice();
   for (let i = copy.length - 1; i > 0; i--) {
@@ -64,7 +85,6 @@ function isHardSttErrorCode(code) {
     code === "PERMISSION_DENIED" ||
     code === "INSUFFICIENT_PERMISSIONS" ||
     code === "START_FAILED" ||
-    code === "ALREADY_LISTENING" ||
     code === "CLASS_NOT_FOUND" ||
     code === "MISSING_COMMAND" ||
     code === "ENGINE_UNAVAILABLE" ||
@@ -106,6 +126,78 @@ function playSound(el, onEnded) {
   }
 }
 
+// Plays a clip through the plugin's preloaded SoundPool (ids are file names
+// under www/audio). Falls back to the <audio> element when the native clip
+// is unavailable; fallbackMs then replaces the "ended" event with a timer.
+function playFeedback(id, el, onEnded, fallbackMs) {
+  if (silentFeedback()) {
+    if (typeof onEnded === "function") setTimeout(onEnded, 0);
+    return;
+  }
+
+  const fallback = () => playHtmlFeedback(el, onEnded, fallbackMs);
+
+  if (!sttEnabled || !window.LimeTunaSpeech || !LimeTunaSpeech.playFeedback) {
+    fallback();
+    return;
+  }
+
+  LimeTunaSpeech.playFeedback(
+    id,
+    function () {
+      if (typeof onEnded === "function") onEnded();
+    },
+    function (err) {
+      console.warn("native feedback unavailable:", err);
+      fallback();
+    }
+  );
+}
+
+function playHtmlFeedback(el, onEnded, fallbackMs) {
+  if (typeof fallbackMs === "number") {
+    playSound(el);
+    if (typeof onEnded === "function") setTimeout(onEnded, fallbackMs);
+  } else {
+    playSound(el, onEnded);
+  }
+}
+
+function feedbackSoundEl(id) {
+  switch (id) {
+    case "correct": return soundCorrectEl;
+    case "wrong": return soundWrongEl;
+    case "win": return soundWinEl;
+    case "lose": return soundLoseEl;
+    default: return null;
+  }
+}
+
+// --- Mic level ---------------------------------------------------------------
+
+function setMicLevel(db) {
+  if (!micLevelFillEl) return;
+  const span = MIC_LEVEL_MAX_DB - MIC_LEVEL_MIN_DB;
+  const pct = Math.max(0, Math.min(1, (db - MIC_LEVEL_MIN_DB) / span)) * 100;
+  micLevelFillEl.style.width = `${pct.toFixed(0)}%`;
+}
+
+function subscribeSpeechEvents() {
+  if (speechEventsSubscribed || !LimeTunaSpeech.subscribeEvents) return;
+  speechEventsSubscribed = true;
+
+  LimeTunaSpeech.subscribeEvents({ rms: true, rmsIntervalMs: 50 }, (event) => {
+    if (!event) return;
+    if (event.type === "rms") {
+      setMicLevel(event.peak);
+    } else if (event.type === "end" || event.type === "results" || event.type === "error") {
+      setMicLevel(MIC_LEVEL_MIN_DB);
+    } else if (event.type === "feedbackEnd") {
+      revealCurrentLetter();
+    }
+  });
+}
+
 // --- Game setup --------------------------------------------------------------
 
 function initLettersGame() {
@@ -114,6 +206,7 @@ function initLettersGame() {
   statusEl = document.getElementById("lettersStatus");
   feedbackEl = document.getElementById("lettersFeedback");
   finalScoreEl = document.getElementById("finalScore");
+  micLevelFillEl = document.getElementById("micLevelFill");
   backToHomeBtn = document.getElementById("backToHomeBtn");
   restartGameBtn = document.getElementById("restartGameBtn");
 
@@ -141,12 +234,7 @@ function initLettersGame() {
   if (backToHomeBtn) {
     backToHomeBtn.addEventListener("click", () => {
       if (window.cordova && window.LimeTunaSpeech) {
-        if (LimeTunaSpeech.setBeepsMuted) {
-          LimeTunaSpeech.setBeepsMuted(false);
-        }
-        if (LimeTunaSpeech.setKeepScreenOn) {
-          LimeTunaSpeech.setKeepScreenOn(false);
-        }
+        LimeTunaSpeech.batch().setBeepsMuted(false).setKeepScreenOn(false).run();
       }
       window.location.href = "index.html";
     });
@@ -165,6 +253,7 @@ function startNewGame() {
   LETTER_SEQUENCE = shuffleArray(ALL_LETTERS).slice(0, 10);
   currentIndex = 0;
   correctCount = 0;
+  revealPending = false;
   attemptCount = 0;
   recognizing = false;
   sttFatalError = false;
@@ -176,48 +265,65 @@ function startNewGame() {
 
   updateUIForCurrentLetter();
 
-  // Keep screen awake & mute system beeps
-  if (window.cordova && window.LimeTunaSpeech) {
-    if (LimeTunaSpeech.setKeepScreenOn) {
-      LimeTunaSpeech.setKeepScreenOn(true);
-    }
-    if (LimeTunaSpeech.setBeepsMuted) {
-      LimeTunaSpeech.setBeepsMuted(true);
-    }
-  }
-
   if (window.LimeTunaSpeech && window.cordova) {
     statusEl.textContent = "Phase 0: preparing microphone…";
 
-    LimeTunaSpeech.init(
-      {
-        language: "en-US"
-      },
-      function () {
-        console.log("LimeTunaSpeech.init success");
-        sttEnabled = true;
-        statusEl.textContent =
-          "Phase 1: ready. Say the letter when you're ready.";
-        startListeningForCurrentLetter();
-      },
-      function (err) {
-        sttEnabled = false;
-        sttFatalError = true;
-
-        console.error("LimeTunaSpeech.init error:", err);
-        try {
-          statusEl.textContent = "Init error: " + JSON.stringify(err);
-        } catch (e) {
-          statusEl.textContent = "Init error (raw): " + String(err);
-        }
-      }
-    );
+    const initOptions = {
+      language: "en-US",
+      // Resolve as soon as partials agree on the expected letter
+      earlyCommit: true,
+      // Stop listening on the native endpoint, not the sentence timeout
+      vadEndpoint: true,
+      // Per-learner lexicon; one learner per device for now
+      learnerId: "default",
+      // Preload www/audio/*.wav for native feedback playback
+      feedback: !silentFeedback()
+    };
+    Object.assign(initOptions, GAME_OPTIONS.initOptions || {});
+
+    // Keep screen awake, mute system beeps and init in one bridge call
+    LimeTunaSpeech.batch()
+      .setKeepScreenOn(true)
+      .setBeepsMuted(true)
+      .init(initOptions)
+      .run(
+        function (res) {
+          const initResult = res.results[res.results.length - 1];
+          if (initResult && initResult.status === "ok") {
+            onSpeechReady();
+          } else {
+            onSpeechInitError(initResult ? initResult.value : res);
+          }
+        },
+        onSpeechInitError
+      );
   } else {
     sttEnabled = false;
     statusEl.textContent = "Speech not available in this environment.";
   }
 }
 
+function onSpeechReady() {
+  console.log("LimeTunaSpeech.init success");
+  sttEnabled = true;
+  subscribeSpeechEvents();
+  statusEl.textContent =
+    "Phase 1: ready. Say the letter when you're ready.";
+  startListeningForCurrentLetter();
+}
+
+function onSpeechInitError(err) {
+  sttEnabled = false;
+  sttFatalError = true;
+
+  console.error("LimeTunaSpeech.init error:", err);
+  try {
+    statusEl.textContent = "Init error: " + JSON.stringify(err);
+  } catch (e) {
+    statusEl.textContent = "Init error (raw): " + String(err);
+  }
+}
+
 // --- UI update ---------------------------------------------------------------
 
 function updateUIForCurrentLetter() {
@@ -233,9 +339,34 @@ function updateUIForCurrentLetter() {
   feedbackEl.style.color = "";
 }
 
+function revealCurrentLetter() {
+  if (!revealPending) return;
+  revealPending = false;
+  updateUIForCurrentLetter();
+}
+
 // --- Speech handling ---------------------------------------------------------
 
-function startListeningForCurrentLetter() {
+function canListenAfterFeedback() {
+  return sttEnabled && !sttFatalError && window.LimeTunaSpeech && window.cordova;
+}
+
+// Moves on and starts listening for the next letter in the same call that
+// plays the clip, so the recognizer warms up while it plays. The letter is
+// revealed on "feedbackEnd". Returns false when this path is unavailable.
+function advanceDuringFeedback(id) {
+  if (currentIndex + 1 >= LETTER_SEQUENCE.length || !canListenAfterFeedback()) {
+    return false;
+  }
+  currentIndex++;
+  attemptCount = 0;
+  revealPending = true;
+  startListeningForCurrentLetter(id);
+  return true;
+}
+
+// feedbackId (optional): clip the plugin plays before the microphone opens
+function startListeningForCurrentLetter(feedbackId) {
   if (!sttEnabled || sttFatalError) {
     console.warn("STT disabled or fatal; not listening.");
     statusEl.textContent = "Speech engine not available.";
@@ -265,6 +396,7 @@ function startListeningForCurrentLetter() {
       const engineMs = resultArrivalTs - lastListenStartTs;
 
       recognizing = false;
+      revealCurrentLetter();
 
       const mapStart = performance.now();
 
@@ -283,9 +415,9 @@ function startListeningForCurrentLetter() {
       // 2) Debug: tell you exactly where the time went
       statusEl.textContent =
         `Phase 2: result received.\n` +
-        `Engine: ~${engineMs.toFixed(0)} ms, JS map: ~${mapMs.toFixed(
-          1
-        )} ms.\n` +
+        `Engine: ~${engineMs.toFixed(0)} ms${
+          result && result.committedEarly ? " (early commit)" : ""
+        }, JS map: ~${mapMs.toFixed(1)} ms.\n` +
         `Heard: "${rawText || ""}" → "${normalized || ""}" (expected "${expectedUpper}")\n` +
         `Phase 3: scoring and playing ${
           isCorrect ? "correct" : "wrong"
@@ -313,6 +445,35 @@ function startListeningForCurrentLetter() {
       const code = parseErrorCode(err);
       console.error("LimeTunaSpeech.startLetter error:", err, "code=", code);
 
+      if (code === "PAUSED") {
+        // Mic released in the background; ask again for the same letter on resume
+        listenOnResume = true;
+        return;
+      }
+
+      if (code === "STOPPED" || code === "SUPERSEDED") {
+        // Ended on purpose by stop() or a newer start; whoever did that moves on
+        return;
+      }
+
+      if (feedbackId && (code === "FEEDBACK_NOT_LOADED" || code === "FEEDBACK_FAILED")) {
+        // Clip not decoded natively (yet): play it through <audio>, then listen
+        playHtmlFeedback(feedbackSoundEl(feedbackId), () => {
+          revealCurrentLetter();
+          startListeningForCurrentLetter();
+        }, feedbackId === "correct" ? CORRECT_SOUND_DURATION_MS : undefined);
+        return;
+      }
+      revealCurrentLetter();
+
+      if (code === "ALREADY_LISTENING") {
+        // A previous attempt is still open natively (the plugin's watchdog
+        // recycles hung recognizers): close it and count this as a miss
+        statusEl.textContent = "Phase 2: recognizer busy, restarting it…";
+        LimeTunaSpeech.stop(retryOrAdvance, retryOrAdvance);
+        return;
+      }
+
       if (isHardSttErrorCode(code)) {
         sttFatalError = true;
         sttEnabled = false;
@@ -331,7 +492,8 @@ function startListeningForCurrentLetter() {
         `Didn't catch that (error ${code || "unknown"}). Phase 3: retry logic.`;
 
       retryOrAdvance();
-    }
+    },
+    feedbackId && !silentFeedback() ? { feedback: feedbackId } : undefined
   );
 }
 
@@ -344,10 +506,11 @@ function handleCorrect() {
 
   correctCount++;
 
-  // 1) Give correct.wav a fixed 2s window, no extra hanging,
-  // and no overlap with win sound (win plays after endGame).
-  playSound(soundCorrectEl);
-  setTimeout(() => {
+  if (advanceDuringFeedback("correct")) return;
+
+  // Advance when correct.wav ends, so the win sound never overlaps it
+  // (HTML fallback keeps the fixed 2s window).
+  playFeedback("correct", soundCorrectEl, () => {
     advanceToNextLetter();
   }, CORRECT_SOUND_DURATION_MS);
 }
@@ -362,8 +525,12 @@ function handleIncorrect() {
     feedbackEl.style.color = "#c62828";
     statusEl.textContent += "\nPhase 4: wrong (retry) feedback.";
 
-    // After wrong sound, retry listening
-    playSound(soundWrongEl, () => {
+    // After wrong sound, retry listening (warming up under the clip)
+    if (canListenAfterFeedback()) {
+      startListeningForCurrentLetter("wrong");
+      return;
+    }
+    playFeedback("wrong", soundWrongEl, () => {
       startListeningForCurrentLetter();
     });
   } else {
@@ -372,7 +539,8 @@ function handleIncorrect() {
     statusEl.textContent += "\nPhase 4: wrong (advance) feedback.";
 
     // On final wrong, let the sound finish then advance
-    playSound(soundWrongEl, () => {
+    if (advanceDuringFeedback("wrong")) return;
+    playFeedback("wrong", soundWrongEl, () => {
       advanceToNextLetter();
     });
   }
@@ -427,10 +595,14 @@ function endGame() {
   }
 
   if (correctCount >= 8) {
-    // Correct sound already had its 2 seconds, so win won't overlap it.
-    playSound(soundWinEl);
+    // Correct sound has already finished, so win won't overlap it.
+    playFeedback("win", soundWinEl);
   } else {
-    playSound(soundLoseEl);
+    playFeedback("lose", soundLoseEl);
+  }
+
+  if (typeof GAME_OPTIONS.onGameEnd === "function") {
+    GAME_OPTIONS.onGameEnd(startNewGame);
   }
 }
 
@@ -441,8 +613,15 @@ function onLettersDeviceReady() {
   initLettersGame();
 }
 
+function onLettersResume() {
+  if (!listenOnResume) return;
+  listenOnResume = false;
+  startListeningForCurrentLetter();
+}
+
 if (window.cordova) {
   document.addEventListener("deviceready", onLettersDeviceReady, false);
+  document.addEventListener("resume", onLettersResume, false);
 } else {
   document.addEventListener("DOMContentLoaded", () => {
     console.log(